@@ -6,9 +6,6 @@ import com.apollographql.apollo.annotations.ApolloDeprecatedSince
 import com.apollographql.apollo.annotations.ApolloDeprecatedSince.Version.v4_0_0
 import com.apollographql.apollo.annotations.ApolloExperimental
 import com.apollographql.apollo.api.json.ApolloJsonElement
-import com.apollographql.apollo.api.json.BufferedSinkJsonWriter
-import com.apollographql.apollo.api.json.writeAny
-import okio.Buffer
 import kotlin.jvm.JvmName
 
 sealed class CompiledSelection
@@ -23,10 +20,13 @@ class CompiledField internal constructor(
     val condition: List<CompiledCondition>,
     val arguments: List<CompiledArgument>,
     val selections: List<CompiledSelection>,
+    fieldKeyTemplate: FieldKeyTemplate?,
 ) : CompiledSelection() {
   val responseName: String
     get() = alias ?: name
 
+  private val fieldKeyTemplate: FieldKeyTemplate? = fieldKeyTemplate ?: if (arguments.isEmpty()) null else FieldKeyTemplate(name, arguments)
+
   /**
    * Resolves field argument value by [name].
    *
@@ -155,17 +155,10 @@ class CompiledField internal constructor(
       // well as in `argumentValues` so that the common case does not reach a call at all.
       return name
     }
-    val arguments = argumentValues(variables)
-    if (arguments.isEmpty()) {
-      return name
-    }
 
     return try {
-      val buffer = Buffer()
-      val jsonWriter = BufferedSinkJsonWriter(buffer)
-      jsonWriter.writeAny(arguments)
-      jsonWriter.close()
-      "${name}(${buffer.readUtf8()})"
+      // The arguments without variables are rendered once and the key is kept for the last variables
+      fieldKeyTemplate!!.key(variables)
     } catch (e: Exception) {
       throw RuntimeException(e)
     }
@@ -178,12 +171,14 @@ class CompiledField internal constructor(
     private var condition: List<CompiledCondition> = emptyList()
     private var arguments: List<CompiledArgument> = emptyList()
     private var selections: List<CompiledSelection> = emptyList()
+    private var fieldKeyTemplate: FieldKeyTemplate? = null
 
     constructor(compiledField: CompiledField) : this(compiledField.name, compiledField.type) {
       this.alias = compiledField.alias
       this.condition = compiledField.condition
       this.arguments = compiledField.arguments
       this.selections = compiledField.selections
+      this.fieldKeyTemplate = compiledField.fieldKeyTemplate
     }
 
     fun alias(alias: String?) = apply {
@@ -196,6 +191,7 @@ class CompiledField internal constructor(
 
     fun arguments(arguments: List<CompiledArgument>) = apply {
       this.arguments = arguments
+      this.fieldKeyTemplate = null
     }
 
     fun selections(selections: List<CompiledSelection>) = apply {
@@ -208,7 +204,8 @@ class CompiledField internal constructor(
         type = type,
         condition = condition,
         arguments = arguments,
-        selections = selections
+        selections = selections,
+        fieldKeyTemplate = fieldKeyTemplate,
     )
   }
 }
@@ -510,7 +507,7 @@ class CompiledArgument private constructor(
  * @return [ApolloJsonElement]
  */
 @Suppress("UNCHECKED_CAST")
-private fun resolveVariables(value: ApolloJsonElement, variables: Executable.Variables): Any? {
+internal fun resolveVariables(value: ApolloJsonElement, variables: Executable.Variables): Any? {
   return when (value) {
     null -> null
     is CompiledVariable -> error("must be checked by the caller")
@@ -0,0 +1,116 @@
+package com.apollographql.apollo.api
+
+import com.apollographql.apollo.api.json.BufferedSinkJsonWriter
+import com.apollographql.apollo.api.json.writeAny
+import okio.Buffer
+
+/**
+ * Computes the field keys of a [CompiledField] with arguments, see [CompiledField.nameWithArguments].
+ *
+ * - the arguments that do not contain variables are rendered only once
+ * - the last key is kept along with its [Executable.Variables] so that visiting the same field in several records of
+ * the same operation doesn't compute the key again
+ *
+ * A [FieldKeyTemplate] is shared by the copies of a [CompiledField] made with [CompiledField.newBuilder] as long as
+ * their arguments don't change.
+ */
+internal class FieldKeyTemplate(private val name: String, private val arguments: List<CompiledArgument>) {
+  private class Memo(val variables: Executable.Variables, val key: String)
+
+  /**
+   * The `"name":value` entries of the arguments sorted by name. Each entry is either a [String] for an argument
+   * without variables or the [CompiledArgument] if it needs to be rendered for each [Executable.Variables].
+   */
+  private val entries: List<Any> by lazy(LazyThreadSafetyMode.PUBLICATION) {
+    arguments.filter { it.value is Optional.Present<*> }
+        .sortedBy { it.definition.name }
+        .map { argument ->
+          val value = argument.value.getOrThrow()
+          if (value.containsVariable()) {
+            argument
+          } else {
+            renderEntry(argument.definition.name, resolveVariables(value, noVariables))
+          }
+        }
+  }
+
+  /**
+   * The key if it doesn't depend on the variables
+   */
+  private val staticKey: String? by lazy(LazyThreadSafetyMode.PUBLICATION) {
+    if (entries.all { it is String }) {
+      @Suppress("UNCHECKED_CAST")
+      keyOf(entries as List<String>)
+    } else {
+      null
+    }
+  }
+
+  /**
+   * Written from several threads, but [Memo] is immutable so a thread sees either a complete [Memo] or a previous one
+   */
+  private var memo: Memo? = null
+
+  fun key(variables: Executable.Variables): String {
+    staticKey?.let { return it }
+
+    val memo = memo
+    if (memo != null && memo.variables === variables) {
+      return memo.key
+    }
+
+    val key = keyOf(
+        entries.mapNotNull { entry ->
+          if (entry is String) {
+            return@mapNotNull entry
+          }
+          val argument = entry as CompiledArgument
+          val value = argument.value.getOrThrow()
+          if (value is CompiledVariable) {
+            if (variables.valueMap.containsKey(value.name)) {
+              renderEntry(argument.definition.name, variables.valueMap[value.name])
+            } else {
+              // The argument has a variable value that is absent
+              null
+            }
+          } else {
+            renderEntry(argument.definition.name, resolveVariables(value, variables))
+          }
+        }
+    )
+    this.memo = Memo(variables, key)
+    return key
+  }
+
+  private fun keyOf(entries: List<String>): String {
+    if (entries.isEmpty()) {
+      return name
+    }
+    return entries.joinToString(separator = ",", prefix = "$name({", postfix = "})")
+  }
+
+  private companion object {
+    val noVariables = Executable.Variables(emptyMap())
+
+    /**
+     * Renders `"name":value` the same way [BufferedSinkJsonWriter] renders it in an object
+     */
+    fun renderEntry(name: String, value: Any?): String {
+      val buffer = Buffer()
+      val jsonWriter = BufferedSinkJsonWriter(buffer)
+      jsonWriter.writeAny(mapOf(name to value))
+      jsonWriter.close()
+      val json = buffer.readUtf8()
+      return json.substring(1, json.length - 1)
+    }
+
+    fun Any?.containsVariable(): Boolean {
+      return when (this) {
+        is CompiledVariable -> true
+        is Map<*, *> -> values.any { it.containsVariable() }
+        is List<*> -> any { it.containsVariable() }
+        else -> false
+      }
+    }
+  }
+}
@@ -710,16 +710,27 @@ class BufferedSourceJsonReader(private val source: BufferedSource) : JsonReader
       return -1
     }
 
+    val options = (names as? JsonReader.Options)?.doubleQuotedNames
     while (hasNext()) {
+      if (options != null && peeked == PEEKED_DOUBLE_QUOTED_NAME) {
+        val index = source.select(options)
+        if (index != -1) {
+          peeked = PEEKED_NONE
+          pathNames[stackSize - 1] = names[index]
+          return selected(index, names.size)
+        }
+        if (ignoreUnknownKeys && skipUnescapedName()) {
+          // The name is not escaped and didn't match so it's an unknown name
+          skipValue()
+          continue
+        }
+        // The name is escaped or unknown names must throw, fallback to decoding it
+      }
+
       val name = nextName()
       val expectedIndex = indexStack[indexStackSize - 1]
       if (names[expectedIndex] == name) {
-        return expectedIndex.also {
-          indexStack[indexStackSize - 1] = expectedIndex + 1
-          if (indexStack[indexStackSize - 1] == names.size) {
-            indexStack[indexStackSize - 1] = 0
-          }
-        }
+        return selected(expectedIndex, names.size)
       } else {
         // guess failed, fallback to full search
         var index = expectedIndex
@@ -732,12 +743,7 @@ class BufferedSourceJsonReader(private val source: BufferedSource) : JsonReader
             break
           }
           if (names[index] == name) {
-            return index.also {
-              indexStack[indexStackSize - 1] = index + 1
-              if (indexStack[indexStackSize - 1] == names.size) {
-                indexStack[indexStackSize - 1] = 0
-              }
-            }
+            return selected(index, names.size)
           }
         }
 
@@ -750,6 +756,30 @@ class BufferedSourceJsonReader(private val source: BufferedSource) : JsonReader
     return -1
   }
 
+  /**
+   * Remembers that the next name is expected after [index] and returns [index]
+   */
+  private fun selected(index: Int, size: Int): Int {
+    indexStack[indexStackSize - 1] = if (index + 1 == size) 0 else index + 1
+    return index
+  }
+
+  /**
+   * Skips the peeked double-quoted name if it doesn't contain escape sequences.
+   *
+   * @return true if the name was skipped
+   */
+  private fun skipUnescapedName(): Boolean {
+    val index = source.indexOfElement(DOUBLE_QUOTE_OR_SLASH)
+    if (index == -1L) throwSyntaxError("Unterminated string")
+    if (buffer[index] == '\\'.code.toByte()) {
+      return false
+    }
+    buffer.skip(index + 1)
+    peeked = PEEKED_NONE
+    return true
+  }
+
   override fun ignoreUnknownKeys(): Boolean {
     return ignoreUnknownKeys
   }
@@ -16,8 +16,10 @@
 package com.apollographql.apollo.api.json
 
 import com.apollographql.apollo.exception.JsonDataException
+import okio.ByteString.Companion.encodeUtf8
 import okio.Closeable
 import okio.IOException
+import kotlin.jvm.JvmStatic
 
 /**
  * Reads a JSON [RFC 7159](http://www.ietf.org/rfc/rfc7159.txt) encoded value as a stream of tokens.
@@ -162,6 +164,9 @@ interface JsonReader : Closeable {
    * An optimized way to retrieve the nextName when the candidates and their order is known. [selectName] maintains the current index in
    * the list and saves having to string compare [nextName] to every candidate.
    *
+   * If [names] is an [Options], [BufferedSourceJsonReader] matches the names directly against the bytes of the source and doesn't
+   * allocate a [String] for them.
+   *
    * @return the index of the next name or -1 if there is no next name
    */
   @Throws(IOException::class)
@@ -253,4 +258,36 @@ interface JsonReader : Closeable {
      */
     ANY
   }
+
+  /**
+   * A list of names prepared for [selectName]. Creating [Options] is more expensive than creating a [List] so they should be created
+   * once and kept in a static field:
+   *
+   * ```
+   * private val RESPONSE_NAMES = JsonReader.Options.of("id", "name")
+   * ```
+   *
+   * [Options] is a [List] and can be used with any [JsonReader].
+   */
+  class Options private constructor(private val names: List<String>) : AbstractList<String>() {
+    /**
+     * The names followed by their closing quote so that a name doesn't match the start of a longer one, or null if there are
+     * duplicate names
+     */
+    internal val doubleQuotedNames: okio.Options? = if (names.isNotEmpty() && names.toSet().size == names.size) {
+      okio.Options.of(*Array(names.size) { "${names[it]}\"".encodeUtf8() })
+    } else {
+      null
+    }
+
+    override val size: Int
+      get() = names.size
+
+    override fun get(index: Int): String = names[index]
+
+    companion object {
+      @JvmStatic
+      fun of(vararg names: String): Options = Options(names.toList())
+    }
+  }
 }
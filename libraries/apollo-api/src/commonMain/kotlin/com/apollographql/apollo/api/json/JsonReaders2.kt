@@ -7,9 +7,10 @@ package com.apollographql.apollo.api.json
 
 import kotlin.jvm.JvmName
 
+private val typenameNames = JsonReader.Options.of("__typename")
+
 fun JsonReader.readTypename(): String {
-  val names = listOf("__typename")
-  val index = selectName(names)
+  val index = selectName(typenameNames)
   check(index == 0) {
     error("__typename not found")
   }
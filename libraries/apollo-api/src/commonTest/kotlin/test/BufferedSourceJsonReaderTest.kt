@@ -1,9 +1,12 @@
 package test
 
 import com.apollographql.apollo.api.json.BufferedSourceJsonReader
+import com.apollographql.apollo.api.json.JsonReader
+import com.apollographql.apollo.exception.JsonDataException
 import okio.Buffer
 import kotlin.test.Test
 import kotlin.test.assertEquals
+import kotlin.test.assertFailsWith
 
 class BufferedSourceJsonReaderTest {
   @Test
@@ -17,4 +20,38 @@ class BufferedSourceJsonReaderTest {
 
     assertEquals(json, number.value)
   }
-}
\ No newline at end of file
+
+  @Test
+  fun selectNameWithOptions() {
+    val options = JsonReader.Options.of("id", "identity", "name")
+    // "\u006eame" is an escaped "name"
+    val json = """{"name": "Luke", "unknown": {"id": 0}, "identity": "jedi", "id": 42, "\u006eame": "Skywalker"}"""
+    val jsonReader = BufferedSourceJsonReader(Buffer().writeUtf8(json))
+
+    val values = mutableListOf<Pair<Int, Any?>>()
+    jsonReader.beginObject()
+    while (true) {
+      val index = jsonReader.selectName(options)
+      if (index == -1) {
+        break
+      }
+      assertEquals(listOf<Any>(options[index]), jsonReader.getPath())
+      values.add(index to if (index == 0) jsonReader.nextInt() else jsonReader.nextString())
+    }
+    jsonReader.endObject()
+
+    assertEquals(listOf(2 to "Luke", 1 to "jedi", 0 to 42, 2 to "Skywalker"), values)
+  }
+
+  @Test
+  fun selectNameWithOptionsThrowsOnUnknownKeys() {
+    val jsonReader = BufferedSourceJsonReader(Buffer().writeUtf8("""{"unknown": 0}"""))
+    jsonReader.ignoreUnknownKeys(false)
+    jsonReader.beginObject()
+
+    val exception = assertFailsWith<JsonDataException> {
+      jsonReader.selectName(JsonReader.Options.of("id"))
+    }
+    assertEquals("Unknown key 'unknown' found at path: 'unknown'", exception.message)
+  }
+}
@@ -0,0 +1,65 @@
+package test
+
+import com.apollographql.apollo.api.CompiledArgument
+import com.apollographql.apollo.api.CompiledArgumentDefinition
+import com.apollographql.apollo.api.CompiledField
+import com.apollographql.apollo.api.CompiledVariable
+import com.apollographql.apollo.api.CustomScalarType
+import com.apollographql.apollo.api.Executable
+import com.apollographql.apollo.api.json.JsonNumber
+import kotlin.test.Test
+import kotlin.test.assertEquals
+
+class NameWithArgumentsTest {
+  private fun field(vararg arguments: Pair<String, Any?>): CompiledField {
+    return CompiledField.Builder("users", CustomScalarType("String", "kotlin.String"))
+        .arguments(
+            arguments.map {
+              CompiledArgument.Builder(CompiledArgumentDefinition.Builder(it.first).build()).value(it.second).build()
+            }
+        )
+        .build()
+  }
+
+  private fun variables(vararg values: Pair<String, Any?>) = Executable.Variables(mapOf(*values))
+
+  @Test
+  fun noArguments() {
+    assertEquals("users", field().nameWithArguments(variables()))
+  }
+
+  @Test
+  fun argumentsAreSortedByName() {
+    val field = field("first" to JsonNumber("10"), "after" to "abc", "filter" to mapOf("name" to "a\"b", "age" to JsonNumber("3")))
+
+    assertEquals("""users({"after":"abc","filter":{"age":3,"name":"a\"b"},"first":10})""", field.nameWithArguments(variables()))
+  }
+
+  @Test
+  fun argumentsWithVariables() {
+    val field = field("first" to JsonNumber("10"), "after" to CompiledVariable("cursor"), "filter" to mapOf("name" to CompiledVariable("name")))
+
+    assertEquals("""users({"after":"abc","filter":{"name":"Luke"},"first":10})""", field.nameWithArguments(variables("cursor" to "abc", "name" to "Luke")))
+    // Absent variables are omitted
+    assertEquals("""users({"filter":{},"first":10})""", field.nameWithArguments(variables()))
+    // The key changes with the variables
+    assertEquals("""users({"after":"def","filter":{},"first":10})""", field.nameWithArguments(variables("cursor" to "def")))
+  }
+
+  @Test
+  fun absentArgumentsOnly() {
+    val field = field("after" to CompiledVariable("cursor"))
+
+    assertEquals("users", field.nameWithArguments(variables()))
+  }
+
+  @Test
+  fun copiesHaveTheSameKeys() {
+    val field = field("after" to CompiledVariable("cursor"))
+    val copy = field.newBuilder().alias("allUsers").build()
+    val variables = variables("cursor" to "abc")
+
+    assertEquals(field.nameWithArguments(variables), copy.nameWithArguments(variables))
+    assertEquals("users", copy.newBuilder().arguments(emptyList()).build().nameWithArguments(variables))
+  }
+}
@@ -42,9 +42,11 @@ internal fun responseNamesFieldSpec(model: IrModel): FieldSpec? {
     return null
   }
 
-  val initializer = regularProperties.map {
-    CodeBlock.of(S, it.info.responseName)
-  }.toListInitializerCodeblock()
+  val initializer = CodeBlock.of(
+      "$T.Options.of($L)",
+      JavaClassNames.JsonReader,
+      regularProperties.map { CodeBlock.of(S, it.info.responseName) }.joinToCode(", ")
+  )
 
   return FieldSpec.builder(ParameterizedTypeName.get(JavaClassNames.List, JavaClassNames.String), RESPONSE_NAMES)
       .addModifiers(Modifier.FINAL, Modifier.PRIVATE, Modifier.STATIC)
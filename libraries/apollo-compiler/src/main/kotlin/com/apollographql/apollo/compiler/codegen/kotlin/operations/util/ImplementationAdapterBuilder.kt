@@ -60,9 +60,11 @@ internal class ImplementationAdapterBuilder(
     if (regularProperties.isEmpty()) {
       return null
     }
-    val initializer = regularProperties.map {
-      CodeBlock.of("%S", it.info.responseName)
-    }.joinToCode(prefix = "listOf(", separator = ", ", suffix = ")")
+    val initializer = CodeBlock.of(
+        "%T.Options.of(%L)",
+        KotlinSymbols.JsonReader,
+        regularProperties.map { CodeBlock.of("%S", it.info.responseName) }.joinToCode(", ")
+    )
 
     return PropertySpec.builder(Identifier.RESPONSE_NAMES, KotlinSymbols.List.parameterizedBy(KotlinSymbols.String))
         .initializer(initializer)
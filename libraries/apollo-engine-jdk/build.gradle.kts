@@ -0,0 +1,18 @@
+plugins {
+  id("org.jetbrains.kotlin.jvm")
+}
+
+apolloLibrary(
+    namespace = "com.apollographql.apollo.engine.jdk",
+    jvmTarget = 11, // java.net.http requires 11
+    description = "An Apollo HttpEngine backed by java.net.http.HttpClient",
+)
+
+dependencies {
+  api(project(":apollo-runtime"))
+
+  testImplementation(project(":apollo-engine-tests"))
+  testImplementation(project(":apollo-testing-support-internal"))
+  testImplementation(libs.apollo.mockserver)
+  testImplementation(libs.kotlin.test.junit)
+}
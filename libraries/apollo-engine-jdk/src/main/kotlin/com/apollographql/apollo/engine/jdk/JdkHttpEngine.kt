@@ -0,0 +1,148 @@
+@file:JvmName("JdkHttpEngine")
+
+package com.apollographql.apollo.engine.jdk
+
+import com.apollographql.apollo.api.http.HttpHeader
+import com.apollographql.apollo.api.http.HttpMethod
+import com.apollographql.apollo.api.http.HttpRequest
+import com.apollographql.apollo.api.http.HttpResponse
+import com.apollographql.apollo.exception.ApolloNetworkException
+import com.apollographql.apollo.network.http.HttpEngine
+import kotlinx.coroutines.future.await
+import okio.Buffer
+import okio.BufferedSource
+import okio.GzipSource
+import okio.buffer
+import okio.source
+import java.io.IOException
+import java.io.InputStream
+import java.net.URI
+import java.net.http.HttpClient
+import java.net.http.HttpRequest.BodyPublishers
+import java.net.http.HttpResponse.BodyHandlers
+import java.time.Duration
+import java.util.concurrent.Executor
+
+/**
+ * Returns a [HttpEngine] backed by a new JDK [HttpClient].
+ *
+ * The client uses HTTP/2 when the server supports it so that concurrent requests to the same server are multiplexed
+ * on a single connection.
+ *
+ * @param timeoutMillis the connect timeout and the time to wait for the response headers.
+ * @param executor the executor used by the [HttpClient] for its asynchronous tasks or null to use the default one.
+ * On Java 21+, pass `Executors.newVirtualThreadPerTaskExecutor()` to use virtual threads.
+ */
+@JvmOverloads
+fun JdkHttpEngine(timeoutMillis: Long = 60_000, executor: Executor? = null): HttpEngine {
+  val httpClient = HttpClient.newBuilder()
+      .version(HttpClient.Version.HTTP_2)
+      .connectTimeout(Duration.ofMillis(timeoutMillis))
+      .apply {
+        if (executor != null) {
+          executor(executor)
+        }
+      }
+      .build()
+  return JdkHttpEngineImpl(httpClient, timeoutMillis)
+}
+
+/**
+ * Returns a [HttpEngine] that uses [httpClient] to execute the requests.
+ *
+ * @param timeoutMillis the time to wait for the response headers.
+ */
+@JvmOverloads
+fun JdkHttpEngine(httpClient: HttpClient, timeoutMillis: Long = 60_000): HttpEngine {
+  return JdkHttpEngineImpl(httpClient, timeoutMillis)
+}
+
+private class JdkHttpEngineImpl(
+    private val httpClient: HttpClient,
+    private val timeoutMillis: Long,
+) : HttpEngine {
+  override suspend fun execute(request: HttpRequest): HttpResponse {
+    // Like OkHttp, ask for a gzipped response if the caller didn't ask for a specific encoding and decompress it
+    val transparentGzip = request.headers.none { it.name.equals("Accept-Encoding", ignoreCase = true) }
+
+    val response = try {
+      httpClient.sendAsync(request.toJdkRequest(transparentGzip), BodyHandlers.ofInputStream()).await()
+    } catch (e: IOException) {
+      throw ApolloNetworkException(
+          message = "Failed to execute GraphQL http network request",
+          platformCause = e
+      )
+    }
+
+    return response.toApolloHttpResponse(transparentGzip)
+  }
+
+  private fun HttpRequest.toJdkRequest(transparentGzip: Boolean): java.net.http.HttpRequest {
+    val builder = java.net.http.HttpRequest.newBuilder(URI.create(url))
+        .timeout(Duration.ofMillis(timeoutMillis))
+
+    headers.forEach {
+      if (it.name.lowercase() !in restrictedHeaders) {
+        builder.header(it.name, it.value)
+      }
+    }
+    if (transparentGzip) {
+      builder.header("Accept-Encoding", "gzip")
+    }
+
+    if (method == HttpMethod.Get) {
+      builder.GET()
+    } else {
+      val body = body
+      check(body != null) {
+        "HTTP POST requires a request body"
+      }
+      if (headers.none { it.name.equals("Content-Type", ignoreCase = true) }) {
+        builder.header("Content-Type", body.contentType)
+      }
+      // The body is written to memory first, HttpBody can only write to a sink
+      val buffer = Buffer()
+      body.writeTo(buffer)
+      builder.POST(BodyPublishers.ofByteArray(buffer.readByteArray()))
+    }
+
+    return builder.build()
+  }
+
+  private fun java.net.http.HttpResponse<InputStream>.toApolloHttpResponse(transparentGzip: Boolean): HttpResponse {
+    var headers = headers().map().flatMap { (name, values) ->
+      values.map { HttpHeader(name, it) }
+    }.filter {
+      // HTTP/2 pseudo headers
+      !it.name.startsWith(":")
+    }
+
+    val isGzipped = headers.any {
+      it.name.equals("Content-Encoding", ignoreCase = true) && it.value.equals("gzip", ignoreCase = true)
+    }
+    var source: BufferedSource = body().source().buffer()
+    if (transparentGzip && isGzipped) {
+      source = GzipSource(source).buffer()
+      // The body is decompressed, these headers do not apply anymore
+      headers = headers.filter {
+        !it.name.equals("Content-Encoding", ignoreCase = true) && !it.name.equals("Content-Length", ignoreCase = true)
+      }
+    }
+
+    return HttpResponse.Builder(statusCode = statusCode())
+        .body(source)
+        .addHeaders(headers)
+        .build()
+  }
+
+  override fun close() {
+    // The HttpClient may be shared, its resources are released when it is garbage collected
+  }
+
+  companion object {
+    /**
+     * Headers that the JDK HttpClient sets itself and refuses from the caller
+     */
+    private val restrictedHeaders = setOf("connection", "content-length", "expect", "host", "upgrade")
+  }
+}
@@ -0,0 +1,50 @@
+package com.apollographql.apollo.engine.jdk
+
+import com.apollographql.apollo.api.http.HttpMethod
+import com.apollographql.apollo.api.http.HttpRequest
+import com.apollographql.apollo.api.http.valueOf
+import com.apollographql.apollo.engine.tests.connectTimeout
+import com.apollographql.apollo.engine.tests.errorWithBody
+import com.apollographql.apollo.engine.tests.gzipTest
+import com.apollographql.apollo.engine.tests.headers
+import com.apollographql.apollo.engine.tests.post
+import com.apollographql.apollo.engine.tests.readTimeout
+import com.apollographql.apollo.testing.internal.runTest
+import com.apollographql.mockserver.MockServer
+import com.apollographql.mockserver.enqueueMultipart
+import okio.ByteString.Companion.encodeUtf8
+import okio.use
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
+
+class JdkHttpEngineTest {
+  @Test
+  fun engineTests() = runTest {
+    gzipTest(JdkHttpEngine())
+    errorWithBody { JdkHttpEngine(it) }
+    headers { JdkHttpEngine(it) }
+    post { JdkHttpEngine(it) }
+    connectTimeout { JdkHttpEngine(it) }
+    readTimeout { JdkHttpEngine(it) }
+  }
+
+  @Test
+  fun multipartBodyIsStreamed() = runTest {
+    MockServer().use { mockServer ->
+      val multipartBody = mockServer.enqueueMultipart("application/json")
+      multipartBody.enqueuePart("""{"data":{"foo":1},"hasNext":true}""".encodeUtf8(), false)
+
+      val response = JdkHttpEngine().execute(HttpRequest.Builder(HttpMethod.Get, mockServer.url()).build())
+      assertTrue(response.headers.valueOf("Content-Type")!!.startsWith("multipart/mixed"))
+
+      // The first part can be read before the server sends the last one
+      val body = response.body!!
+      assertTrue(body.indexOf("\"foo\":1".encodeUtf8()) >= 0)
+
+      multipartBody.enqueuePart("""{"incremental":[],"hasNext":false}""".encodeUtf8(), true)
+      assertTrue(body.readUtf8().contains("\"hasNext\":false"))
+      assertEquals(200, response.statusCode)
+    }
+  }
+}
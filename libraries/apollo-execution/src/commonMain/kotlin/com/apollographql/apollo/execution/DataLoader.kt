@@ -0,0 +1,169 @@
+package com.apollographql.apollo.execution
+
+import com.apollographql.apollo.api.ExecutionContext
+import kotlinx.atomicfu.locks.reentrantLock
+import kotlinx.atomicfu.locks.withLock
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.CoroutineStart
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.yield
+
+/**
+ * Loads the values of several keys at once, typically with a single call to a backend.
+ *
+ * Register it with [ExecutableSchema.Builder.addBatchLoader] and use it from a [Resolver] with
+ * [ResolveInfo.dataLoader].
+ */
+fun interface BatchLoader<K, V> {
+  /**
+   * @param keys the keys to load. [keys] has no duplicates.
+   * @return the values, in the same order as [keys].
+   * @throws Exception if something wrong happens. A GraphQL error is generated for each field that requested one of
+   * the [keys].
+   */
+  suspend fun load(keys: List<K>): List<V>
+}
+
+/**
+ * Collects the keys requested by the fields executed at the same time and loads them with a single call to its
+ * [BatchLoader].
+ *
+ * Sibling fields and list items are started from the same stack frame. The first [load] waits for them to request
+ * their keys before calling the [BatchLoader]. This turns the N+1 calls of a list of N items into 2 calls.
+ *
+ * The values are memoized: each key is loaded at most once during an execution.
+ *
+ * A new [DataLoader] is created for each execution. Get it with [ResolveInfo.dataLoader].
+ */
+class DataLoader<K, V> internal constructor(
+    private val batchLoader: BatchLoader<K, V>,
+    private val maxBatchSize: Int,
+) {
+  private val lock = reentrantLock()
+  private val values = mutableMapOf<K, CompletableDeferred<V>>()
+  private var pending: MutableList<K>? = null
+
+  /**
+   * Loads the value for [key].
+   *
+   * @throws Exception if the [BatchLoader] fails.
+   */
+  suspend fun load(key: K): V {
+    var batch: MutableList<K>? = null
+    val deferred = lock.withLock {
+      values.get(key) ?: CompletableDeferred<V>().also {
+        values.put(key, it)
+        val current = pending
+        if (current == null || current.size >= maxBatchSize) {
+          // This call dispatches the new batch
+          batch = mutableListOf(key)
+          pending = batch
+        } else {
+          current.add(key)
+        }
+      }
+    }
+
+    val toDispatch = batch
+    if (toDispatch != null) {
+      dispatch(toDispatch)
+    }
+    return deferred.await()
+  }
+
+  /**
+   * Loads the values for [keys]. The keys are loaded in the same batch as much as possible.
+   *
+   * @throws Exception if the [BatchLoader] fails.
+   */
+  suspend fun loadMany(keys: List<K>): List<V> {
+    return coroutineScope {
+      keys.map { key ->
+        // The first load() dispatches the batch once all the keys are added
+        async(start = CoroutineStart.UNDISPATCHED) { load(key) }
+      }.awaitAll()
+    }
+  }
+
+  private suspend fun dispatch(batch: MutableList<K>) {
+    try {
+      // Let the other fields started from the same stack frame add their keys
+      yield()
+    } catch (e: CancellationException) {
+      close(batch)
+      fail(batch, IllegalStateException("The field that dispatches the batch was cancelled"))
+      throw e
+    }
+    close(batch)
+
+    val loaded = try {
+      batchLoader.load(batch).also {
+        check(it.size == batch.size) {
+          "BatchLoader returned ${it.size} values for ${batch.size} keys"
+        }
+      }
+    } catch (e: Exception) {
+      fail(batch, e)
+      if (e is CancellationException) {
+        throw e
+      }
+      return
+    }
+
+    lock.withLock {
+      batch.forEachIndexed { index, key ->
+        values.get(key)?.complete(loaded[index])
+      }
+    }
+  }
+
+  private fun close(batch: MutableList<K>) {
+    lock.withLock {
+      if (pending === batch) {
+        pending = null
+      }
+    }
+  }
+
+  private fun fail(batch: List<K>, e: Exception) {
+    lock.withLock {
+      batch.forEach { key ->
+        // Do not memoize failures
+        values.remove(key)?.completeExceptionally(e)
+      }
+    }
+  }
+}
+
+/**
+ * The [DataLoader]s of an execution.
+ */
+internal class DataLoaders(
+    private val batchLoaders: Map<String, BatchLoaderRegistration>,
+) : ExecutionContext.Element {
+  private val lock = reentrantLock()
+  private val dataLoaders = mutableMapOf<String, DataLoader<*, *>>()
+
+  fun get(name: String): DataLoader<*, *> {
+    return lock.withLock {
+      dataLoaders.getOrPut(name) {
+        val registration = batchLoaders.get(name) ?: error("No BatchLoader named '$name'")
+        @Suppress("UNCHECKED_CAST")
+        DataLoader(registration.batchLoader as BatchLoader<Any?, Any?>, registration.maxBatchSize)
+      }
+    }
+  }
+
+  override val key: ExecutionContext.Key<*>
+    get() = Key
+
+  companion object Key : ExecutionContext.Key<DataLoaders>
+}
+
+internal class BatchLoaderRegistration(
+    val batchLoader: BatchLoader<*, *>,
+    val maxBatchSize: Int,
+)
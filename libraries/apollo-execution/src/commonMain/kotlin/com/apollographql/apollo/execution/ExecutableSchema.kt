@@ -2,6 +2,7 @@ package com.apollographql.apollo.execution
 
 import com.apollographql.apollo.api.ExecutionContext
 import com.apollographql.apollo.api.OnError
+import com.apollographql.apollo.api.json.JsonWriter
 import com.apollographql.apollo.ast.*
 import com.apollographql.apollo.execution.internal.OperationContext
 import com.apollographql.apollo.execution.internal.PreparedRequest
@@ -10,6 +11,7 @@ import com.apollographql.apollo.execution.internal.introspectionResolver
 import com.apollographql.apollo.execution.internal.prepareRequest
 import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.flow.flowOf
+import okio.Sink
 
 /**
  * A GraphQL schema with execution information:
@@ -29,8 +31,10 @@ class ExecutableSchema internal constructor(
     private val typeResolver: TypeResolver,
     private val instrumentations: List<Instrumentation>,
     private val persistedDocumentCache: PersistedDocumentCache?,
+    private val documentCache: PersistedDocumentCache?,
     private val onError: OnError,
-    private val parserOptions: ParserOptions
+    private val parserOptions: ParserOptions,
+    private val batchLoaders: Map<String, BatchLoaderRegistration>,
 ) {
   private val introspectionResolver: Resolver = introspectionResolver(schema)
 
@@ -38,7 +42,7 @@ class ExecutableSchema internal constructor(
       request: GraphQLRequest,
       executionContext: ExecutionContext = ExecutionContext.Empty,
   ): GraphQLResponse {
-    return prepareRequest(schema, coercings, persistedDocumentCache, parserOptions, request).fold(
+    return prepareRequest(schema, coercings, persistedDocumentCache, documentCache, parserOptions, request).fold(
         ifLeft = {
           GraphQLResponse.Builder().errors(it).build()
         },
@@ -48,11 +52,71 @@ class ExecutableSchema internal constructor(
     )
   }
 
+  /**
+   * Executes [request] and writes the response to [jsonWriter] in response order as soon as the fields are completed.
+   *
+   * Unlike [execute] followed by [GraphQLResponse.serialize], the response is never built as a [Map]: the first bytes
+   * are written before the execution is over and the completed values are released once they are written.
+   *
+   * `errors` is written after `data`. If an [Instrumentation] returns an [OperationCallback], the whole response is
+   * built before being written so that the callback can modify it.
+   */
+  suspend fun execute(
+      request: GraphQLRequest,
+      jsonWriter: JsonWriter,
+      executionContext: ExecutionContext = ExecutionContext.Empty,
+  ) {
+    prepareRequest(schema, coercings, persistedDocumentCache, documentCache, parserOptions, request).fold(
+        ifLeft = {
+          GraphQLResponse.Builder().errors(it).build().serialize(jsonWriter)
+        },
+        ifRight = {
+          operationContext(it, executionContext).execute(jsonWriter)
+        }
+    )
+  }
+
+  /**
+   * Executes [request] and writes the response to [sink] in response order as soon as the fields are completed.
+   *
+   * @see execute
+   */
+  suspend fun execute(
+      request: GraphQLRequest,
+      sink: Sink,
+      executionContext: ExecutionContext = ExecutionContext.Empty,
+  ) {
+    execute(request, sink.jsonWriter(), executionContext)
+  }
+
+  /**
+   * Executes [request] with support for `@defer` and `@stream`.
+   *
+   * The deferred fragments and the items after `initialCount` execute concurrently with the initial payload and are
+   * emitted in subsequent payloads as soon as they are completed. The payloads use the `v0.2` incremental delivery
+   * format and can be written to an HTTP response with [writeMultipartTo].
+   *
+   * Subscriptions are not supported.
+   */
+  fun executeIncrementally(
+      request: GraphQLRequest,
+      executionContext: ExecutionContext = ExecutionContext.Empty,
+  ): Flow<IncrementalPayload> {
+    return prepareRequest(schema, coercings, persistedDocumentCache, documentCache, parserOptions, request).fold(
+        ifLeft = {
+          flowOf(InitialIncrementalPayload(GraphQLResponse.Builder().errors(it).build(), emptyList(), false))
+        },
+        ifRight = {
+          operationContext(it, executionContext).executeIncrementally()
+        }
+    )
+  }
+
   fun subscribe(
       request: GraphQLRequest,
       executionContext: ExecutionContext = ExecutionContext.Empty,
   ): Flow<SubscriptionEvent> {
-    return prepareRequest(schema, coercings, persistedDocumentCache, parserOptions, request).fold(
+    return prepareRequest(schema, coercings, persistedDocumentCache, documentCache, parserOptions, request).fold(
         ifLeft = {
           flowOf(SubscriptionResponse(GraphQLResponse.Builder().errors(it).build()))
         },
@@ -76,8 +140,9 @@ class ExecutableSchema internal constructor(
         preparedRequest.operation,
         preparedRequest.fragments,
         preparedRequest.variables,
-        executionContext,
-        preparedRequest.onError ?: onError
+        if (batchLoaders.isEmpty()) executionContext else executionContext + DataLoaders(batchLoaders),
+        preparedRequest.onError ?: onError,
+        preparedRequest.executionPlans,
     )
   }
 
@@ -91,8 +156,10 @@ class ExecutableSchema internal constructor(
     private var typeResolver: TypeResolver? = null
     private val instrumentations = mutableListOf<Instrumentation>()
     private var persistedDocumentCache: PersistedDocumentCache? = null
+    private var documentCache: PersistedDocumentCache? = null
     private var onError: OnError = OnError.PROPAGATE
     private var parserOptions: ParserOptions = ParserOptions.Default
+    private val batchLoaders = mutableMapOf<String, BatchLoaderRegistration>()
 
     fun schema(schema: GQLDocument): Builder = apply {
       this.schema = schema
@@ -134,6 +201,24 @@ class ExecutableSchema internal constructor(
       this.persistedDocumentCache = persistedDocumentCache
     }
 
+    /**
+     * Caches the parsed and validated documents of the requests that are not persisted queries, keyed by the SHA256
+     * of their text. Requests that use the same document text only parse and validate it once.
+     *
+     * Use a different instance than [persistedDocumentCache]: persisted query ids are sent by the clients and are
+     * not checked against the document.
+     *
+     * ```kotlin
+     * ExecutableSchema.Builder()
+     *     .documentCache(InMemoryPersistedDocumentCache(maxSize = 1000))
+     * ```
+     *
+     * Default: null, the documents are parsed and validated for each request.
+     */
+    fun documentCache(documentCache: PersistedDocumentCache?): Builder = apply {
+      this.documentCache = documentCache
+    }
+
     fun onError(onError: OnError) = apply {
       check(onError != OnError.HALT) {
         "OnError.HALT is not supported"
@@ -148,6 +233,35 @@ class ExecutableSchema internal constructor(
       this.parserOptions = parserOptions
     }
 
+    /**
+     * Registers a [BatchLoader]. Resolvers get the matching [DataLoader] with [ResolveInfo.dataLoader].
+     *
+     * ```kotlin
+     * ExecutableSchema.Builder()
+     *     .addBatchLoader<String, Customer>("customer") { ids ->
+     *       customerService.getCustomers(ids)
+     *     }
+     *     .resolver {
+     *       when (it.coordinates()) {
+     *         "Order.customer" -> it.dataLoader<String, Customer>("customer").load((it.parentObject as Order).customerId)
+     *         else -> TODO()
+     *       }
+     *     }
+     * ```
+     *
+     * @param maxBatchSize the maximum number of keys passed to [batchLoader] at once.
+     */
+    fun <K, V> addBatchLoader(
+        name: String,
+        maxBatchSize: Int = Int.MAX_VALUE,
+        batchLoader: BatchLoader<K, V>,
+    ): Builder = apply {
+      require(maxBatchSize > 0) {
+        "maxBatchSize must be > 0"
+      }
+      this.batchLoaders.put(name, BatchLoaderRegistration(batchLoader, maxBatchSize))
+    }
+
     fun build(): ExecutableSchema {
       check(schema != null) {
         "A schema is required to build an ExecutableSchema"
@@ -174,8 +288,10 @@ class ExecutableSchema internal constructor(
           typeResolver ?: ThrowingTypeResolver,
           instrumentations,
           persistedDocumentCache,
+          documentCache,
           onError,
-          parserOptions
+          parserOptions,
+          batchLoaders.toMap()
       )
     }
   }
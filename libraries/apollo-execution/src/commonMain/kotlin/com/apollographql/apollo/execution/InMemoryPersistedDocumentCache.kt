@@ -4,19 +4,63 @@ import com.apollographql.apollo.execution.internal.LruCache
 import kotlinx.atomicfu.locks.reentrantLock
 import kotlinx.atomicfu.locks.withLock
 
-class InMemoryPersistedDocumentCache: PersistedDocumentCache {
-    private val lock = reentrantLock()
-    private val lruCache = LruCache<String, PersistedDocument>(100)
+/**
+ * A [PersistedDocumentCache] that keeps the [maxSize] most recently used documents in memory.
+ *
+ * By default, all the documents share a single lock and the least recently used document is evicted. With a
+ * [concurrencyLevel] greater than 1, the documents are split in segments, each with its own lock and LRU order, so that
+ * concurrent requests for different documents don't contend on a single lock. The eviction order is then approximate:
+ * the least recently used document of a segment is evicted when that segment is full.
+ *
+ * @param maxSize the maximum number of documents.
+ * @param concurrencyLevel the number of segments. It is capped to [maxSize].
+ */
+class InMemoryPersistedDocumentCache(
+    maxSize: Int = 100,
+    concurrencyLevel: Int = 1,
+) : PersistedDocumentCache {
+    private val segments: Array<Segment>
 
-    override fun get(id: String): PersistedDocument? {
-        return lock.withLock {
-            lruCache.get(id)
+    init {
+        require(maxSize > 0) {
+            "maxSize must be > 0"
+        }
+        require(concurrencyLevel > 0) {
+            "concurrencyLevel must be > 0"
+        }
+        val segmentCount = minOf(concurrencyLevel, maxSize)
+        segments = Array(segmentCount) { index ->
+            // Distribute the remainder so that the segment sizes sum to maxSize
+            Segment(maxSize / segmentCount + if (index < maxSize % segmentCount) 1 else 0)
         }
     }
 
+    override fun get(id: String): PersistedDocument? {
+        return segment(id).get(id)
+    }
+
     override fun put(id: String, persistedDocument: PersistedDocument) {
-        return lock.withLock {
-            lruCache.set(id, persistedDocument)
+        segment(id).put(id, persistedDocument)
+    }
+
+    private fun segment(id: String): Segment {
+        return segments[(id.hashCode() and Int.MAX_VALUE) % segments.size]
+    }
+
+    private class Segment(maxSize: Int) {
+        private val lock = reentrantLock()
+        private val lruCache = LruCache<String, PersistedDocument>(maxSize)
+
+        fun get(id: String): PersistedDocument? {
+            return lock.withLock {
+                lruCache.get(id)
+            }
+        }
+
+        fun put(id: String, persistedDocument: PersistedDocument) {
+            lock.withLock {
+                lruCache.set(id, persistedDocument)
+            }
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,170 @@
+package com.apollographql.apollo.execution
+
+import com.apollographql.apollo.api.Error
+import com.apollographql.apollo.api.json.JsonWriter
+import com.apollographql.apollo.api.json.writeAny
+import com.apollographql.apollo.api.json.writeArray
+import com.apollographql.apollo.api.json.writeObject
+
+/**
+ * A payload of an incremental delivery response in the `v0.2` format, as returned by
+ * [ExecutableSchema.executeIncrementally].
+ *
+ * The first payload is an [InitialIncrementalPayload], the next ones are [SubsequentIncrementalPayload].
+ */
+sealed interface IncrementalPayload {
+  /**
+   * The `@defer` fragments and `@stream` fields whose results are delivered in subsequent payloads.
+   */
+  val pending: List<PendingResult>
+
+  /**
+   * Whether more payloads are coming.
+   */
+  val hasNext: Boolean
+
+  fun serialize(jsonWriter: JsonWriter)
+}
+
+class InitialIncrementalPayload internal constructor(
+    val response: GraphQLResponse,
+    override val pending: List<PendingResult>,
+    override val hasNext: Boolean,
+) : IncrementalPayload {
+  override fun serialize(jsonWriter: JsonWriter) {
+    jsonWriter.writeObject {
+      if (!response.errors.isNullOrEmpty()) {
+        name("errors")
+        writeArray {
+          response.errors.forEach {
+            writeError(it)
+          }
+        }
+      }
+      name("data")
+      writeAny(response.data)
+      if (response.extensions != null) {
+        name("extensions")
+        writeAny(response.extensions)
+      }
+      if (pending.isNotEmpty()) {
+        writePending(pending)
+      }
+      name("hasNext")
+      value(hasNext)
+    }
+    jsonWriter.flush()
+  }
+}
+
+class SubsequentIncrementalPayload internal constructor(
+    override val pending: List<PendingResult>,
+    val incremental: List<IncrementalResult>,
+    val completed: List<CompletedResult>,
+    override val hasNext: Boolean,
+) : IncrementalPayload {
+  override fun serialize(jsonWriter: JsonWriter) {
+    jsonWriter.writeObject {
+      if (pending.isNotEmpty()) {
+        writePending(pending)
+      }
+      if (incremental.isNotEmpty()) {
+        name("incremental")
+        writeArray {
+          incremental.forEach {
+            writeObject {
+              name("id")
+              value(it.id)
+              if (it.items != null) {
+                name("items")
+                writeAny(it.items)
+              } else {
+                name("data")
+                writeAny(it.data)
+              }
+              writeErrors(it.errors)
+            }
+          }
+        }
+      }
+      if (completed.isNotEmpty()) {
+        name("completed")
+        writeArray {
+          completed.forEach {
+            writeObject {
+              name("id")
+              value(it.id)
+              writeErrors(it.errors)
+            }
+          }
+        }
+      }
+      name("hasNext")
+      value(hasNext)
+    }
+    jsonWriter.flush()
+  }
+}
+
+/**
+ * A `@defer` fragment or `@stream` field announced in a payload.
+ *
+ * @property path the path of the object containing the fragment or the path of the list.
+ */
+class PendingResult internal constructor(
+    val id: String,
+    val path: List<Any>,
+    val label: String?,
+)
+
+/**
+ * The data of a `@defer` fragment or some [items] of a `@stream` field.
+ *
+ * @property errors if non-null, errors must contain at least 1 error
+ */
+class IncrementalResult internal constructor(
+    val id: String,
+    val data: Map<String, Any?>?,
+    val items: List<Any?>?,
+    val errors: List<Error>?,
+)
+
+/**
+ * A `@defer` fragment or `@stream` field that is done.
+ *
+ * @property errors the error that nulled the fragment or stopped the stream if any.
+ */
+class CompletedResult internal constructor(
+    val id: String,
+    val errors: List<Error>?,
+)
+
+private fun JsonWriter.writePending(pending: List<PendingResult>) {
+  name("pending")
+  writeArray {
+    pending.forEach {
+      writeObject {
+        name("id")
+        value(it.id)
+        name("path")
+        writeAny(it.path)
+        if (it.label != null) {
+          name("label")
+          value(it.label)
+        }
+      }
+    }
+  }
+}
+
+private fun JsonWriter.writeErrors(errors: List<Error>?) {
+  if (errors.isNullOrEmpty()) {
+    return
+  }
+  name("errors")
+  writeArray {
+    errors.forEach {
+      writeError(it)
+    }
+  }
+}
@@ -2,12 +2,30 @@ package com.apollographql.apollo.execution
 
 import com.apollographql.apollo.ast.GQLDocument
 import com.apollographql.apollo.ast.Issue
+import com.apollographql.apollo.ast.Schema
+import com.apollographql.apollo.execution.internal.ExecutionPlans
+import kotlinx.atomicfu.locks.reentrantLock
+import kotlinx.atomicfu.locks.withLock
 
 sealed interface PersistedDocument
 
 class ValidPersistedDocument(
     val document: GQLDocument
-): PersistedDocument
+): PersistedDocument {
+    private val lock = reentrantLock()
+    private var executionPlans: ExecutionPlans? = null
+
+    /**
+     * Returns the execution plans of this document. They are cached with the document in the [PersistedDocumentCache].
+     */
+    internal fun executionPlans(schema: Schema): ExecutionPlans {
+        return lock.withLock {
+            executionPlans?.takeIf { it.schema === schema } ?: ExecutionPlans(schema, document).also {
+                executionPlans = it
+            }
+        }
+    }
+}
 
 class ErrorPersistedDocument(
     val issues: List<Issue>
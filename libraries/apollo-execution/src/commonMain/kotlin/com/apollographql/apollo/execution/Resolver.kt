@@ -101,4 +101,18 @@ class ResolveInfo internal constructor(
   fun coordinates(): String {
     return "$parentType.$fieldName"
   }
+
+  /**
+   * Returns the [DataLoader] for the [BatchLoader] registered with [name]. The same [DataLoader] is returned for
+   * all the fields of an execution.
+   *
+   * It is the caller responsibility to use type parameters matching the registered [BatchLoader].
+   *
+   * @throws IllegalStateException if no [BatchLoader] is registered with [name].
+   */
+  fun <K, V> dataLoader(name: String): DataLoader<K, V> {
+    val dataLoaders = executionContext[DataLoaders] ?: error("No BatchLoader named '$name'")
+    @Suppress("UNCHECKED_CAST")
+    return dataLoaders.get(name) as DataLoader<K, V>
+  }
 }
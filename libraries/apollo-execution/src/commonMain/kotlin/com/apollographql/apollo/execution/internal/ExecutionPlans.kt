@@ -0,0 +1,159 @@
+package com.apollographql.apollo.execution.internal
+
+import com.apollographql.apollo.ast.GQLDirective
+import com.apollographql.apollo.ast.GQLDocument
+import com.apollographql.apollo.ast.GQLField
+import com.apollographql.apollo.ast.GQLFragmentDefinition
+import com.apollographql.apollo.ast.GQLFragmentSpread
+import com.apollographql.apollo.ast.GQLListValue
+import com.apollographql.apollo.ast.GQLNode
+import com.apollographql.apollo.ast.GQLObjectValue
+import com.apollographql.apollo.ast.GQLSelection
+import com.apollographql.apollo.ast.GQLValue
+import com.apollographql.apollo.ast.GQLVariableValue
+import com.apollographql.apollo.ast.Schema
+import com.apollographql.apollo.execution.InternalValue
+import kotlinx.atomicfu.locks.reentrantLock
+import kotlinx.atomicfu.locks.withLock
+
+/**
+ * The execution plans of a validated document: the result of `CollectFields()` for each object type, selection set
+ * and values of the variables used by `@skip`, `@include` and `@defer`.
+ *
+ * Plans are built once and reused for every object value of every request that uses the same document. They are
+ * only valid for the [schema] they were built with.
+ */
+internal class ExecutionPlans(val schema: Schema, document: GQLDocument) {
+  private val lock = reentrantLock()
+
+  /**
+   * The variables used by `@skip`, `@include` and `@defer`. Their values are part of the key of a plan.
+   */
+  private val conditionVariables: List<String> = mutableSetOf<String>().apply {
+    document.collectConditionVariables(this)
+  }.toList()
+
+  /**
+   * The number of combinations of condition values is not bounded, keep only the most recent ones.
+   */
+  private val plans = LruCache<List<Any?>, MutableMap<PlanKey, SelectionSetPlan>>(MAX_CONDITION_VALUES)
+
+  fun conditionValues(variableValues: Map<String, InternalValue>): List<Any?> {
+    return conditionVariables.map { variableValues.get(it) }
+  }
+
+  fun getOrPut(
+      conditionValues: List<Any?>,
+      incremental: Boolean,
+      objectType: String,
+      selections: List<GQLSelection>,
+      spread: GQLFragmentSpread?,
+      build: () -> SelectionSetPlan,
+  ): SelectionSetPlan {
+    val key = PlanKey(incremental, objectType, selections, spread)
+    lock.withLock {
+      plans.get(conditionValues)?.get(key)
+    }?.let {
+      return it
+    }
+
+    // Build outside the lock. Concurrent builds of the same plan return equivalent plans.
+    val plan = build()
+    lock.withLock {
+      val plansForValues = plans.get(conditionValues) ?: mutableMapOf<PlanKey, SelectionSetPlan>().also {
+        plans.set(conditionValues, it)
+      }
+      plansForValues.put(key, plan)
+    }
+    return plan
+  }
+
+  /**
+   * [selections] is compared by identity of its elements because [GQLSelection] doesn't override equals.
+   *
+   * @param incremental whether `@defer` is applied. Other executions include the deferred fragments inline.
+   * @param spread the fragment spread that contains a deferred part of a named fragment, compared by identity. The same
+   * selections spread with different arguments are collected with different variables.
+   */
+  private data class PlanKey(
+      val incremental: Boolean,
+      val objectType: String,
+      val selections: List<GQLSelection>,
+      val spread: GQLFragmentSpread?,
+  )
+
+  companion object {
+    private const val MAX_CONDITION_VALUES = 32
+  }
+}
+
+/**
+ * The grouped field set of a selection set.
+ *
+ * @param deferredFragments the `@defer` fragments of the selection set. Their fields are not in [fieldPlans].
+ */
+internal class SelectionSetPlan(
+    val fieldPlans: Map<String, FieldPlan>,
+    val deferredFragments: List<DeferredFragment>,
+) {
+  /**
+   * The grouped field set if none of the fields use variables in their arguments, null otherwise.
+   */
+  val collectedResults: Map<String, CollectedResult>? = run {
+    val results = mutableMapOf<String, CollectedResult>()
+    fieldPlans.forEach { (responseName, fieldPlan) ->
+      results.put(responseName, fieldPlan.collectedResult ?: return@run null)
+    }
+    results
+  }
+}
+
+/**
+ * The fields merged under the same response name.
+ *
+ * @param fragmentScope the fragment spread that contains the first field if it has variables.
+ * @param collectedResult the coerced arguments of the first field if they don't use variables.
+ */
+internal class FieldPlan(
+    val fields: List<GQLField>,
+    val fragmentScope: FragmentScope?,
+    val collectedResult: CollectedResult?,
+)
+
+/**
+ * @param fragmentScope the fragment spread that contains [selections] if any. The fields of [selections] are
+ * collected with its variables.
+ */
+internal class DeferredFragment(
+    val label: String?,
+    val selections: List<GQLSelection>,
+    val fragmentScope: FragmentScope?,
+)
+
+internal class FragmentScope(
+    val definition: GQLFragmentDefinition,
+    val spread: GQLFragmentSpread,
+)
+
+internal fun GQLValue.usesVariables(): Boolean {
+  return when (this) {
+    is GQLVariableValue -> true
+    is GQLListValue -> values.any { it.usesVariables() }
+    is GQLObjectValue -> fields.any { it.value.usesVariables() }
+    else -> false
+  }
+}
+
+private fun GQLNode.collectConditionVariables(variables: MutableSet<String>) {
+  if (this is GQLDirective && (name == "skip" || name == "include" || name == "defer")) {
+    arguments.forEach {
+      val value = it.value
+      if (value is GQLVariableValue) {
+        variables.add(value.name)
+      }
+    }
+  }
+  children.forEach {
+    it.collectConditionVariables(variables)
+  }
+}
@@ -0,0 +1,302 @@
+package com.apollographql.apollo.execution.internal
+
+import com.apollographql.apollo.api.Error
+import com.apollographql.apollo.execution.CompletedResult
+import com.apollographql.apollo.execution.GraphQLResponse
+import com.apollographql.apollo.execution.IncrementalPayload
+import com.apollographql.apollo.execution.IncrementalResult
+import com.apollographql.apollo.execution.InitialIncrementalPayload
+import com.apollographql.apollo.execution.PendingResult
+import com.apollographql.apollo.execution.SubsequentIncrementalPayload
+import kotlinx.atomicfu.locks.reentrantLock
+import kotlinx.atomicfu.locks.withLock
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.CoroutineStart
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.cancelChildren
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.currentCoroutineContext
+import kotlinx.coroutines.launch
+import kotlin.coroutines.AbstractCoroutineContextElement
+import kotlin.coroutines.CoroutineContext
+
+/**
+ * A `@defer` fragment or a `@stream` field executing in the background.
+ *
+ * [IncrementalRecord] is also the [CoroutineContext] element of its execution so that the records started during
+ * that execution become its children. The payloads of a record contain the paths of its children.
+ *
+ * @param path the path of the object containing the fragment or the path of the list.
+ */
+internal class IncrementalRecord(
+    val path: List<Any>,
+    val label: String?,
+) : AbstractCoroutineContextElement(Key) {
+  /**
+   * Set before the record is added to its parent.
+   */
+  lateinit var job: Job
+
+  /**
+   * Guarded by [IncrementalExecution.lock]
+   */
+  val children = mutableListOf<IncrementalRecord>()
+
+  /*
+   * Only accessed from IncrementalExecution.emitPayloads()
+   */
+  var state = State.New
+  var id: String? = null
+  val bufferedEvents = mutableListOf<IncrementalEvent>()
+
+  enum class State {
+    /**
+     * The payload that contains [path] is not delivered yet.
+     */
+    New,
+    Announced,
+    Completed,
+
+    /**
+     * [path] was nulled or the parent was discarded, the record is never delivered.
+     */
+    Discarded,
+  }
+
+  companion object Key : CoroutineContext.Key<IncrementalRecord>
+}
+
+internal sealed interface IncrementalEvent {
+  val record: IncrementalRecord
+}
+
+/**
+ * @param value the data of a `@defer` fragment or the items of a `@stream` field.
+ * @param index the index of the first item for a `@stream` field, null for a `@defer` fragment.
+ */
+internal class IncrementalDelivery(
+    override val record: IncrementalRecord,
+    val value: Any?,
+    val index: Int?,
+    val errors: List<Error>,
+) : IncrementalEvent {
+  /**
+   * Whether the object or list at [path] is non-null in this delivery.
+   */
+  fun contains(path: List<Any>): Boolean {
+    if (path.size < record.path.size || path.subList(0, record.path.size) != record.path) {
+      return false
+    }
+    val relativePath = path.subList(record.path.size, path.size)
+    return if (index == null) {
+      value.containsPath(relativePath)
+    } else {
+      if (relativePath.isEmpty()) {
+        return false
+      }
+      val itemIndex = relativePath.first() as Int - index
+      value.containsPath(listOf(itemIndex) + relativePath.drop(1))
+    }
+  }
+}
+
+/**
+ * @param errors the error that nulled the fragment or stopped the stream if any.
+ */
+internal class IncrementalCompletion(
+    override val record: IncrementalRecord,
+    val errors: List<Error>?,
+) : IncrementalEvent
+
+/**
+ * Coordinates the records of an incremental execution.
+ *
+ * Records start executing as soon as they are found but are only announced in `pending` once the payload that
+ * contains their path is delivered. A record whose path is nulled is never announced and is cancelled.
+ *
+ * @param scope the scope where the records are executed. It outlives the execution of the initial payload.
+ */
+internal class IncrementalExecution(private val scope: CoroutineScope) {
+  private val lock = reentrantLock()
+  private val events = Channel<IncrementalEvent>(Channel.UNLIMITED)
+
+  /**
+   * Guarded by [lock]
+   */
+  private val rootRecords = mutableListOf<IncrementalRecord>()
+
+  private var nextId = 0
+
+  /**
+   * The number of records announced and not completed yet.
+   */
+  private var outstanding = 0
+
+  /**
+   * Starts executing [block] in the background as a new record.
+   *
+   * The new record is a child of the record being executed if any. The records started from [block] are children of
+   * the new record.
+   */
+  suspend fun launch(
+      path: List<Any>,
+      label: String?,
+      block: suspend CoroutineScope.(IncrementalRecord) -> Unit,
+  ) {
+    val parent = currentCoroutineContext()[IncrementalRecord]
+    val record = IncrementalRecord(path, label)
+    // Set the job before the record is visible from emitPayloads(), which may discard it
+    record.job = scope.launch(record, start = CoroutineStart.LAZY) {
+      block(this, record)
+    }
+    lock.withLock {
+      (parent?.children ?: rootRecords).add(record)
+    }
+    record.job.start()
+  }
+
+  fun deliver(record: IncrementalRecord, value: Any?, index: Int?, errors: List<Error>) {
+    events.trySend(IncrementalDelivery(record, value, index, errors))
+  }
+
+  fun complete(record: IncrementalRecord, errors: List<Error>?) {
+    events.trySend(IncrementalCompletion(record, errors))
+  }
+
+  /**
+   * Emits the initial payload and a subsequent payload for each batch of events until all the announced records are
+   * completed.
+   */
+  suspend fun emitPayloads(initial: GraphQLResponse, emit: suspend (IncrementalPayload) -> Unit) {
+    val payload = PayloadBuilder()
+    val rootRecords = lock.withLock { rootRecords.toList() }
+    rootRecords.forEach {
+      if (initial.data.containsPath(it.path)) {
+        announce(it, payload)
+      } else {
+        discard(it)
+      }
+    }
+    emit(InitialIncrementalPayload(initial, payload.pending.toList(), outstanding > 0))
+
+    while (outstanding > 0) {
+      payload.clear()
+      var event: IncrementalEvent? = events.receive()
+      while (event != null) {
+        handle(event, payload)
+        event = events.tryReceive().getOrNull()
+      }
+      emit(
+          SubsequentIncrementalPayload(
+              payload.pending.toList(),
+              payload.incremental.toList(),
+              payload.completed.toList(),
+              outstanding > 0
+          )
+      )
+    }
+
+    // Records below discarded records may still be running
+    scope.coroutineContext.cancelChildren()
+  }
+
+  private fun handle(event: IncrementalEvent, payload: PayloadBuilder) {
+    val record = event.record
+    when (record.state) {
+      IncrementalRecord.State.New -> record.bufferedEvents.add(event)
+      IncrementalRecord.State.Announced -> process(event, payload)
+      IncrementalRecord.State.Completed,
+      IncrementalRecord.State.Discarded,
+        -> Unit
+    }
+  }
+
+  private fun process(event: IncrementalEvent, payload: PayloadBuilder) {
+    val record = event.record
+    val id = record.id!!
+    when (event) {
+      is IncrementalDelivery -> {
+        @Suppress("UNCHECKED_CAST")
+        payload.incremental.add(
+            IncrementalResult(
+                id = id,
+                data = if (event.index == null) event.value as Map<String, Any?> else null,
+                items = if (event.index != null) event.value as List<Any?> else null,
+                errors = event.errors.ifEmpty { null }
+            )
+        )
+        children(record).forEach {
+          if (it.state == IncrementalRecord.State.New && event.contains(it.path)) {
+            announce(it, payload)
+          }
+        }
+      }
+
+      is IncrementalCompletion -> {
+        payload.completed.add(CompletedResult(id, event.errors))
+        record.state = IncrementalRecord.State.Completed
+        outstanding--
+        children(record).forEach {
+          if (it.state == IncrementalRecord.State.New) {
+            discard(it)
+          }
+        }
+      }
+    }
+  }
+
+  private fun announce(record: IncrementalRecord, payload: PayloadBuilder) {
+    val id = nextId.toString()
+    nextId++
+    record.id = id
+    record.state = IncrementalRecord.State.Announced
+    outstanding++
+    payload.pending.add(PendingResult(id, record.path, record.label))
+
+    // The record may have completed before its parent
+    record.bufferedEvents.forEach {
+      process(it, payload)
+    }
+    record.bufferedEvents.clear()
+  }
+
+  private fun discard(record: IncrementalRecord) {
+    record.state = IncrementalRecord.State.Discarded
+    record.bufferedEvents.clear()
+    record.job.cancel()
+    children(record).forEach {
+      discard(it)
+    }
+  }
+
+  private fun children(record: IncrementalRecord): List<IncrementalRecord> {
+    return lock.withLock { record.children.toList() }
+  }
+
+  private class PayloadBuilder {
+    val pending = mutableListOf<PendingResult>()
+    val incremental = mutableListOf<IncrementalResult>()
+    val completed = mutableListOf<CompletedResult>()
+
+    fun clear() {
+      pending.clear()
+      incremental.clear()
+      completed.clear()
+    }
+  }
+}
+
+/**
+ * Whether there is a non-null value at [path] in this value.
+ */
+private fun Any?.containsPath(path: List<Any>): Boolean {
+  var node = this
+  path.forEach { segment ->
+    node = when (segment) {
+      is String -> (node as? Map<*, *>)?.get(segment)
+      is Int -> (node as? List<*>)?.getOrNull(segment)
+      else -> null
+    } ?: return false
+  }
+  return node != null
+}
@@ -3,6 +3,7 @@ package com.apollographql.apollo.execution.internal
 import com.apollographql.apollo.api.Error
 import com.apollographql.apollo.api.ExecutionContext
 import com.apollographql.apollo.api.OnError
+import com.apollographql.apollo.api.json.JsonWriter
 import com.apollographql.apollo.ast.GQLBooleanValue
 import com.apollographql.apollo.ast.GQLDirective
 import com.apollographql.apollo.ast.GQLEnumTypeDefinition
@@ -11,6 +12,7 @@ import com.apollographql.apollo.ast.GQLFragmentDefinition
 import com.apollographql.apollo.ast.GQLFragmentSpread
 import com.apollographql.apollo.ast.GQLInlineFragment
 import com.apollographql.apollo.ast.GQLInputObjectTypeDefinition
+import com.apollographql.apollo.ast.GQLIntValue
 import com.apollographql.apollo.ast.GQLInterfaceTypeDefinition
 import com.apollographql.apollo.ast.GQLListType
 import com.apollographql.apollo.ast.GQLNamedType
@@ -19,6 +21,7 @@ import com.apollographql.apollo.ast.GQLObjectTypeDefinition
 import com.apollographql.apollo.ast.GQLOperationDefinition
 import com.apollographql.apollo.ast.GQLScalarTypeDefinition
 import com.apollographql.apollo.ast.GQLSelection
+import com.apollographql.apollo.ast.GQLStringValue
 import com.apollographql.apollo.ast.GQLType
 import com.apollographql.apollo.ast.GQLUnionTypeDefinition
 import com.apollographql.apollo.ast.GQLVariableValue
@@ -30,6 +33,7 @@ import com.apollographql.apollo.execution.ExternalValue
 import com.apollographql.apollo.execution.ExternalValueOrDeferred
 import com.apollographql.apollo.execution.FieldCallback
 import com.apollographql.apollo.execution.GraphQLResponse
+import com.apollographql.apollo.execution.IncrementalPayload
 import com.apollographql.apollo.execution.Instrumentation
 import com.apollographql.apollo.execution.InternalValue
 import com.apollographql.apollo.execution.OperationCallback
@@ -52,9 +56,11 @@ import kotlinx.coroutines.CoroutineStart
 import kotlinx.coroutines.Deferred
 import kotlinx.coroutines.ExperimentalCoroutinesApi
 import kotlinx.coroutines.async
+import kotlinx.coroutines.cancelChildren
 import kotlinx.coroutines.coroutineScope
 import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.flow.catch
+import kotlinx.coroutines.flow.channelFlow
 import kotlinx.coroutines.flow.flatMapConcat
 import kotlinx.coroutines.flow.flow
 import kotlinx.coroutines.flow.flowOf
@@ -87,14 +93,54 @@ internal class OperationContext(
     private val variableValues: Map<String, InternalValue>,
     private val executionContext: ExecutionContext,
     private val onError: OnError,
+    private val executionPlans: ExecutionPlans,
 ) {
+  private val conditionValues = executionPlans.conditionValues(variableValues)
+
+  /**
+   * Whether objects and lists are completed as [PendingObject] and [PendingList] for [ResponseStreamer].
+   */
+  private var streaming = false
+
+  /**
+   * Set when executing with `@defer` and `@stream` support.
+   */
+  private var incremental: IncrementalExecution? = null
+
   /**
    * Executes the given operation and awaits its result.
-   *
-   * Note: a future version may add an "executeAsync" function so we can start sending some data before the whole
-   * map is computed.
    */
   suspend fun execute(): GraphQLResponse {
+    return checkNotNull(executeOperation(null))
+  }
+
+  /**
+   * Executes the given operation and writes its result to [jsonWriter] in response order as soon as the fields are
+   * completed.
+   */
+  suspend fun execute(jsonWriter: JsonWriter) {
+    executeOperation(jsonWriter)?.serialize(jsonWriter)
+  }
+
+  /**
+   * Executes the given operation with `@defer` and `@stream` support.
+   *
+   * The deferred fragments and streamed items execute concurrently with the initial payload and are emitted as soon
+   * as they are completed.
+   */
+  fun executeIncrementally(): Flow<IncrementalPayload> = channelFlow {
+    val incremental = IncrementalExecution(this)
+    this@OperationContext.incremental = incremental
+    val response = checkNotNull(executeOperation(null))
+    incremental.emitPayloads(response) {
+      send(it)
+    }
+  }
+
+  /**
+   * @return the response or null if it was streamed to [jsonWriter].
+   */
+  private suspend fun executeOperation(jsonWriter: JsonWriter?): GraphQLResponse? {
     var instrumentationException: Exception? = null
     val operationCallbacks = mutableListOf<OperationCallback>()
     val operationInfo = OperationInfo(
@@ -140,22 +186,33 @@ internal class OperationContext(
         return graphqlErrorResponse("Unknown operation type '${operation.operationType}")
       }
     }
-    val typeDefinition = schema.typeDefinition(rootTypename)
+    val typeDefinition = schema.typeDefinition(rootTypename) as GQLObjectTypeDefinition
+
+    val plan = plan(typeDefinition.name, operation.selections, variableValues)
+    val groupedFieldSet = plan.collectFields(typeDefinition.name, variableValues)
+    executeDeferredFragments(plan.deferredFragments, typeDefinition, rootObject, emptyList())
 
-    val groupedFieldSet = collectFields(typeDefinition.name, operation.selections, variableValues)
+    // Operation callbacks may modify the response, they need the whole response before it is written
+    streaming = jsonWriter != null && operationCallbacks.isEmpty()
 
     return coroutineScope {
-      async(start = CoroutineStart.UNDISPATCHED) {
+      val data = async(start = CoroutineStart.UNDISPATCHED) {
         executeGroupedFieldSet(
             this,
             groupedFieldSet,
-            typeDefinition as GQLObjectTypeDefinition,
+            typeDefinition,
             rootObject,
             variableValues,
             emptyList(),
             operation.operationType == "mutation"
         )
-      }.toGraphQLResponse(callbacks = operationCallbacks)
+      }
+      if (jsonWriter != null && streaming) {
+        ResponseStreamer(jsonWriter, onError).write(data)
+        null
+      } else {
+        data.toGraphQLResponse(callbacks = operationCallbacks)
+      }
     }
   }
 
@@ -435,11 +492,29 @@ internal class OperationContext(
             .build()
       }
 
-      val deferred = result.mapIndexed { index, item ->
+      // @stream applies to the outer list only
+      val stream = if (incremental != null && path.last() is String) fields.first().directives.streamArguments(variableValues) else null
+      if (stream != null && stream.initialCount < 0) {
+        return Error.Builder("initialCount must be >= 0")
+            .path(path)
+            .build()
+      }
+      val initialItems = if (stream != null && stream.initialCount < result.size) {
+        executeStream(stream, fieldType.type, fields, result, path)
+        result.subList(0, stream.initialCount)
+      } else {
+        result
+      }
+
+      val deferred = initialItems.mapIndexed { index, item ->
         scope.async(start = CoroutineStart.UNDISPATCHED) {
           completeValue(scope, fieldType.type, fields, item, path + index)
         }
       }
+      if (streaming) {
+        // Null propagation is done by ResponseStreamer
+        return PendingList(deferred.toTypedArray(), fieldType.type !is GQLNonNullType)
+      }
       val list = deferred.map {
         val completed = it.await()
         if (completed is Error) {
@@ -475,12 +550,14 @@ internal class OperationContext(
           typeResolver.resolveType(result, ResolveTypeInfo(typeDefinition.name, schema))
         }
 
-        val selections = fields.flatMap { it.selections }
-        val groupedFieldSet = collectFields(typename, selections, variableValues)
+        val selections = if (fields.size == 1) fields.single().selections else fields.flatMap { it.selections }
+        val objectTypeDefinition = schema.typeDefinition(typename) as GQLObjectTypeDefinition
+        val plan = plan(typename, selections, variableValues)
+        executeDeferredFragments(plan.deferredFragments, objectTypeDefinition, result, path)
         executeGroupedFieldSet(
             scope = scope,
-            groupedFieldSet = groupedFieldSet,
-            typeDefinition = schema.typeDefinition(typename) as GQLObjectTypeDefinition,
+            groupedFieldSet = plan.collectFields(typename, variableValues),
+            typeDefinition = objectTypeDefinition,
             objectValue = result,
             variableValues = variableValues,
             path = path,
@@ -536,12 +613,6 @@ internal class OperationContext(
     return resolver.resolve(resolveInfo)
   }
 
-  private class Entry(
-      val key: String,
-      val value: Deferred<ExternalValue>,
-      val nullable: Boolean,
-  )
-
   private suspend fun executeGroupedFieldSet(
       scope: CoroutineScope,
       groupedFieldSet: Map<String, CollectedResult>,
@@ -562,7 +633,12 @@ internal class OperationContext(
       if (serial) {
         deferred.await()
       }
-      Entry(entry.key, deferred, fieldDefinition.type !is GQLNonNullType)
+      PendingField(entry.key, deferred, fieldDefinition.type !is GQLNonNullType)
+    }
+
+    if (streaming) {
+      // Null propagation is done by ResponseStreamer
+      return PendingObject(entries)
     }
 
     val result = mutableMapOf<String, ExternalValue>()
@@ -575,7 +651,7 @@ internal class OperationContext(
         }
       }
 
-      result.put(it.key, it.value)
+      result.put(it.name, it.value)
     }
 
     return result
@@ -597,6 +673,49 @@ internal class OperationContext(
     }
   }
 
+  /**
+   * Returns the arguments of `@defer` if it applies, null else. `@defer` is ignored when not executing incrementally.
+   */
+  private fun List<GQLDirective>.deferArguments(coercedVariables: Map<String, InternalValue>): DeferArguments? {
+    if (incremental == null) {
+      return null
+    }
+    val directive = firstOrNull { it.name == "defer" } ?: return null
+    if (!directive.ifArgumentValue(coercedVariables)) {
+      return null
+    }
+    return DeferArguments((directive.arguments.firstOrNull { it.name == "label" }?.value as? GQLStringValue)?.value)
+  }
+
+  /**
+   * Returns the arguments of `@stream` if it applies, null else. initialCount is not validated.
+   */
+  private fun List<GQLDirective>.streamArguments(coercedVariables: Map<String, InternalValue>): StreamArguments? {
+    val directive = firstOrNull { it.name == "stream" } ?: return null
+    if (!directive.ifArgumentValue(coercedVariables)) {
+      return null
+    }
+    val initialCount = when (val value = directive.arguments.firstOrNull { it.name == "initialCount" }?.value) {
+      null -> 0
+      is GQLIntValue -> value.value.toInt()
+      is GQLVariableValue -> coercedVariables.get(value.name) as Int? ?: 0
+      else -> error("Cannot get argument value for directive '@stream'")
+    }
+    return StreamArguments((directive.arguments.firstOrNull { it.name == "label" }?.value as? GQLStringValue)?.value, initialCount)
+  }
+
+  /**
+   * The `if` argument of `@defer` and `@stream` is optional and defaults to true.
+   */
+  private fun GQLDirective.ifArgumentValue(coercedVariables: Map<String, InternalValue>): Boolean {
+    return when (val value = arguments.firstOrNull { it.name == "if" }?.value) {
+      null -> true
+      is GQLBooleanValue -> value.value
+      is GQLVariableValue -> coercedVariables.get(value.name) as Boolean? ?: true
+      else -> error("Cannot get argument value for directive '$name'")
+    }
+  }
+
   private fun List<GQLDirective>.shouldSkip(coercedVariables: Map<String, InternalValue>): Boolean {
     forEach {
       if (it.name == "skip") {
@@ -615,23 +734,172 @@ internal class OperationContext(
     return false
   }
 
+  /**
+   * Starts executing [deferredFragments] in the background. Only called when executing incrementally.
+   */
+  private suspend fun executeDeferredFragments(
+      deferredFragments: List<DeferredFragment>,
+      typeDefinition: GQLObjectTypeDefinition,
+      objectValue: ResolverValue,
+      path: List<Any>,
+  ) {
+    deferredFragments.forEach { deferredFragment ->
+      val incremental = incremental!!
+      incremental.launch(path, deferredFragment.label) { record ->
+        val plan = plan(typeDefinition.name, deferredFragment.selections, variableValues, deferredFragment.fragmentScope)
+        executeDeferredFragments(plan.deferredFragments, typeDefinition, objectValue, path)
+        val value = executeGroupedFieldSet(
+            scope = this,
+            groupedFieldSet = plan.collectFields(typeDefinition.name, variableValues),
+            typeDefinition = typeDefinition,
+            objectValue = objectValue,
+            variableValues = variableValues,
+            path = path,
+            serial = false,
+        )
+        val errors = mutableListOf<Error>()
+        val data = value.finalize(errors)
+        if (value is Error) {
+          // An error in a non-null position nulls the whole fragment
+          incremental.complete(record, errors)
+        } else {
+          incremental.deliver(record, data, null, errors)
+          incremental.complete(record, null)
+        }
+      }
+    }
+  }
+
+  /**
+   * Starts completing the items of [list] after [StreamArguments.initialCount] in the background. Only called when
+   * executing incrementally.
+   */
+  private suspend fun executeStream(
+      stream: StreamArguments,
+      itemType: GQLType,
+      fields: List<GQLField>,
+      list: List<*>,
+      path: List<Any>,
+  ) {
+    val incremental = incremental!!
+    incremental.launch(path, stream.label) { record ->
+      val deferred = (stream.initialCount until list.size).map { index ->
+        async(start = CoroutineStart.UNDISPATCHED) {
+          completeValue(this, itemType, fields, list.get(index), path + index)
+        }
+      }
+      deferred.forEachIndexed { offset, item ->
+        val completed = item.await()
+        if (completed is Error && onError == OnError.PROPAGATE && itemType is GQLNonNullType) {
+          // An error in a non-null position stops the stream
+          this.coroutineContext.cancelChildren()
+          incremental.complete(record, listOf(completed))
+          return@launch
+        }
+        val errors = mutableListOf<Error>()
+        val value = completed.finalize(errors)
+        incremental.deliver(record, listOf(value), stream.initialCount + offset, errors)
+      }
+      incremental.complete(record, null)
+    }
+  }
+
+  /**
+   * Returns the plan of [selections] for [objectType].
+   *
+   * The plan only depends on the variables used by `@skip`, `@include` and `@defer` and is cached in [executionPlans].
+   *
+   * @param fragmentScope the fragment spread that contains [selections] if they are a deferred part of a named fragment.
+   */
+  private fun plan(
+      objectType: String,
+      selections: List<GQLSelection>,
+      coercedVariables: Map<String, InternalValue>,
+      fragmentScope: FragmentScope? = null,
+  ): SelectionSetPlan {
+    return executionPlans.getOrPut(conditionValues, incremental != null, objectType, selections, fragmentScope?.spread) {
+      planFields(objectType, selections, coercedVariables, fragmentScope)
+    }
+  }
+
+  /**
+   * Returns the grouped field set of [selections] for [objectType].
+   *
+   * Only the arguments that use variables are coerced for each call.
+   */
   private fun collectFields(
       objectType: String,
       selections: List<GQLSelection>,
       coercedVariables: Map<String, InternalValue>,
   ): Map<String, CollectedResult> {
-    val groupedFields = mutableMapOf<String, CollectedResult>()
-    collectFields(objectType, selections, coercedVariables, emptyMap(), mutableSetOf(), groupedFields)
-    return groupedFields
+    return plan(objectType, selections, coercedVariables).collectFields(objectType, coercedVariables)
   }
 
-  private fun collectFields(
+  private fun SelectionSetPlan.collectFields(
+      objectType: String,
+      coercedVariables: Map<String, InternalValue>,
+  ): Map<String, CollectedResult> {
+    return collectedResults ?: fieldPlans.mapValues { (_, fieldPlan) ->
+      fieldPlan.collectedResult ?: collectField(objectType, fieldPlan.fields, fieldPlan.fragmentScope, coercedVariables)
+    }
+  }
+
+  private fun collectField(
+      objectType: String,
+      fields: List<GQLField>,
+      fragmentScope: FragmentScope?,
+      coercedVariables: Map<String, InternalValue>,
+  ): CollectedResult {
+    val first = fields.first()
+    val fragmentCoercedVariables = fragmentScope?.coerceVariables(coercedVariables).orEmpty()
+    val arguments = try {
+      // Fragment variables take precedence here
+      coerceArgumentValues(schema, objectType, first, coercings, coercedVariables + fragmentCoercedVariables)
+    } catch (e: Exception) {
+      return CollectedError(first, e.message ?: "Error")
+    }
+    return CollectedField(first, fields, arguments)
+  }
+
+  private fun FragmentScope.coerceVariables(coercedVariables: Map<String, InternalValue>): Map<String, InternalValue> {
+    return coerceArgumentValues(schema, definition.variableDefinitions, spread.arguments, coercings, coercedVariables)
+  }
+
+  private fun planFields(
+      objectType: String,
+      selections: List<GQLSelection>,
+      coercedVariables: Map<String, InternalValue>,
+      fragmentScope: FragmentScope?,
+  ): SelectionSetPlan {
+    val groupedFields = mutableMapOf<String, MutableList<GQLField>>()
+    val fragmentScopes = mutableMapOf<String, FragmentScope?>()
+    val deferredFragments = mutableListOf<DeferredFragment>()
+    planFields(objectType, selections, coercedVariables, fragmentScope, mutableSetOf(), groupedFields, fragmentScopes, deferredFragments)
+
+    return SelectionSetPlan(
+        groupedFields.mapValues { (responseName, fields) ->
+          val fragmentScope = fragmentScopes.get(responseName)
+          val usesVariables = fields.first().arguments.any { it.value.usesVariables() } ||
+              fragmentScope?.spread?.arguments.orEmpty().any { it.value.usesVariables() }
+          FieldPlan(
+              fields = fields,
+              fragmentScope = fragmentScope,
+              collectedResult = if (usesVariables) null else collectField(objectType, fields, fragmentScope, coercedVariables)
+          )
+        },
+        deferredFragments
+    )
+  }
+
+  private fun planFields(
       objectType: String,
       selections: List<GQLSelection>,
       coercedVariables: Map<String, InternalValue>,
-      fragmentCoercedVariables: Map<String, InternalValue>,
+      fragmentScope: FragmentScope?,
       visitedFragments: MutableSet<String>,
-      groupedFields: MutableMap<String, CollectedResult>,
+      groupedFields: MutableMap<String, MutableList<GQLField>>,
+      fragmentScopes: MutableMap<String, FragmentScope?>,
+      deferredFragments: MutableList<DeferredFragment>,
   ) {
     selections.forEach { selection ->
       if (selection.directives.shouldSkip(coercedVariables)) {
@@ -640,20 +908,12 @@ internal class OperationContext(
       when (selection) {
         is GQLField -> {
           val responseName = selection.responseName()
-          val collectedField = groupedFields.get(responseName)
-          if (collectedField == null) {
-            val arguments = try {
-              // Fragment variables take precedence here
-              coerceArgumentValues(schema, objectType, selection, coercings, coercedVariables + fragmentCoercedVariables)
-            } catch (e: Exception) {
-              groupedFields.put(responseName, CollectedError(selection, e.message ?: "Error"))
-              return@forEach
-            }
-            groupedFields.put(responseName,
-                CollectedField(selection, arguments)
-            )
-          } else if (collectedField is CollectedField) {
-            collectedField.fields.add(selection)
+          val fields = groupedFields.get(responseName)
+          if (fields == null) {
+            groupedFields.put(responseName, mutableListOf(selection))
+            fragmentScopes.put(responseName, fragmentScope)
+          } else {
+            fields.add(selection)
           }
         }
 
@@ -661,20 +921,34 @@ internal class OperationContext(
           if (visitedFragments.contains(selection.name)) {
             return@forEach
           }
-          visitedFragments.add(selection.name)
 
           val fragmentDefinition = fragments.get(selection.name)!!
+          if (!schema.possibleTypes(fragmentDefinition.typeCondition.name).contains(objectType)) {
+            return@forEach
+          }
 
-          if (schema.possibleTypes(fragmentDefinition.typeCondition.name).contains(objectType)) {
-            val fragmentCoercedVariables = coerceArgumentValues(schema, fragmentDefinition.variableDefinitions, selection.arguments, coercings, coercedVariables)
-            collectFields(objectType, fragmentDefinition.selections, coercedVariables, fragmentCoercedVariables, visitedFragments, groupedFields)
+          val spreadScope = FragmentScope(fragmentDefinition, selection)
+          val defer = selection.directives.deferArguments(coercedVariables)
+          if (defer != null) {
+            deferredFragments.add(DeferredFragment(defer.label, fragmentDefinition.selections, spreadScope))
+          } else {
+            visitedFragments.add(selection.name)
+            planFields(objectType, fragmentDefinition.selections, coercedVariables, spreadScope, visitedFragments, groupedFields, fragmentScopes, deferredFragments)
           }
         }
 
         is GQLInlineFragment -> {
           val typeCondition = selection.typeCondition?.name
-          if (typeCondition == null || schema.possibleTypes(typeCondition).contains(objectType)) {
-            collectFields(objectType, selection.selections, coercedVariables, fragmentCoercedVariables, visitedFragments, groupedFields)
+          if (typeCondition != null && !schema.possibleTypes(typeCondition).contains(objectType)) {
+            return@forEach
+          }
+
+          val defer = selection.directives.deferArguments(coercedVariables)
+          if (defer != null) {
+            // The deferred fields are collected with the variables of the enclosing fragment
+            deferredFragments.add(DeferredFragment(defer.label, selection.selections, fragmentScope))
+          } else {
+            planFields(objectType, selection.selections, coercedVariables, fragmentScope, visitedFragments, groupedFields, fragmentScopes, deferredFragments)
           }
         }
       }
@@ -689,16 +963,15 @@ private val GQLSelection.directives: List<GQLDirective>
     is GQLInlineFragment -> directives
   }
 
+private class DeferArguments(val label: String?)
+
+private class StreamArguments(val label: String?, val initialCount: Int)
+
 internal class CollectedField(
     override val first: GQLField,
+    val fields: List<GQLField>,
     val coercedArguments: Map<String, InternalValue>,
-) : CollectedResult {
-  val fields = mutableListOf<GQLField>()
-
-  init {
-    fields.add(first)
-  }
-}
+) : CollectedResult
 
 internal sealed interface CollectedResult {
   val first: GQLField
@@ -0,0 +1,138 @@
+package com.apollographql.apollo.execution.internal
+
+import com.apollographql.apollo.api.Error
+import com.apollographql.apollo.api.OnError
+import com.apollographql.apollo.api.json.JsonWriter
+import com.apollographql.apollo.api.json.writeAny
+import com.apollographql.apollo.execution.ExternalValue
+import com.apollographql.apollo.execution.ExternalValueOrDeferred
+import com.apollographql.apollo.execution.writeError
+import kotlinx.coroutines.Deferred
+
+/**
+ * An object whose fields may still be executing. Only used when streaming.
+ */
+internal class PendingObject(val fields: List<PendingField>)
+
+internal class PendingField(
+    val name: String,
+    val value: Deferred<ExternalValue>,
+    val nullable: Boolean,
+)
+
+/**
+ * A list whose items may still be executing. Only used when streaming.
+ *
+ * Items are set to null once written so that they can be garbage collected.
+ */
+internal class PendingList(
+    val items: Array<Deferred<ExternalValue>?>,
+    val nullableItems: Boolean,
+)
+
+/**
+ * Writes the result of an execution in response order while the remaining fields are still executing.
+ *
+ * With [OnError.PROPAGATE], an error in a non-null position nulls its closest nullable parent. A value in a nullable
+ * position is written once all the values in non-null positions below it are completed. Values in nullable positions
+ * below it are written as they complete.
+ *
+ * The errors are only known at the end, `errors` is written after `data`.
+ */
+internal class ResponseStreamer(
+    private val jsonWriter: JsonWriter,
+    private val onError: OnError,
+) {
+  private val errors = mutableListOf<Error>()
+
+  suspend fun write(data: Deferred<ExternalValue>) {
+    jsonWriter.beginObject()
+    jsonWriter.name("data")
+    // data is always nullable
+    writeNullable(data)
+    if (errors.isNotEmpty()) {
+      jsonWriter.name("errors")
+      jsonWriter.beginArray()
+      errors.forEach {
+        jsonWriter.writeError(it)
+      }
+      jsonWriter.endArray()
+    }
+    jsonWriter.endObject()
+    jsonWriter.flush()
+  }
+
+  private suspend fun writeNullable(value: ExternalValueOrDeferred) {
+    if (onError == OnError.PROPAGATE) {
+      val error = propagatedError(value)
+      if (error != null) {
+        errors.add(error)
+        jsonWriter.nullValue()
+        return
+      }
+    }
+    writeValue(value)
+  }
+
+  /**
+   * Awaits the values in non-null positions below [value] and returns the error that propagates to [value] if any.
+   */
+  private suspend fun propagatedError(value: ExternalValueOrDeferred): Error? {
+    return when (val completed = value.awaitValue()) {
+      is Error -> completed
+      is PendingObject -> completed.fields.firstNotNullOfOrNull {
+        if (it.nullable) null else propagatedError(it.value)
+      }
+
+      is PendingList -> if (completed.nullableItems) {
+        null
+      } else {
+        completed.items.firstNotNullOfOrNull { propagatedError(it) }
+      }
+
+      else -> null
+    }
+  }
+
+  private suspend fun writeValue(value: ExternalValueOrDeferred) {
+    when (val completed = value.awaitValue()) {
+      is Error -> {
+        errors.add(completed)
+        jsonWriter.nullValue()
+      }
+
+      is PendingObject -> {
+        jsonWriter.beginObject()
+        completed.fields.forEach {
+          jsonWriter.name(it.name)
+          if (it.nullable) {
+            writeNullable(it.value)
+          } else {
+            writeValue(it.value)
+          }
+        }
+        jsonWriter.endObject()
+      }
+
+      is PendingList -> {
+        jsonWriter.beginArray()
+        completed.items.indices.forEach { index ->
+          val item = completed.items[index]
+          completed.items[index] = null
+          if (completed.nullableItems) {
+            writeNullable(item)
+          } else {
+            writeValue(item)
+          }
+        }
+        jsonWriter.endArray()
+      }
+
+      else -> jsonWriter.writeAny(completed)
+    }
+  }
+
+  private suspend fun ExternalValueOrDeferred.awaitValue(): ExternalValue {
+    return if (this is Deferred<*>) await() else this
+  }
+}
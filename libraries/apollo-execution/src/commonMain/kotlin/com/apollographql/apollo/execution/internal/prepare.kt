@@ -15,12 +15,14 @@ import com.apollographql.apollo.execution.InternalValue
 import com.apollographql.apollo.execution.PersistedDocument
 import com.apollographql.apollo.execution.PersistedDocumentCache
 import com.apollographql.apollo.execution.ValidPersistedDocument
+import okio.ByteString.Companion.encodeUtf8
 
 internal class PreparedRequest(
     val operation: GQLOperationDefinition,
     val fragments: Map<String, GQLFragmentDefinition>,
     val variables: Map<String, InternalValue>,
     val onError: OnError?,
+    val executionPlans: ExecutionPlans,
 )
 
 /**
@@ -59,7 +61,8 @@ internal fun Raise<String>.prepareRequest(
     document: GQLDocument,
     operationName: String?,
     variables: Map<String, ExternalValue>,
-    onError: OnError?
+    onError: OnError?,
+    executionPlans: ExecutionPlans,
 ): PreparedRequest {
   val operations = document.definitions.filterIsInstance<GQLOperationDefinition>()
   val operation = when {
@@ -89,15 +92,19 @@ internal fun Raise<String>.prepareRequest(
   } catch (e: Exception) {
     raise("Cannot coerce variable values: '${e.message}'")
   }
-  return PreparedRequest(operation, fragments, variableValues, onError)
+  return PreparedRequest(operation, fragments, variableValues, onError, executionPlans)
 }
 
 /**
  * Returns a [com.apollographql.apollo.execution.PersistedDocument]. If no cache is configured, a new [com.apollographql.apollo.execution.PersistedDocument] is computed for each request.
+ *
+ * @param persistedDocumentCache the cache of persisted queries, keyed by the id sent by the client.
+ * @param documentCache the cache of the other documents, keyed by the SHA256 of their text.
  */
 internal fun Raise<String>.getPersistedDocument(
     schema: Schema,
     persistedDocumentCache: PersistedDocumentCache?,
+    documentCache: PersistedDocumentCache?,
     parserOptions: ParserOptions,
     request: GraphQLRequest,
 ): PersistedDocument {
@@ -138,7 +145,16 @@ internal fun Raise<String>.getPersistedDocument(
     if (request.document == null) {
       raise("no GraphQL document found")
     }
-    persistedDocument = validateDocument(schema, request.document, parserOptions).toPersistedDocument()
+    if (documentCache == null) {
+      persistedDocument = validateDocument(schema, request.document, parserOptions).toPersistedDocument()
+    } else {
+      val id = request.document.encodeUtf8().sha256().hex()
+      persistedDocument = documentCache.get(id)
+      if (persistedDocument == null) {
+        persistedDocument = validateDocument(schema, request.document, parserOptions).toPersistedDocument()
+        documentCache.put(id, persistedDocument)
+      }
+    }
   }
 
   return persistedDocument
@@ -157,13 +173,14 @@ internal fun Raise<List<Error>>.prepareRequest(
     schema: Schema,
     coercings: Map<String, Coercing<*>>,
     persistedDocumentCache: PersistedDocumentCache?,
+    documentCache: PersistedDocumentCache?,
     parserOptions: ParserOptions,
     request: GraphQLRequest,
 ): PreparedRequest {
   val persistedDocument = withError({
     singleGraphQLError(it)
   }) {
-    getPersistedDocument(schema, persistedDocumentCache, parserOptions, request)
+    getPersistedDocument(schema, persistedDocumentCache, documentCache, parserOptions, request)
   }
 
   if (persistedDocument is ErrorPersistedDocument) {
@@ -175,7 +192,15 @@ internal fun Raise<List<Error>>.prepareRequest(
   return withError({
     singleGraphQLError(it)
   }) {
-    prepareRequest(schema, coercings, persistedDocument.document, request.operationName, request.variables, request.onError)
+    prepareRequest(
+        schema,
+        coercings,
+        persistedDocument.document,
+        request.operationName,
+        request.variables,
+        request.onError,
+        persistedDocument.executionPlans(schema)
+    )
   }
 }
 
@@ -183,8 +208,9 @@ internal fun prepareRequest(
     schema: Schema,
     coercings: Map<String, Coercing<*>>,
     persistedDocumentCache: PersistedDocumentCache?,
+    documentCache: PersistedDocumentCache?,
     parserOptions: ParserOptions,
     request: GraphQLRequest,
 ): Either<List<Error>, PreparedRequest> = either {
-  prepareRequest(schema, coercings, persistedDocumentCache, parserOptions, request)
+  prepareRequest(schema, coercings, persistedDocumentCache, documentCache, parserOptions, request)
 }
\ No newline at end of file
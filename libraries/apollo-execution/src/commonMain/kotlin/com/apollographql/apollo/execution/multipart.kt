@@ -0,0 +1,30 @@
+package com.apollographql.apollo.execution
+
+import kotlinx.coroutines.flow.Flow
+import okio.BufferedSink
+
+/**
+ * The `Content-Type` of the responses written by [writeMultipartTo].
+ */
+fun incrementalDeliveryContentType(boundary: String = "-"): String {
+  return "multipart/mixed; boundary=\"$boundary\"; incrementalSpec=v0.2"
+}
+
+/**
+ * Collects the payloads and writes them to [sink] as the body of a `multipart/mixed` response. [sink] is flushed after
+ * each payload so that the client receives it as soon as it is executed.
+ *
+ * The response must use the `Content-Type` returned by [incrementalDeliveryContentType] with the same [boundary].
+ */
+suspend fun Flow<IncrementalPayload>.writeMultipartTo(sink: BufferedSink, boundary: String = "-") {
+  collect { payload ->
+    sink.writeUtf8("--$boundary\r\n")
+    sink.writeUtf8("Content-Type: application/json; charset=utf-8\r\n")
+    sink.writeUtf8("\r\n")
+    payload.serialize(sink.jsonWriter())
+    sink.writeUtf8("\r\n")
+    sink.flush()
+  }
+  sink.writeUtf8("--$boundary--\r\n")
+  sink.flush()
+}
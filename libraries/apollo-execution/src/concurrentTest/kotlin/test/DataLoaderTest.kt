@@ -0,0 +1,101 @@
+package test
+
+import com.apollographql.apollo.api.ExecutionContext
+import com.apollographql.apollo.execution.ExecutableSchema
+import kotlinx.coroutines.runBlocking
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertNotNull
+
+class DataLoaderTest {
+  private class Order(val id: Int, val customerId: Int)
+
+  private val schema = """
+      type Query {
+        orders: [Order!]!
+      }
+      type Order {
+        id: Int!
+        customer: Customer!
+      }
+      type Customer {
+        id: Int!
+        name: String!
+      }
+  """.trimIndent()
+
+  private fun executableSchema(batches: MutableList<List<Int>>, maxBatchSize: Int = Int.MAX_VALUE): ExecutableSchema {
+    return ExecutableSchema.Builder()
+        .schema(schema)
+        .addBatchLoader<Int, Map<String, Any>>("customer", maxBatchSize) { ids ->
+          batches.add(ids)
+          ids.map { mapOf("id" to it, "name" to "customer$it") }
+        }
+        .resolver {
+          when (it.coordinates()) {
+            // 10 customers for 500 orders
+            "Query.orders" -> List(500) { Order(it, it % 10) }
+            "Order.id" -> (it.parentObject as Order).id
+            "Order.customer" -> it.dataLoader<Int, Map<String, Any>>("customer").load((it.parentObject as Order).customerId)
+            else -> (it.parentObject as Map<*, *>).get(it.fieldName)
+          }
+        }
+        .build()
+  }
+
+  @Test
+  fun keysAreBatchedAndMemoized() = runBlocking {
+    val batches = mutableListOf<List<Int>>()
+    val response = executableSchema(batches).execute("{ orders { id customer { name } } }".toGraphQLRequest(), ExecutionContext.Empty)
+
+    assertEquals(null, response.errors)
+    assertEquals(listOf((0 until 10).toList()), batches)
+    val orders = (response.data as Map<*, *>).get("orders") as List<*>
+    assertEquals(500, orders.size)
+    assertEquals(mapOf("id" to 42, "customer" to mapOf("name" to "customer2")), orders[42])
+  }
+
+  @Test
+  fun batchesAreSplitAtMaxBatchSize() = runBlocking {
+    val batches = mutableListOf<List<Int>>()
+    val response = executableSchema(batches, maxBatchSize = 4).execute("{ orders { customer { name } } }".toGraphQLRequest(), ExecutionContext.Empty)
+
+    assertEquals(null, response.errors)
+    assertEquals(listOf(listOf(0, 1, 2, 3), listOf(4, 5, 6, 7), listOf(8, 9)), batches)
+  }
+
+  @Test
+  fun eachExecutionHasItsOwnMemoization() = runBlocking {
+    val batches = mutableListOf<List<Int>>()
+    val executableSchema = executableSchema(batches)
+    repeat(2) {
+      executableSchema.execute("{ orders { customer { name } } }".toGraphQLRequest(), ExecutionContext.Empty)
+    }
+
+    assertEquals(2, batches.size)
+  }
+
+  @Test
+  fun batchLoaderErrorsAreFieldErrors() = runBlocking {
+    val batches = mutableListOf<List<Int>>()
+    val response = ExecutableSchema.Builder()
+        .schema(schema)
+        .addBatchLoader<Int, Map<String, Any>>("customer") { ids ->
+          batches.add(ids)
+          throw Exception("Cannot load customers")
+        }
+        .resolver {
+          when (it.coordinates()) {
+            "Query.orders" -> List(3) { Order(it, it) }
+            "Order.customer" -> it.dataLoader<Int, Map<String, Any>>("customer").load((it.parentObject as Order).customerId)
+            else -> null
+          }
+        }
+        .build()
+        .execute("{ orders { customer { name } } }".toGraphQLRequest(), ExecutionContext.Empty)
+
+    assertEquals(1, batches.size)
+    assertEquals(null, response.data)
+    assertNotNull(response.errors)
+  }
+}
@@ -0,0 +1,71 @@
+package test
+
+import com.apollographql.apollo.api.ExecutionContext
+import com.apollographql.apollo.ast.GQLDocument
+import com.apollographql.apollo.execution.ExecutableSchema
+import com.apollographql.apollo.execution.InMemoryPersistedDocumentCache
+import com.apollographql.apollo.execution.PersistedDocument
+import com.apollographql.apollo.execution.PersistedDocumentCache
+import com.apollographql.apollo.execution.ValidPersistedDocument
+import kotlinx.coroutines.runBlocking
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertNotNull
+import kotlin.test.assertNull
+import kotlin.test.assertSame
+
+class DocumentCacheTest {
+    private class RecordingCache : PersistedDocumentCache {
+        val delegate = InMemoryPersistedDocumentCache()
+        var hits = 0
+        var puts = 0
+
+        override fun get(id: String): PersistedDocument? {
+            return delegate.get(id)?.also { hits++ }
+        }
+
+        override fun put(id: String, persistedDocument: PersistedDocument) {
+            puts++
+            delegate.put(id, persistedDocument)
+        }
+    }
+
+    @Test
+    fun documentsAreParsedOnce() = runBlocking {
+        val documentCache = RecordingCache()
+        val executableSchema = ExecutableSchema.Builder()
+            .schema("type Query { foo: String! }")
+            .resolver { "42" }
+            .documentCache(documentCache)
+            .build()
+
+        repeat(3) {
+            val response = executableSchema.execute("{ foo }".toGraphQLRequest(), ExecutionContext.Empty)
+            assertEquals(mapOf("foo" to "42"), response.data)
+        }
+        // Invalid documents are cached too
+        repeat(2) {
+            val response = executableSchema.execute("{ bar }".toGraphQLRequest(), ExecutionContext.Empty)
+            assertNotNull(response.errors)
+        }
+
+        assertEquals(2, documentCache.puts)
+        assertEquals(3, documentCache.hits)
+    }
+
+    @Test
+    fun leastRecentlyUsedDocumentsAreEvicted() {
+        val cache = InMemoryPersistedDocumentCache(maxSize = 2)
+        val document = ValidPersistedDocument(GQLDocument(emptyList(), null))
+
+        cache.put("a", document)
+        cache.put("b", document)
+        // "a" is now more recently used than "b"
+        assertSame(document, cache.get("a"))
+        cache.put("c", document)
+
+        assertSame(document, cache.get("a"))
+        assertNull(cache.get("b"))
+        assertSame(document, cache.get("c"))
+    }
+}
@@ -0,0 +1,83 @@
+package test
+
+import com.apollographql.apollo.api.ExecutionContext
+import com.apollographql.apollo.execution.ExecutableSchema
+import com.apollographql.apollo.execution.GraphQLRequest
+import com.apollographql.apollo.execution.InMemoryPersistedDocumentCache
+import kotlinx.coroutines.runBlocking
+import okio.Buffer
+import kotlin.test.Test
+import kotlin.test.assertEquals
+
+class ExecutionPlansTest {
+  private val schema = """
+      type Query {
+        items: [Item!]!
+      }
+      type Item {
+        id: Int!
+        name(prefix: String!): String!
+      }
+  """.trimIndent()
+
+  private val document = """
+      query GetItems(${'$'}skipName: Boolean!, ${'$'}prefix: String!) {
+        items {
+          id
+          name(prefix: ${'$'}prefix) @skip(if: ${'$'}skipName)
+          constantName: name(prefix: "item")
+        }
+      }
+  """.trimIndent()
+
+  private val executableSchema = ExecutableSchema.Builder()
+      .schema(schema)
+      .persistedDocumentCache(InMemoryPersistedDocumentCache())
+      .resolver {
+        when (it.coordinates()) {
+          "Query.items" -> listOf(0, 1)
+          "Item.id" -> it.parentObject
+          "Item.name" -> it.getRequiredArgument<String>("prefix") + it.parentObject
+          else -> null
+        }
+      }
+      .build()
+
+  private suspend fun execute(skipName: Boolean, prefix: String): Any? {
+    val request = GraphQLRequest.Builder()
+        .document(document)
+        .variables(mapOf("skipName" to skipName, "prefix" to prefix))
+        .extensions(mapOf("persistedQuery" to mapOf("sha256Hash" to Buffer().writeUtf8(document).sha256().hex())))
+        .build()
+    val response = executableSchema.execute(request, ExecutionContext.Empty)
+    assertEquals(null, response.errors)
+    return response.data
+  }
+
+  @Test
+  fun plansDependOnVariables() = runBlocking {
+    assertEquals(
+        mapOf("items" to listOf(
+            mapOf("id" to 0, "name" to "a0", "constantName" to "item0"),
+            mapOf("id" to 1, "name" to "a1", "constantName" to "item1"),
+        )),
+        execute(skipName = false, prefix = "a")
+    )
+    // Same condition values, the plan is reused but the arguments are coerced again
+    assertEquals(
+        mapOf("items" to listOf(
+            mapOf("id" to 0, "name" to "b0", "constantName" to "item0"),
+            mapOf("id" to 1, "name" to "b1", "constantName" to "item1"),
+        )),
+        execute(skipName = false, prefix = "b")
+    )
+    // Different condition values, a new plan is built
+    assertEquals(
+        mapOf("items" to listOf(
+            mapOf("id" to 0, "constantName" to "item0"),
+            mapOf("id" to 1, "constantName" to "item1"),
+        )),
+        execute(skipName = true, prefix = "b")
+    )
+  }
+}
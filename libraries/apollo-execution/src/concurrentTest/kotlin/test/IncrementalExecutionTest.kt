@@ -0,0 +1,233 @@
+package test
+
+import com.apollographql.apollo.api.ExecutionContext
+import com.apollographql.apollo.api.json.BufferedSinkJsonWriter
+import com.apollographql.apollo.api.json.jsonReader
+import com.apollographql.apollo.api.json.readAny
+import com.apollographql.apollo.execution.ExecutableSchema
+import com.apollographql.apollo.execution.IncrementalPayload
+import com.apollographql.apollo.execution.SubsequentIncrementalPayload
+import com.apollographql.apollo.execution.writeMultipartTo
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.flow.toList
+import kotlinx.coroutines.runBlocking
+import okio.Buffer
+import kotlin.test.Test
+import kotlin.test.assertEquals
+
+class IncrementalExecutionTest {
+  private val schema = """
+      directive @defer(label: String, if: Boolean! = true) on FRAGMENT_SPREAD | INLINE_FRAGMENT
+      directive @stream(label: String, if: Boolean! = true, initialCount: Int = 0) on FIELD
+
+      type Query {
+        fast: String
+        slow: String
+        items: [Item!]!
+        streamedItems: [Item!]
+        item: Item
+        nonNullError: String!
+      }
+      type Item {
+        id: Int!
+        nonNullName: String!
+      }
+  """.trimIndent()
+
+  private val executableSchema = ExecutableSchema.Builder()
+      .schema(schema)
+      .resolver {
+        when (it.coordinates()) {
+          "Query.fast" -> "fast"
+          "Query.slow" -> {
+            delay(100)
+            "slow"
+          }
+          "Query.items" -> List(4) { it }
+          "Query.streamedItems" -> listOf(1, 2, 3)
+          "Query.item" -> 0
+          "Item.id" -> it.parentObject
+          // Only odd items have a name
+          "Item.nonNullName" -> (it.parentObject as Int).takeIf { it % 2 == 1 }?.let { "item$it" }
+          else -> null
+        }
+      }
+      .build()
+
+  private suspend fun executeIncrementally(document: String): List<IncrementalPayload> {
+    return executableSchema.executeIncrementally(document.toGraphQLRequest(), ExecutionContext.Empty).toList()
+  }
+
+  private fun IncrementalPayload.toMap(): Map<String, Any?> {
+    val buffer = Buffer()
+    serialize(BufferedSinkJsonWriter(buffer))
+    @Suppress("UNCHECKED_CAST")
+    return buffer.jsonReader().readAny() as Map<String, Any?>
+  }
+
+  @Test
+  fun deferredFragmentsAreDeliveredInSubsequentPayloads() = runBlocking {
+    val payloads = executeIncrementally("{ fast ... @defer(label: \"slow\") { slow } }")
+
+    assertEquals(
+        listOf(
+            mapOf(
+                "data" to mapOf("fast" to "fast"),
+                "pending" to listOf(mapOf("id" to "0", "path" to emptyList<Any>(), "label" to "slow")),
+                "hasNext" to true
+            ),
+            mapOf(
+                "incremental" to listOf(mapOf("id" to "0", "data" to mapOf("slow" to "slow"))),
+                "completed" to listOf(mapOf("id" to "0")),
+                "hasNext" to false
+            ),
+        ),
+        payloads.map { it.toMap() }
+    )
+  }
+
+  @Test
+  fun streamedItemsAreDeliveredInSubsequentPayloads() = runBlocking {
+    val payloads = executeIncrementally("{ items @stream(initialCount: 2) { id } }")
+
+    assertEquals(
+        mapOf(
+            "data" to mapOf("items" to listOf(mapOf("id" to 0), mapOf("id" to 1))),
+            "pending" to listOf(mapOf("id" to "0", "path" to listOf("items"))),
+            "hasNext" to true
+        ),
+        payloads.first().toMap()
+    )
+    val subsequentPayloads = payloads.drop(1).map { it as SubsequentIncrementalPayload }
+    assertEquals(listOf(mapOf("id" to 2), mapOf("id" to 3)), subsequentPayloads.flatMap { payload -> payload.incremental.flatMap { it.items.orEmpty() } })
+    assertEquals(listOf("0"), subsequentPayloads.flatMap { payload -> payload.completed.map { it.id } })
+    assertEquals(false, payloads.last().hasNext)
+  }
+
+  @Test
+  fun deferredFragmentsOfNulledObjectsAreNotDelivered() = runBlocking {
+    // nonNullName nulls item
+    val payloads = executeIncrementally("{ item { nonNullName ... @defer { id } } }")
+
+    assertEquals(1, payloads.size)
+    assertEquals(emptyList(), payloads.single().pending)
+    assertEquals(false, payloads.single().hasNext)
+  }
+
+  @Test
+  fun nonNullErrorsStopStreams() = runBlocking {
+    // nonNullName of the second item is null
+    val payloads = executeIncrementally("{ streamedItems @stream(initialCount: 1) { id nonNullName } }")
+
+    assertEquals(
+        mapOf(
+            "data" to mapOf("streamedItems" to listOf(mapOf("id" to 1, "nonNullName" to "item1"))),
+            "pending" to listOf(mapOf("id" to "0", "path" to listOf("streamedItems"))),
+            "hasNext" to true
+        ),
+        payloads.first().toMap()
+    )
+    val subsequentPayloads = payloads.drop(1).map { it as SubsequentIncrementalPayload }
+    assertEquals(emptyList(), subsequentPayloads.flatMap { it.incremental })
+    val completed = subsequentPayloads.flatMap { it.completed }.single()
+    assertEquals("0", completed.id)
+    assertEquals(listOf<Any>("streamedItems", 1, "nonNullName"), completed.errors!!.single().path)
+    assertEquals(false, payloads.last().hasNext)
+  }
+
+  @Test
+  fun nonNullErrorsNullDeferredFragments() = runBlocking {
+    val payloads = executeIncrementally("{ fast ... @defer { nonNullError } }")
+
+    assertEquals(2, payloads.size)
+    val subsequentPayload = payloads.last() as SubsequentIncrementalPayload
+    assertEquals(emptyList(), subsequentPayload.incremental)
+    val completed = subsequentPayload.completed.single()
+    assertEquals("0", completed.id)
+    assertEquals(listOf<Any>("nonNullError"), completed.errors!!.single().path)
+    assertEquals(false, subsequentPayload.hasNext)
+  }
+
+  @Test
+  fun nestedDeferredFragmentsAreAnnouncedWithTheirParent() = runBlocking {
+    val payloads = executeIncrementally(
+        "{ fast ... @defer(label: \"outer\") { slow item { id ... @defer(label: \"inner\") { nonNullId: id } } } }"
+    )
+
+    assertEquals(listOf(mapOf("id" to "0", "path" to emptyList<Any>(), "label" to "outer")), payloads.first().toMap().get("pending"))
+    val subsequentPayloads = payloads.drop(1).map { it as SubsequentIncrementalPayload }
+    assertEquals(
+        listOf(Triple("1", listOf<Any>("item"), "inner")),
+        subsequentPayloads.flatMap { payload -> payload.pending.map { Triple(it.id, it.path, it.label) } }
+    )
+    assertEquals(
+        mapOf(
+            "0" to mapOf("slow" to "slow", "item" to mapOf("id" to 0)),
+            "1" to mapOf("nonNullId" to 0),
+        ),
+        subsequentPayloads.flatMap { it.incremental }.associate { it.id to it.data }
+    )
+    assertEquals(setOf("0", "1"), subsequentPayloads.flatMap { payload -> payload.completed.map { it.id } }.toSet())
+    assertEquals(false, payloads.last().hasNext)
+  }
+
+  @Test
+  fun deferredFragmentsInsideNamedFragments() = runBlocking {
+    val payloads = executeIncrementally(
+        """
+          { ...QueryFragment }
+          fragment QueryFragment on Query { fast ... @defer(label: "inline") { slow } ...ItemFragment @defer(label: "spread") }
+          fragment ItemFragment on Query { item { id } }
+        """.trimIndent()
+    )
+
+    assertEquals(mapOf("fast" to "fast"), payloads.first().toMap().get("data"))
+    assertEquals(setOf("inline", "spread"), payloads.first().pending.map { it.label }.toSet())
+    val subsequentPayloads = payloads.drop(1).map { it as SubsequentIncrementalPayload }
+    val labels = payloads.first().pending.associate { it.id to it.label }
+    assertEquals(
+        mapOf(
+            "inline" to mapOf("slow" to "slow"),
+            "spread" to mapOf("item" to mapOf("id" to 0)),
+        ),
+        subsequentPayloads.flatMap { it.incremental }.associate { labels.get(it.id) to it.data }
+    )
+    assertEquals(false, payloads.last().hasNext)
+  }
+
+  @Test
+  fun negativeInitialCountIsAFieldError() = runBlocking {
+    val payloads = executeIncrementally("{ streamedItems @stream(initialCount: -1) { id } }")
+
+    val payload = payloads.single().toMap()
+    assertEquals(mapOf("streamedItems" to null), payload.get("data"))
+    assertEquals(false, payload.get("hasNext"))
+  }
+
+  @Test
+  fun deferIsIgnoredByExecute() = runBlocking {
+    val response = executableSchema.execute("{ fast ... @defer { slow } }".toGraphQLRequest(), ExecutionContext.Empty)
+
+    assertEquals(mapOf("fast" to "fast", "slow" to "slow"), response.data)
+  }
+
+  @Test
+  fun multipart() = runBlocking {
+    val buffer = Buffer()
+    executableSchema.executeIncrementally("{ fast ... @defer { slow } }".toGraphQLRequest(), ExecutionContext.Empty)
+        .writeMultipartTo(buffer)
+
+    assertEquals(
+        "---\r\n" +
+            "Content-Type: application/json; charset=utf-8\r\n" +
+            "\r\n" +
+            "{\"data\":{\"fast\":\"fast\"},\"pending\":[{\"id\":\"0\",\"path\":[]}],\"hasNext\":true}\r\n" +
+            "---\r\n" +
+            "Content-Type: application/json; charset=utf-8\r\n" +
+            "\r\n" +
+            "{\"incremental\":[{\"id\":\"0\",\"data\":{\"slow\":\"slow\"}}],\"completed\":[{\"id\":\"0\"}],\"hasNext\":false}\r\n" +
+            "-----\r\n",
+        buffer.readUtf8()
+    )
+  }
+}
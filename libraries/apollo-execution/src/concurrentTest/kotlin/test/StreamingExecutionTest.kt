@@ -0,0 +1,77 @@
+package test
+
+import com.apollographql.apollo.api.ExecutionContext
+import com.apollographql.apollo.api.json.jsonReader
+import com.apollographql.apollo.api.json.readAny
+import com.apollographql.apollo.execution.ExecutableSchema
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.runBlocking
+import okio.Buffer
+import kotlin.test.Test
+import kotlin.test.assertEquals
+
+class StreamingExecutionTest {
+  private val schema = """
+      type Query {
+        items: [Item!]!
+        nullableItems: [Item]!
+      }
+      type Item {
+        id: Int!
+        name: String
+        nonNullName: String!
+      }
+  """.trimIndent()
+
+  private val executableSchema = ExecutableSchema.Builder()
+      .schema(schema)
+      .resolver {
+        when (it.coordinates()) {
+          "Query.items", "Query.nullableItems" -> List(20) { it }
+          "Item.id" -> {
+            // Complete the items out of order
+            delay(20L - it.parentObject as Int)
+            it.parentObject
+          }
+          "Item.name" -> if (it.parentObject == 3) error("no name for 3") else "item${it.parentObject}"
+          "Item.nonNullName" -> if (it.parentObject == 5) null else "item${it.parentObject}"
+          else -> null
+        }
+      }
+      .build()
+
+  /**
+   * Executes [document] with and without streaming and checks that both responses are the same.
+   */
+  private fun assertSameResponse(document: String): Map<String, Any?> = runBlocking {
+    val buffered = Buffer()
+    executableSchema.execute(document.toGraphQLRequest(), ExecutionContext.Empty).serialize(buffered)
+    val streamed = Buffer()
+    executableSchema.execute(document.toGraphQLRequest(), streamed, ExecutionContext.Empty)
+
+    @Suppress("UNCHECKED_CAST")
+    val expected = buffered.jsonReader().readAny() as Map<String, Any?>
+    assertEquals(expected, streamed.jsonReader().readAny())
+    expected
+  }
+
+  @Test
+  fun fieldsAreWrittenInResponseOrder() {
+    val response = assertSameResponse("{ items { id name } }")
+    assertEquals(1, (response.get("errors") as List<*>).size)
+  }
+
+  @Test
+  fun errorsPropagateToTheClosestNullableParent() {
+    // item 5 is nulled
+    val response = assertSameResponse("{ nullableItems { id nonNullName } }")
+    assertEquals(null, ((response.get("data") as Map<*, *>).get("nullableItems") as List<*>)[5])
+  }
+
+  @Test
+  fun errorsPropagateToData() {
+    // items is not nullable, data is nulled
+    val response = assertSameResponse("{ items { id nonNullName } }")
+    assertEquals(null, response.get("data"))
+  }
+}
@@ -16,6 +16,9 @@ kotlin {
         api(project(":apollo-mpp-utils"))
         implementation(libs.okio)
         api(libs.uuid)
+        implementation(libs.atomicfu.library.get().toString()) {
+          because("MemoryCache counters are updated concurrently (we don't use the gradle plugin rewrite)")
+        }
       }
     }
   }
@@ -4,10 +4,14 @@ package com.apollographql.apollo.cache.normalized.api
 
 import com.apollographql.apollo.annotations.ApolloDeprecatedSince
 import com.apollographql.apollo.cache.normalized.api.internal.CacheLock
-import com.apollographql.apollo.cache.normalized.api.internal.LruCache
+import com.apollographql.apollo.cache.normalized.api.internal.ExpirationQueue
+import com.apollographql.apollo.cache.normalized.api.internal.PrefixIndex
+import com.apollographql.apollo.cache.normalized.api.internal.RecordWeigher
+import com.apollographql.apollo.cache.normalized.api.internal.StripedLruCache
+import com.apollographql.apollo.cache.normalized.api.internal.patternToPrefix
 import com.apollographql.apollo.mpp.currentTimeMillis
-import okio.internal.commonAsUtf8ToByteArray
-import kotlin.jvm.JvmOverloads
+import kotlinx.atomicfu.atomic
+import okio.utf8Size
 import kotlin.reflect.KClass
 
 /**
@@ -15,71 +19,141 @@ import kotlin.reflect.KClass
  *
  * [maxSizeBytes] - the maximum size in bytes the cache may occupy.
  * [expireAfterMillis] - after what timeout each entry in the cache treated as expired. By default there is no timeout.
+ * [concurrencyLevel] - the number of independent segments the cache is split into. Each segment has its own lock and
+ * maintains its own LRU order within `maxSizeBytes / concurrencyLevel` bytes, so that concurrent reads of keys that
+ * belong to different segments do not contend. By default, the cache uses a single segment.
+ * [expireAfterMillisByKeyPrefix] - timeouts that override [expireAfterMillis] for the records whose key starts with a
+ * given prefix. If several prefixes match, the longest one is used. Cache keys built with [CacheKey.from] start with
+ * `"Typename:"` and can be used to configure a timeout per type. A negative value means no timeout.
  *
- * Expired entries removed from the cache only on cache miss ([loadRecord] operation) and not removed from the cache automatically
- * (there is no any sort of GC that runs in the background).
+ * Expired entries are removed from the cache when they are read and, for the entries that have a timeout, after each
+ * write: the keys are kept in a queue ordered by expiration date so that removing the expired entries does not scan the
+ * whole cache. There is no background cleanup but [evictExpired] can be called periodically to remove the expired
+ * entries of a cache that is not written to.
+ *
+ * [remove] with a pattern of the form `"prefix%"` uses an index of the keys that is built on first use and then
+ * maintained on writes. Other patterns are matched against every key.
  */
 @Deprecated("Use the new Normalized Cache at https://github.com/apollographql/apollo-kotlin-normalized-cache")
 @ApolloDeprecatedSince(ApolloDeprecatedSince.Version.v5_0_0)
 class MemoryCache(
     private val maxSizeBytes: Int = Int.MAX_VALUE,
     private val expireAfterMillis: Long = -1,
+    private val concurrencyLevel: Int = 1,
+    private val expireAfterMillisByKeyPrefix: Map<String, Long> = emptyMap(),
 ) : NormalizedCache() {
   /**
-   * A lock that is only used during read accesses on the JVM because
+   * Kept for binary compatibility with the constructor that only had [maxSizeBytes] and [expireAfterMillis].
+   */
+  constructor(
+      maxSizeBytes: Int = Int.MAX_VALUE,
+      expireAfterMillis: Long = -1,
+  ) : this(maxSizeBytes, expireAfterMillis, 1, emptyMap())
+
+  /**
+   * Each segment has its own lock that is also taken during read accesses on the JVM because
    * reads also write in order to:
    * - maintain the LRU order
    * - update the memory cache from the downstream caches
    *
    * write accesses are already locked by a higher level ReadWrite lock
    */
-  private val lock = CacheLock()
-
-  private val lruCache = LruCache<String, CacheEntry>(maxSize = maxSizeBytes) { key, cacheEntry ->
-    key.commonAsUtf8ToByteArray().size + (cacheEntry?.sizeInBytes ?: 0)
+  private val lruCache = StripedLruCache<String, CacheEntry>(maxSize = maxSizeBytes, stripeCount = concurrencyLevel) { key, cacheEntry ->
+    key.utf8Size().toInt() + (cacheEntry?.sizeInBytes ?: 0)
   }
 
+  /**
+   * The keys of the entries that have a timeout, ordered by expiration date.
+   * The lock is never taken while holding the lock of a segment.
+   */
+  private val expirationLock = CacheLock()
+  private val expirationQueue = ExpirationQueue<String>()
+  private var expirationQueueCompactionThreshold = MIN_COMPACTION_THRESHOLD
+
+  /**
+   * An index of the keys, built on the first call to [remove] with a prefix pattern.
+   * Evicted keys are not removed from the index eagerly, they are removed when looked up or when the index is
+   * compacted.
+   * The lock is never taken while holding the lock of a segment.
+   */
+  private val prefixIndexLock = CacheLock()
+  private var prefixIndex: PrefixIndex? = null
+  private var prefixIndexCompactionThreshold = MIN_COMPACTION_THRESHOLD
+
+  private val hitCount = atomic(0L)
+  private val missCount = atomic(0L)
+  private val expiredCount = atomic(0L)
+
   val size: Int
     get() = lruCache.size()
 
-  override fun loadRecord(key: String, cacheHeaders: CacheHeaders): Record? = lock.lock {
-    val record = internalLoadRecord(key, cacheHeaders)
-    record ?: nextCache?.loadRecord(key, cacheHeaders)?.also { nextCachedRecord ->
-      lruCache[key] = CacheEntry(
-          record = nextCachedRecord,
-          expireAfterMillis = expireAfterMillis
-      )
+  /**
+   * Returns the hit/miss/expiration counters of this cache. Chained caches are not included.
+   */
+  fun stats(): MemoryCacheStats {
+    return MemoryCacheStats(
+        hitCount = hitCount.value,
+        missCount = missCount.value,
+        expiredCount = expiredCount.value,
+    )
+  }
+
+  override fun loadRecord(key: String, cacheHeaders: CacheHeaders): Record? {
+    val cacheEntry = internalLoadEntry(key, cacheHeaders)
+    if (cacheEntry != null) {
+      hitCount.incrementAndGet()
+      return cacheEntry.record
+    }
+    missCount.incrementAndGet()
+    return nextCache?.loadRecord(key, cacheHeaders)?.also { nextCachedRecord ->
+      put(newEntry(nextCachedRecord))
     }
   }
 
-  override fun loadRecords(keys: Collection<String>, cacheHeaders: CacheHeaders): Collection<Record> = lock.lock {
-    val recordsByKey: Map<String, Record?> = keys.associateWith { key -> internalLoadRecord(key, cacheHeaders) }
+  private fun loadEntry(key: String, cacheHeaders: CacheHeaders): CacheEntry? {
+    val cacheEntry = internalLoadEntry(key, cacheHeaders)
+    return cacheEntry ?: nextCache?.loadRecord(key, cacheHeaders)?.let { nextCachedRecord ->
+      newEntry(nextCachedRecord).also {
+        put(it)
+      }
+    }
+  }
+
+  override fun loadRecords(keys: Collection<String>, cacheHeaders: CacheHeaders): Collection<Record> {
+    val recordsByKey: Map<String, Record?> = keys.associateWith { key -> internalLoadEntry(key, cacheHeaders)?.record }
     val missingKeys = recordsByKey.filterValues { it == null }.keys
+    hitCount.addAndGet((recordsByKey.size - missingKeys.size).toLong())
+    missCount.addAndGet(missingKeys.size.toLong())
     val nextCachedRecords = nextCache?.loadRecords(missingKeys, cacheHeaders).orEmpty()
     for (record in nextCachedRecords) {
-      lruCache[record.key] = CacheEntry(
-          record = record,
-          expireAfterMillis = expireAfterMillis
-      )
+      put(newEntry(record))
     }
-    recordsByKey.values.filterNotNull() + nextCachedRecords
+    return recordsByKey.values.filterNotNull() + nextCachedRecords
   }
 
-  private fun internalLoadRecord(key: String, cacheHeaders: CacheHeaders): Record? {
-    return lruCache[key]?.also { cacheEntry ->
-      if (cacheEntry.isExpired || cacheHeaders.hasHeader(ApolloCacheHeaders.EVICT_AFTER_READ)) {
-        lruCache.remove(key)
+  private fun internalLoadEntry(key: String, cacheHeaders: CacheHeaders): CacheEntry? {
+    val cacheEntry = lruCache[key] ?: return null
+    val isExpired = cacheEntry.isExpired(currentTimeMillis())
+    if (isExpired || cacheHeaders.hasHeader(ApolloCacheHeaders.EVICT_AFTER_READ)) {
+      if (lruCache.remove(key) != null && isExpired) {
+        expiredCount.incrementAndGet()
       }
-    }?.takeUnless { it.isExpired }?.record
+    }
+    return cacheEntry.takeUnless { isExpired }
   }
 
   override fun clearAll() {
-    lruCache.clear()
+    clearCurrentCache()
     nextCache?.clearAll()
   }
 
   override fun remove(cacheKey: CacheKey, cascade: Boolean): Boolean {
     val cacheEntry = lruCache.remove(cacheKey.key)
+    if (cacheEntry != null) {
+      prefixIndexLock.lock {
+        prefixIndex?.remove(cacheKey.key)
+      }
+    }
 
     if (cascade && cacheEntry != null) {
       for (cacheReference in cacheEntry.record.referencedFields()) {
@@ -93,12 +167,28 @@ class MemoryCache(
 
   override fun remove(pattern: String): Int {
     val regex = patternToRegex(pattern)
+    val prefix = patternToPrefix(pattern)
     var total = 0
-    val keys = HashSet(lruCache.keys()) // local copy to avoid concurrent modification
-    keys.forEach {
-      if (regex.matches(it)) {
-        lruCache.remove(it)
-        total++
+    if (prefix != null) {
+      val keys = prefixIndexLock.lock {
+        val index = prefixIndex ?: buildPrefixIndex()
+        index.keysWithPrefix(prefix).also { prefixedKeys ->
+          prefixedKeys.forEach { index.remove(it) }
+        }
+      }
+      keys.forEach {
+        // The index may contain evicted keys
+        if (regex.matches(it) && lruCache.remove(it) != null) {
+          total++
+        }
+      }
+    } else {
+      val keys = lruCache.keys() // snapshot to avoid concurrent modification
+      keys.forEach {
+        if (regex.matches(it)) {
+          lruCache.remove(it)
+          total++
+        }
       }
     }
 
@@ -112,6 +202,7 @@ class MemoryCache(
     }
 
     val changedKeys = internalMerge(record, cacheHeaders)
+    evictExpired()
     return changedKeys + nextCache?.merge(record, cacheHeaders).orEmpty()
   }
 
@@ -120,28 +211,56 @@ class MemoryCache(
       return emptySet()
     }
     val changedKeys = records.flatMap { record -> internalMerge(record, cacheHeaders) }.toSet()
+    evictExpired()
     return changedKeys + nextCache?.merge(records, cacheHeaders).orEmpty()
   }
 
   private fun internalMerge(record: Record, cacheHeaders: CacheHeaders): Set<String> {
-    val oldRecord = loadRecord(record.key, cacheHeaders)
-    val changedKeys = if (oldRecord == null) {
-      lruCache[record.key] = CacheEntry(
-          record = record,
-          expireAfterMillis = expireAfterMillis
-      )
+    val oldEntry = loadEntry(record.key, cacheHeaders)
+    val changedKeys = if (oldEntry == null) {
+      put(newEntry(record))
       record.fieldKeys()
     } else {
-      val (mergedRecord, changedKeys) = oldRecord.mergeWith(record)
-      lruCache[record.key] = CacheEntry(
-          record = mergedRecord,
-          expireAfterMillis = expireAfterMillis
+      val (mergedRecord, changedKeys) = oldEntry.record.mergeWith(record)
+      put(
+          newEntry(
+              record = mergedRecord,
+              // Only weigh the fields that changed instead of the whole merged record
+              sizeInBytes = if (changedKeys.isEmpty()) {
+                oldEntry.sizeInBytes
+              } else {
+                oldEntry.sizeInBytes + RecordWeigher.mergeByteChange(oldEntry.record, record)
+              }
+          )
       )
       changedKeys
     }
     return changedKeys
   }
 
+  /**
+   * Removes the expired entries from this cache. Chained caches are not affected.
+   *
+   * This is called automatically after each write and can be called periodically for caches that are read-only.
+   *
+   * @return the number of entries removed
+   */
+  fun evictExpired(): Int {
+    val nowMillis = currentTimeMillis()
+    val candidates = expirationLock.lock {
+      expirationQueue.pollExpired(nowMillis)
+    }
+    var evicted = 0
+    for (key in candidates) {
+      // The entry may have been written again with a later expiration date since it was queued
+      if (lruCache.removeIf(key) { it.isExpired(nowMillis) } != null) {
+        evicted++
+      }
+    }
+    expiredCount.addAndGet(evicted.toLong())
+    return evicted
+  }
+
   override fun dump(): Map<KClass<*>, Map<String, Record>> {
     return mapOf(
         this::class to lruCache.dump().mapValues { (_, entry) -> entry.record }
@@ -150,36 +269,150 @@ class MemoryCache(
 
   internal fun clearCurrentCache() {
     lruCache.clear()
+    expirationLock.lock {
+      expirationQueue.clear()
+    }
+    prefixIndexLock.lock {
+      prefixIndex?.clear()
+    }
+  }
+
+  private fun newEntry(record: Record, sizeInBytes: Int = record.sizeInBytes + 8): CacheEntry {
+    val expireAfterMillis = expireAfterMillisFor(record.key)
+    return CacheEntry(
+        record = record,
+        expiresAtMillis = if (expireAfterMillis < 0) -1 else currentTimeMillis() + expireAfterMillis,
+        sizeInBytes = sizeInBytes
+    )
+  }
+
+  private fun expireAfterMillisFor(key: String): Long {
+    if (expireAfterMillisByKeyPrefix.isEmpty()) {
+      return expireAfterMillis
+    }
+    var longestPrefix: String? = null
+    for (prefix in expireAfterMillisByKeyPrefix.keys) {
+      if (key.startsWith(prefix) && prefix.length > (longestPrefix?.length ?: -1)) {
+        longestPrefix = prefix
+      }
+    }
+    return if (longestPrefix == null) expireAfterMillis else expireAfterMillisByKeyPrefix.getValue(longestPrefix)
+  }
+
+  private fun put(cacheEntry: CacheEntry) {
+    val key = cacheEntry.record.key
+    lruCache[key] = cacheEntry
+    prefixIndexLock.lock {
+      val index = prefixIndex
+      if (index != null) {
+        index.add(key)
+        if (index.size >= prefixIndexCompactionThreshold) {
+          // Evicted keys accumulate in the index, rebuild it from the live keys
+          buildPrefixIndex()
+        }
+      }
+    }
+    if (cacheEntry.expiresAtMillis < 0) {
+      return
+    }
+    expirationLock.lock {
+      expirationQueue.add(key, cacheEntry.expiresAtMillis)
+      if (expirationQueue.size >= expirationQueueCompactionThreshold) {
+        compactExpirationQueue()
+      }
+    }
+  }
+
+  /**
+   * Keys written several times are queued several times. Rebuild the queue from the live entries when it grows too
+   * large so that its size stays proportional to the size of the cache.
+   *
+   * Must be called with [expirationLock] held.
+   */
+  private fun compactExpirationQueue() {
+    expirationQueue.clear()
+    for ((key, cacheEntry) in lruCache.dump()) {
+      if (cacheEntry.expiresAtMillis >= 0) {
+        expirationQueue.add(key, cacheEntry.expiresAtMillis)
+      }
+    }
+    expirationQueueCompactionThreshold = maxOf(MIN_COMPACTION_THRESHOLD, 2 * expirationQueue.size)
+  }
+
+  /**
+   * Must be called with [prefixIndexLock] held.
+   */
+  private fun buildPrefixIndex(): PrefixIndex {
+    val index = PrefixIndex()
+    lruCache.keys().forEach {
+      index.add(it)
+    }
+    prefixIndex = index
+    prefixIndexCompactionThreshold = maxOf(MIN_COMPACTION_THRESHOLD, 2 * index.size)
+    return index
   }
 
   private class CacheEntry(
       val record: Record,
-      val expireAfterMillis: Long,
+      /**
+       * The date at which the entry expires or -1 if it never expires
+       */
+      val expiresAtMillis: Long,
+      /**
+       * The weight of the entry, computed once when the entry is created
+       */
+      val sizeInBytes: Int,
   ) {
-    val cachedAtMillis: Long = currentTimeMillis()
+    fun isExpired(nowMillis: Long): Boolean {
+      return expiresAtMillis >= 0 && nowMillis >= expiresAtMillis
+    }
+  }
 
-    val sizeInBytes: Int = record.sizeInBytes + 8
+  private companion object {
+    private const val MIN_COMPACTION_THRESHOLD = 64
+  }
+}
 
-    val isExpired: Boolean
-      get() {
-        return if (expireAfterMillis < 0) {
-          false
-        } else {
-          currentTimeMillis() - cachedAtMillis >= expireAfterMillis
-        }
-      }
+/**
+ * Counters of a [MemoryCache].
+ *
+ * [hitCount] - the number of records read from the cache.
+ * [missCount] - the number of records not found in the cache, including expired records and records then found in a
+ * chained cache.
+ * [expiredCount] - the number of expired records removed from the cache, either when read or by [MemoryCache.evictExpired].
+ */
+class MemoryCacheStats internal constructor(
+    val hitCount: Long,
+    val missCount: Long,
+    val expiredCount: Long,
+) {
+  override fun toString(): String {
+    return "MemoryCacheStats(hitCount=$hitCount, missCount=$missCount, expiredCount=$expiredCount)"
   }
 }
 
-class MemoryCacheFactory @JvmOverloads constructor(
+class MemoryCacheFactory(
     private val maxSizeBytes: Int = Int.MAX_VALUE,
     private val expireAfterMillis: Long = -1,
+    private val concurrencyLevel: Int = 1,
+    private val expireAfterMillisByKeyPrefix: Map<String, Long> = emptyMap(),
 ) : NormalizedCacheFactory() {
+  /**
+   * Kept for binary compatibility with the constructors that only had [maxSizeBytes] and [expireAfterMillis].
+   */
+  constructor(
+      maxSizeBytes: Int = Int.MAX_VALUE,
+      expireAfterMillis: Long = -1,
+  ) : this(maxSizeBytes, expireAfterMillis, 1, emptyMap())
+
+  constructor(maxSizeBytes: Int) : this(maxSizeBytes, -1)
 
   override fun create(): MemoryCache {
     return MemoryCache(
         maxSizeBytes = maxSizeBytes,
         expireAfterMillis = expireAfterMillis,
+        concurrencyLevel = concurrencyLevel,
+        expireAfterMillisByKeyPrefix = expireAfterMillisByKeyPrefix,
     )
   }
 }
@@ -14,6 +14,7 @@ import com.apollographql.apollo.api.json.MapJsonWriter
 import com.apollographql.apollo.api.variables
 import com.apollographql.apollo.cache.normalized.api.internal.CacheBatchReader
 import com.apollographql.apollo.cache.normalized.api.internal.Normalizer
+import com.apollographql.apollo.cache.normalized.api.internal.RecordCacheData
 
 @Deprecated("Use the new Normalized Cache at https://github.com/apollographql/apollo-kotlin-normalized-cache")
 @ApolloDeprecatedSince(ApolloDeprecatedSince.Version.v5_0_0)
@@ -143,9 +144,13 @@ fun <D: Executable.Data> CacheData.toData(
     customScalarAdapters: CustomScalarAdapters,
     variables: Executable.Variables,
 ): D {
-  val reader = MapJsonReader(
-      root = toMap(),
-  )
+  val reader = if (this is RecordCacheData) {
+    jsonReader()
+  } else {
+    MapJsonReader(
+        root = toMap(),
+    )
+  }
 
   return adapter.fromJson(reader, customScalarAdapters.newBuilder().falseVariables(variables.valueMap.filter { it.value == false }.keys).build())
 }
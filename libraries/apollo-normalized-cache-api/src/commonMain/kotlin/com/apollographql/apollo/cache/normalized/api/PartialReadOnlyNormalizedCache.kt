@@ -0,0 +1,28 @@
+@file:Suppress("DEPRECATION")
+
+package com.apollographql.apollo.cache.normalized.api
+
+import com.apollographql.apollo.annotations.ApolloDeprecatedSince
+
+/**
+ * A [ReadOnlyNormalizedCache] that can load only some of the fields of its records.
+ *
+ * When reading an operation from a cache that implements this interface, only the fields selected by the operation are
+ * loaded. This is useful for caches that store records that are expensive to decode, such as the SQLite cache.
+ */
+@Deprecated("Use the new Normalized Cache at https://github.com/apollographql/apollo-kotlin-normalized-cache")
+@ApolloDeprecatedSince(ApolloDeprecatedSince.Version.v5_0_0)
+interface PartialReadOnlyNormalizedCache : ReadOnlyNormalizedCache {
+  /**
+   * Loads the records for the keys of [fieldKeys].
+   *
+   * Implementations may return more fields than requested, for an example if the storage doesn't support partial reads.
+   * Requested fields that are not in the record are absent from the returned [Record].
+   * There is no guarantee on the order of returned [Record]
+   *
+   * @param fieldKeys    for each [Record] key, the keys of the fields to load. Field keys are the keys of [Record.fields],
+   * including arguments if any.
+   * @param cacheHeaders The cache headers associated with the request which generated this record.
+   */
+  fun loadRecords(fieldKeys: Map<String, Set<String>>, cacheHeaders: CacheHeaders): Collection<Record>
+}
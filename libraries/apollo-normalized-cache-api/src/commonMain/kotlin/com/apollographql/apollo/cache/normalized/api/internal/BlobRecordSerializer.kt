@@ -3,160 +3,391 @@
 package com.apollographql.apollo.cache.normalized.api.internal
 
 import com.apollographql.apollo.annotations.ApolloInternal
+import com.apollographql.apollo.api.json.JsonNumber
 import com.apollographql.apollo.cache.normalized.api.CacheKey
 import com.apollographql.apollo.cache.normalized.api.Record
 import okio.Buffer
+import okio.utf8Size
 
 /**
- * A serializer that serializes/deserializes a [Record] to a [ByteArray]
+ * A serializer that serializes/deserializes a [Record] to a compact [ByteArray]
  *
- * It's a very basic implementation that encodes a record like below
+ * A record is encoded like below
  *
- * number of entries - Int
+ * version - Byte ([VERSION_1])
+ * typename - String, the typename of the record or an empty string if the record has no `__typename`
+ * flags - Byte, [FLAG_HAS_DATES] if the record has dates
+ * number of fields - varint
+ * ------ field table
+ * name of field0 - varint
+ * offset of field0 - varint, the offset of the date and value of field0 from the start of the values
  * ------
- * name of the entry0 - String
- * timestamp of entry0 - Long?
- * value of entry0 - Any?
- * ------
- * name of the entry1 - String
- * timestamp of entry1 - Long?
- * value of entry1 - Any?
+ * etc...
+ * ------ values
+ * date of field0 - Long? (only if [FLAG_HAS_DATES] is set)
+ * value of field0 - Any?
  * ------
  * etc...
  *
- * For each value, the type of the value is encoded using a single identifier byte so that deserialization can deserialize
- * to the expected type
+ * - Strings are encoded as their UTF-8 length in bytes (varint) followed by their UTF-8 bytes.
+ * - Ints and Longs are encoded as zigzag varints so that small numbers only take a single byte.
+ * - Each value starts with a single tag byte that encodes its type. Booleans and null are encoded in the tag.
+ * - Field names are encoded as `id shl 1 or 1` if they are found in the [FieldNameDictionary] of the typename or
+ * `length shl 1` followed by their UTF-8 bytes else.
  *
- * This should be revisited/optimized
+ * The field table allows to decode only some of the fields of a record without decoding the values of the other ones.
+ *
+ * Records serialized before the version byte was introduced (first byte is 0) can still be deserialized.
  */
 @ApolloInternal
 object BlobRecordSerializer {
-  fun serialize(record: Record): ByteArray  {
+  fun serialize(record: Record): ByteArray {
+    return serialize(record, null)
+  }
+
+  /**
+   * @param dictionary the dictionary to use to intern the field names or null to write the field names inline.
+   * The same dictionary must be used to deserialize the record.
+   */
+  fun serialize(record: Record, dictionary: FieldNameDictionary?): ByteArray {
     val buffer = Buffer()
+    val values = Buffer()
+    val typename = record.fields["__typename"] as? String ?: ""
+    val dates = record.date
 
-    val keys = record.fields.keys
-    buffer.writeInt(keys.size)
-    for (key in keys) {
-      buffer.writeString(key)
-      buffer.writeAny(record.date?.get(key))
-      buffer.writeAny(record.fields[key])
+    buffer.writeByte(VERSION_1)
+    buffer.writeString(typename)
+    buffer.writeByte(if (dates != null) FLAG_HAS_DATES else 0)
+    buffer.writeVarint(record.fields.size.toLong())
+    for ((name, value) in record.fields) {
+      val id = dictionary?.idFor(typename, name) ?: -1
+      if (id >= 0) {
+        buffer.writeVarint((id.toLong() shl 1) or 1L)
+      } else {
+        buffer.writeVarint(name.utf8Size() shl 1)
+        buffer.writeUtf8(name)
+      }
+      buffer.writeVarint(values.size)
+
+      if (dates != null) {
+        values.writeAny(dates[name])
+      }
+      values.writeAny(value)
     }
+    buffer.writeAll(values)
 
     return buffer.readByteArray()
   }
 
+  fun deserialize(key: String, bytes: ByteArray): Record {
+    return deserialize(key, bytes, null)
+  }
+
+  fun deserialize(key: String, bytes: ByteArray, dictionary: FieldNameDictionary?): Record {
+    return deserialize(key, bytes, dictionary, null)
+  }
+
   /**
-   * returns the [Record] for the given Json
+   * returns the [Record] for the given bytes
    *
+   * @param dictionary the dictionary that was used to serialize the record
+   * @param fieldKeys the fields to decode or null to decode all the fields. Fields that are not in the record are
+   * ignored.
    * @throws Exception if the [Record] cannot be deserialized
    */
-  @Suppress("UNCHECKED_CAST")
-  fun deserialize(key: String, bytes: ByteArray): Record {
-    val buffer = Buffer().write(bytes)
+  fun deserialize(key: String, bytes: ByteArray, dictionary: FieldNameDictionary?, fieldKeys: Set<String>?): Record {
+    if (bytes.isNotEmpty() && bytes[0].toInt() == 0) {
+      // Legacy records have no field table, all the values are decoded
+      return Buffer().write(bytes).apply { skip(1) }.readLegacyRecord(key, fieldKeys)
+    }
 
-    val fields = mutableMapOf<String, Any?>()
-    val dates = mutableMapOf<String, Long?>()
-    val size = buffer.readInt()
+    val reader = ByteReader(bytes)
+    return when (val version = reader.readByte()) {
+      VERSION_1 -> reader.readRecord(key, dictionary, fieldKeys)
+      else -> error("Unsupported record version: $version")
+    }
+  }
 
-    for (i in 0.until(size)) {
-      val name = buffer.readString()
-      dates[name] = buffer.readAny() as Long?
-      fields[name] = buffer.readAny()
+  private fun ByteReader.readRecord(key: String, dictionary: FieldNameDictionary?, fieldKeys: Set<String>?): Record {
+    val typename = readString()
+    val hasDates = readByte() and FLAG_HAS_DATES != 0
+    val size = readVarint().toInt()
+
+    val names = arrayOfNulls<String>(size)
+    val offsets = IntArray(size)
+    for (i in 0 until size) {
+      val header = readVarint()
+      names[i] = if (header and 1L != 0L) {
+        checkNotNull(dictionary) {
+          "A dictionary is required to deserialize record '$key'"
+        }.nameFor(typename, (header shr 1).toInt())
+      } else {
+        readUtf8((header shr 1).toInt())
+      }
+      offsets[i] = readVarint().toInt()
     }
+    val valuesStart = position
 
-    return Record(key, fields, null, dates)
+    val fieldCount = if (fieldKeys == null) size else minOf(size, fieldKeys.size)
+    val fields = LinkedHashMap<String, Any?>(fieldCount)
+    val dates = if (hasDates) LinkedHashMap<String, Long?>(fieldCount) else null
+    for (i in 0 until size) {
+      val name = names[i]!!
+      if (fieldKeys != null) {
+        if (name !in fieldKeys) {
+          continue
+        }
+        position = valuesStart + offsets[i]
+      }
+      if (dates != null) {
+        dates[name] = readAny() as Long?
+      }
+      fields[name] = readAny()
+    }
+
+    return if (dates != null) {
+      Record(key, fields, null, dates)
+    } else {
+      Record(key, fields)
+    }
   }
 
   private fun Buffer.writeString(value: String) {
-    writeInt(value.length)
+    writeVarint(value.utf8Size())
     writeUtf8(value)
   }
-  private fun Buffer.readString(): String {
-    return readUtf8(readInt().toLong())
+
+  private fun ByteReader.readString(): String {
+    return readUtf8(readVarint().toInt())
+  }
+
+  private fun Buffer.writeVarint(value: Long) {
+    var remaining = value
+    while (remaining and 0x7FL.inv() != 0L) {
+      writeByte(((remaining and 0x7F) or 0x80).toInt())
+      remaining = remaining ushr 7
+    }
+    writeByte(remaining.toInt())
+  }
+
+  private fun ByteReader.readVarint(): Long {
+    var result = 0L
+    var shift = 0
+    while (true) {
+      val byte = readByte()
+      result = result or ((byte and 0x7F).toLong() shl shift)
+      if (byte and 0x80 == 0) {
+        return result
+      }
+      shift += 7
+      check(shift < 64) {
+        "Malformed varint"
+      }
+    }
   }
+
+  private fun Buffer.writeZigZag(value: Long) {
+    writeVarint((value shl 1) xor (value shr 63))
+  }
+
+  private fun ByteReader.readZigZag(): Long {
+    val value = readVarint()
+    return (value ushr 1) xor -(value and 1)
+  }
+
   private fun Buffer.writeAny(value: Any?) {
     when (value) {
+      null -> writeByte(NULL)
+      false -> writeByte(FALSE)
+      true -> writeByte(TRUE)
       is String -> {
-        buffer.writeByte(STRING)
-        buffer.writeString(value)
+        writeByte(STRING)
+        writeString(value)
       }
+
       is Int -> {
-        buffer.writeByte(INT)
-        buffer.writeInt(value)
+        writeByte(INT)
+        writeZigZag(value.toLong())
       }
+
       is Long -> {
-        buffer.writeByte(LONG)
-        buffer.writeLong(value)
+        writeByte(LONG)
+        writeZigZag(value)
       }
+
       is Double -> {
-        buffer.writeByte(DOUBLE)
-        buffer.writeString(value.toString())
+        writeByte(DOUBLE)
+        writeLong(value.toRawBits())
       }
-      is Boolean -> {
-        buffer.writeByte(BOOLEAN)
-        buffer.writeByte(if (value) 1 else 0)
+
+      is JsonNumber -> {
+        writeByte(JSON_NUMBER)
+        writeString(value.value)
       }
+
       is CacheKey -> {
-        buffer.writeByte(CACHE_KEY)
-        buffer.writeString(value.key)
+        writeByte(CACHE_KEY)
+        writeString(value.key)
       }
+
       is List<*> -> {
-        buffer.writeByte(LIST)
-        buffer.writeInt(value.size)
+        writeByte(LIST)
+        writeVarint(value.size.toLong())
         value.forEach {
-          buffer.writeAny(it)
+          writeAny(it)
         }
       }
+
       is Map<*, *> -> {
-        buffer.writeByte(MAP)
-        buffer.writeInt(value.size)
+        writeByte(MAP)
+        writeVarint(value.size.toLong())
         @Suppress("UNCHECKED_CAST")
         value as Map<String, Any?>
         value.forEach {
-          buffer.writeString(it.key)
-          buffer.writeAny(it.value)
+          writeString(it.key)
+          writeAny(it.value)
         }
       }
-      null -> {
-        buffer.writeByte(NULL)
-      }
+
       else -> error("Trying to write unsupported Record value: $value")
     }
   }
-  private fun Buffer.readAny(): Any? {
-    return when (val what = readByte().toInt()) {
+
+  private fun ByteReader.readAny(): Any? {
+    return when (val tag = readByte()) {
+      NULL -> null
+      FALSE -> false
+      TRUE -> true
       STRING -> readString()
-      INT -> readInt()
-      LONG ->readLong()
-      DOUBLE -> readString().toDouble()
-      BOOLEAN -> readByte() > 0
-      CACHE_KEY -> {
-        CacheKey(readString())
-      }
+      INT -> readZigZag().toInt()
+      LONG -> readZigZag()
+      DOUBLE -> Double.fromBits(readLong())
+      JSON_NUMBER -> JsonNumber(readString())
+      CACHE_KEY -> CacheKey(readString())
       LIST -> {
-        val size = readInt()
-        0.until(size).map {
+        val size = readVarint().toInt()
+        List(size) {
           readAny()
         }
       }
+
       MAP -> {
+        val size = readVarint().toInt()
+        val map = LinkedHashMap<String, Any?>(size)
+        repeat(size) {
+          map[readString()] = readAny()
+        }
+        map
+      }
+
+      else -> error("Trying to read unsupported Record value: $tag")
+    }
+  }
+
+  /**
+   * A cursor over the bytes of a record. Unlike [Buffer], it can move backwards to decode the fields in any order.
+   */
+  private class ByteReader(private val bytes: ByteArray) {
+    var position = 0
+
+    fun readByte(): Int {
+      return bytes[position++].toInt()
+    }
+
+    fun readLong(): Long {
+      var result = 0L
+      repeat(8) {
+        result = (result shl 8) or (readByte().toLong() and 0xFF)
+      }
+      return result
+    }
+
+    fun readUtf8(byteCount: Int): String {
+      val string = bytes.decodeToString(position, position + byteCount)
+      position += byteCount
+      return string
+    }
+  }
+
+  private const val VERSION_1 = 1
+  private const val FLAG_HAS_DATES = 1
+
+  private const val NULL = 0
+  private const val FALSE = 1
+  private const val TRUE = 2
+  private const val STRING = 3
+  private const val INT = 4
+  private const val LONG = 5
+  private const val DOUBLE = 6
+  private const val JSON_NUMBER = 7
+  private const val CACHE_KEY = 8
+  private const val LIST = 9
+  private const val MAP = 10
+
+  /**
+   * Reads the records written before the version byte was introduced. In that format, the first 4 bytes are the number
+   * of fields so the first byte is always 0 in practice.
+   */
+  private fun Buffer.readLegacyRecord(key: String, fieldKeys: Set<String>?): Record {
+    val size = (readByte().toInt() and 0xFF shl 16) or (readShort().toInt() and 0xFFFF)
+
+    val fields = mutableMapOf<String, Any?>()
+    val dates = mutableMapOf<String, Long?>()
+
+    for (i in 0.until(size)) {
+      val name = readLegacyString()
+      val date = readLegacyAny() as Long?
+      val value = readLegacyAny()
+      if (fieldKeys == null || name in fieldKeys) {
+        dates[name] = date
+        fields[name] = value
+      }
+    }
+
+    return Record(key, fields, null, dates)
+  }
+
+  private fun Buffer.readLegacyString(): String {
+    return readUtf8(readInt().toLong())
+  }
+
+  private fun Buffer.readLegacyAny(): Any? {
+    return when (val what = readByte().toInt()) {
+      LEGACY_STRING -> readLegacyString()
+      LEGACY_INT -> readInt()
+      LEGACY_LONG -> readLong()
+      LEGACY_DOUBLE -> readLegacyString().toDouble()
+      LEGACY_BOOLEAN -> readByte() > 0
+      LEGACY_CACHE_KEY -> {
+        CacheKey(readLegacyString())
+      }
+
+      LEGACY_LIST -> {
+        val size = readInt()
+        0.until(size).map {
+          readLegacyAny()
+        }
+      }
+
+      LEGACY_MAP -> {
         val size = readInt()
         0.until(size).associate {
-          readString() to readAny()
+          readLegacyString() to readLegacyAny()
         }
       }
-      NULL -> null
+
+      LEGACY_NULL -> null
       else -> error("Trying to read unsupported Record value: $what")
     }
   }
 
-  private const val STRING = 0
-  private const val INT = 1
-  private const val LONG = 2
-  private const val BOOLEAN = 3
-  private const val DOUBLE = 4
-  private const val LIST = 5
-  private const val MAP = 6
-  private const val CACHE_KEY = 7
-  private const val NULL = 8
+  private const val LEGACY_STRING = 0
+  private const val LEGACY_INT = 1
+  private const val LEGACY_LONG = 2
+  private const val LEGACY_BOOLEAN = 3
+  private const val LEGACY_DOUBLE = 4
+  private const val LEGACY_LIST = 5
+  private const val LEGACY_MAP = 6
+  private const val LEGACY_CACHE_KEY = 7
+  private const val LEGACY_NULL = 8
 }
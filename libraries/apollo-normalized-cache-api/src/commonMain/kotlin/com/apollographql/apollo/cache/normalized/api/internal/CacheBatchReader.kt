@@ -6,11 +6,19 @@ import com.apollographql.apollo.api.CompiledField
 import com.apollographql.apollo.api.CompiledFragment
 import com.apollographql.apollo.api.CompiledSelection
 import com.apollographql.apollo.api.Executable
+import com.apollographql.apollo.api.json.JsonReader
+import com.apollographql.apollo.api.json.readAny
 import com.apollographql.apollo.cache.normalized.api.CacheData
 import com.apollographql.apollo.cache.normalized.api.CacheHeaders
 import com.apollographql.apollo.cache.normalized.api.CacheKey
+import com.apollographql.apollo.cache.normalized.api.CacheKeyResolver
 import com.apollographql.apollo.cache.normalized.api.CacheResolver
+import com.apollographql.apollo.cache.normalized.api.DefaultCacheResolver
+import com.apollographql.apollo.cache.normalized.api.ExpireDateCacheResolver
+import com.apollographql.apollo.cache.normalized.api.FieldPolicyCacheResolver
+import com.apollographql.apollo.cache.normalized.api.PartialReadOnlyNormalizedCache
 import com.apollographql.apollo.cache.normalized.api.ReadOnlyNormalizedCache
+import com.apollographql.apollo.cache.normalized.api.ReceiveDateCacheResolver
 import com.apollographql.apollo.cache.normalized.api.Record
 import com.apollographql.apollo.exception.CacheMissException
 import kotlin.jvm.JvmSuppressWildcards
@@ -19,7 +27,10 @@ import kotlin.jvm.JvmSuppressWildcards
  * A resolver that solves the "N+1" problem by batching all SQL queries at a given depth
  * It respects skip/include directives
  *
- * Returns the data in [toMap]
+ * [collectData] loads the records and resolves each field once with [cacheResolver]. The data is then read from the
+ * resolved values with a [RecordJsonReader] so that no intermediate Map is built.
+ *
+ * If [cache] is a [PartialReadOnlyNormalizedCache], only the fields that are selected are loaded.
  */
 internal class CacheBatchReader(
     private val cache: ReadOnlyNormalizedCache,
@@ -32,58 +43,35 @@ internal class CacheBatchReader(
 ) {
   /**
    * @param key: the key of the record we need to fetch
-   * @param path: the path where this pending reference needs to be inserted
    */
   class PendingReference(
       val key: String,
-      val path: List<Any>,
       val selections: List<CompiledSelection>,
       val parentType: String,
   )
 
   /**
-   * The objects read from the cache with only the fields that are selected and maybe some values changed
-   * The key is the path to the object
+   * The records loaded so far. When [cache] is a [PartialReadOnlyNormalizedCache], a record that is loaded in several
+   * batches contains the fields of all the batches.
    */
-  private val data = mutableMapOf<List<Any>, Map<String, Any?>>()
+  private val records = mutableMapOf<String, Record>()
 
   private val pendingReferences = mutableListOf<PendingReference>()
 
-  private class CollectState(val variables: Executable.Variables) {
-    val fields = mutableListOf<CompiledField>()
-  }
-
   /**
-   *
+   * The resolved values of the fields, by object id and then by field key. See [RecordCacheData.resolvedFields].
    */
-  private fun collect(selections: List<CompiledSelection>, parentType: String, typename: String?, state: CollectState) {
-    selections.forEach { compiledSelection ->
-      when (compiledSelection) {
-        is CompiledField -> {
-          state.fields.add(compiledSelection)
-        }
-
-        is CompiledFragment -> {
-          if (((typename in compiledSelection.possibleTypesSet) || compiledSelection.typeCondition == parentType) && !compiledSelection.shouldSkip(state.variables.valueMap)) {
-            collect(compiledSelection.selections, parentType, typename, state)
-          }
-        }
-      }
-    }
-  }
+  private val resolvedFields = mutableMapOf<List<Any>, MutableMap<String, Any?>>()
 
-  private fun collectAndMergeSameDirectives(
-      selections: List<CompiledSelection>,
-      parentType: String,
-      variables: Executable.Variables,
-      typename: String?,
-  ): List<CompiledField> {
-    val state = CollectState(variables)
-    collect(selections, parentType, typename, state)
-    return state.fields.groupBy { (it.responseName) to it.condition }.values.map {
-      it.first().newBuilder().selections(it.flatMap { it.selections }).build()
-    }
-  }
+  /**
+   * Whether [cacheResolver] is known to only read the fields that are selected. Other resolvers may read any field of
+   * the records so they always get full records.
+   */
+  private val readsSelectedFieldsOnly = cacheResolver === DefaultCacheResolver ||
+      cacheResolver === FieldPolicyCacheResolver ||
+      cacheResolver is CacheKeyResolver ||
+      cacheResolver is ReceiveDateCacheResolver ||
+      cacheResolver is ExpireDateCacheResolver
 
   fun collectData(): CacheData {
     pendingReferences.add(
@@ -91,12 +79,11 @@ internal class CacheBatchReader(
             key = rootKey,
             selections = rootSelections,
             parentType = rootTypename,
-            path = emptyList()
         )
     )
 
     while (pendingReferences.isNotEmpty()) {
-      val records = cache.loadRecords(pendingReferences.map { it.key }, cacheHeaders).associateBy { it.key }
+      loadRecords(pendingReferences)
 
       val copy = pendingReferences.toList()
       pendingReferences.clear()
@@ -106,119 +93,200 @@ internal class CacheBatchReader(
           if (pendingReference.key == CacheKey.rootKey().key) {
             // This happens the very first time we read the cache
             record = Record(pendingReference.key, emptyMap())
+            records[record.key] = record
           } else {
             throw CacheMissException(pendingReference.key)
           }
         }
 
-        val collectedFields = collectAndMergeSameDirectives(pendingReference.selections, pendingReference.parentType, variables, record["__typename"] as? String)
+        record.resolveFields(record.key, listOf(record.key), pendingReference.selections, pendingReference.parentType)
+      }
+    }
 
-        val map = collectedFields.mapNotNull {
-          if (it.shouldSkip(variables.valueMap)) {
-            return@mapNotNull null
-          }
+    return RecordCacheData(
+        records = records,
+        resolvedFields = resolvedFields,
+        root = records[rootKey]!!,
+        rootSelections = rootSelections,
+        rootTypename = rootTypename,
+        variables = variables,
+    )
+  }
 
-          val value = cacheResolver.resolveField(it, variables, record, record.key)
-
-          value.registerCacheKeys(pendingReference.path + it.responseName, it.selections, it.type.rawType().name)
-
-          it.responseName to value
-        }.toMap()
-
-        if (data.contains(pendingReference.path)) {
-          /**
-           * In the presence of include directives, we might already have read some data.
-           * In that case, we need to merge them.
-           *
-           * Note1: if a key is present in both the existing and the new data, we expect the
-           * value to be the same.
-           * Note2: we're not deep merging because the reader reads normalized records. The only
-           * case where there can be a nested map is scalar, and we expect the values to be the
-           * same as in Note1.
-           * See https://github.com/apollographql/apollo-kotlin/issues/6901
-           */
-          data[pendingReference.path] = data[pendingReference.path]!! + map
-        } else {
-          data[pendingReference.path] = map
+  private fun loadRecords(references: List<PendingReference>) {
+    if (cache !is PartialReadOnlyNormalizedCache || !readsSelectedFieldsOnly) {
+      // Full records only need to be loaded once
+      val keys = references.mapNotNullTo(mutableSetOf()) { reference -> reference.key.takeIf { !records.containsKey(it) } }
+      if (keys.isNotEmpty()) {
+        cache.loadRecords(keys, cacheHeaders).forEach {
+          records[it.key] = it
         }
-
       }
+      return
     }
 
-    return CacheBatchReaderData(data)
+    val fieldKeys = mutableMapOf<String, MutableSet<String>>()
+    references.forEach {
+      // The typename is needed to resolve the fragments
+      it.selections.collectFieldKeys(fieldKeys.getOrPut(it.key) { mutableSetOf("__typename") })
+    }
+    // Only load the fields that were not loaded in a previous batch
+    fieldKeys.forEach { (key, keys) ->
+      records[key]?.let { keys.removeAll(it.keys) }
+    }
+    fieldKeys.values.removeAll { it.isEmpty() }
+    if (fieldKeys.isEmpty()) {
+      return
+    }
+    cache.loadRecords(fieldKeys, cacheHeaders).forEach {
+      val existing = records[it.key]
+      records[it.key] = if (existing == null) it else existing.union(it)
+    }
   }
 
   /**
-   * The path leading to this value
+   * Collects the keys of the fields that may be read from a record.
+   *
+   * The typename of the record is not known yet so the fields of all the fragments are collected. Skip/include
+   * directives are ignored too. Reading a few more fields than needed is fine.
    */
-  private fun Any?.registerCacheKeys(path: List<Any>, selections: List<CompiledSelection>, parentType: String) {
-    when (this) {
-      is CacheKey -> {
-        pendingReferences.add(
-            PendingReference(
-                key = key,
-                selections = selections,
-                parentType = parentType,
-                path = path
-            )
-        )
+  private fun List<CompiledSelection>.collectFieldKeys(fieldKeys: MutableSet<String>) {
+    forEach {
+      when (it) {
+        is CompiledField -> fieldKeys.add(it.nameWithArguments(variables))
+        is CompiledFragment -> it.selections.collectFieldKeys(fieldKeys)
       }
+    }
+  }
 
-      is List<*> -> {
-        forEachIndexed { index, value ->
-          value.registerCacheKeys(path + index, selections, parentType)
-        }
+  /**
+   * Resolves the fields of this record or map and registers the [CacheKey]s of its object fields so that their records
+   * are loaded in the next batch.
+   *
+   * A field that was already resolved, because the record is read with several selection sets, is not resolved again.
+   *
+   * @param key the key of this record or "" if this is a map
+   * @param id the id of this record or map in [resolvedFields]
+   */
+  private fun Map<String, Any?>.resolveFields(
+      key: String,
+      id: List<Any>,
+      selections: List<CompiledSelection>,
+      parentType: String,
+  ) {
+    val values = resolvedFields.getOrPut(id) { mutableMapOf() }
+    selections.collectFields(parentType, get("__typename") as? String, variables).forEach {
+      val fieldKey = it.nameWithArguments(variables)
+      val value = if (values.containsKey(fieldKey)) {
+        values[fieldKey]
+      } else {
+        cacheResolver.resolveField(it, variables, this, key).also { value -> values[fieldKey] = value }
       }
+      if (it.selections.isNotEmpty()) {
+        value.registerCacheKeys(id + fieldKey, it.selections, it.type.rawType().name)
+      }
+    }
+  }
 
-      is Map<*, *> -> {
-        @Suppress("UNCHECKED_CAST")
-        this as Map<String, @JvmSuppressWildcards Any?>
-        val collectedFields = collectAndMergeSameDirectives(selections, parentType, variables, get("__typename") as? String)
-        collectedFields.mapNotNull {
-          if (it.shouldSkip(variables.valueMap)) {
-            return@mapNotNull null
-          }
-
-          val value = cacheResolver.resolveField(it, variables, this, "")
-          value.registerCacheKeys(path + it.responseName, it.selections, it.type.rawType().name)
+  private fun Any?.registerCacheKeys(id: List<Any>, selections: List<CompiledSelection>, parentType: String) {
+    when (this) {
+      is CacheKey -> pendingReferences.add(
+          PendingReference(
+              key = key,
+              selections = selections,
+              parentType = parentType,
+          )
+      )
 
-          it.responseName to value
-        }.toMap()
+      is List<*> -> forEachIndexed { index, item ->
+        item.registerCacheKeys(id + index, selections, parentType)
       }
 
+      is Map<*, *> -> {
+        @Suppress("UNCHECKED_CAST")
+        (this as Map<String, @JvmSuppressWildcards Any?>).resolveFields("", id, selections, parentType)
+      }
     }
   }
 
-  private data class CacheBatchReaderData(
-      private val data: Map<List<Any>, Map<String, Any?>>,
-  ) : CacheData {
-    @Suppress("UNCHECKED_CAST")
-    override fun toMap(): Map<String, Any?> {
-      return data[emptyList()].replaceCacheKeys(emptyList()) as Map<String, Any?>
+  private fun Record.union(other: Record): Record {
+    val date = this.date
+    val otherDate = other.date
+    return if (date == null && otherDate == null) {
+      Record(key, fields + other.fields, other.mutationId)
+    } else {
+      Record(key, fields + other.fields, other.mutationId, date.orEmpty() + otherDate.orEmpty())
     }
+  }
+}
 
-    private fun Any?.replaceCacheKeys(path: List<Any>): Any? {
-      return when (this) {
-        is CacheKey -> {
-          data[path].replaceCacheKeys(path)
-        }
+/**
+ * The records read by [CacheBatchReader]. Use [jsonReader] to read the data without building its Map.
+ *
+ * @param resolvedFields the values returned by the [CacheResolver] for each field, by object id and then by field key.
+ * The id of a record is a list containing its key. The id of a map nested in a record is the id of its parent followed
+ * by the key of the field that contains it and, for lists, the index of the map.
+ */
+internal class RecordCacheData(
+    private val records: Map<String, Record>,
+    private val resolvedFields: Map<List<Any>, Map<String, Any?>>,
+    private val root: Record,
+    private val rootSelections: List<CompiledSelection>,
+    private val rootTypename: String,
+    private val variables: Executable.Variables,
+) : CacheData {
+  fun jsonReader(): JsonReader {
+    return RecordJsonReader(records, resolvedFields, root, rootSelections, rootTypename, variables)
+  }
 
-        is List<*> -> {
-          mapIndexed { index, src ->
-            src.replaceCacheKeys(path + index)
-          }
-        }
+  override fun toMap(): Map<String, Any?> {
+    @Suppress("UNCHECKED_CAST")
+    return jsonReader().readAny() as Map<String, Any?>
+  }
+}
 
-        is Map<*, *> -> {
-          // This will traverse Map custom scalars but this is ok as it shouldn't contain any CacheKey
-          mapValues {
-            it.value.replaceCacheKeys(path + (it.key as String))
-          }
+/**
+ * Returns the fields of this selection set for an object of type [typename], merged by response name.
+ *
+ * Fields with the same response name but different skip/include directives are merged into a single field with the
+ * selections of both so that they read into the same object.
+ * See https://github.com/apollographql/apollo-kotlin/issues/6901
+ *
+ * @param parentType the type of the field that contains this selection set
+ */
+internal fun List<CompiledSelection>.collectFields(
+    parentType: String,
+    typename: String?,
+    variables: Executable.Variables,
+): List<CompiledField> {
+  val fields = mutableListOf<CompiledField>()
+  collectFields(parentType, typename, variables, fields)
+  return fields.groupBy { it.responseName }.values.map {
+    if (it.size == 1) {
+      it.first()
+    } else {
+      it.first().newBuilder().selections(it.flatMap { it.selections }).build()
+    }
+  }
+}
+
+private fun List<CompiledSelection>.collectFields(
+    parentType: String,
+    typename: String?,
+    variables: Executable.Variables,
+    fields: MutableList<CompiledField>,
+) {
+  forEach { compiledSelection ->
+    when (compiledSelection) {
+      is CompiledField -> {
+        if (!compiledSelection.shouldSkip(variables.valueMap)) {
+          fields.add(compiledSelection)
         }
+      }
 
-        else -> {
-          // Scalar value
-          this
+      is CompiledFragment -> {
+        if (((typename in compiledSelection.possibleTypesSet) || compiledSelection.typeCondition == parentType) && !compiledSelection.shouldSkip(variables.valueMap)) {
+          compiledSelection.selections.collectFields(parentType, typename, variables, fields)
         }
       }
     }
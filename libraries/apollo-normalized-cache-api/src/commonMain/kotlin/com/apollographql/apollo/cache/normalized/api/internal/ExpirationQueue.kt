@@ -0,0 +1,88 @@
+package com.apollographql.apollo.cache.normalized.api.internal
+
+/**
+ * A timer queue of keys ordered by expiration date, backed by a binary min-heap.
+ *
+ * Adding a key is O(log n) and polling the expired keys is O(expired * log n) so that expired entries can be
+ * evicted without scanning the whole cache.
+ *
+ * The queue does not deduplicate keys: a key that is written several times is added several times and callers must
+ * check that the entry is still expired before evicting it.
+ *
+ * This class is not thread safe.
+ */
+internal class ExpirationQueue<Key> {
+  private var expiresAtMillis = LongArray(16)
+  private var keys = arrayOfNulls<Any?>(16)
+
+  var size: Int = 0
+    private set
+
+  fun add(key: Key, expiresAtMillis: Long) {
+    if (size == this.expiresAtMillis.size) {
+      this.expiresAtMillis = this.expiresAtMillis.copyOf(size * 2)
+      keys = keys.copyOf(size * 2)
+    }
+    var index = size
+    size++
+    // sift up
+    while (index > 0) {
+      val parent = (index - 1) / 2
+      if (this.expiresAtMillis[parent] <= expiresAtMillis) {
+        break
+      }
+      this.expiresAtMillis[index] = this.expiresAtMillis[parent]
+      keys[index] = keys[parent]
+      index = parent
+    }
+    this.expiresAtMillis[index] = expiresAtMillis
+    keys[index] = key
+  }
+
+  /**
+   * Removes and returns the keys that expire at or before [nowMillis]
+   */
+  fun pollExpired(nowMillis: Long): List<Key> {
+    val expired = mutableListOf<Key>()
+    while (size > 0 && expiresAtMillis[0] <= nowMillis) {
+      @Suppress("UNCHECKED_CAST")
+      expired.add(keys[0] as Key)
+      removeHead()
+    }
+    return expired
+  }
+
+  fun clear() {
+    keys.fill(null)
+    size = 0
+  }
+
+  private fun removeHead() {
+    size--
+    val lastExpiresAtMillis = expiresAtMillis[size]
+    val lastKey = keys[size]
+    keys[size] = null
+    if (size == 0) {
+      return
+    }
+    var index = 0
+    // sift down
+    while (true) {
+      var child = 2 * index + 1
+      if (child >= size) {
+        break
+      }
+      if (child + 1 < size && expiresAtMillis[child + 1] < expiresAtMillis[child]) {
+        child++
+      }
+      if (lastExpiresAtMillis <= expiresAtMillis[child]) {
+        break
+      }
+      expiresAtMillis[index] = expiresAtMillis[child]
+      keys[index] = keys[child]
+      index = child
+    }
+    expiresAtMillis[index] = lastExpiresAtMillis
+    keys[index] = lastKey
+  }
+}
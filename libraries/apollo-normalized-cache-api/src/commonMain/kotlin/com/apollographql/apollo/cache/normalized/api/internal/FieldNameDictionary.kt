@@ -0,0 +1,98 @@
+package com.apollographql.apollo.cache.normalized.api.internal
+
+import com.apollographql.apollo.annotations.ApolloInternal
+
+/**
+ * Assigns small integer ids to the field names of each typename so that [BlobRecordSerializer] doesn't have to write
+ * the same field names in every record.
+ *
+ * Ids are assigned by [storage] so that they can be persisted alongside the records. Field names with arguments are
+ * never interned as there is an unbounded number of them.
+ *
+ * This class is thread safe. [storage] is never called while holding the lock.
+ */
+@ApolloInternal
+class FieldNameDictionary(private val storage: Storage) {
+  interface Storage {
+    /**
+     * Returns all the names known for [typename], indexed by id
+     */
+    fun load(typename: String): Map<Int, String>
+
+    /**
+     * Adds [name] to the names of [typename] if it's not there already and returns its id
+     */
+    fun add(typename: String, name: String): Int
+  }
+
+  private val lock = CacheLock()
+  private val scopes = mutableMapOf<String, Scope>()
+
+  private class Scope {
+    val names = mutableMapOf<Int, String>()
+    val ids = mutableMapOf<String, Int>()
+
+    fun put(id: Int, name: String) {
+      names[id] = name
+      ids[name] = id
+    }
+  }
+
+  /**
+   * Returns the id of [name] for [typename] or -1 if [name] shouldn't be interned
+   */
+  fun idFor(typename: String, name: String): Int {
+    if (name.contains('(')) {
+      return -1
+    }
+
+    lock.lock { scopes[typename]?.ids?.get(name) }?.let { return it }
+
+    if (lock.lock { !scopes.containsKey(typename) }) {
+      // Load the whole typename at once rather than adding the names one by one
+      load(typename)
+      lock.lock { scopes[typename]?.ids?.get(name) }?.let { return it }
+    }
+
+    val id = storage.add(typename, name)
+    lock.lock {
+      scopes.getOrPut(typename) { Scope() }.put(id, name)
+    }
+    return id
+  }
+
+  /**
+   * Returns the name for [id] in [typename]
+   *
+   * @throws IllegalStateException if [id] is unknown
+   */
+  fun nameFor(typename: String, id: Int): String {
+    val name = lock.lock { scopes[typename]?.names?.get(id) }
+    if (name != null) {
+      return name
+    }
+
+    // The name might have been added by another instance, reload
+    return load(typename)[id] ?: error("Apollo: unknown field name id '$id' for typename '$typename'")
+  }
+
+  /**
+   * Forgets the names loaded in memory. Call this if a transaction that added names was rolled back.
+   */
+  fun clear() {
+    lock.lock {
+      scopes.clear()
+    }
+  }
+
+  private fun load(typename: String): Map<Int, String> {
+    val names = storage.load(typename)
+    lock.lock {
+      val scope = scopes.getOrPut(typename) { Scope() }
+      names.forEach { (id, name) ->
+        scope.put(id, name)
+      }
+    }
+    return names
+  }
+}
@@ -0,0 +1,34 @@
+package com.apollographql.apollo.cache.normalized.api.internal
+
+import com.apollographql.apollo.annotations.ApolloInternal
+
+/**
+ * A [FieldNameDictionary.Storage] that keeps the names in memory. The ids are lost when the process exits.
+ *
+ * This class is not thread safe.
+ */
+@ApolloInternal
+class InMemoryFieldNameStorage : FieldNameDictionary.Storage {
+  private val names = mutableMapOf<String, MutableList<String>>()
+
+  /**
+   * Returns the names of [typename] in id order
+   */
+  fun names(typename: String): List<String> {
+    return names[typename].orEmpty()
+  }
+
+  override fun load(typename: String): Map<Int, String> {
+    return names(typename).withIndex().associate { it.index to it.value }
+  }
+
+  override fun add(typename: String, name: String): Int {
+    val typenameNames = names.getOrPut(typename) { mutableListOf() }
+    val index = typenameNames.indexOf(name)
+    if (index != -1) {
+      return index
+    }
+    typenameNames.add(name)
+    return typenameNames.size - 1
+  }
+}
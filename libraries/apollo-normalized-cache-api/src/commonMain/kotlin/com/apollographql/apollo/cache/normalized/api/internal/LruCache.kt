@@ -12,6 +12,9 @@ internal typealias Weigher<Key, Value> = (Key, Value?) -> Int
  * [weigher] - to be called to calculate the estimated size (weight) of the cache entry defined by its [Key] and [Value].
  *             By default it returns 1.
  *
+ * The weigher is called once each time a value is set and the weight is kept alongside the entry until it is replaced
+ * or removed.
+ *
  * Cache trim performed only on new entry insertion.
  */
 internal class LruCache<Key, Value>(
@@ -31,12 +34,22 @@ internal class LruCache<Key, Value>(
     return node?.value
   }
 
+  /**
+   * Returns the value for [key] without updating the LRU order
+   */
+  fun peek(key: Key): Value? {
+    return cache[key]?.value
+  }
+
   operator fun set(key: Key, value: Value) {
     val node = cache[key]
     if (node == null) {
       cache[key] = addNode(key, value)
     } else {
+      val weight = weigher(key, value)
+      size += weight - node.weight
       node.value = value
+      node.weight = weight
       moveNodeToHead(node)
     }
 
@@ -93,6 +106,7 @@ internal class LruCache<Key, Value>(
     val node = Node(
         key = key,
         value = value,
+        weight = weigher(key, value),
         next = headNode,
         prev = null,
     )
@@ -105,7 +119,7 @@ internal class LruCache<Key, Value>(
       node.next?.prev = headNode
     }
 
-    size += weigher(key, value)
+    size += node.weight
 
     return node
   }
@@ -143,7 +157,7 @@ internal class LruCache<Key, Value>(
       node.next?.prev = node.prev
     }
 
-    size -= weigher(node.key!!, node.value)
+    size -= node.weight
 
     node.key = null
     node.value = null
@@ -154,6 +168,11 @@ internal class LruCache<Key, Value>(
   private class Node<Key, Value>(
       var key: Key?,
       var value: Value?,
+      /**
+       * The weight of this node as computed by the weigher when [value] was set. It is cached here so that eviction
+       * and removal do not need to weigh the value again.
+       */
+      var weight: Int,
       var next: Node<Key, Value>?,
       var prev: Node<Key, Value>?,
   )
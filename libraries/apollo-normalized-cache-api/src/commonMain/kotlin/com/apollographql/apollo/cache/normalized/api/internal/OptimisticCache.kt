@@ -6,6 +6,7 @@ import com.apollographql.apollo.annotations.ApolloInternal
 import com.apollographql.apollo.cache.normalized.api.CacheHeaders
 import com.apollographql.apollo.cache.normalized.api.CacheKey
 import com.apollographql.apollo.cache.normalized.api.NormalizedCache
+import com.apollographql.apollo.cache.normalized.api.PartialReadOnlyNormalizedCache
 import com.apollographql.apollo.cache.normalized.api.Record
 import com.apollographql.apollo.cache.normalized.api.Record.Companion.changedKeys
 import com.benasher44.uuid.Uuid
@@ -13,9 +14,14 @@ import kotlin.math.max
 import kotlin.reflect.KClass
 
 @ApolloInternal
-class OptimisticCache : NormalizedCache() {
+class OptimisticCache : NormalizedCache(), PartialReadOnlyNormalizedCache {
   private val recordJournals = mutableMapOf<String, RecordJournal>()
 
+  /**
+   * An index of the keys of [recordJournals], built on the first call to [remove] with a prefix pattern
+   */
+  private var prefixIndex: PrefixIndex? = null
+
   override fun loadRecord(key: String, cacheHeaders: CacheHeaders): Record? {
     return try {
       val nonOptimisticRecord = nextCache?.loadRecord(key, cacheHeaders)
@@ -32,6 +38,20 @@ class OptimisticCache : NormalizedCache() {
     }
   }
 
+  /**
+   * Forwards the field keys if the next cache supports partial reads. The optimistic updates are merged as a whole.
+   */
+  override fun loadRecords(fieldKeys: Map<String, Set<String>>, cacheHeaders: CacheHeaders): Collection<Record> {
+    val next = nextCache
+    if (next !is PartialReadOnlyNormalizedCache) {
+      return loadRecords(fieldKeys.keys, cacheHeaders)
+    }
+    val nonOptimisticRecords = next.loadRecords(fieldKeys, cacheHeaders).associateBy { it.key }
+    return fieldKeys.keys.mapNotNull { key ->
+      nonOptimisticRecords[key].mergeJournalRecord(key)
+    }
+  }
+
   override fun merge(record: Record, cacheHeaders: CacheHeaders): Set<String> {
     return nextCache?.merge(record, cacheHeaders) ?: emptySet()
   }
@@ -42,6 +62,7 @@ class OptimisticCache : NormalizedCache() {
 
   override fun clearAll() {
     recordJournals.clear()
+    prefixIndex?.clear()
     nextCache?.clearAll()
   }
 
@@ -51,6 +72,7 @@ class OptimisticCache : NormalizedCache() {
     val recordJournal = recordJournals[cacheKey.key]
     if (recordJournal != null) {
       recordJournals.remove(cacheKey.key)
+      prefixIndex?.remove(cacheKey.key)
       result = true
       if (cascade) {
         for (cacheReference in recordJournal.current.referencedFields()) {
@@ -63,13 +85,29 @@ class OptimisticCache : NormalizedCache() {
 
   override fun remove(pattern: String): Int {
     val regex = patternToRegex(pattern)
+    val prefix = patternToPrefix(pattern)
     var total = 0
-    val iterator = recordJournals.iterator()
-    while(iterator.hasNext()) {
-      val entry = iterator.next()
-      if (regex.matches(entry.key)) {
-        iterator.remove()
-        total++
+    if (prefix != null) {
+      val index = prefixIndex ?: PrefixIndex().also { newIndex ->
+        recordJournals.keys.forEach { newIndex.add(it) }
+        prefixIndex = newIndex
+      }
+      for (key in index.keysWithPrefix(prefix)) {
+        if (regex.matches(key)) {
+          index.remove(key)
+          recordJournals.remove(key)
+          total++
+        }
+      }
+    } else {
+      val iterator = recordJournals.iterator()
+      while(iterator.hasNext()) {
+        val entry = iterator.next()
+        if (regex.matches(entry.key)) {
+          iterator.remove()
+          prefixIndex?.remove(entry.key)
+          total++
+        }
       }
     }
 
@@ -87,6 +125,7 @@ class OptimisticCache : NormalizedCache() {
     val journal = recordJournals[record.key]
     return if (journal == null) {
       recordJournals[record.key] = RecordJournal(record)
+      prefixIndex?.add(record.key)
       record.fieldKeys()
     } else {
       journal.addPatch(record)
@@ -103,6 +142,7 @@ class OptimisticCache : NormalizedCache() {
       changedCacheKeys.addAll(result.changedKeys)
       if (result.isEmpty) {
         iterator.remove()
+        prefixIndex?.remove(entry.key)
       }
     }
 
@@ -0,0 +1,189 @@
+package com.apollographql.apollo.cache.normalized.api.internal
+
+/**
+ * A radix tree of cache keys that returns the keys starting with a given prefix in O(prefix length + matches).
+ *
+ * Like the patterns of [com.apollographql.apollo.cache.normalized.api.NormalizedCache.remove], the lookups are
+ * case-insensitive: keys are indexed by their lowercase form and the original keys are returned.
+ *
+ * This class is not thread safe.
+ */
+internal class PrefixIndex {
+  private val root = Node("")
+
+  /**
+   * The number of keys in the index
+   */
+  var size: Int = 0
+    private set
+
+  fun add(key: String) {
+    val lowercaseKey = key.lowercase()
+    var node = root
+    var index = 0
+    while (index < lowercaseKey.length) {
+      val children = node.children ?: mutableMapOf<Char, Node>().also { node.children = it }
+      val child = children[lowercaseKey[index]]
+      if (child == null) {
+        val leaf = Node(lowercaseKey.substring(index))
+        children[lowercaseKey[index]] = leaf
+        node = leaf
+        break
+      }
+
+      val label = child.label
+      val common = commonPrefixLength(label, lowercaseKey, index)
+      if (common < label.length) {
+        // Split the edge
+        val split = Node(label.substring(0, common))
+        child.label = label.substring(common)
+        split.children = mutableMapOf(child.label[0] to child)
+        children[lowercaseKey[index]] = split
+        node = split
+      } else {
+        node = child
+      }
+      index += common
+    }
+
+    val keys = node.keys ?: mutableSetOf<String>().also { node.keys = it }
+    if (keys.add(key)) {
+      size++
+    }
+  }
+
+  fun remove(key: String) {
+    val lowercaseKey = key.lowercase()
+    val path = mutableListOf(root)
+    var node = root
+    var index = 0
+    while (index < lowercaseKey.length) {
+      val child = node.children?.get(lowercaseKey[index]) ?: return
+      val label = child.label
+      if (commonPrefixLength(label, lowercaseKey, index) < label.length) {
+        return
+      }
+      index += label.length
+      node = child
+      path.add(node)
+    }
+
+    val keys = node.keys ?: return
+    if (!keys.remove(key)) {
+      return
+    }
+    size--
+    if (keys.isNotEmpty()) {
+      return
+    }
+    node.keys = null
+
+    // Prune the empty nodes
+    var i = path.size - 1
+    while (i > 0 && node.keys == null && node.children.isNullOrEmpty()) {
+      val parent = path[i - 1]
+      parent.children!!.remove(node.label[0])
+      node = parent
+      i--
+    }
+
+    // Merge a node that only has one child and no keys into its child
+    if (node !== root && node.keys == null) {
+      val children = node.children
+      if (children != null && children.size == 1) {
+        val child = children.values.first()
+        node.label += child.label
+        node.keys = child.keys
+        node.children = child.children
+      }
+    }
+  }
+
+  /**
+   * Returns the keys that start with [prefix], ignoring case
+   */
+  fun keysWithPrefix(prefix: String): List<String> {
+    val lowercasePrefix = prefix.lowercase()
+    var node = root
+    var index = 0
+    while (index < lowercasePrefix.length) {
+      val child = node.children?.get(lowercasePrefix[index]) ?: return emptyList()
+      val label = child.label
+      val length = minOf(label.length, lowercasePrefix.length - index)
+      if (commonPrefixLength(label, lowercasePrefix, index) < length) {
+        return emptyList()
+      }
+      // If the label is longer than the rest of the prefix, the whole subtree matches
+      index += length
+      node = child
+    }
+
+    val result = mutableListOf<String>()
+    val stack = mutableListOf(node)
+    while (stack.isNotEmpty()) {
+      val current = stack.removeAt(stack.size - 1)
+      current.keys?.let { result.addAll(it) }
+      current.children?.values?.let { stack.addAll(it) }
+    }
+    return result
+  }
+
+  fun clear() {
+    root.children = null
+    root.keys = null
+    size = 0
+  }
+
+  private fun commonPrefixLength(label: String, key: String, keyStart: Int): Int {
+    var i = 0
+    while (i < label.length && keyStart + i < key.length && label[i] == key[keyStart + i]) {
+      i++
+    }
+    return i
+  }
+
+  private class Node(var label: String) {
+    var children: MutableMap<Char, Node>? = null
+
+    /**
+     * The original keys whose lowercase form ends at this node
+     */
+    var keys: MutableSet<String>? = null
+  }
+}
+
+/**
+ * Returns the literal prefix of [pattern] if [pattern] matches exactly the keys starting with this prefix, i.e. if its
+ * only wildcard is a trailing `%`. Returns null for any other pattern.
+ *
+ * See [com.apollographql.apollo.cache.normalized.api.NormalizedCache.remove] for the pattern syntax.
+ */
+internal fun patternToPrefix(pattern: String): String? {
+  if (!pattern.endsWith('%')) {
+    return null
+  }
+  val prefix = StringBuilder()
+  var i = 0
+  while (i < pattern.length - 1) {
+    when (val c = pattern[i]) {
+      '\\' -> {
+        if (i + 1 >= pattern.length - 1) {
+          // The trailing '%' is escaped or the escape is invalid
+          return null
+        }
+        val escaped = pattern[i + 1]
+        if (escaped != '\\' && escaped != '%' && escaped != '_') {
+          return null
+        }
+        prefix.append(escaped)
+        i += 2
+        continue
+      }
+
+      '%', '_' -> return null
+      else -> prefix.append(c)
+    }
+    i++
+  }
+  return prefix.toString()
+}
@@ -0,0 +1,452 @@
+@file:Suppress("DEPRECATION")
+
+package com.apollographql.apollo.cache.normalized.api.internal
+
+import com.apollographql.apollo.api.CompiledField
+import com.apollographql.apollo.api.CompiledSelection
+import com.apollographql.apollo.api.Executable
+import com.apollographql.apollo.api.json.JsonNumber
+import com.apollographql.apollo.api.json.JsonReader
+import com.apollographql.apollo.api.json.MapJsonReader
+import com.apollographql.apollo.cache.normalized.api.CacheKey
+import com.apollographql.apollo.cache.normalized.api.Record
+import com.apollographql.apollo.exception.CacheMissException
+import com.apollographql.apollo.exception.JsonDataException
+
+/**
+ * A [JsonReader] that reads the data of an operation or fragment directly from the records loaded by
+ * [CacheBatchReader], without building an intermediate Map.
+ *
+ * The fields of each object are collected from the selections and their values are read from [resolvedFields] so that
+ * the [com.apollographql.apollo.cache.normalized.api.CacheResolver] is not called again. [CacheKey]s are replaced by
+ * their record in [records]. Maps and lists without selections, such as the values of custom scalars, are read with a
+ * [MapJsonReader].
+ *
+ * Like [MapJsonReader], [rewind] can be used to read the fields of the current object again.
+ */
+internal class RecordJsonReader(
+    private val records: Map<String, Record>,
+    private val resolvedFields: Map<List<Any>, Map<String, Any?>>,
+    root: Record,
+    rootSelections: List<CompiledSelection>,
+    rootTypename: String,
+    private val variables: Executable.Variables,
+) : JsonReader {
+  private sealed class Frame
+
+  /**
+   * @param id the id of the object, see [RecordCacheData]
+   * @param values the resolved values of the fields of the object, by field key
+   * @param fields the fields of the object to read, already collected for its typename.
+   */
+  private class ObjectFrame(
+      val id: List<Any>,
+      val values: Map<String, Any?>,
+      val fields: List<CompiledField>,
+  ) : Frame() {
+    var index = -1
+
+    /**
+     * The response name of the last field read, for [getPath]
+     */
+    var name: String? = null
+
+    /**
+     * The expected index in the next call to [selectName]
+     */
+    var nameIndex = 0
+  }
+
+  /**
+   * @param id the id of the list, followed by the index to get the id of an item
+   * @param selections the selections of the items
+   */
+  private class ListFrame(
+      val id: List<Any>,
+      val list: List<*>,
+      val selections: List<CompiledSelection>,
+      val typename: String,
+  ) : Frame() {
+    var index = -1
+  }
+
+  private val stack = ArrayList<Frame>()
+
+  private var peekedToken = JsonReader.Token.BEGIN_OBJECT
+  private var peekedValue: Any? = root
+  private var peekedSelections = rootSelections
+  private var peekedTypename = rootTypename
+  private var peekedId: List<Any> = listOf(root.key)
+
+  /**
+   * Reads the current map or list without selections if any
+   */
+  private var delegate: MapJsonReader? = null
+
+  private var ignoreUnknownKeys = true
+
+  /**
+   * @param id the id of [value] if it is a map or a list
+   */
+  private fun setPeeked(value: Any?, selections: List<CompiledSelection>, typename: String, id: List<Any>) {
+    peekedSelections = selections
+    peekedTypename = typename
+    if (value is CacheKey && selections.isNotEmpty()) {
+      peekedValue = records[value.key] ?: throw CacheMissException(value.key)
+      peekedId = listOf(value.key)
+      peekedToken = JsonReader.Token.BEGIN_OBJECT
+      return
+    }
+    peekedValue = value
+    peekedId = id
+    peekedToken = when (value) {
+      null -> JsonReader.Token.NULL
+      is List<*> -> JsonReader.Token.BEGIN_ARRAY
+      is Map<*, *> -> JsonReader.Token.BEGIN_OBJECT
+      is Int -> JsonReader.Token.NUMBER
+      is Long -> JsonReader.Token.LONG
+      is Double -> JsonReader.Token.NUMBER
+      is JsonNumber -> JsonReader.Token.NUMBER
+      is String -> JsonReader.Token.STRING
+      is Boolean -> JsonReader.Token.BOOLEAN
+      else -> JsonReader.Token.ANY
+    }
+  }
+
+  /**
+   * Moves to the next field or item of the current frame
+   */
+  private fun advance() {
+    when (val frame = stack.lastOrNull()) {
+      null -> peekedToken = JsonReader.Token.END_DOCUMENT
+      is ObjectFrame -> {
+        frame.index++
+        peekedToken = if (frame.index < frame.fields.size) JsonReader.Token.NAME else JsonReader.Token.END_OBJECT
+      }
+
+      is ListFrame -> {
+        frame.index++
+        if (frame.index < frame.list.size) {
+          setPeeked(frame.list[frame.index], frame.selections, frame.typename, frame.id + frame.index)
+        } else {
+          peekedToken = JsonReader.Token.END_ARRAY
+        }
+      }
+    }
+  }
+
+  private fun startDelegate(): MapJsonReader {
+    return MapJsonReader(peekedValue, getPath()).apply { ignoreUnknownKeys(ignoreUnknownKeys) }.also {
+      delegate = it
+    }
+  }
+
+  /**
+   * Goes back to reading records once the delegate has read its whole value
+   */
+  private fun checkDelegate() {
+    if (delegate!!.peek() == JsonReader.Token.END_DOCUMENT) {
+      delegate = null
+      advance()
+    }
+  }
+
+  private fun expect(token: JsonReader.Token) {
+    if (peekedToken != token) {
+      throw JsonDataException("Expected $token but was $peekedToken at path ${getPath().joinToString(".")}")
+    }
+  }
+
+  override fun peek(): JsonReader.Token {
+    return delegate?.peek() ?: peekedToken
+  }
+
+  override fun beginArray() = apply {
+    delegate?.let {
+      it.beginArray()
+      return this
+    }
+    expect(JsonReader.Token.BEGIN_ARRAY)
+    if (peekedSelections.isEmpty()) {
+      startDelegate().beginArray()
+      return this
+    }
+    stack.add(ListFrame(peekedId, peekedValue as List<*>, peekedSelections, peekedTypename))
+    advance()
+  }
+
+  override fun endArray() = apply {
+    delegate?.let {
+      it.endArray()
+      checkDelegate()
+      return this
+    }
+    expect(JsonReader.Token.END_ARRAY)
+    stack.removeAt(stack.lastIndex)
+    advance()
+  }
+
+  override fun beginObject() = apply {
+    delegate?.let {
+      it.beginObject()
+      return this
+    }
+    expect(JsonReader.Token.BEGIN_OBJECT)
+    if (peekedSelections.isEmpty()) {
+      startDelegate().beginObject()
+      return this
+    }
+    @Suppress("UNCHECKED_CAST")
+    val obj = peekedValue as Map<String, Any?>
+    stack.add(
+        ObjectFrame(
+            id = peekedId,
+            values = resolvedFields[peekedId].orEmpty(),
+            fields = peekedSelections.collectFields(peekedTypename, obj["__typename"] as? String, variables)
+        )
+    )
+    advance()
+  }
+
+  override fun endObject() = apply {
+    delegate?.let {
+      it.endObject()
+      checkDelegate()
+      return this
+    }
+    // Like MapJsonReader, do not fail if there are trailing names.
+    // See https://github.com/apollographql/apollo-kotlin/issues/4212
+    if (stack.lastOrNull() !is ObjectFrame) {
+      throw JsonDataException("Expected END_OBJECT but was $peekedToken at path ${getPath().joinToString(".")}")
+    }
+    stack.removeAt(stack.lastIndex)
+    advance()
+  }
+
+  override fun hasNext(): Boolean {
+    return when (peek()) {
+      JsonReader.Token.END_OBJECT -> false
+      JsonReader.Token.END_ARRAY -> false
+      else -> true
+    }
+  }
+
+  override fun nextName(): String {
+    delegate?.let {
+      return it.nextName()
+    }
+    expect(JsonReader.Token.NAME)
+    val frame = stack.last() as ObjectFrame
+    val field = frame.fields[frame.index]
+    frame.name = field.responseName
+    val fieldKey = field.nameWithArguments(variables)
+    check(frame.values.containsKey(fieldKey)) {
+      "Field '$fieldKey' was not resolved at path ${getPath().joinToString(".")}"
+    }
+    setPeeked(frame.values[fieldKey], field.selections, field.type.rawType().name, frame.id + fieldKey)
+    return field.responseName
+  }
+
+  override fun nextString(): String? {
+    delegate?.let {
+      return it.nextString().also { checkDelegate() }
+    }
+    return when (val value = peekedValue) {
+      is Int -> value.toString()
+      is Long -> value.toString()
+      is Double -> value.toString()
+      is String -> value
+      is JsonNumber -> value.value
+      else -> throw JsonDataException("Expected a String but got $value instead")
+    }.also {
+      advance()
+    }
+  }
+
+  override fun nextBoolean(): Boolean {
+    delegate?.let {
+      return it.nextBoolean().also { checkDelegate() }
+    }
+    expect(JsonReader.Token.BOOLEAN)
+    return (peekedValue as Boolean).also {
+      advance()
+    }
+  }
+
+  override fun nextNull(): Nothing? {
+    delegate?.let {
+      return it.nextNull().also { checkDelegate() }
+    }
+    expect(JsonReader.Token.NULL)
+    advance()
+    return null
+  }
+
+  private fun expectNumber(type: String) {
+    when (peekedToken) {
+      JsonReader.Token.STRING,
+      JsonReader.Token.NUMBER,
+      JsonReader.Token.LONG,
+      -> Unit
+
+      else -> {
+        throw JsonDataException("Expected $type but was $peekedToken at path ${getPath().joinToString(".")}")
+      }
+    }
+  }
+
+  override fun nextInt(): Int {
+    delegate?.let {
+      return it.nextInt().also { checkDelegate() }
+    }
+    expectNumber("an Int")
+    return when (val value = peekedValue) {
+      is Int -> value
+      is Long -> value.toInt().also { check(it.toLong() == value) { "$value cannot be converted to Int" } }
+      is Double -> value.toInt().also { check(it.toDouble() == value) { "$value cannot be converted to Int" } }
+      is String -> value.toInt()
+      is JsonNumber -> value.value.toInt()
+      else -> error("Expected an Int but got $value instead")
+    }.also {
+      advance()
+    }
+  }
+
+  override fun nextDouble(): Double {
+    delegate?.let {
+      return it.nextDouble().also { checkDelegate() }
+    }
+    expectNumber("a Double")
+    return when (val value = peekedValue) {
+      is Int -> value.toDouble()
+      is Long -> value.toDouble().also { check(it.toLong() == value) { "$value cannot be converted to Double" } }
+      is Double -> value
+      is String -> value.toDouble()
+      is JsonNumber -> value.value.toDouble()
+      else -> error("Expected a Double but got $value instead")
+    }.also {
+      advance()
+    }
+  }
+
+  override fun nextLong(): Long {
+    delegate?.let {
+      return it.nextLong().also { checkDelegate() }
+    }
+    expectNumber("a Long")
+    return when (val value = peekedValue) {
+      is Int -> value.toLong()
+      is Long -> value
+      is Double -> value.toLong().also { check(it.toDouble() == value) { "$value cannot be converted to Long" } }
+      is String -> value.toLong()
+      is JsonNumber -> value.value.toLong()
+      else -> error("Expected a Long but got $value instead")
+    }.also {
+      advance()
+    }
+  }
+
+  override fun nextNumber(): JsonNumber {
+    delegate?.let {
+      return it.nextNumber().also { checkDelegate() }
+    }
+    expectNumber("a Number")
+    return when (val value = peekedValue) {
+      is Int, is Long, is Double -> JsonNumber(value.toString())
+      is String -> JsonNumber(value)
+      is JsonNumber -> value
+      else -> error("Expected JsonNumber but got $value instead")
+    }.also {
+      advance()
+    }
+  }
+
+  /**
+   * Skips the current value. In [JsonReader.Token.NAME] position, skips the name and its value.
+   */
+  override fun skipValue() {
+    delegate?.let {
+      it.skipValue()
+      checkDelegate()
+      return
+    }
+    advance()
+  }
+
+  private fun findName(needle: String, haystack: List<String>): Int {
+    val frame = stack.last() as ObjectFrame
+    val expectedIndex = frame.nameIndex
+    if (expectedIndex < haystack.size && haystack[expectedIndex] == needle) {
+      frame.nameIndex++
+      return expectedIndex
+    }
+    // The guess failed, go back to a full search
+    val index = haystack.indexOf(needle)
+    if (index != -1) {
+      frame.nameIndex = index + 1
+    }
+    return index
+  }
+
+  override fun selectName(names: List<String>): Int {
+    delegate?.let {
+      return it.selectName(names)
+    }
+    while (hasNext()) {
+      val name = nextName()
+      val index = findName(name, names)
+      if (index != -1) {
+        return index
+      }
+
+      if (!ignoreUnknownKeys) {
+        throw JsonDataException("Unknown key '$name' found at path: '${getPath().joinToString(".")}'")
+      }
+
+      skipValue()
+    }
+
+    return -1
+  }
+
+  /**
+   * Rewinds to the beginning of the current object.
+   */
+  override fun rewind() {
+    delegate?.let {
+      it.rewind()
+      return
+    }
+    val frame = stack.last() as ObjectFrame
+    frame.index = -1
+    frame.name = null
+    frame.nameIndex = 0
+    advance()
+  }
+
+  override fun getPath(): List<Any> {
+    delegate?.let {
+      return it.getPath()
+    }
+    val result = mutableListOf<Any>()
+    stack.forEach {
+      when (it) {
+        is ObjectFrame -> it.name?.let { name -> result.add(name) }
+        is ListFrame -> if (it.index >= 0) result.add(it.index)
+      }
+    }
+    return result
+  }
+
+  override fun ignoreUnknownKeys(): Boolean {
+    return ignoreUnknownKeys
+  }
+
+  override fun ignoreUnknownKeys(ignoreUnknownKeys: Boolean) {
+    this.ignoreUnknownKeys = ignoreUnknownKeys
+    delegate?.ignoreUnknownKeys(ignoreUnknownKeys)
+  }
+
+  override fun close() {
+  }
+}
@@ -6,7 +6,7 @@ import com.apollographql.apollo.api.json.JsonNumber
 import com.apollographql.apollo.cache.normalized.api.CacheKey
 import com.apollographql.apollo.cache.normalized.api.Record
 import com.apollographql.apollo.cache.normalized.api.RecordValue
-import okio.internal.commonAsUtf8ToByteArray
+import okio.utf8Size
 import kotlin.jvm.JvmStatic
 
 internal object RecordWeigher {
@@ -27,22 +27,49 @@ internal object RecordWeigher {
 
   @JvmStatic
   fun calculateBytes(record: Record): Int {
-    var size = SIZE_OF_RECORD_OVERHEAD + record.key.commonAsUtf8ToByteArray().size
+    var size = SIZE_OF_RECORD_OVERHEAD + record.key.utf8Length()
     for ((key, value) in record.fields) {
-      size += key.commonAsUtf8ToByteArray().size + weighField(value)
+      size += key.utf8Length() + weighField(value)
     }
     return size
   }
 
+  /**
+   * Returns the difference in bytes between `oldRecord.mergeWith(newRecord)` and [oldRecord].
+   *
+   * Only the fields of [newRecord] are weighed so that merging a few fields into a large record does not weigh the
+   * whole record again.
+   */
+  @JvmStatic
+  fun mergeByteChange(oldRecord: Record, newRecord: Record): Int {
+    var change = 0
+    for ((key, newValue) in newRecord.fields) {
+      if (!oldRecord.fields.containsKey(key)) {
+        change += key.utf8Length() + weighField(newValue)
+      } else {
+        val oldValue = oldRecord.fields[key]
+        if (oldValue != newValue) {
+          change += byteChange(newValue, oldValue)
+        }
+      }
+    }
+    return change
+  }
+
+  /**
+   * The number of bytes of the UTF-8 encoding of this String, computed without encoding it.
+   */
+  private fun String.utf8Length(): Int = utf8Size().toInt()
+
   private fun weighField(field: RecordValue): Int {
     return when (field) {
       null -> SIZE_OF_NULL
-      is String -> field.commonAsUtf8ToByteArray().size
+      is String -> field.utf8Length()
       is Boolean -> SIZE_OF_BOOLEAN
       is Int -> SIZE_OF_INT
       is Long -> SIZE_OF_LONG // Might happen with LongDataAdapter
       is Double -> SIZE_OF_DOUBLE
-      is JsonNumber -> field.value.commonAsUtf8ToByteArray().size + SIZE_OF_LONG
+      is JsonNumber -> field.value.utf8Length() + SIZE_OF_LONG
       /**
        * Custom scalars with a json object representation are stored directly in the record
        */
@@ -55,7 +82,7 @@ internal object RecordWeigher {
       }
 
       is CacheKey -> {
-        SIZE_OF_CACHE_KEY_OVERHEAD + field.key.commonAsUtf8ToByteArray().size
+        SIZE_OF_CACHE_KEY_OVERHEAD + field.key.utf8Length()
       }
 
       else -> error("Unknown field type in Record: '$field'")
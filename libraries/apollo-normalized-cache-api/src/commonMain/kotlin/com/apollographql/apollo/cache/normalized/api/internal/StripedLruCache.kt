@@ -0,0 +1,105 @@
+package com.apollographql.apollo.cache.normalized.api.internal
+
+/**
+ * A thread safe LRU cache made of [stripeCount] independent [LruCache] segments.
+ *
+ * Each key is assigned to a segment based on its hash code and each segment is guarded by its own [CacheLock] so that
+ * accesses to keys in different segments can proceed in parallel. LRU order and eviction are maintained per segment:
+ * each segment may hold up to `maxSize / stripeCount`.
+ *
+ * With [stripeCount] == 1, this behaves like a single [LruCache] guarded by a single lock.
+ */
+internal class StripedLruCache<Key : Any, Value>(
+    maxSize: Int,
+    stripeCount: Int = 1,
+    weigher: Weigher<Key, Value> = { _, _ -> 1 },
+) {
+  private val stripes: List<Stripe<Key, Value>>
+
+  init {
+    require(stripeCount > 0) {
+      "Apollo: stripeCount must be > 0 (found '$stripeCount')"
+    }
+    val maxSizePerStripe = (maxSize / stripeCount).coerceAtLeast(1)
+    stripes = List(stripeCount) {
+      Stripe(LruCache(maxSize = maxSizePerStripe, weigher = weigher))
+    }
+  }
+
+  private fun stripeFor(key: Key): Stripe<Key, Value> {
+    if (stripes.size == 1) {
+      return stripes[0]
+    }
+    val hash = key.hashCode()
+    // spread the high bits so that keys sharing a long common prefix still end up in different stripes
+    val spread = (hash xor (hash ushr 16)) and Int.MAX_VALUE
+    return stripes[spread % stripes.size]
+  }
+
+  operator fun get(key: Key): Value? {
+    val stripe = stripeFor(key)
+    return stripe.lock.lock { stripe.cache[key] }
+  }
+
+  operator fun set(key: Key, value: Value) {
+    val stripe = stripeFor(key)
+    stripe.lock.lock { stripe.cache[key] = value }
+  }
+
+  fun remove(key: Key): Value? {
+    val stripe = stripeFor(key)
+    return stripe.lock.lock { stripe.cache.remove(key) }
+  }
+
+  /**
+   * Removes the value for [key] if it matches [predicate]. The LRU order is not updated if the value is kept.
+   */
+  fun removeIf(key: Key, predicate: (Value) -> Boolean): Value? {
+    val stripe = stripeFor(key)
+    return stripe.lock.lock {
+      val value = stripe.cache.peek(key)
+      if (value != null && predicate(value)) {
+        stripe.cache.remove(key)
+      } else {
+        null
+      }
+    }
+  }
+
+  /**
+   * Returns a snapshot of the keys. The returned set is safe to iterate while the cache is modified.
+   */
+  fun keys(): Set<Key> {
+    val keys = HashSet<Key>()
+    stripes.forEach { stripe ->
+      stripe.lock.lock { keys.addAll(stripe.cache.keys()) }
+    }
+    return keys
+  }
+
+  fun clear() {
+    stripes.forEach { stripe ->
+      stripe.lock.lock { stripe.cache.clear() }
+    }
+  }
+
+  fun size(): Int {
+    var size = 0
+    stripes.forEach { stripe ->
+      size += stripe.lock.lock { stripe.cache.size() }
+    }
+    return size
+  }
+
+  fun dump(): Map<Key, Value> {
+    val dump = LinkedHashMap<Key, Value>()
+    stripes.forEach { stripe ->
+      stripe.lock.lock { dump.putAll(stripe.cache.dump()) }
+    }
+    return dump
+  }
+
+  private class Stripe<Key, Value>(val cache: LruCache<Key, Value>) {
+    val lock = CacheLock()
+  }
+}
@@ -0,0 +1,160 @@
+@file:Suppress("DEPRECATION")
+
+package com.apollographql.apollo.cache.normalized
+
+import com.apollographql.apollo.api.json.JsonNumber
+import com.apollographql.apollo.cache.normalized.api.CacheKey
+import com.apollographql.apollo.cache.normalized.api.Record
+import com.apollographql.apollo.cache.normalized.api.internal.BlobRecordSerializer
+import com.apollographql.apollo.cache.normalized.api.internal.FieldNameDictionary
+import com.apollographql.apollo.cache.normalized.api.internal.InMemoryFieldNameStorage
+import okio.Buffer
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertNull
+import kotlin.test.assertTrue
+
+class BlobRecordSerializerTest {
+  private val record = Record(
+      key = "User:42",
+      fields = mapOf(
+          "__typename" to "User",
+          "string" to "Zoë 👋",
+          "int" to -42,
+          "long" to Long.MAX_VALUE,
+          "double" to 1.23,
+          "boolean" to true,
+          "nullValue" to null,
+          "cacheReference" to CacheKey("User:43"),
+          "referenceList" to listOf(CacheKey("User:44"), null, CacheKey("User:45")),
+          "listOfScalarList" to listOf(listOf("scalarOne", "scalarTwo")),
+          "map" to mapOf("lat" to 48.85, "lng" to 2.35),
+          "friends({\"first\":10})" to listOf(CacheKey("User:46")),
+      )
+  )
+
+  @Test
+  fun roundTrip() {
+    val deserialized = BlobRecordSerializer.deserialize(record.key, BlobRecordSerializer.serialize(record))
+
+    assertEquals(record.key, deserialized.key)
+    assertEquals(record.fields, deserialized.fields)
+    assertNull(deserialized.date)
+  }
+
+  @Test
+  fun jsonNumbersAreKept() {
+    val recordWithJsonNumber = Record(record.key, mapOf("jsonNumber" to JsonNumber("12345678901234567890")))
+    val deserialized = BlobRecordSerializer.deserialize(record.key, BlobRecordSerializer.serialize(recordWithJsonNumber))
+
+    assertEquals("12345678901234567890", (deserialized["jsonNumber"] as JsonNumber).value)
+  }
+
+  @Test
+  fun roundTripWithDates() {
+    val recordWithDates = Record(
+        key = record.key,
+        fields = record.fields,
+        mutationId = null,
+        date = record.fields.keys.associateWith { if (it == "int") null else 1700000000000L }
+    )
+    val deserialized = BlobRecordSerializer.deserialize(record.key, BlobRecordSerializer.serialize(recordWithDates))
+
+    assertEquals(record.fields, deserialized.fields)
+    assertEquals(recordWithDates.date, deserialized.date)
+  }
+
+  @Test
+  fun onlyRequestedFieldsAreDecoded() {
+    val storage = InMemoryFieldNameStorage()
+    val recordWithDates = Record(record.key, record.fields, null, record.fields.keys.associateWith { 1700000000000L })
+    val bytes = BlobRecordSerializer.serialize(recordWithDates, FieldNameDictionary(storage))
+    val fieldKeys = setOf("map", "friends({\"first\":10})", "string", "unknown")
+
+    val deserialized = BlobRecordSerializer.deserialize(record.key, bytes, FieldNameDictionary(storage), fieldKeys)
+
+    assertEquals(record.fields.filterKeys { it in fieldKeys }, deserialized.fields)
+    assertEquals(fieldKeys - "unknown", deserialized.date!!.keys)
+  }
+
+  @Test
+  fun onlyRequestedFieldsAreDecodedWithoutDictionaryOrDates() {
+    val fieldKeys = setOf("__typename", "int", "nullValue")
+
+    val deserialized = BlobRecordSerializer.deserialize(record.key, BlobRecordSerializer.serialize(record), null, fieldKeys)
+
+    assertEquals(record.key, deserialized.key)
+    assertEquals(mapOf("__typename" to "User", "int" to -42, "nullValue" to null), deserialized.fields)
+    assertNull(deserialized.date)
+  }
+
+  @Test
+  fun missingFieldKeysAreIgnored() {
+    val bytes = BlobRecordSerializer.serialize(record)
+
+    assertEquals(emptyMap(), BlobRecordSerializer.deserialize(record.key, bytes, null, setOf("unknown", "other")).fields)
+    assertEquals(emptyMap(), BlobRecordSerializer.deserialize(record.key, bytes, null, emptySet()).fields)
+  }
+
+  @Test
+  fun fieldNamesAreInternedPerTypename() {
+    val storage = InMemoryFieldNameStorage()
+    val dictionary = FieldNameDictionary(storage)
+
+    val withDictionary = BlobRecordSerializer.serialize(record, dictionary)
+    val withoutDictionary = BlobRecordSerializer.serialize(record)
+    assertTrue(withDictionary.size < withoutDictionary.size)
+
+    // Field names with arguments are not interned
+    assertEquals(record.fields.size - 1, storage.names("User").size)
+
+    // A new dictionary reads the names from the storage
+    val deserialized = BlobRecordSerializer.deserialize(record.key, withDictionary, FieldNameDictionary(storage))
+    assertEquals(record.fields, deserialized.fields)
+
+    // The same name gets the same id
+    assertEquals(dictionary.idFor("User", "string"), FieldNameDictionary(storage).idFor("User", "string"))
+  }
+
+  @Test
+  fun legacyRecordsCanBeRead() {
+    val buffer = Buffer()
+    buffer.writeInt(2)
+    buffer.writeLegacyString("name")
+    buffer.writeByte(8) // no date
+    buffer.writeByte(0).writeLegacyString("R2-D2")
+    buffer.writeLegacyString("friend")
+    buffer.writeByte(2).writeLong(1000L) // date
+    buffer.writeByte(7).writeLegacyString("Luke")
+
+    val deserialized = BlobRecordSerializer.deserialize("hero", buffer.readByteArray())
+
+    assertEquals(mapOf("name" to "R2-D2", "friend" to CacheKey("Luke")), deserialized.fields)
+    assertEquals(1000L, deserialized.date!!["friend"])
+  }
+
+  @Test
+  fun onlyRequestedFieldsOfLegacyRecordsAreReturned() {
+    val buffer = Buffer()
+    buffer.writeInt(2)
+    buffer.writeLegacyString("name")
+    buffer.writeByte(8) // no date
+    buffer.writeByte(0).writeLegacyString("R2-D2")
+    buffer.writeLegacyString("friend")
+    buffer.writeByte(2).writeLong(1000L) // date
+    buffer.writeByte(7).writeLegacyString("Luke")
+    val bytes = buffer.readByteArray()
+    assertEquals(0, bytes[0].toInt())
+
+    val deserialized = BlobRecordSerializer.deserialize("hero", bytes, null, setOf("friend", "unknown"))
+
+    assertEquals(mapOf("friend" to CacheKey("Luke")), deserialized.fields)
+    assertEquals(mapOf<String, Long?>("friend" to 1000L), deserialized.date)
+  }
+
+  private fun Buffer.writeLegacyString(value: String): Buffer {
+    writeInt(value.length)
+    writeUtf8(value)
+    return this
+  }
+}
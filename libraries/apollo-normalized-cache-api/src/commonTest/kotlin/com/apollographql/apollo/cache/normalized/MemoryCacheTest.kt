@@ -286,11 +286,101 @@ class MemoryCacheTest {
     assertNull(lruCache.loadRecord(record1.key, CacheHeaders.NONE))
   }
 
+  @Test
+  fun testMultipleSegments() {
+    val lruCache = createCache(concurrencyLevel = 4)
+
+    val records = (0 until 50).map { createTestRecord(it.toString()) }
+    lruCache.merge(records, CacheHeaders.NONE)
+
+    records.forEach {
+      assertTestRecordPresentAndAccurate(it, lruCache)
+    }
+    assertEquals(50, lruCache.loadRecords(records.map { it.key }, CacheHeaders.NONE).size)
+    assertEquals(records.map { it.key }.toSet(), lruCache.dump()[MemoryCache::class]!!.keys)
+
+    assertEquals(11, lruCache.remove("key1%"))
+    assertEquals(39, lruCache.dump()[MemoryCache::class]!!.size)
+
+    lruCache.clearAll()
+    assertEquals(0, lruCache.size)
+  }
+
+  @Test
+  fun testExpirationByKeyPrefix() {
+    val lruCache = MemoryCache(
+        expireAfterMillis = 0,
+        expireAfterMillisByKeyPrefix = mapOf(
+            "User:" to Long.MAX_VALUE / 2,
+            "User:expiring" to 0,
+            "Session:" to -1,
+        )
+    )
+    val records = listOf(
+        Record(key = "User:1", fields = mapOf("name" to "Alice")),
+        Record(key = "User:expiring", fields = mapOf("name" to "Bob")),
+        Record(key = "Session:1", fields = mapOf("token" to "abc")),
+        Record(key = "Other:1", fields = mapOf("field" to "value")),
+    )
+    lruCache.merge(records, CacheHeaders.NONE)
+
+    assertNotNull(lruCache.loadRecord("User:1", CacheHeaders.NONE))
+    assertNull(lruCache.loadRecord("User:expiring", CacheHeaders.NONE))
+    assertNotNull(lruCache.loadRecord("Session:1", CacheHeaders.NONE))
+    assertNull(lruCache.loadRecord("Other:1", CacheHeaders.NONE))
+  }
+
+  @Test
+  fun testExpiredRecordsAreEvictedOnWrite() {
+    val lruCache = createCache(expireAfterMillis = 0)
+    lruCache.merge(listOf(createTestRecord("1"), createTestRecord("2")), CacheHeaders.NONE)
+
+    // Expired records are removed without being read
+    assertEquals(0, lruCache.size)
+    assertEquals(2, lruCache.stats().expiredCount)
+    assertEquals(0, lruCache.evictExpired())
+  }
+
+  @Test
+  fun testStats() {
+    val lruCache = createCache()
+    lruCache.merge(createTestRecord("1"), CacheHeaders.NONE)
+
+    lruCache.loadRecord("key1", CacheHeaders.NONE)
+    lruCache.loadRecord("key2", CacheHeaders.NONE)
+    lruCache.loadRecords(listOf("key1", "key2", "key3"), CacheHeaders.NONE)
+
+    val stats = lruCache.stats()
+    assertEquals(2, stats.hitCount)
+    assertEquals(3, stats.missCount)
+    assertEquals(0, stats.expiredCount)
+  }
+
+  @Test
+  fun testRemovePrefixPattern() {
+    val lruCache = createCache(concurrencyLevel = 2)
+    lruCache.merge((0 until 20).map { createTestRecord(it.toString()) }, CacheHeaders.NONE)
+
+    assertEquals(11, lruCache.remove("KEY1%"))
+    assertNull(lruCache.loadRecord("key1", CacheHeaders.NONE))
+    assertNull(lruCache.loadRecord("key15", CacheHeaders.NONE))
+    assertNotNull(lruCache.loadRecord("key2", CacheHeaders.NONE))
+
+    // The index is maintained after being built
+    lruCache.merge(createTestRecord("100"), CacheHeaders.NONE)
+    assertTrue(lruCache.remove(CacheKey("key2"), cascade = false))
+    assertEquals(1, lruCache.remove("key1%"))
+    assertEquals(0, lruCache.remove("key2%"))
+    assertEquals(8, lruCache.remove("%"))
+    assertEquals(0, lruCache.size)
+  }
+
   private fun createCache(
       maxSizeBytes: Int = 10 * 1024,
       expireAfterMillis: Long = -1,
+      concurrencyLevel: Int = 1,
   ): MemoryCache {
-    return MemoryCache(maxSizeBytes = maxSizeBytes, expireAfterMillis = expireAfterMillis)
+    return MemoryCache(maxSizeBytes = maxSizeBytes, expireAfterMillis = expireAfterMillis, concurrencyLevel = concurrencyLevel)
   }
 
   private fun assertTestRecordPresentAndAccurate(testRecord: Record, store: NormalizedCache) {
@@ -5,7 +5,9 @@ package com.apollographql.apollo.cache.normalized
 import com.apollographql.apollo.api.json.JsonNumber
 import com.apollographql.apollo.cache.normalized.api.CacheKey
 import com.apollographql.apollo.cache.normalized.api.Record
+import com.apollographql.apollo.cache.normalized.api.internal.RecordWeigher
 import kotlin.test.Test
+import kotlin.test.assertEquals
 import kotlin.test.assertTrue
 
 class RecordWeigherTest {
@@ -37,4 +39,29 @@ class RecordWeigherTest {
     assertTrue(record.sizeInBytes <= 246)
     assertTrue(record.sizeInBytes >= 242) // JS takes less space, maybe for strings?
   }
+
+  @Test
+  fun testMergeByteChange() {
+    val oldRecord = Record(
+        key = "root",
+        fields = mapOf(
+            "string" to "StringValue",
+            "unchanged" to "Unchanged",
+            "cacheReference" to CacheKey("foo"),
+            "scalarList" to listOf("scalarOne", "scalarTwo"),
+        )
+    )
+    val newRecord = Record(
+        key = "root",
+        fields = mapOf(
+            "string" to "A longer StringValue with non-ASCII characters: àéïõü 🚀",
+            "unchanged" to "Unchanged",
+            "scalarList" to listOf("scalarOne"),
+            "newField" to 42,
+        )
+    )
+
+    val mergedRecord = oldRecord.mergeWith(newRecord).first
+    assertEquals(mergedRecord.sizeInBytes - oldRecord.sizeInBytes, RecordWeigher.mergeByteChange(oldRecord, newRecord))
+  }
 }
@@ -0,0 +1,32 @@
+package com.apollographql.apollo.cache.normalized.internal
+
+import com.apollographql.apollo.cache.normalized.api.internal.ExpirationQueue
+import kotlin.test.Test
+import kotlin.test.assertEquals
+
+class ExpirationQueueTest {
+  @Test
+  fun pollExpiredReturnsKeysInExpirationOrder() {
+    val queue = ExpirationQueue<String>()
+    listOf(50L, 10L, 40L, 20L, 30L).forEach {
+      queue.add("key$it", it)
+    }
+
+    assertEquals(emptyList(), queue.pollExpired(5))
+    assertEquals(listOf("key10", "key20", "key30"), queue.pollExpired(30))
+    assertEquals(2, queue.size)
+    assertEquals(listOf("key40", "key50"), queue.pollExpired(100))
+    assertEquals(0, queue.size)
+  }
+
+  @Test
+  fun queueGrows() {
+    val queue = ExpirationQueue<Int>()
+    (1000 downTo 1).forEach {
+      queue.add(it, it.toLong())
+    }
+
+    assertEquals(1000, queue.size)
+    assertEquals((1..1000).toList(), queue.pollExpired(1000))
+  }
+}
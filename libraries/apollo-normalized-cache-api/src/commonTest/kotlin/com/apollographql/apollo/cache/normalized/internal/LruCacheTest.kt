@@ -180,4 +180,22 @@ class LruCacheTest {
         cache.dump()
     )
   }
+
+  @Test
+  fun replaceItemWithCustomWeigher() {
+    var weigherCalls = 0
+    val cache = LruCache<String, String?>(100) { key, value ->
+      weigherCalls++
+      key.length + (value?.length ?: 0)
+    }
+
+    cache["key1"] = "value1"
+    cache["key1"] = "longer value1"
+    assertEquals(17, cache.size())
+
+    cache.remove("key1")
+    assertEquals(0, cache.size())
+    // removal uses the weight computed on insertion
+    assertEquals(2, weigherCalls)
+  }
 }
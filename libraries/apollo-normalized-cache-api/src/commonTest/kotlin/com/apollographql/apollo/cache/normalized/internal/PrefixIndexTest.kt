@@ -0,0 +1,77 @@
+package com.apollographql.apollo.cache.normalized.internal
+
+import com.apollographql.apollo.cache.normalized.api.internal.PrefixIndex
+import com.apollographql.apollo.cache.normalized.api.internal.patternToPrefix
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertNull
+
+class PrefixIndexTest {
+  @Test
+  fun keysWithPrefix() {
+    val index = PrefixIndex()
+    listOf("User:1", "User:10", "User:2", "Users", "Use", "Book:1", "QUERY_ROOT").forEach {
+      index.add(it)
+    }
+
+    assertEquals(7, index.size)
+    assertEquals(setOf("User:1", "User:10", "User:2"), index.keysWithPrefix("User:").toSet())
+    assertEquals(setOf("User:1", "User:10"), index.keysWithPrefix("User:1").toSet())
+    assertEquals(setOf("User:1", "User:10", "User:2", "Users", "Use"), index.keysWithPrefix("Us").toSet())
+    assertEquals(7, index.keysWithPrefix("").size)
+    assertEquals(emptyList(), index.keysWithPrefix("User:3"))
+    assertEquals(emptyList(), index.keysWithPrefix("Author"))
+  }
+
+  @Test
+  fun keysWithPrefixIgnoresCase() {
+    val index = PrefixIndex()
+    index.add("User:1")
+    index.add("user:2")
+
+    assertEquals(setOf("User:1", "user:2"), index.keysWithPrefix("USER:").toSet())
+  }
+
+  @Test
+  fun remove() {
+    val index = PrefixIndex()
+    listOf("User:1", "User:10", "User:2", "Use").forEach {
+      index.add(it)
+    }
+
+    index.remove("User:1")
+    index.remove("User:3")
+    index.remove("Use")
+    assertEquals(2, index.size)
+    assertEquals(setOf("User:10", "User:2"), index.keysWithPrefix("U").toSet())
+
+    index.remove("User:10")
+    index.remove("User:2")
+    assertEquals(0, index.size)
+    assertEquals(emptyList(), index.keysWithPrefix(""))
+
+    index.add("User:1")
+    assertEquals(listOf("User:1"), index.keysWithPrefix("user"))
+  }
+
+  @Test
+  fun addIsIdempotent() {
+    val index = PrefixIndex()
+    index.add("User:1")
+    index.add("User:1")
+
+    assertEquals(1, index.size)
+    assertEquals(listOf("User:1"), index.keysWithPrefix("User"))
+  }
+
+  @Test
+  fun prefixPatterns() {
+    assertEquals("User:", patternToPrefix("User:%"))
+    assertEquals("", patternToPrefix("%"))
+    assertEquals("50%_", patternToPrefix("50\\%\\_%"))
+    assertNull(patternToPrefix("User:1"))
+    assertNull(patternToPrefix("%User"))
+    assertNull(patternToPrefix("User_%"))
+    assertNull(patternToPrefix("User\\%"))
+  }
+}
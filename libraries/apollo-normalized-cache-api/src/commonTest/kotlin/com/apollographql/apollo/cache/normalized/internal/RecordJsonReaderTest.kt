@@ -0,0 +1,241 @@
+@file:Suppress("DEPRECATION")
+
+package com.apollographql.apollo.cache.normalized.internal
+
+import com.apollographql.apollo.api.CompiledCondition
+import com.apollographql.apollo.api.CompiledField
+import com.apollographql.apollo.api.CompiledListType
+import com.apollographql.apollo.api.CompiledSelection
+import com.apollographql.apollo.api.CustomScalarType
+import com.apollographql.apollo.api.Executable
+import com.apollographql.apollo.api.ObjectType
+import com.apollographql.apollo.api.json.JsonReader
+import com.apollographql.apollo.api.json.readAny
+import com.apollographql.apollo.cache.normalized.api.CacheHeaders
+import com.apollographql.apollo.cache.normalized.api.CacheKey
+import com.apollographql.apollo.cache.normalized.api.CacheResolver
+import com.apollographql.apollo.cache.normalized.api.DefaultCacheResolver
+import com.apollographql.apollo.cache.normalized.api.PartialReadOnlyNormalizedCache
+import com.apollographql.apollo.cache.normalized.api.Record
+import com.apollographql.apollo.cache.normalized.api.internal.CacheBatchReader
+import com.apollographql.apollo.cache.normalized.api.internal.RecordCacheData
+import com.apollographql.apollo.exception.CacheMissException
+import kotlin.reflect.KClass
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertFailsWith
+
+class RecordJsonReaderTest {
+  private val stringType = CustomScalarType("String", "kotlin.String")
+  private val jsonType = CustomScalarType("Json", "kotlin.Any")
+  private val characterType = ObjectType.Builder("Character").build()
+
+  private val records = listOf(
+      Record(
+          "QUERY_ROOT",
+          mapOf(
+              "hero" to CacheKey("Character:1"),
+              "heroes" to listOf(CacheKey("Character:1"), null, CacheKey("Character:2")),
+              "location" to mapOf("lat" to 48.85, "tags" to listOf("a", "b")),
+          )
+      ),
+      Record("Character:1", mapOf("__typename" to "Character", "name" to "Luke", "friend" to CacheKey("Character:2"))),
+      Record("Character:2", mapOf("__typename" to "Character", "name" to "Leia", "friend" to CacheKey("Character:1"))),
+  ).associateBy { it.key }
+
+  /**
+   * Records the keys that are loaded and only returns the requested fields
+   */
+  private class FakeCache(private val records: Map<String, Record>) : PartialReadOnlyNormalizedCache {
+    val loadedFieldKeys = mutableListOf<Map<String, Set<String>>>()
+
+    override fun loadRecords(fieldKeys: Map<String, Set<String>>, cacheHeaders: CacheHeaders): Collection<Record> {
+      loadedFieldKeys.add(fieldKeys)
+      return fieldKeys.mapNotNull { (key, fields) ->
+        records[key]?.let { record -> Record(key, record.fields.filterKeys { it in fields }) }
+      }
+    }
+
+    override fun loadRecord(key: String, cacheHeaders: CacheHeaders): Record? = records[key]
+
+    override fun loadRecords(keys: Collection<String>, cacheHeaders: CacheHeaders): Collection<Record> {
+      return loadRecords(keys.associateWith { records[it]?.keys.orEmpty() }, cacheHeaders)
+    }
+
+    override fun dump(): Map<KClass<*>, Map<String, Record>> = emptyMap()
+  }
+
+  private fun field(name: String, vararg selections: CompiledSelection): CompiledField {
+    return CompiledField.Builder(name, if (selections.isEmpty()) stringType else characterType)
+        .selections(selections.toList())
+        .build()
+  }
+
+  private fun read(
+      selections: List<CompiledSelection>,
+      variables: Map<String, Any?> = emptyMap(),
+      cache: FakeCache = FakeCache(records),
+      cacheResolver: CacheResolver = DefaultCacheResolver,
+  ): RecordCacheData {
+    return CacheBatchReader(
+        cache = cache,
+        rootKey = "QUERY_ROOT",
+        variables = Executable.Variables(variables),
+        cacheResolver = cacheResolver,
+        cacheHeaders = CacheHeaders.NONE,
+        rootSelections = selections,
+        rootTypename = "Query",
+    ).collectData() as RecordCacheData
+  }
+
+  @Test
+  fun cacheKeysAreReplacedByTheirRecords() {
+    val data = read(
+        listOf(
+            field("hero", field("name"), field("friend", field("name"))),
+            CompiledField.Builder("heroes", CompiledListType(characterType)).selections(listOf(field("name"))).build(),
+            CompiledField.Builder("location", jsonType).build(),
+        )
+    )
+
+    assertEquals(
+        mapOf(
+            "hero" to mapOf("name" to "Luke", "friend" to mapOf("name" to "Leia")),
+            "heroes" to listOf(mapOf("name" to "Luke"), null, mapOf("name" to "Leia")),
+            "location" to mapOf("lat" to 48.85, "tags" to listOf("a", "b")),
+        ),
+        data.jsonReader().readAny()
+    )
+  }
+
+  @Test
+  fun pathAndRewind() {
+    val reader = read(listOf(field("hero", field("name"), field("friend", field("name"))))).jsonReader()
+
+    reader.beginObject()
+    assertEquals("hero", reader.nextName())
+    reader.beginObject()
+    assertEquals(0, reader.selectName(listOf("name", "friend")))
+    assertEquals(listOf<Any>("hero", "name"), reader.getPath())
+    assertEquals("Luke", reader.nextString())
+
+    reader.rewind()
+    assertEquals(0, reader.selectName(listOf("name", "friend")))
+    assertEquals("Luke", reader.nextString())
+    assertEquals(1, reader.selectName(listOf("name", "friend")))
+    reader.skipValue()
+    assertEquals(-1, reader.selectName(listOf("name", "friend")))
+    reader.endObject()
+    reader.endObject()
+    assertEquals(JsonReader.Token.END_DOCUMENT, reader.peek())
+  }
+
+  @Test
+  fun fieldsWithDifferentConditionsAreMerged() {
+    val data = read(
+        listOf(
+            CompiledField.Builder("hero", characterType)
+                .condition(listOf(CompiledCondition("a", false)))
+                .selections(listOf(field("name")))
+                .build(),
+            CompiledField.Builder("hero", characterType)
+                .condition(listOf(CompiledCondition("b", false)))
+                .selections(listOf(field("friend", field("name"))))
+                .build(),
+        ),
+        variables = mapOf("a" to true, "b" to true)
+    )
+
+    assertEquals(
+        mapOf("hero" to mapOf("name" to "Luke", "friend" to mapOf("name" to "Leia"))),
+        data.toMap()
+    )
+  }
+
+  @Test
+  fun partialRecordsLoadedInSeveralBatchesAreMerged() {
+    val cache = FakeCache(records)
+    // Character:2 is first loaded with "friend" and then with "name"
+    val data = read(
+        listOf(
+            field("hero", field("name")),
+            CompiledField.Builder("heroes", CompiledListType(characterType))
+                .selections(listOf(field("friend", field("friend", field("name")))))
+                .build(),
+        ),
+        cache = cache
+    )
+
+    // The fields that were already loaded are not loaded again
+    assertEquals(3, cache.loadedFieldKeys.size)
+    assertEquals(mapOf("Character:2" to setOf("name")), cache.loadedFieldKeys[2])
+    assertEquals(
+        mapOf(
+            "hero" to mapOf("name" to "Luke"),
+            "heroes" to listOf(
+                mapOf("friend" to mapOf("friend" to mapOf("name" to "Luke"))),
+                null,
+                mapOf("friend" to mapOf("friend" to mapOf("name" to "Leia"))),
+            ),
+        ),
+        data.toMap()
+    )
+  }
+
+  @Test
+  fun missingFieldsThrowDuringTheBatchRead() {
+    assertFailsWith<CacheMissException> {
+      read(listOf(field("hero", field("unknown"))))
+    }
+  }
+
+  @Test
+  fun eachFieldIsResolvedOnce() {
+    val resolvedFields = mutableListOf<String>()
+    val cacheResolver = object : CacheResolver {
+      override fun resolveField(
+          field: CompiledField,
+          variables: Executable.Variables,
+          parent: Map<String, Any?>,
+          parentId: String,
+      ): Any? {
+        resolvedFields.add("$parentId.${field.name}")
+        return DefaultCacheResolver.resolveField(field, variables, parent, parentId)
+      }
+    }
+    val reader = read(
+        listOf(
+            field("hero", field("name"), field("friend", field("name"))),
+            // Character:1 is read a second time with another selection set
+            field("heroes", field("name")),
+        ),
+        cacheResolver = cacheResolver,
+    ).jsonReader()
+
+    val expected = listOf(
+        "QUERY_ROOT.hero",
+        "QUERY_ROOT.heroes",
+        "Character:1.name",
+        "Character:1.friend",
+        "Character:2.name",
+    )
+    assertEquals(expected, resolvedFields)
+
+    // Reading and rewinding use the values resolved during the batch read
+    reader.beginObject()
+    assertEquals("hero", reader.nextName())
+    reader.beginObject()
+    assertEquals("name", reader.nextName())
+    assertEquals("Luke", reader.nextString())
+    reader.rewind()
+    assertEquals("name", reader.nextName())
+    assertEquals("Luke", reader.nextString())
+    assertEquals("friend", reader.nextName())
+    assertEquals(mapOf("name" to "Leia"), reader.readAny())
+    reader.endObject()
+    assertEquals("heroes", reader.nextName())
+    assertEquals(listOf(mapOf("name" to "Luke"), null, mapOf("name" to "Leia")), reader.readAny())
+    reader.endObject()
+    assertEquals(expected, resolvedFields)
+  }
+}
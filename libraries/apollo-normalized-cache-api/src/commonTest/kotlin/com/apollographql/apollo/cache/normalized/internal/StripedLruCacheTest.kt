@@ -0,0 +1,58 @@
+package com.apollographql.apollo.cache.normalized.internal
+
+import com.apollographql.apollo.cache.normalized.api.internal.StripedLruCache
+import kotlin.test.Test
+import kotlin.test.assertEquals
+
+class StripedLruCacheTest {
+  @Test
+  fun addAndRemoveItemsAcrossStripes() {
+    val cache = StripedLruCache<String, String>(maxSize = 100, stripeCount = 4)
+
+    val expectedEntries = (0 until 20).associate { "key$it" to "value$it" }
+    expectedEntries.forEach { (key, value) ->
+      cache[key] = value
+    }
+
+    assertEquals(20, cache.size())
+    assertEquals(expectedEntries.keys, cache.keys())
+    assertEquals(expectedEntries, cache.dump())
+    expectedEntries.forEach { (key, value) ->
+      assertEquals(value, cache[key])
+    }
+
+    assertEquals("value3", cache.remove("key3"))
+    assertEquals(null, cache["key3"])
+    assertEquals(19, cache.size())
+
+    cache.clear()
+    assertEquals(0, cache.size())
+    assertEquals(emptyMap(), cache.dump())
+  }
+
+  @Test
+  fun eachStripeIsTrimmedIndependently() {
+    val cache = StripedLruCache<String, String>(maxSize = 8, stripeCount = 4)
+
+    (0 until 100).forEach {
+      cache["key$it"] = "value$it"
+    }
+
+    // Each stripe holds at most 8 / 4 = 2 entries
+    assertEquals(true, cache.size() <= 8)
+    // The most recently inserted entry is always kept
+    assertEquals("value99", cache["key99"])
+  }
+
+  @Test
+  fun singleStripeBehavesLikeLruCache() {
+    val cache = StripedLruCache<String, String>(maxSize = 2, stripeCount = 1)
+
+    cache["key1"] = "value1"
+    cache["key2"] = "value2"
+    cache["key1"]
+    cache["key3"] = "value3"
+
+    assertEquals(mapOf("key1" to "value1", "key3" to "value3"), cache.dump())
+  }
+}
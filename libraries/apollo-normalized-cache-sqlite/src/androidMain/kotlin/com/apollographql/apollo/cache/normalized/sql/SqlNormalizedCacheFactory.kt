@@ -19,7 +19,9 @@ import com.apollographql.apollo.cache.normalized.sql.internal.getSchema
 @ApolloDeprecatedSince(ApolloDeprecatedSince.Version.v5_0_0)
 actual class SqlNormalizedCacheFactory actual constructor(
     private val driver: SqlDriver,
+    private val recordFormat: RecordFormat,
 ) : NormalizedCacheFactory() {
+  actual constructor(driver: SqlDriver) : this(driver, RecordFormat.Json)
 
   /**
    * @param [name] Name of the database file, or null for an in-memory database (as per Android framework implementation).
@@ -54,10 +56,28 @@ actual class SqlNormalizedCacheFactory actual constructor(
       ),
   )
 
+  /**
+   * @param [name] Name of the database file, or null for an in-memory database (as per Android framework implementation).
+   * @param [recordFormat] the format used to store the records, see [RecordFormat]
+   */
+  constructor(
+      context: Context,
+      name: String?,
+      recordFormat: RecordFormat,
+  ) : this(
+      AndroidSqliteDriver(
+          getSchema(),
+          context.applicationContext,
+          name,
+      ),
+      recordFormat,
+  )
+
   actual constructor(name: String?): this(createDriver(name, null, getSchema()))
+  actual constructor(name: String?, recordFormat: RecordFormat): this(createDriver(name, null, getSchema()), recordFormat)
 
   actual override fun create(): NormalizedCache {
-    return SqlNormalizedCache(createRecordDatabase(driver))
+    return SqlNormalizedCache(createRecordDatabase(driver, recordFormat))
   }
 }
 
@@ -14,7 +14,10 @@ import com.apollographql.apollo.cache.normalized.sql.internal.getSchema
 @ApolloDeprecatedSince(ApolloDeprecatedSince.Version.v5_0_0)
 actual class SqlNormalizedCacheFactory actual constructor(
     private val driver: SqlDriver,
+    private val recordFormat: RecordFormat,
 ) : NormalizedCacheFactory() {
+  actual constructor(driver: SqlDriver) : this(driver, RecordFormat.Json)
+
 
   /**
    * @param name the name of the database or null for an in-memory database
@@ -26,9 +29,19 @@ actual class SqlNormalizedCacheFactory actual constructor(
   actual constructor(name: String?) : this(name, null)
   constructor() : this("apollo.db")
 
+  /**
+   * @param name the name of the database or null for an in-memory database
+   * @param baseDir the baseDirectory where to store the database.
+   * [baseDir] must exist and be a directory
+   * If [baseDir] is a relative path, it will be interpreted relative to the current working directory
+   * @param recordFormat the format used to store the records, see [RecordFormat]
+   */
+  constructor(name: String?, baseDir: String?, recordFormat: RecordFormat) : this(createDriver(name, baseDir, getSchema()), recordFormat)
+  actual constructor(name: String?, recordFormat: RecordFormat) : this(name, null, recordFormat)
+
   actual override fun create(): NormalizedCache {
     return SqlNormalizedCache(
-        recordDatabase = createRecordDatabase(driver)
+        recordDatabase = createRecordDatabase(driver, recordFormat)
     )
   }
 }
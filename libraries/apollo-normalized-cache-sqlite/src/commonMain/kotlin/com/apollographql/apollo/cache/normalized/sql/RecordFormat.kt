@@ -0,0 +1,25 @@
+package com.apollographql.apollo.cache.normalized.sql
+
+import com.apollographql.apollo.annotations.ApolloDeprecatedSince
+
+/**
+ * The format used by [SqlNormalizedCacheFactory] to store the records.
+ *
+ * Records written in one format can be read in the other one so that switching formats doesn't lose the cache.
+ */
+@Deprecated("Use the new Normalized Cache at https://github.com/apollographql/apollo-kotlin-normalized-cache")
+@ApolloDeprecatedSince(ApolloDeprecatedSince.Version.v5_0_0)
+enum class RecordFormat {
+  /**
+   * Records are stored as JSON text. This is the default.
+   */
+  Json,
+
+  /**
+   * Records are stored as compact binary blobs with field names interned per typename. This is smaller and faster to
+   * decode than [Json].
+   *
+   * When the cache is created, existing JSON records are converted to binary.
+   */
+  Binary,
+}
@@ -8,6 +8,7 @@ import com.apollographql.apollo.cache.normalized.api.ApolloCacheHeaders.EVICT_AF
 import com.apollographql.apollo.cache.normalized.api.CacheHeaders
 import com.apollographql.apollo.cache.normalized.api.CacheKey
 import com.apollographql.apollo.cache.normalized.api.NormalizedCache
+import com.apollographql.apollo.cache.normalized.api.PartialReadOnlyNormalizedCache
 import com.apollographql.apollo.cache.normalized.api.Record
 import com.apollographql.apollo.cache.normalized.sql.internal.RecordDatabase
 import com.apollographql.apollo.exception.apolloExceptionHandler
@@ -17,7 +18,7 @@ import kotlin.reflect.KClass
 @ApolloDeprecatedSince(ApolloDeprecatedSince.Version.v5_0_0)
 class SqlNormalizedCache internal constructor(
     private val recordDatabase: RecordDatabase,
-) : NormalizedCache() {
+) : NormalizedCache(), PartialReadOnlyNormalizedCache {
 
   override fun loadRecord(key: String, cacheHeaders: CacheHeaders): Record? {
     if (cacheHeaders.hasHeader(ApolloCacheHeaders.MEMORY_CACHE_ONLY)) {
@@ -40,11 +41,26 @@ class SqlNormalizedCache internal constructor(
   }
 
   override fun loadRecords(keys: Collection<String>, cacheHeaders: CacheHeaders): Collection<Record> {
+    return loadRecords(keys, null, cacheHeaders)
+  }
+
+  /**
+   * Only the fields in [fieldKeys] are decoded from the records stored with [RecordFormat.Binary].
+   */
+  override fun loadRecords(fieldKeys: Map<String, Set<String>>, cacheHeaders: CacheHeaders): Collection<Record> {
+    return loadRecords(fieldKeys.keys, fieldKeys, cacheHeaders)
+  }
+
+  private fun loadRecords(keys: Collection<String>, fieldKeys: Map<String, Set<String>>?, cacheHeaders: CacheHeaders): Collection<Record> {
     if (cacheHeaders.hasHeader(ApolloCacheHeaders.MEMORY_CACHE_ONLY)) {
       return emptyList()
     }
     val records = try {
-      internalGetRecords(keys)
+      if (fieldKeys != null) {
+        internalGetPartialRecords(fieldKeys)
+      } else {
+        internalGetRecords(keys)
+      }
     } catch (e: Exception) {
       // Unable to read the records from the database, it is possibly corrupted - treat this as a cache miss
       apolloExceptionHandler(Exception("Unable to read records from the database", e))
@@ -56,7 +72,14 @@ class SqlNormalizedCache internal constructor(
       }
     }
     val missRecordKeys = keys - records.map { it.key }.toSet()
-    val missRecords = missRecordKeys.ifEmpty { null }?.let { nextCache?.loadRecords(it, cacheHeaders) }.orEmpty()
+    val missRecords = missRecordKeys.ifEmpty { null }?.let { missKeys ->
+      val next = nextCache
+      if (fieldKeys != null && next is PartialReadOnlyNormalizedCache) {
+        next.loadRecords(missKeys.associateWith { fieldKeys.getValue(it) }, cacheHeaders)
+      } else {
+        next?.loadRecords(missKeys, cacheHeaders)
+      }
+    }.orEmpty()
     return records + missRecords
   }
 
@@ -149,7 +172,8 @@ class SqlNormalizedCache internal constructor(
   /**
    * Update records, loading the previous ones
    *
-   * This is an optimization over [internalUpdateRecord]
+   * This is an optimization over [internalUpdateRecord]: the previous records are loaded in batches and the merged
+   * records are written with multi-row upserts.
    */
   private fun internalUpdateRecords(records: Collection<Record>, date: Long?): Set<String> {
     var updatedRecordKeys: Set<String> = emptySet()
@@ -158,23 +182,34 @@ class SqlNormalizedCache internal constructor(
           keys = records.map { it.key },
       ).associateBy { it.key }
 
-      updatedRecordKeys = records.flatMap { record ->
+      val changedKeys = mutableSetOf<String>()
+      val recordsToWrite = mutableListOf<Record>()
+      records.forEach { record ->
         val oldRecord = oldRecords[record.key]
         if (oldRecord == null) {
-          recordDatabase.insert(record.withDate(date))
-          record.fieldKeys()
+          recordsToWrite.add(record.withDate(date))
+          changedKeys.addAll(record.fieldKeys())
         } else {
-          val (mergedRecord, changedKeys) = oldRecord.mergeWith(record, date)
-          if (mergedRecord.isNotEmpty()) {
-            recordDatabase.update(mergedRecord)
+          val (mergedRecord, recordChangedKeys) = oldRecord.mergeWith(record, date)
+          if (mergedRecord.isNotEmpty() && needsWrite(oldRecord, record, recordChangedKeys, date)) {
+            recordsToWrite.add(mergedRecord)
           }
-          changedKeys
+          changedKeys.addAll(recordChangedKeys)
         }
-      }.toSet()
+      }
+      recordDatabase.upsert(recordsToWrite)
+      updatedRecordKeys = changedKeys
     }
     return updatedRecordKeys
   }
 
+  /**
+   * Whether merging [newRecord] into [oldRecord] changed anything that is stored
+   */
+  private fun needsWrite(oldRecord: Record, newRecord: Record, changedKeys: Set<String>, date: Long?): Boolean {
+    return changedKeys.isNotEmpty() || date != null || oldRecord.mutationId != newRecord.mutationId
+  }
+
   private fun Record.withDate(date: Long?): Record {
     if (date == null) {
       return this
@@ -196,12 +231,12 @@ class SqlNormalizedCache internal constructor(
       val oldRecord = recordDatabase.select(record.key)
 
       if (oldRecord == null) {
-        recordDatabase.insert(record.withDate(date))
+        recordDatabase.upsert(listOf(record.withDate(date)))
         record.fieldKeys()
       } else {
         val (mergedRecord, changedKeys) = oldRecord.mergeWith(record, date)
-        if (mergedRecord.isNotEmpty()) {
-          recordDatabase.update(mergedRecord)
+        if (mergedRecord.isNotEmpty() && needsWrite(oldRecord, record, changedKeys, date)) {
+          recordDatabase.upsert(listOf(mergedRecord))
         }
         changedKeys
       }
@@ -217,4 +252,10 @@ class SqlNormalizedCache internal constructor(
       recordDatabase.select(chunkedKeys)
     }
   }
+
+  private fun internalGetPartialRecords(fieldKeys: Map<String, Set<String>>): List<Record> {
+    return fieldKeys.keys.chunked(999).flatMap { chunkedKeys ->
+      recordDatabase.select(chunkedKeys.associateWith { fieldKeys.getValue(it) })
+    }
+  }
 }
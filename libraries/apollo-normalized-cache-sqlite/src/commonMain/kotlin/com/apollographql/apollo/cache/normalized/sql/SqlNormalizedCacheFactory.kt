@@ -22,6 +22,16 @@ import com.apollographql.apollo.cache.normalized.api.NormalizedCacheFactory
 @ApolloDeprecatedSince(ApolloDeprecatedSince.Version.v5_0_0)
 expect class SqlNormalizedCacheFactory(name: String? = "apollo.db") : NormalizedCacheFactory {
   constructor(driver: SqlDriver)
+
+  /**
+   * @param recordFormat the format used to store the records, see [RecordFormat]
+   */
+  constructor(name: String?, recordFormat: RecordFormat)
+
+  /**
+   * @param recordFormat the format used to store the records, see [RecordFormat]
+   */
+  constructor(driver: SqlDriver, recordFormat: RecordFormat)
   override fun create(): NormalizedCache
 }
 
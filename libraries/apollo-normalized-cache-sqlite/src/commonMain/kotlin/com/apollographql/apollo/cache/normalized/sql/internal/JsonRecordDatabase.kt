@@ -2,15 +2,54 @@
 
 package com.apollographql.apollo.cache.normalized.sql.internal
 
+import app.cash.sqldelight.db.SqlDriver
 import com.apollographql.apollo.cache.normalized.api.Record
+import com.apollographql.apollo.cache.normalized.api.internal.BlobRecordSerializer
+import com.apollographql.apollo.cache.normalized.api.internal.FieldNameDictionary
 import com.apollographql.apollo.cache.normalized.api.internal.JsonRecordSerializer
+import com.apollographql.apollo.cache.normalized.sql.RecordFormat
 import com.apollographql.apollo.cache.normalized.sql.internal.json.JsonQueries
 
-internal class JsonRecordDatabase(private val jsonQueries: JsonQueries): RecordDatabase {
+/**
+ * A [RecordDatabase] backed by the `records` table.
+ *
+ * Rows can contain either a JSON or a binary record and are read regardless of [recordFormat]. [recordFormat] is the
+ * format used to write new records. Only binary records can be partially decoded.
+ */
+internal class JsonRecordDatabase(
+    private val driver: SqlDriver,
+    private val recordFormat: RecordFormat = RecordFormat.Json,
+) : RecordDatabase {
+  private val jsonQueries = JsonQueries(driver)
+
+  private val fieldNameDictionary = FieldNameDictionary(
+      object : FieldNameDictionary.Storage {
+        override fun load(typename: String): Map<Int, String> {
+          return jsonQueries.fieldNamesForTypename(typename).executeAsList().associate { it.id.toInt() to it.name }
+        }
+
+        override fun add(typename: String, name: String): Int {
+          jsonQueries.insertFieldName(typename, name)
+          return jsonQueries.fieldNameId(typename, name).executeAsOne().toInt()
+        }
+      }
+  )
+
+  /**
+   * @param fieldKeys the fields to decode or null to decode all of them. JSON records are always decoded fully.
+   */
+  private fun deserialize(key: String, record: String?, binaryRecord: ByteArray?, fieldKeys: Set<String>? = null): Record {
+    return if (binaryRecord != null) {
+      BlobRecordSerializer.deserialize(key, binaryRecord, fieldNameDictionary, fieldKeys)
+    } else {
+      JsonRecordSerializer.deserialize(key, checkNotNull(record) { "No record for key '$key'" })
+    }
+  }
+
   override fun select(key: String): Record? {
     return jsonQueries.recordForKey(key).executeAsList()
         .map {
-          JsonRecordSerializer.deserialize(it.key, it.record)
+          deserialize(it.key, it.record, it.binary_record)
         }
         .singleOrNull()
   }
@@ -18,13 +57,26 @@ internal class JsonRecordDatabase(private val jsonQueries: JsonQueries): RecordD
   override fun select(keys: Collection<String>): List<Record> {
     return jsonQueries.recordsForKeys(keys).executeAsList()
         .map {
-          JsonRecordSerializer.deserialize(it.key, it.record)
+          deserialize(it.key, it.record, it.binary_record)
+        }
+  }
+
+  override fun select(fieldKeys: Map<String, Set<String>>): List<Record> {
+    return jsonQueries.recordsForKeys(fieldKeys.keys).executeAsList()
+        .map {
+          deserialize(it.key, it.record, it.binary_record, fieldKeys[it.key])
         }
   }
 
   override fun <T> transaction(noEnclosing: Boolean, body: () -> T): T {
-    return jsonQueries.transactionWithResult {
-      body()
+    return try {
+      jsonQueries.transactionWithResult {
+        body()
+      }
+    } catch (e: Throwable) {
+      // The transaction is rolled back, and so are the field names it may have added
+      fieldNameDictionary.clear()
+      throw e
     }
   }
 
@@ -44,17 +96,95 @@ internal class JsonRecordDatabase(private val jsonQueries: JsonQueries): RecordD
     return jsonQueries.changes().executeAsOne()
   }
 
-  override fun insert(record: Record) {
-    jsonQueries.insert(record.key, JsonRecordSerializer.serialize(record))
-  }
+  override fun upsert(records: Collection<Record>) {
+    val binary = recordFormat == RecordFormat.Binary
+    records.chunked(MAX_ROWS_PER_STATEMENT).forEach { chunk ->
+      if (chunk.size == 1) {
+        val record = chunk.single()
+        if (binary) {
+          jsonQueries.insertOrReplaceBinary(record.key, BlobRecordSerializer.serialize(record, fieldNameDictionary))
+        } else {
+          jsonQueries.insertOrReplace(record.key, JsonRecordSerializer.serialize(record))
+        }
+        return@forEach
+      }
 
-  override fun update(record: Record) {
-    jsonQueries.update(JsonRecordSerializer.serialize(record), record.key)
+      /**
+       * SQLDelight cannot generate multi-row inserts so write the statement manually.
+       * Only full chunks get an identifier so that the driver can reuse their prepared statement. The last chunk of
+       * a given size is not worth caching.
+       */
+      driver.execute(
+          identifier = if (chunk.size == MAX_ROWS_PER_STATEMENT) upsertFullChunkIdentifier(binary) else null,
+          sql = upsertSql(chunk.size, binary),
+          parameters = chunk.size * 2,
+      ) {
+        chunk.forEachIndexed { index, record ->
+          bindString(index * 2, record.key)
+          if (binary) {
+            bindBytes(index * 2 + 1, BlobRecordSerializer.serialize(record, fieldNameDictionary))
+          } else {
+            bindString(index * 2 + 1, JsonRecordSerializer.serialize(record))
+          }
+        }
+      }
+    }
   }
 
   override fun selectAll(): List<Record> {
     return jsonQueries.selectRecords().executeAsList().map {
-      JsonRecordSerializer.deserialize(it.key, it.record)
+      deserialize(it.key, it.record, it.binary_record)
+    }
+  }
+
+  /**
+   * Rewrites the JSON records in binary format. Records that cannot be read are removed.
+   */
+  fun convertJsonRecords() {
+    while (true) {
+      val jsonRecords = jsonQueries.jsonRecords(MAX_ROWS_PER_STATEMENT.toLong()).executeAsList()
+      if (jsonRecords.isEmpty()) {
+        break
+      }
+      transaction {
+        val records = jsonRecords.mapNotNull {
+          try {
+            JsonRecordSerializer.deserialize(it.key, checkNotNull(it.record))
+          } catch (_: Exception) {
+            jsonQueries.delete(it.key)
+            null
+          }
+        }
+        upsert(records)
+      }
+    }
+  }
+
+  private fun upsertSql(rowCount: Int, binary: Boolean): String {
+    return buildString {
+      append("INSERT OR REPLACE INTO records (key, ")
+      append(if (binary) "binary_record" else "record")
+      append(") VALUES ")
+      repeat(rowCount) {
+        if (it > 0) {
+          append(',')
+        }
+        append("(?,?)")
+      }
     }
   }
+
+  private fun upsertFullChunkIdentifier(binary: Boolean): Int {
+    return if (binary) UPSERT_BINARY_FULL_CHUNK_IDENTIFIER else UPSERT_FULL_CHUNK_IDENTIFIER
+  }
+
+  companion object {
+    /**
+     * SQLite versions before 3.32 do not allow more than 999 variables per statement and each row uses 2
+     */
+    private const val MAX_ROWS_PER_STATEMENT = 499
+
+    private val UPSERT_FULL_CHUNK_IDENTIFIER = "JsonRecordDatabase.upsert.$MAX_ROWS_PER_STATEMENT".hashCode()
+    private val UPSERT_BINARY_FULL_CHUNK_IDENTIFIER = "JsonRecordDatabase.upsertBinary.$MAX_ROWS_PER_STATEMENT".hashCode()
+  }
 }
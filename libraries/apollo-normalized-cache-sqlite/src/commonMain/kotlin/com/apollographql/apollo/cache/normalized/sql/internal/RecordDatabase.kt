@@ -26,6 +26,13 @@ internal interface RecordDatabase {
    */
   fun select(keys: Collection<String>): List<Record>
 
+  /**
+   * Same as [select] but only decodes the fields in [fieldKeys] when the storage allows it.
+   *
+   * @param fieldKeys for each key, the fields to decode. [fieldKeys.size] must be less than 999
+   */
+  fun select(fieldKeys: Map<String, Set<String>>): List<Record>
+
   fun selectAll(): List<Record>
 
   /**
@@ -47,6 +54,9 @@ internal interface RecordDatabase {
    */
   fun changes(): Long
 
-  fun insert(record: Record)
-  fun update(record: Record)
+  /**
+   * Inserts [records] or replaces the existing records with the same keys.
+   * This is done in as few statements as possible.
+   */
+  fun upsert(records: Collection<Record>)
 }
@@ -1,14 +1,17 @@
+@file:Suppress("DEPRECATION")
+
 package com.apollographql.apollo.cache.normalized.sql.internal
 
 import app.cash.sqldelight.db.QueryResult
 import app.cash.sqldelight.db.SqlCursor
+import com.apollographql.apollo.cache.normalized.sql.RecordFormat
 import com.apollographql.apollo.cache.normalized.sql.internal.json.JsonDatabase
 import com.apollographql.apollo.exception.apolloExceptionHandler
 import app.cash.sqldelight.db.SqlDriver
 import app.cash.sqldelight.db.SqlSchema
 import app.cash.sqldelight.db.use
 
-internal fun createRecordDatabase(driver: SqlDriver): RecordDatabase {
+internal fun createRecordDatabase(driver: SqlDriver, recordFormat: RecordFormat): RecordDatabase {
   maybeCreateOrMigrateSchema(driver, getSchema())
 
   val tableNames = mutableListOf<String>()
@@ -40,7 +43,11 @@ internal fun createRecordDatabase(driver: SqlDriver): RecordDatabase {
     "Apollo: Cannot find the '$expectedTableName' table? (found '$tableNames' instead)"
   }
 
-  return JsonRecordDatabase(JsonDatabase(driver).jsonQueries)
+  return JsonRecordDatabase(driver, recordFormat).also {
+    if (recordFormat == RecordFormat.Binary) {
+      it.convertJsonRecords()
+    }
+  }
 }
 
 internal fun getSchema(): SqlSchema<QueryResult.Value<Unit>> = JsonDatabase.Schema
@@ -13,8 +13,11 @@ import com.apollographql.apollo.cache.normalized.api.CacheHeaders
 import com.apollographql.apollo.cache.normalized.api.CacheKey
 import com.apollographql.apollo.cache.normalized.api.MemoryCacheFactory
 import com.apollographql.apollo.cache.normalized.api.NormalizedCache
+import com.apollographql.apollo.cache.normalized.api.PartialReadOnlyNormalizedCache
 import com.apollographql.apollo.cache.normalized.api.Record
 import com.apollographql.apollo.cache.normalized.sql.internal.JsonRecordDatabase
+import com.apollographql.apollo.cache.normalized.sql.internal.createDriver
+import com.apollographql.apollo.cache.normalized.sql.internal.getSchema
 import com.apollographql.apollo.cache.normalized.sql.internal.json.JsonQueries
 import com.apollographql.apollo.exception.apolloExceptionHandler
 import kotlin.test.BeforeTest
@@ -286,6 +289,84 @@ class SqlNormalizedCacheTest {
     cache.merge(records, CacheHeaders.NONE)
   }
 
+  @Test
+  fun testManyRecordsMerge() {
+    val records = 0.until(1001).map {
+      Record(
+          it.toString(),
+          mapOf("field1" to "value$it")
+      )
+    }
+    cache.merge(records, CacheHeaders.NONE)
+
+    // Update half of the records and add a field to all of them
+    val newRecords = 0.until(1001).map {
+      Record(
+          it.toString(),
+          mapOf(
+              "field1" to if (it % 2 == 0) "newValue$it" else "value$it",
+              "field2" to it,
+          )
+      )
+    }
+    val changedKeys = cache.merge(newRecords, CacheHeaders.NONE)
+    assertEquals(1001 + 501, changedKeys.size)
+
+    val loadedRecords = cache.loadRecords(records.map { it.key }, CacheHeaders.NONE).associateBy { it.key }
+    assertEquals(1001, loadedRecords.size)
+    assertEquals("newValue0", loadedRecords["0"]!!["field1"])
+    assertEquals("value1", loadedRecords["1"]!!["field1"])
+    assertEquals(1000, loadedRecords["1000"]!!["field2"])
+  }
+
+  @Test
+  fun testBinaryRecords() {
+    val binaryCache = SqlNormalizedCacheFactory(null, RecordFormat.Binary).create()
+    val record = Record(
+        key = STANDARD_KEY,
+        fields = mapOf(
+            "__typename" to "User",
+            "name" to "Zoë",
+            "age" to 42,
+            "friend" to CacheKey("friend"),
+            "friends({\"first\":2})" to listOf(CacheKey("friend"), null),
+            "location" to mapOf("lat" to 48.85, "lng" to 2.35),
+        ),
+    )
+    binaryCache.merge(listOf(record, Record(QUERY_ROOT_KEY, mapOf("hero" to CacheKey(STANDARD_KEY)))), CacheHeaders.NONE)
+
+    assertEquals(record.fields, binaryCache.loadRecord(STANDARD_KEY, CacheHeaders.NONE)?.fields)
+    assertEquals(CacheKey(STANDARD_KEY), binaryCache.loadRecords(listOf(QUERY_ROOT_KEY), CacheHeaders.NONE).single()["hero"])
+
+    binaryCache.merge(Record(STANDARD_KEY, mapOf("age" to 43)), CacheHeaders.NONE)
+    assertEquals(43, binaryCache.loadRecord(STANDARD_KEY, CacheHeaders.NONE)!!["age"])
+  }
+
+  @Test
+  fun testPartialRecords() {
+    val binaryCache = SqlNormalizedCacheFactory(null, RecordFormat.Binary).create()
+    binaryCache.merge(Record(STANDARD_KEY, mapOf("__typename" to "User", "name" to "Zoë", "age" to 42)), CacheHeaders.NONE)
+
+    val record = (binaryCache as PartialReadOnlyNormalizedCache)
+        .loadRecords(mapOf(STANDARD_KEY to setOf("__typename", "name", "unknown")), CacheHeaders.NONE)
+        .single()
+    assertEquals(mapOf("__typename" to "User", "name" to "Zoë"), record.fields)
+  }
+
+  @Test
+  fun testJsonRecordsAreConvertedToBinary() {
+    val driver = createDriver(null, null, getSchema())
+    val jsonCache = SqlNormalizedCacheFactory(driver).create()
+    jsonCache.merge(Record(STANDARD_KEY, mapOf("field1" to "value1")), CacheHeaders.NONE)
+
+    val binaryCache = SqlNormalizedCacheFactory(driver, RecordFormat.Binary).create()
+    assertEquals(0, JsonQueries(driver).jsonRecords(10).executeAsList().size)
+    assertEquals("value1", binaryCache.loadRecord(STANDARD_KEY, CacheHeaders.NONE)!!["field1"])
+
+    // Binary records can still be read in JSON mode
+    assertEquals("value1", SqlNormalizedCacheFactory(driver).create().loadRecord(STANDARD_KEY, CacheHeaders.NONE)!!["field1"])
+  }
+
   private val BadDriver = object : SqlDriver {
     override fun close() {
       throw IllegalStateException("bad cache")
@@ -328,7 +409,7 @@ class SqlNormalizedCacheTest {
 
   @Test
   fun exceptionCallsExceptionHandler() {
-    val badCache = SqlNormalizedCache(JsonRecordDatabase(JsonQueries(BadDriver)))
+    val badCache = SqlNormalizedCache(JsonRecordDatabase(BadDriver))
     var throwable: Throwable? = null
     apolloExceptionHandler = {
       throwable = it
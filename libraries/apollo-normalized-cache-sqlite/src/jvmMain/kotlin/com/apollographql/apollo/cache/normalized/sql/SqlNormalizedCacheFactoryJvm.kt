@@ -9,6 +9,7 @@ import com.apollographql.apollo.cache.normalized.api.NormalizedCache
 import com.apollographql.apollo.cache.normalized.api.NormalizedCacheFactory
 import com.apollographql.apollo.cache.normalized.sql.internal.createDriver
 import com.apollographql.apollo.cache.normalized.sql.internal.createRecordDatabase
+import com.apollographql.apollo.cache.normalized.sql.internal.createWalDriver
 import com.apollographql.apollo.cache.normalized.sql.internal.getSchema
 import java.util.Properties
 
@@ -16,7 +17,10 @@ import java.util.Properties
 @ApolloDeprecatedSince(ApolloDeprecatedSince.Version.v5_0_0)
 actual class SqlNormalizedCacheFactory actual constructor(
     private val driver: SqlDriver,
+    private val recordFormat: RecordFormat,
 ) : NormalizedCacheFactory() {
+  actual constructor(driver: SqlDriver) : this(driver, RecordFormat.Json)
+
   /**
    * @param url Database connection URL in the form of `jdbc:sqlite:path` where `path` is either blank
    * (creating an in-memory database) or a path to a file.
@@ -36,8 +40,34 @@ actual class SqlNormalizedCacheFactory actual constructor(
   constructor(name: String?,  baseDir: String?) : this(createDriver(name, baseDir, getSchema()), )
   actual constructor(name: String?, ) : this(name, null)
 
+  /**
+   * @param name the name of the database or null for an in-memory database
+   * @param baseDir the baseDirectory where to store the database.
+   * If [baseDir] does not exist, it will be created
+   * If [baseDir] is a relative path, it will be interpreted relative to the current working directory
+   * @param recordFormat the format used to store the records, see [RecordFormat]
+   */
+  constructor(name: String?, baseDir: String?, recordFormat: RecordFormat) : this(createDriver(name, baseDir, getSchema()), recordFormat)
+  actual constructor(name: String?, recordFormat: RecordFormat) : this(name, null, recordFormat)
+
+  /**
+   * Opens the database in WAL mode with a single write connection and a pool of read connections so that reads from
+   * different threads run in parallel and are not blocked by writes.
+   *
+   * This only applies to the callers that use the [NormalizedCache] directly. `ApolloStore` takes a lock that excludes
+   * reads during writes, so the reads made through the store still wait for the writes.
+   *
+   * @param name the name of the database
+   * @param baseDir the baseDirectory where to store the database.
+   * If [baseDir] does not exist, it will be created
+   * If [baseDir] is a relative path, it will be interpreted relative to the current working directory
+   * @param recordFormat the format used to store the records, see [RecordFormat]
+   * @param walOptions the number of read connections and the pragmas, see [WalOptions]
+   */
+  constructor(name: String, baseDir: String?, recordFormat: RecordFormat, walOptions: WalOptions) : this(createWalDriver(name, baseDir, walOptions), recordFormat)
+
   actual override fun create(): NormalizedCache {
-    return SqlNormalizedCache(createRecordDatabase(driver))
+    return SqlNormalizedCache(createRecordDatabase(driver, recordFormat))
   }
 }
 
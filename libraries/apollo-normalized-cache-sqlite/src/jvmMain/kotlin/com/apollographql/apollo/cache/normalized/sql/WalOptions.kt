@@ -0,0 +1,29 @@
+package com.apollographql.apollo.cache.normalized.sql
+
+import com.apollographql.apollo.annotations.ApolloDeprecatedSince
+
+/**
+ * Options to open the database in [WAL mode](https://www.sqlite.org/wal.html).
+ *
+ * In WAL mode, the database uses a single connection for writes and a pool of connections for reads. Reads happen
+ * in parallel and are not blocked by writes.
+ *
+ * @param readConnections the maximum number of connections used for reads.
+ * @param synchronous the value of the [synchronous](https://www.sqlite.org/pragma.html#pragma_synchronous) pragma.
+ * `NORMAL` is safe from corruption in WAL mode but a transaction might be rolled back after a power loss.
+ * @param mmapSize the value of the [mmap_size](https://www.sqlite.org/pragma.html#pragma_mmap_size) pragma in bytes
+ * or 0 to disable memory-mapped I/O.
+ */
+@Deprecated("Use the new Normalized Cache at https://github.com/apollographql/apollo-kotlin-normalized-cache")
+@ApolloDeprecatedSince(ApolloDeprecatedSince.Version.v5_0_0)
+class WalOptions(
+    val readConnections: Int = 4,
+    val synchronous: String = "NORMAL",
+    val mmapSize: Long = 0,
+) {
+  init {
+    require(readConnections > 0) {
+      "Apollo: readConnections must be > 0 (found '$readConnections')"
+    }
+  }
+}
@@ -0,0 +1,284 @@
+package com.apollographql.apollo.cache.normalized.sql.internal
+
+import app.cash.sqldelight.Query
+import app.cash.sqldelight.Transacter
+import app.cash.sqldelight.db.QueryResult
+import app.cash.sqldelight.db.SqlCursor
+import app.cash.sqldelight.db.SqlDriver
+import app.cash.sqldelight.db.SqlPreparedStatement
+import java.sql.Connection
+import java.sql.DriverManager
+import java.sql.PreparedStatement
+import java.sql.ResultSet
+import java.sql.Types
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.locks.ReentrantLock
+import kotlin.concurrent.withLock
+
+/**
+ * A [SqlDriver] for a database in WAL mode that uses a single connection for writes and a pool of connections for
+ * reads.
+ *
+ * - writes, transactions and the queries made inside a transaction use the write connection. A transaction holds the
+ * write connection until it ends.
+ * - other queries use one of at most [readConnections] read connections so that they run in parallel and are not
+ * blocked by writes. In WAL mode, they read the last committed state of the database.
+ *
+ * Read connections are opened lazily.
+ *
+ * @param pragmas the pragmas to set on each connection. They must enable WAL mode.
+ */
+internal class WalSqliteDriver(
+    private val url: String,
+    private val pragmas: Map<String, String>,
+    private val readConnections: Int,
+) : SqlDriver {
+  private val writer = CachingConnection(openConnection())
+  private val writerLock = ReentrantLock()
+  private val transactions = ThreadLocal<Transaction?>()
+
+  private val idleReaders = LinkedBlockingQueue<CachingConnection>()
+  private val openedReaders = AtomicInteger(0)
+
+  private val listeners = mutableMapOf<String, MutableSet<Query.Listener>>()
+
+  @Volatile
+  private var closed = false
+
+  override fun <R> executeQuery(
+      identifier: Int?,
+      sql: String,
+      mapper: (SqlCursor) -> QueryResult<R>,
+      parameters: Int,
+      binders: (SqlPreparedStatement.() -> Unit)?,
+  ): QueryResult<R> {
+    if (transactions.get() != null) {
+      // Read the uncommitted writes of the transaction. The transaction holds the write lock already.
+      return writer.executeQuery(identifier, sql, mapper, binders)
+    }
+
+    val reader = acquireReader()
+    try {
+      return reader.executeQuery(identifier, sql, mapper, binders)
+    } finally {
+      releaseReader(reader)
+    }
+  }
+
+  override fun execute(
+      identifier: Int?,
+      sql: String,
+      parameters: Int,
+      binders: (SqlPreparedStatement.() -> Unit)?,
+  ): QueryResult<Long> {
+    return writerLock.withLock {
+      writer.execute(identifier, sql, binders)
+    }
+  }
+
+  override fun newTransaction(): QueryResult<Transacter.Transaction> {
+    writerLock.lock()
+    val enclosing = transactions.get()
+    if (enclosing == null) {
+      try {
+        writer.connection.autoCommit = false
+      } catch (e: Exception) {
+        writerLock.unlock()
+        throw e
+      }
+    }
+    val transaction = Transaction(enclosing)
+    transactions.set(transaction)
+    return QueryResult.Value(transaction)
+  }
+
+  override fun currentTransaction(): Transacter.Transaction? {
+    return transactions.get()
+  }
+
+  private inner class Transaction(
+      override val enclosingTransaction: Transacter.Transaction?,
+  ) : Transacter.Transaction() {
+    override fun endTransaction(successful: Boolean): QueryResult<Unit> {
+      try {
+        if (enclosingTransaction == null) {
+          try {
+            if (successful) {
+              writer.connection.commit()
+            } else {
+              writer.connection.rollback()
+            }
+          } finally {
+            writer.connection.autoCommit = true
+          }
+        }
+      } finally {
+        transactions.set(enclosingTransaction as Transaction?)
+        writerLock.unlock()
+      }
+      return QueryResult.Unit
+    }
+  }
+
+  private fun acquireReader(): CachingConnection {
+    check(!closed) {
+      "Apollo: the database is closed"
+    }
+    idleReaders.poll()?.let { return it }
+
+    if (openedReaders.incrementAndGet() <= readConnections) {
+      return try {
+        CachingConnection(openConnection())
+      } catch (e: Exception) {
+        openedReaders.decrementAndGet()
+        throw e
+      }
+    }
+    openedReaders.decrementAndGet()
+
+    // All the read connections are in use, wait for one
+    return idleReaders.take()
+  }
+
+  private fun openConnection(): Connection {
+    val connection = DriverManager.getConnection(url)
+    try {
+      connection.createStatement().use { statement ->
+        pragmas.forEach { (name, value) ->
+          statement.execute("PRAGMA $name=$value")
+        }
+      }
+    } catch (e: Exception) {
+      connection.close()
+      throw e
+    }
+    return connection
+  }
+
+  private fun releaseReader(reader: CachingConnection) {
+    idleReaders.put(reader)
+    if (closed) {
+      // close() was called while the connection was in use
+      closeIdleReaders()
+    }
+  }
+
+  private fun closeIdleReaders() {
+    while (true) {
+      val reader = idleReaders.poll() ?: break
+      reader.close()
+    }
+  }
+
+  override fun addListener(vararg queryKeys: String, listener: Query.Listener) {
+    synchronized(listeners) {
+      queryKeys.forEach {
+        listeners.getOrPut(it) { mutableSetOf() }.add(listener)
+      }
+    }
+  }
+
+  override fun removeListener(vararg queryKeys: String, listener: Query.Listener) {
+    synchronized(listeners) {
+      queryKeys.forEach {
+        listeners[it]?.remove(listener)
+      }
+    }
+  }
+
+  override fun notifyListeners(vararg queryKeys: String) {
+    val toNotify = synchronized(listeners) {
+      queryKeys.flatMap { listeners[it].orEmpty() }.toSet()
+    }
+    toNotify.forEach(Query.Listener::queryResultsChanged)
+  }
+
+  override fun close() {
+    closed = true
+    closeIdleReaders()
+    writerLock.withLock {
+      writer.close()
+    }
+  }
+
+  /**
+   * A connection that keeps the statements that have an identifier prepared. It must not be used concurrently.
+   */
+  private class CachingConnection(val connection: Connection) {
+    private val statements = mutableMapOf<Int, PreparedStatement>()
+
+    private inline fun <R> withStatement(identifier: Int?, sql: String, block: (PreparedStatement) -> R): R {
+      if (identifier == null) {
+        return connection.prepareStatement(sql).use(block)
+      }
+      return block(statements.getOrPut(identifier) { connection.prepareStatement(sql) })
+    }
+
+    fun <R> executeQuery(
+        identifier: Int?,
+        sql: String,
+        mapper: (SqlCursor) -> QueryResult<R>,
+        binders: (SqlPreparedStatement.() -> Unit)?,
+    ): QueryResult<R> {
+      return withStatement(identifier, sql) { statement ->
+        binders?.invoke(JdbcPreparedStatement(statement))
+        statement.executeQuery().use { resultSet ->
+          mapper(JdbcCursor(resultSet))
+        }
+      }
+    }
+
+    fun execute(identifier: Int?, sql: String, binders: (SqlPreparedStatement.() -> Unit)?): QueryResult<Long> {
+      return withStatement(identifier, sql) { statement ->
+        binders?.invoke(JdbcPreparedStatement(statement))
+        QueryResult.Value(statement.executeUpdate().toLong())
+      }
+    }
+
+    fun close() {
+      statements.values.forEach { it.close() }
+      statements.clear()
+      connection.close()
+    }
+  }
+
+  /**
+   * SQLDelight indices start at 0, JDBC indices start at 1
+   */
+  private class JdbcPreparedStatement(private val statement: PreparedStatement) : SqlPreparedStatement {
+    override fun bindBytes(index: Int, bytes: ByteArray?) {
+      if (bytes == null) statement.setNull(index + 1, Types.BLOB) else statement.setBytes(index + 1, bytes)
+    }
+
+    override fun bindLong(index: Int, long: Long?) {
+      if (long == null) statement.setNull(index + 1, Types.INTEGER) else statement.setLong(index + 1, long)
+    }
+
+    override fun bindDouble(index: Int, double: Double?) {
+      if (double == null) statement.setNull(index + 1, Types.REAL) else statement.setDouble(index + 1, double)
+    }
+
+    override fun bindString(index: Int, string: String?) {
+      if (string == null) statement.setNull(index + 1, Types.VARCHAR) else statement.setString(index + 1, string)
+    }
+
+    override fun bindBoolean(index: Int, boolean: Boolean?) {
+      if (boolean == null) statement.setNull(index + 1, Types.INTEGER) else statement.setLong(index + 1, if (boolean) 1L else 0L)
+    }
+  }
+
+  private class JdbcCursor(private val resultSet: ResultSet) : SqlCursor {
+    override fun next(): QueryResult<Boolean> = QueryResult.Value(resultSet.next())
+
+    override fun getString(index: Int): String? = resultSet.getString(index + 1)
+
+    override fun getLong(index: Int): Long? = resultSet.getLong(index + 1).takeUnless { resultSet.wasNull() }
+
+    override fun getBytes(index: Int): ByteArray? = resultSet.getBytes(index + 1)
+
+    override fun getDouble(index: Int): Double? = resultSet.getDouble(index + 1).takeUnless { resultSet.wasNull() }
+
+    override fun getBoolean(index: Int): Boolean? = getLong(index)?.let { it == 1L }
+  }
+}
@@ -1,9 +1,12 @@
+@file:Suppress("DEPRECATION")
+
 package com.apollographql.apollo.cache.normalized.sql.internal
 
 import app.cash.sqldelight.db.QueryResult
 import app.cash.sqldelight.db.SqlDriver
 import app.cash.sqldelight.db.SqlSchema
 import app.cash.sqldelight.driver.jdbc.sqlite.JdbcSqliteDriver
+import com.apollographql.apollo.cache.normalized.sql.WalOptions
 import java.io.File
 import java.util.Properties
 
@@ -52,3 +55,17 @@ internal actual fun maybeCreateOrMigrateSchema(driver: SqlDriver, schema: SqlSch
     driver.execute(null, "PRAGMA $versionPragma=$newVersion", 0)
   }
 }
+
+internal fun createWalDriver(name: String, baseDir: String?, walOptions: WalOptions): SqlDriver {
+  return WalSqliteDriver(
+      url = name.toUrl(baseDir),
+      pragmas = mapOf(
+          "journal_mode" to "WAL",
+          "synchronous" to walOptions.synchronous,
+          "mmap_size" to walOptions.mmapSize.toString(),
+          // A checkpoint can lock the database for a short time
+          "busy_timeout" to "5000",
+      ),
+      readConnections = walOptions.readConnections,
+  )
+}
@@ -0,0 +1,87 @@
+@file:Suppress("DEPRECATION")
+
+package com.apollographql.apollo.cache.normalized.sql
+
+import app.cash.sqldelight.TransacterImpl
+import app.cash.sqldelight.db.SqlDriver
+import com.apollographql.apollo.cache.normalized.api.CacheHeaders
+import com.apollographql.apollo.cache.normalized.api.NormalizedCache
+import com.apollographql.apollo.cache.normalized.api.Record
+import com.apollographql.apollo.cache.normalized.sql.internal.createWalDriver
+import java.io.File
+import java.nio.file.Files
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import kotlin.concurrent.thread
+import kotlin.test.AfterTest
+import kotlin.test.BeforeTest
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
+
+class WalSqlNormalizedCacheTest {
+  private lateinit var baseDir: File
+  private val drivers = mutableListOf<SqlDriver>()
+
+  @BeforeTest
+  fun setUp() {
+    baseDir = Files.createTempDirectory("apollo-wal").toFile()
+  }
+
+  @AfterTest
+  fun tearDown() {
+    drivers.forEach { it.close() }
+    drivers.clear()
+    baseDir.deleteRecursively()
+  }
+
+  private fun createDriver(): SqlDriver {
+    return createWalDriver("wal.db", baseDir.absolutePath, WalOptions(readConnections = 2)).also { drivers.add(it) }
+  }
+
+  private fun createCache(driver: SqlDriver = createDriver()): NormalizedCache {
+    return SqlNormalizedCacheFactory(driver, RecordFormat.Binary).create()
+  }
+
+  @Test
+  fun journalModeIsWal() {
+    val cache = createCache()
+    cache.merge(Record("key", mapOf("field" to "value")), CacheHeaders.NONE)
+
+    assertTrue(baseDir.resolve("wal.db-wal").exists())
+    assertEquals("value", createCache().loadRecord("key", CacheHeaders.NONE)!!["field"])
+  }
+
+  @Test
+  fun readsAreNotBlockedByAnOpenWriteTransaction() {
+    val driver = createDriver()
+    val cache = createCache(driver)
+    cache.merge(Record("key", mapOf("field" to "committed")), CacheHeaders.NONE)
+
+    val inTransaction = CountDownLatch(1)
+    val endTransaction = CountDownLatch(1)
+    val writer = thread {
+      object : TransacterImpl(driver) {}.transaction {
+        // Nested in the transaction above, so it is not committed until the latch is released
+        cache.merge(Record("key", mapOf("field" to "uncommitted")), CacheHeaders.NONE)
+        inTransaction.countDown()
+        endTransaction.await(10, TimeUnit.SECONDS)
+      }
+    }
+
+    val executor = Executors.newSingleThreadExecutor()
+    try {
+      assertTrue(inTransaction.await(10, TimeUnit.SECONDS))
+      // With a single connection, the read would wait for the transaction to end and time out
+      val field = executor.submit<Any?> { cache.loadRecord("key", CacheHeaders.NONE)!!["field"] }.get(5, TimeUnit.SECONDS)
+      assertEquals("committed", field)
+    } finally {
+      endTransaction.countDown()
+      writer.join()
+      executor.shutdown()
+    }
+
+    assertEquals("uncommitted", cache.loadRecord("key", CacheHeaders.NONE)!!["field"])
+  }
+}
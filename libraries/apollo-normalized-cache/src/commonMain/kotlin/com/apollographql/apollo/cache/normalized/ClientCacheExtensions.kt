@@ -333,6 +333,31 @@ fun <T> MutableExecutionOptions<T>.memoryCacheOnly(memoryOnly: Boolean) = addExe
 @Suppress("UNUSED_PARAMETER")
 fun <T> MutableExecutionOptions<T>.emitCacheMisses(emitCacheMisses: Boolean) = this
 
+/**
+ * Sets the [ResponseSnapshotCache] used by the queries that call [useResponseSnapshotCache].
+ */
+@Deprecated("Use the new Normalized Cache at https://github.com/apollographql/apollo-kotlin-normalized-cache")
+@ApolloDeprecatedSince(ApolloDeprecatedSince.Version.v5_0_0)
+@ApolloExperimental
+fun ApolloClient.Builder.responseSnapshotCache(responseSnapshotCache: ResponseSnapshotCache): ApolloClient.Builder {
+  return addExecutionContext(ResponseSnapshotCacheContext(responseSnapshotCache))
+}
+
+/**
+ * @param useResponseSnapshotCache Whether to read and store the whole response in the [ResponseSnapshotCache]
+ * instead of normalizing it. Requires a [ResponseSnapshotCache] set with [responseSnapshotCache].
+ *
+ * This only has effects for queries.
+ *
+ * Default: false
+ */
+@Deprecated("Use the new Normalized Cache at https://github.com/apollographql/apollo-kotlin-normalized-cache")
+@ApolloDeprecatedSince(ApolloDeprecatedSince.Version.v5_0_0)
+@ApolloExperimental
+fun <T> MutableExecutionOptions<T>.useResponseSnapshotCache(useResponseSnapshotCache: Boolean) = addExecutionContext(
+    UseResponseSnapshotCacheContext(useResponseSnapshotCache)
+)
+
 /**
  * @param storePartialResponses Whether to store partial responses.
  *
@@ -475,6 +500,19 @@ internal val <D : Operation.Data> ApolloRequest<D>.memoryCacheOnly
 internal val <D : Operation.Data> ApolloRequest<D>.storePartialResponses
   get() = executionContext[StorePartialResponsesContext]?.value ?: false
 
+/**
+ * The [ResponseSnapshotCache] to use instead of the store or null if this request is normalized
+ */
+internal val <D : Operation.Data> ApolloRequest<D>.responseSnapshotCache: ResponseSnapshotCache?
+  get() {
+    if (operation !is Query || executionContext[UseResponseSnapshotCacheContext]?.value != true) {
+      return null
+    }
+    return checkNotNull(executionContext[ResponseSnapshotCacheContext]?.value) {
+      "Apollo: useResponseSnapshotCache() requires a ResponseSnapshotCache, call ApolloClient.Builder.responseSnapshotCache()"
+    }
+  }
+
 internal val <D : Operation.Data> ApolloRequest<D>.storeReceiveDate
   get() = executionContext[StoreReceiveDateContext]?.value ?: false
 
@@ -681,6 +719,19 @@ internal class StoreExpirationDateContext(val value: Boolean) : ExecutionContext
   companion object Key : ExecutionContext.Key<StoreExpirationDateContext>
 }
 
+internal class ResponseSnapshotCacheContext(val value: ResponseSnapshotCache) : ExecutionContext.Element {
+  override val key: ExecutionContext.Key<*>
+    get() = Key
+
+  companion object Key : ExecutionContext.Key<ResponseSnapshotCacheContext>
+}
+
+internal class UseResponseSnapshotCacheContext(val value: Boolean) : ExecutionContext.Element {
+  override val key: ExecutionContext.Key<*>
+    get() = Key
+
+  companion object Key : ExecutionContext.Key<UseResponseSnapshotCacheContext>
+}
 
 internal class WriteToCacheAsynchronouslyContext(val value: Boolean) : ExecutionContext.Element {
   override val key: ExecutionContext.Key<*>
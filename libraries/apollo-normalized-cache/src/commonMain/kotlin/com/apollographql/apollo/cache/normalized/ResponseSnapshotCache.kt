@@ -0,0 +1,158 @@
+@file:Suppress("DEPRECATION")
+
+package com.apollographql.apollo.cache.normalized
+
+import com.apollographql.apollo.annotations.ApolloDeprecatedSince
+import com.apollographql.apollo.annotations.ApolloExperimental
+import com.apollographql.apollo.api.CustomScalarAdapters
+import com.apollographql.apollo.api.Operation
+import com.apollographql.apollo.api.Query
+import com.apollographql.apollo.api.composeData
+import com.apollographql.apollo.api.falseVariables
+import com.apollographql.apollo.api.json.BufferedSinkJsonWriter
+import com.apollographql.apollo.api.json.jsonReader
+import com.apollographql.apollo.api.parseData
+import com.apollographql.apollo.api.variablesJson
+import com.apollographql.apollo.mpp.currentTimeMillis
+import kotlinx.atomicfu.locks.reentrantLock
+import kotlinx.atomicfu.locks.withLock
+import okio.Buffer
+import okio.ByteString
+import okio.use
+import kotlin.jvm.JvmOverloads
+
+/**
+ * A cache of whole query responses, keyed by operation id and variables.
+ *
+ * Unlike the normalized cache, a response snapshot is stored as the JSON of its data and is never normalized into
+ * records: writing it doesn't compute any cache key or merge any record, and reading it is the same as parsing a
+ * network response. This is faster for large responses that are not shared with other queries, such as read-only
+ * catalogs, but:
+ * - the snapshots are not updated when the same objects are modified by other queries or by mutations.
+ * - watchers are not notified when a snapshot is written.
+ * - [ApolloStore.clearAll] doesn't remove the snapshots. Use [clear] instead.
+ *
+ * Configure it on the [ApolloClient][com.apollographql.apollo.ApolloClient] and opt in for each query:
+ *
+ * ```kotlin
+ * val apolloClient = ApolloClient.Builder()
+ *     .serverUrl("https://...")
+ *     .normalizedCache(MemoryCacheFactory())
+ *     .responseSnapshotCache(ResponseSnapshotCache(maxSizeBytes = 10 * 1024 * 1024, expireAfterMillis = 60_000))
+ *     .build()
+ *
+ * apolloClient.query(CatalogQuery())
+ *     .useResponseSnapshotCache(true)
+ *     .execute()
+ * ```
+ *
+ * The [FetchPolicy] of the query decides whether the snapshot is read or the network is used.
+ *
+ * @param maxSizeBytes the maximum size of the snapshots. The least recently used snapshots are removed once it is
+ * reached.
+ * @param expireAfterMillis the time after which a snapshot is not returned anymore. Expired snapshots are removed
+ * when they are read or evicted.
+ */
+@Deprecated("Use the new Normalized Cache at https://github.com/apollographql/apollo-kotlin-normalized-cache")
+@ApolloDeprecatedSince(ApolloDeprecatedSince.Version.v5_0_0)
+@ApolloExperimental
+class ResponseSnapshotCache @JvmOverloads constructor(
+    private val maxSizeBytes: Long,
+    private val expireAfterMillis: Long = Long.MAX_VALUE,
+) {
+  private val lock = reentrantLock()
+
+  // Iteration order is insertion order, entries are re-inserted when used so that the first one is the least
+  // recently used
+  private val entries = LinkedHashMap<String, Entry>()
+  private var _sizeBytes = 0L
+
+  /**
+   * The current size of the snapshots in bytes.
+   */
+  val sizeBytes: Long
+    get() = lock.withLock { _sizeBytes }
+
+  /**
+   * Removes the snapshot of [query] with the given variables.
+   *
+   * @return true if a snapshot was removed.
+   */
+  @JvmOverloads
+  fun remove(query: Query<*>, customScalarAdapters: CustomScalarAdapters = CustomScalarAdapters.Empty): Boolean {
+    val key = key(query, customScalarAdapters)
+    return lock.withLock {
+      removeUnsafe(key) != null
+    }
+  }
+
+  /**
+   * Removes all the snapshots.
+   */
+  fun clear() {
+    lock.withLock {
+      entries.clear()
+      _sizeBytes = 0
+    }
+  }
+
+  internal fun <D : Operation.Data> read(operation: Operation<D>, customScalarAdapters: CustomScalarAdapters): D? {
+    val key = key(operation, customScalarAdapters)
+    val bytes = lock.withLock {
+      val entry = removeUnsafe(key) ?: return null
+      if (entry.expiresAtMillis <= currentTimeMillis()) {
+        return null
+      }
+      entries[key] = entry
+      _sizeBytes += entry.weight
+      entry.data
+    }
+
+    return Buffer().write(bytes).jsonReader().use {
+      operation.parseData(it, customScalarAdapters, operation.falseVariables(customScalarAdapters))
+    }
+  }
+
+  internal fun <D : Operation.Data> write(operation: Operation<D>, data: D, customScalarAdapters: CustomScalarAdapters) {
+    val key = key(operation, customScalarAdapters)
+    val buffer = Buffer()
+    BufferedSinkJsonWriter(buffer).use {
+      operation.composeData(it, customScalarAdapters, data)
+    }
+    val bytes = buffer.readByteString()
+    // Strings are UTF-16 in memory
+    val weight = key.length * 2L + bytes.size
+    val expiresAtMillis = if (expireAfterMillis == Long.MAX_VALUE) Long.MAX_VALUE else currentTimeMillis() + expireAfterMillis
+
+    lock.withLock {
+      removeUnsafe(key)
+      if (weight > maxSizeBytes) {
+        return
+      }
+      entries[key] = Entry(bytes, expiresAtMillis, weight)
+      _sizeBytes += weight
+
+      val iterator = entries.values.iterator()
+      while (_sizeBytes > maxSizeBytes && iterator.hasNext()) {
+        _sizeBytes -= iterator.next().weight
+        iterator.remove()
+      }
+    }
+  }
+
+  private fun removeUnsafe(key: String): Entry? {
+    return entries.remove(key)?.also {
+      _sizeBytes -= it.weight
+    }
+  }
+
+  internal fun key(operation: Operation<*>, customScalarAdapters: CustomScalarAdapters): String {
+    return operation.id() + operation.variablesJson(customScalarAdapters)
+  }
+
+  private class Entry(
+      val data: ByteString,
+      val expiresAtMillis: Long,
+      val weight: Long,
+  )
+}
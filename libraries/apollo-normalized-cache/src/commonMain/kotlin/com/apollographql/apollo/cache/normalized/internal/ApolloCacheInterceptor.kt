@@ -20,6 +20,7 @@ import com.apollographql.apollo.cache.normalized.doNotStore
 import com.apollographql.apollo.cache.normalized.fetchFromCache
 import com.apollographql.apollo.cache.normalized.memoryCacheOnly
 import com.apollographql.apollo.cache.normalized.optimisticData
+import com.apollographql.apollo.cache.normalized.responseSnapshotCache
 import com.apollographql.apollo.cache.normalized.storePartialResponses
 import com.apollographql.apollo.cache.normalized.storeReceiveDate
 import com.apollographql.apollo.cache.normalized.writeToCacheAsynchronously
@@ -74,6 +75,17 @@ internal class ApolloCacheInterceptor(
       return
     }
 
+    val responseSnapshotCache = request.responseSnapshotCache
+    if (responseSnapshotCache != null) {
+      // Skip normalization. Incremental responses are only stored once complete.
+      if (response.isLast) {
+        maybeAsync(request) {
+          responseSnapshotCache.write(request.operation, response.data!!, customScalarAdapters)
+        }
+      }
+      return
+    }
+
     maybeAsync(request) {
       val cacheKeys = if (response.data != null) {
         var cacheHeaders = request.cacheHeaders + response.cacheHeaders
@@ -210,16 +222,14 @@ internal class ApolloCacheInterceptor(
     val operation = request.operation
     val startMillis = currentTimeMillis()
 
+    val responseSnapshotCache = request.responseSnapshotCache
     val data = try {
-      var cacheHeaders = request.cacheHeaders
-      if (request.memoryCacheOnly) {
-        cacheHeaders += CacheHeaders.Builder().addHeader(ApolloCacheHeaders.MEMORY_CACHE_ONLY, "true").build()
+      if (responseSnapshotCache != null) {
+        responseSnapshotCache.read(operation, customScalarAdapters)
+            ?: throw CacheMissException(responseSnapshotCache.key(operation, customScalarAdapters))
+      } else {
+        readFromStore(request, customScalarAdapters)
       }
-      store.readOperation(
-          operation = operation,
-          customScalarAdapters = customScalarAdapters,
-          cacheHeaders = cacheHeaders
-      )
     } catch (e: CacheMissException) {
       return ApolloResponse.Builder(
           requestUuid = request.requestUuid,
@@ -256,6 +266,21 @@ internal class ApolloCacheInterceptor(
   }
 
 
+  private fun <D : Query.Data> readFromStore(
+      request: ApolloRequest<D>,
+      customScalarAdapters: CustomScalarAdapters,
+  ): D {
+    var cacheHeaders = request.cacheHeaders
+    if (request.memoryCacheOnly) {
+      cacheHeaders += CacheHeaders.Builder().addHeader(ApolloCacheHeaders.MEMORY_CACHE_ONLY, "true").build()
+    }
+    return store.readOperation(
+        operation = request.operation,
+        customScalarAdapters = customScalarAdapters,
+        cacheHeaders = cacheHeaders
+    )
+  }
+
   private fun <D : Operation.Data> readFromNetwork(
       request: ApolloRequest<D>,
       chain: ApolloInterceptorChain,
@@ -53,6 +53,12 @@ internal class DefaultApolloStore(
 
   override val changedKeys = changedKeysEvents.asSharedFlow()
 
+  /**
+   * Watchers started by [WatcherInterceptor] register here instead of collecting [changedKeys] so that a publication
+   * only notifies the watchers whose dependent keys changed
+   */
+  internal val watcherRegistry = WatcherRegistry()
+
   // Keeping this as lazy to avoid accessing the disk at initialization which usually happens on the main thread
   private val cache: OptimisticCache by lazy {
     OptimisticCache().chain(normalizedCacheFactory.createChain()) as OptimisticCache
@@ -65,6 +71,7 @@ internal class DefaultApolloStore(
       return
     }
 
+    watcherRegistry.notify(keys)
     changedKeysEvents.emit(keys)
   }
 
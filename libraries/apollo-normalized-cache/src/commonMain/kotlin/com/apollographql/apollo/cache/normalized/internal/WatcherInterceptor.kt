@@ -38,6 +38,10 @@ internal class WatcherInterceptor(val store: ApolloStore) : ApolloInterceptor {
     @Suppress("UNCHECKED_CAST")
     var watchedKeys: Set<String>? = watchContext.data?.let { store.normalize(request.operation, it as D, customScalarAdapters).values.dependentKeys() }
 
+    if (store is DefaultApolloStore) {
+      return watchWithRegistry(store.watcherRegistry, request, chain, watchedKeys, customScalarAdapters)
+    }
+
     return (store.changedKeys as SharedFlow<Any>)
         .onSubscription {
           emit(Unit)
@@ -61,6 +65,37 @@ internal class WatcherInterceptor(val store: ApolloStore) : ApolloInterceptor {
         }
         .flattenConcatPolyfill()
   }
+
+  /**
+   * Same as above but only wakes up when one of the watched keys changed. Changes that happen while the request is
+   * executing are conflated into a single refetch.
+   */
+  private fun <D : Operation.Data> watchWithRegistry(
+      watcherRegistry: WatcherRegistry,
+      request: ApolloRequest<D>,
+      chain: ApolloInterceptorChain,
+      watchedKeys: Set<String>?,
+      customScalarAdapters: CustomScalarAdapters,
+  ): Flow<ApolloResponse<D>> = flow {
+    val watcher = watcherRegistry.register(watchedKeys)
+    try {
+      // The watcher is registered, no change can be missed from now on
+      emit(ApolloResponse.Builder(request.operation, request.requestUuid).exception(WatcherSentinel).build())
+      while (true) {
+        watcher.changes.receive()
+        emitAll(
+            chain.proceed(request)
+                .onEach { response ->
+                  if (response.data != null) {
+                    watcherRegistry.update(watcher, store.normalize(request.operation, response.data!!, customScalarAdapters).values.dependentKeys())
+                  }
+                }
+        )
+      }
+    } finally {
+      watcherRegistry.unregister(watcher)
+    }
+  }
 }
 
 /**
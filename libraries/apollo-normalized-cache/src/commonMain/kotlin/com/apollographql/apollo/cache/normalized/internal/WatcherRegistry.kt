@@ -0,0 +1,119 @@
+@file:Suppress("DEPRECATION")
+
+package com.apollographql.apollo.cache.normalized.internal
+
+import com.apollographql.apollo.cache.normalized.ApolloStore
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.channels.ReceiveChannel
+
+/**
+ * An inverted index from field keys to the watchers that depend on them.
+ *
+ * When keys are published, only the watchers whose dependent keys changed are notified. The cost of a publication
+ * is O(changed keys), independently of the number of active watchers.
+ *
+ * Notifications are conflated per watcher: if several publications happen while a watcher is busy refetching,
+ * the watcher is notified only once.
+ */
+internal class WatcherRegistry {
+  private val lock = Lock()
+  private val watchersByKey = mutableMapOf<String, MutableSet<Watcher>>()
+
+  /**
+   * Watchers that do not know their dependent keys yet and are notified of every change
+   */
+  private val unkeyedWatchers = mutableSetOf<Watcher>()
+  private val allWatchers = mutableSetOf<Watcher>()
+
+  class Watcher internal constructor() {
+    private val channel = Channel<Unit>(Channel.CONFLATED)
+    internal var keys: Set<String>? = null
+
+    /**
+     * Receives a [Unit] each time one of the dependent keys changed
+     */
+    val changes: ReceiveChannel<Unit>
+      get() = channel
+
+    internal fun notifyChanged() {
+      channel.trySend(Unit)
+    }
+  }
+
+  /**
+   * Registers a new watcher that depends on [keys] or on all keys if [keys] is null
+   */
+  fun register(keys: Set<String>?): Watcher {
+    val watcher = Watcher()
+    lock.write {
+      allWatchers.add(watcher)
+      index(watcher, keys)
+    }
+    return watcher
+  }
+
+  /**
+   * Updates the keys [watcher] depends on, typically after a refetch
+   */
+  fun update(watcher: Watcher, keys: Set<String>?) {
+    lock.write {
+      if (!allWatchers.contains(watcher)) {
+        return@write
+      }
+      unindex(watcher)
+      index(watcher, keys)
+    }
+  }
+
+  fun unregister(watcher: Watcher) {
+    lock.write {
+      if (allWatchers.remove(watcher)) {
+        unindex(watcher)
+      }
+    }
+  }
+
+  /**
+   * Notifies the watchers that depend on at least one of [changedKeys]
+   */
+  fun notify(changedKeys: Set<String>) {
+    lock.read {
+      if (changedKeys === ApolloStore.ALL_KEYS) {
+        allWatchers.forEach { it.notifyChanged() }
+        return@read
+      }
+
+      unkeyedWatchers.forEach { it.notifyChanged() }
+      for (key in changedKeys) {
+        // notifying a watcher twice is a no-op as notifications are conflated
+        watchersByKey[key]?.forEach { it.notifyChanged() }
+      }
+    }
+  }
+
+  private fun index(watcher: Watcher, keys: Set<String>?) {
+    watcher.keys = keys
+    if (keys == null) {
+      unkeyedWatchers.add(watcher)
+      return
+    }
+    for (key in keys) {
+      watchersByKey.getOrPut(key) { mutableSetOf() }.add(watcher)
+    }
+  }
+
+  private fun unindex(watcher: Watcher) {
+    val keys = watcher.keys
+    if (keys == null) {
+      unkeyedWatchers.remove(watcher)
+      return
+    }
+    for (key in keys) {
+      val watchers = watchersByKey[key] ?: continue
+      watchers.remove(watcher)
+      if (watchers.isEmpty()) {
+        watchersByKey.remove(key)
+      }
+    }
+  }
+}
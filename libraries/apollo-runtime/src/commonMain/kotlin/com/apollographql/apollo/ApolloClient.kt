@@ -23,6 +23,7 @@ import com.apollographql.apollo.interceptor.ApolloInterceptor
 import com.apollographql.apollo.interceptor.AutoPersistedQueryInterceptor
 import com.apollographql.apollo.interceptor.DefaultInterceptorChain
 import com.apollographql.apollo.interceptor.NetworkInterceptor
+import com.apollographql.apollo.interceptor.QueryDeduplicationInterceptor
 import com.apollographql.apollo.interceptor.RetryOnErrorInterceptor
 import com.apollographql.apollo.internal.defaultDispatcher
 import com.apollographql.apollo.network.NetworkTransport
@@ -85,6 +86,7 @@ private constructor(
   val customScalarAdapters: CustomScalarAdapters = builder.customScalarAdapters
   val cacheInterceptor: ApolloInterceptor? = builder.cacheInterceptor
   private val autoPersistedQueryInterceptor: ApolloInterceptor? = builder.autoPersistedQueryInterceptor
+  private val queryDeduplicationInterceptor: ApolloInterceptor? = builder.queryDeduplicationInterceptor
   private val retryOnError: ((ApolloRequest<*>) -> Boolean)? = builder.retryOnError
   private val retryOnErrorInterceptor: ApolloInterceptor? = builder.retryOnErrorInterceptor
   private val failFastIfOffline = builder.failFastIfOffline
@@ -244,6 +246,9 @@ private constructor(
       }
 
       addAll(builder._beforeAutoPersistedQueriesInterceptors)
+      if (queryDeduplicationInterceptor != null) {
+        add(queryDeduplicationInterceptor)
+      }
       if (autoPersistedQueryInterceptor != null) {
         add(autoPersistedQueryInterceptor)
       }
@@ -425,6 +430,9 @@ private constructor(
     var autoPersistedQueryInterceptor: ApolloInterceptor? = null
       private set
 
+    var queryDeduplicationInterceptor: ApolloInterceptor? = null
+      private set
+
     var sendEnhancedClientAwareness: Boolean = true
       private set
 
@@ -519,6 +527,19 @@ private constructor(
       this.autoPersistedQueryInterceptor = autoPersistedQueryInterceptor
     }
 
+    /**
+     * Sets the [ApolloInterceptor] used to deduplicate identical queries executed concurrently. It is called after
+     * the cache so that cache hits do not wait for another query.
+     *
+     * @param queryDeduplicationInterceptor the [ApolloInterceptor] to use or `null` to not deduplicate queries.
+     *
+     * @see QueryDeduplicationInterceptor
+     * @see addInterceptor
+     */
+    fun queryDeduplicationInterceptor(queryDeduplicationInterceptor: ApolloInterceptor?) = apply {
+      this.queryDeduplicationInterceptor = queryDeduplicationInterceptor
+    }
+
     /**
      * Configures the url to use for every request.
      * This applies to every request, including subscriptions. This url is set in the request [ExecutionContext] and takes precedence over
@@ -870,6 +891,7 @@ private constructor(
      * **The order is important**. The built-in interceptors are always called in the following order:
      *
      * - cacheInterceptor
+     * - queryDeduplicationInterceptor
      * - autoPersistedQueriesInterceptor
      * - retryOnErrorInterceptor
      * - networkInterceptor
@@ -877,6 +899,7 @@ private constructor(
      * Use [ApolloInterceptor.InsertionPoint] to control where to insert a specific interceptor.
      *
      * @see cacheInterceptor
+     * @see queryDeduplicationInterceptor
      * @see autoPersistedQueriesInterceptor
      * @see retryOnErrorInterceptor
      */
@@ -1046,6 +1069,7 @@ private constructor(
           .retryOnErrorInterceptor(retryOnErrorInterceptor)
           .cacheInterceptor(cacheInterceptor)
           .autoPersistedQueriesInterceptor(autoPersistedQueryInterceptor)
+          .queryDeduplicationInterceptor(queryDeduplicationInterceptor)
           .failFastIfOffline(failFastIfOffline)
           .sendEnhancedClientAwareness(sendEnhancedClientAwareness)
     }
@@ -0,0 +1,211 @@
+package com.apollographql.apollo.interceptor
+
+import com.apollographql.apollo.ConcurrencyInfo
+import com.apollographql.apollo.api.ApolloRequest
+import com.apollographql.apollo.api.ApolloResponse
+import com.apollographql.apollo.api.CustomScalarAdapters
+import com.apollographql.apollo.api.ExecutionContext
+import com.apollographql.apollo.api.OnError
+import com.apollographql.apollo.api.Operation
+import com.apollographql.apollo.api.Query
+import com.apollographql.apollo.api.http.HttpHeader
+import com.apollographql.apollo.api.http.HttpMethod
+import com.apollographql.apollo.api.json.ApolloJsonElement
+import com.apollographql.apollo.api.variablesJson
+import kotlinx.atomicfu.atomic
+import kotlinx.atomicfu.locks.reentrantLock
+import kotlinx.atomicfu.locks.withLock
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.emitAll
+import kotlinx.coroutines.flow.flow
+import kotlinx.coroutines.flow.transformWhile
+import kotlinx.coroutines.flow.update
+import kotlinx.coroutines.launch
+import kotlin.jvm.JvmOverloads
+
+/**
+ * An [ApolloInterceptor] that executes identical queries only once while they are in flight.
+ *
+ * Two queries are identical if they have the same [Operation.id], variables, url, HTTP method, HTTP headers,
+ * extensions and request options, such as [ApolloRequest.retryOnError] or [ApolloRequest.sendDocument], and if the
+ * elements of their [ApolloRequest.executionContext] are equal. Elements that do not implement `equals` are only equal
+ * to themselves so queries with such elements added per request are not deduplicated.
+ * The first query executes the rest of the chain in the [ApolloClient][com.apollographql.apollo.ApolloClient] scope
+ * and its responses are sent to all the identical queries executed before it completes. The rest of the chain is
+ * cancelled if all the queries are cancelled.
+ *
+ * Mutations and subscriptions are never deduplicated.
+ *
+ * Use with [com.apollographql.apollo.ApolloClient.Builder.queryDeduplicationInterceptor]:
+ *
+ * ```kotlin
+ * val deduplicationInterceptor = QueryDeduplicationInterceptor()
+ * apolloClient = ApolloClient.Builder()
+ *     .serverUrl("https://...")
+ *     .queryDeduplicationInterceptor(deduplicationInterceptor)
+ *     .build()
+ *
+ * // later
+ * println("${deduplicationInterceptor.deduplicatedCount} queries were deduplicated")
+ * ```
+ *
+ * @param httpHeaderNames the names of the HTTP headers that are compared or null to compare all the headers. Use it
+ * to ignore headers that change for each request, such as tracing headers.
+ */
+class QueryDeduplicationInterceptor @JvmOverloads constructor(
+    private val httpHeaderNames: Set<String>? = null,
+) : ApolloInterceptor {
+  private val lock = reentrantLock()
+  private val inFlights = mutableMapOf<Key, InFlight>()
+  private val _deduplicatedCount = atomic(0L)
+
+  /**
+   * The number of queries that received the responses of an identical query instead of executing the rest of the
+   * chain.
+   */
+  val deduplicatedCount: Long
+    get() = _deduplicatedCount.value
+
+  override fun <D : Operation.Data> intercept(request: ApolloRequest<D>, chain: ApolloInterceptorChain): Flow<ApolloResponse<D>> {
+    val coroutineScope = request.executionContext[ConcurrencyInfo]?.coroutineScope
+    if (request.operation !is Query || coroutineScope == null) {
+      return chain.proceed(request)
+    }
+
+    return flow {
+      val key = request.key()
+      val inFlight = lock.withLock {
+        val existing = inFlights[key]
+        if (existing != null) {
+          _deduplicatedCount.incrementAndGet()
+          existing
+        } else {
+          InFlight().also { inFlight ->
+            inFlights[key] = inFlight
+            inFlight.job = coroutineScope.launch {
+              try {
+                chain.proceed(request).collect { response ->
+                  inFlight.state.update { State(it.responses + response, completed = false, failure = null) }
+                }
+                complete(key, inFlight, null)
+              } catch (e: Throwable) {
+                // Forward the exception to the queries, not to the ApolloClient scope
+                complete(key, inFlight, e)
+                if (e is CancellationException) {
+                  throw e
+                }
+              }
+            }
+          }
+        }.also {
+          it.subscribers++
+        }
+      }
+
+      try {
+        var index = 0
+        emitAll(
+            inFlight.state.transformWhile { state ->
+              while (index < state.responses.size) {
+                @Suppress("UNCHECKED_CAST")
+                val response = state.responses[index++] as ApolloResponse<D>
+                emit(response.withRequestUuidOf(request))
+              }
+              if (state.failure != null) {
+                throw state.failure
+              }
+              !state.completed
+            }
+        )
+      } finally {
+        lock.withLock {
+          inFlight.subscribers--
+          if (inFlight.subscribers == 0 && !inFlight.state.value.completed) {
+            // Nobody is interested in the responses anymore
+            inFlight.job?.cancel()
+            if (inFlights[key] === inFlight) {
+              inFlights.remove(key)
+            }
+          }
+        }
+      }
+    }
+  }
+
+  private fun complete(key: Key, inFlight: InFlight, failure: Throwable?) {
+    lock.withLock {
+      // Queries executed from now on execute the chain again
+      if (inFlights[key] === inFlight) {
+        inFlights.remove(key)
+      }
+    }
+    inFlight.state.update { State(it.responses, completed = true, failure = failure) }
+  }
+
+  private fun <D : Operation.Data> ApolloResponse<D>.withRequestUuidOf(request: ApolloRequest<D>): ApolloResponse<D> {
+    if (requestUuid == request.requestUuid) {
+      return this
+    }
+    return newBuilder().requestUuid(request.requestUuid).build()
+  }
+
+  private fun ApolloRequest<*>.key(): Key {
+    val customScalarAdapters = executionContext[CustomScalarAdapters] ?: CustomScalarAdapters.Empty
+    return Key(
+        operationId = operation.id(),
+        variables = operation.variablesJson(customScalarAdapters),
+        url = url,
+        httpMethod = httpMethod,
+        httpHeaders = httpHeaders.orEmpty().filter { header ->
+          httpHeaderNames == null || httpHeaderNames.any { it.equals(header.name, ignoreCase = true) }
+        },
+        extensions = extensions,
+        onError = onError,
+        sendApqExtensions = sendApqExtensions,
+        sendDocument = sendDocument,
+        enableAutoPersistedQueries = enableAutoPersistedQueries,
+        canBeBatched = canBeBatched,
+        ignoreUnknownKeys = ignoreUnknownKeys,
+        retryOnError = retryOnError,
+        failFastIfOffline = failFastIfOffline,
+        sendEnhancedClientAwareness = sendEnhancedClientAwareness,
+        executionContext = executionContext.fold(mutableSetOf<ExecutionContext.Element>()) { acc, element ->
+          acc.apply { add(element) }
+        }
+    )
+  }
+
+  private data class Key(
+      val operationId: String,
+      val variables: String,
+      val url: String?,
+      val httpMethod: HttpMethod?,
+      val httpHeaders: List<HttpHeader>,
+      val extensions: Map<String, ApolloJsonElement>?,
+      val onError: OnError?,
+      val sendApqExtensions: Boolean?,
+      val sendDocument: Boolean?,
+      val enableAutoPersistedQueries: Boolean?,
+      val canBeBatched: Boolean?,
+      val ignoreUnknownKeys: Boolean?,
+      val retryOnError: Boolean?,
+      val failFastIfOffline: Boolean?,
+      val sendEnhancedClientAwareness: Boolean,
+      val executionContext: Set<ExecutionContext.Element>,
+  )
+
+  private class State(
+      val responses: List<ApolloResponse<*>>,
+      val completed: Boolean,
+      val failure: Throwable?,
+  )
+
+  private class InFlight {
+    val state = MutableStateFlow(State(emptyList(), completed = false, failure = null))
+    var subscribers = 0
+    var job: Job? = null
+  }
+}
@@ -1,8 +1,10 @@
 package com.apollographql.apollo.interceptor
 
+import com.apollographql.apollo.annotations.ApolloExperimental
 import com.apollographql.apollo.api.ApolloRequest
 import com.apollographql.apollo.api.ApolloResponse
 import com.apollographql.apollo.api.Operation
+import com.apollographql.apollo.api.Query
 import com.apollographql.apollo.api.Subscription
 import com.apollographql.apollo.exception.ApolloException
 import com.apollographql.apollo.exception.ApolloNetworkException
@@ -10,15 +12,27 @@ import com.apollographql.apollo.exception.ApolloOfflineException
 import com.apollographql.apollo.exception.ApolloWebSocketClosedException
 import com.apollographql.apollo.network.NetworkMonitor
 import com.apollographql.apollo.network.waitForNetwork
+import kotlinx.atomicfu.locks.reentrantLock
+import kotlinx.atomicfu.locks.withLock
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.CoroutineStart
+import kotlinx.coroutines.Job
 import kotlinx.coroutines.delay
 import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.channelFlow
 import kotlinx.coroutines.flow.emitAll
 import kotlinx.coroutines.flow.flow
 import kotlinx.coroutines.flow.onEach
 import kotlinx.coroutines.flow.retryWhen
+import kotlinx.coroutines.job
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.withTimeoutOrNull
 import kotlin.jvm.JvmOverloads
+import kotlin.math.ceil
 import kotlin.math.pow
+import kotlin.random.Random
 import kotlin.time.Duration.Companion.seconds
+import kotlin.time.TimeSource
 
 /**
  * Returns a default [ApolloInterceptor] that monitors exceptions and possibly retries the [Flow] according to [retryStrategy].
@@ -43,7 +57,41 @@ fun RetryOnErrorInterceptor(
     networkMonitor: NetworkMonitor? = null,
     retryStrategy: RetryStrategy = defaultRetryStrategy,
 ): ApolloInterceptor =
-  DefaultRetryOnErrorInterceptorImpl(networkMonitor, retryStrategy)
+  DefaultRetryOnErrorInterceptorImpl(networkMonitor, retryStrategy, null, null)
+
+/**
+ * Returns a default [ApolloInterceptor] that monitors exceptions and possibly retries the [Flow] according to [retryStrategy].
+ *
+ * The returned interceptor is used by a single [ApolloClient][com.apollographql.apollo.ApolloClient] so that all the
+ * requests of that client share the same [retryBudget] and latency statistics:
+ *
+ * ```kotlin
+ * apolloClient = ApolloClient.Builder()
+ *                 .serverUrl("https://...")
+ *                 .retryOnErrorInterceptor(
+ *                     RetryOnErrorInterceptor(
+ *                         networkMonitor = null,
+ *                         retryStrategy = defaultRetryStrategy,
+ *                         retryBudget = RetryBudget(),
+ *                         hedging = Hedging()
+ *                     )
+ *                 )
+ *                 .build()
+ * ```
+ *
+ * @param retryBudget the [RetryBudget] that limits the number of retries or null to retry as long as [retryStrategy]
+ * says so.
+ * @param hedging the [Hedging] configuration used to send a second copy of slow queries or null to never send a
+ * second copy.
+ */
+@ApolloExperimental
+fun RetryOnErrorInterceptor(
+    networkMonitor: NetworkMonitor?,
+    retryStrategy: RetryStrategy,
+    retryBudget: RetryBudget?,
+    hedging: Hedging?,
+): ApolloInterceptor =
+  DefaultRetryOnErrorInterceptorImpl(networkMonitor, retryStrategy, retryBudget, hedging)
 
 fun interface RetryStrategy {
   /**
@@ -90,6 +138,96 @@ class RetryContext(
     get() = _attempt
 }
 
+/**
+ * A token bucket that limits the number of retries when the server fails.
+ *
+ * The bucket starts with [maxTokens] tokens. Each failed response removes one token and each successful response adds
+ * [tokenRatio] tokens, up to [maxTokens]. Requests are retried only while more than half of the tokens are available.
+ * During an outage, the retries stop after a few failures instead of multiplying the load on the server, and they
+ * resume progressively once requests succeed again.
+ *
+ * Offline errors do not use the budget.
+ *
+ * @param maxTokens the size of the bucket.
+ * @param tokenRatio the number of tokens added by a successful response.
+ */
+@ApolloExperimental
+class RetryBudget @JvmOverloads constructor(
+    private val maxTokens: Int = 10,
+    private val tokenRatio: Double = 0.1,
+) {
+  private val lock = reentrantLock()
+  private var _tokens = maxTokens.toDouble()
+
+  init {
+    require(maxTokens > 0) {
+      "Apollo: maxTokens must be > 0"
+    }
+  }
+
+  /**
+   * The number of tokens currently available.
+   */
+  val tokens: Double
+    get() = lock.withLock { _tokens }
+
+  /**
+   * Whether requests may be retried.
+   */
+  val canRetry: Boolean
+    get() = lock.withLock { _tokens > maxTokens / 2.0 }
+
+  internal fun onSuccess() {
+    lock.withLock {
+      _tokens = (_tokens + tokenRatio).coerceAtMost(maxTokens.toDouble())
+    }
+  }
+
+  internal fun onFailure() {
+    lock.withLock {
+      _tokens = (_tokens - 1).coerceAtLeast(0.0)
+    }
+  }
+}
+
+/**
+ * Configures hedged queries.
+ *
+ * When a query takes longer than the [percentile] of the latencies of the previous queries, a second copy of the query
+ * is sent. The first copy that returns a response is used and the other one is cancelled. This trades a bit of extra
+ * load for a lower tail latency.
+ *
+ * Only queries are hedged. Mutations and subscriptions are never sent twice.
+ *
+ * @param percentile the percentile of the observed latencies after which the second copy is sent.
+ * @param defaultDelayMillis the delay after which the second copy is sent while fewer than [sampleSize] / 10 latencies
+ * have been observed.
+ * @param sampleSize the number of latencies used to compute the percentile. Older latencies are discarded.
+ */
+@ApolloExperimental
+class Hedging @JvmOverloads constructor(
+    internal val percentile: Double = 0.95,
+    internal val defaultDelayMillis: Long = 1_000,
+    internal val sampleSize: Int = 100,
+) {
+  init {
+    require(percentile > 0.0 && percentile <= 1.0) {
+      "Apollo: percentile must be in ]0, 1]"
+    }
+    require(sampleSize > 0) {
+      "Apollo: sampleSize must be > 0"
+    }
+  }
+}
+
+/**
+ * The default [RetryStrategy]:
+ * - subscriptions are retried when the network is back if the device is offline.
+ * - network errors are retried up to 3 times for queries and mutations and forever for subscriptions.
+ *
+ * The delay before each retry is chosen randomly between 0 and 2^attempt seconds, capped at 60 seconds ("full jitter")
+ * so that clients that failed at the same time do not retry at the same time.
+ */
 val defaultRetryStrategy = RetryStrategy { state: RetryContext ->
   val request = state.request
   val exception = state.response.exception
@@ -109,13 +247,13 @@ val defaultRetryStrategy = RetryStrategy { state: RetryContext ->
 
   if (exception.isRecoverable()) {
     if (request.operation !is Subscription && state.attempt >= 3) {
-      // We have waited 1 + 2 + 4 = 7 seconds.
+      // We have waited at most 1 + 2 + 4 = 7 seconds.
       // Give up and return the error.
       return@RetryStrategy false
     }
 
-    // Cap the delay at 60 seconds
-    delay(2.0.pow(state.attempt).coerceAtMost(60.0).seconds)
+    // Cap the delay at 60 seconds and pick a random delay below it
+    delay((Random.nextDouble() * 2.0.pow(state.attempt).coerceAtMost(60.0)).seconds)
     return@RetryStrategy true
   }
 
@@ -125,7 +263,10 @@ val defaultRetryStrategy = RetryStrategy { state: RetryContext ->
 private class DefaultRetryOnErrorInterceptorImpl(
     private val networkMonitor: NetworkMonitor?,
     private val retryStrategy: RetryStrategy,
+    private val retryBudget: RetryBudget?,
+    private val hedging: Hedging?,
 ) : ApolloInterceptor {
+  private val latencies = hedging?.let { LatencySamples(it.sampleSize) }
 
   override fun <D : Operation.Data> intercept(request: ApolloRequest<D>, chain: ApolloInterceptorChain): Flow<ApolloResponse<D>> {
     val failFastIfOffline = request.failFastIfOffline ?: false
@@ -133,7 +274,11 @@ private class DefaultRetryOnErrorInterceptorImpl(
     val state = RetryContext(networkMonitor, request)
 
     // Do not move this down into flow{} because WebSocketNetworkTransport saves some state in there
-    val downstream = chain.proceed(request)
+    val downstream = if (hedging != null && request.operation is Query) {
+      hedgedFlow(request, chain, hedging, latencies!!)
+    } else {
+      chain.proceed(request)
+    }
 
     return flow {
       if (failFastIfOffline && networkMonitor?.isOnline?.value == false) {
@@ -143,7 +288,7 @@ private class DefaultRetryOnErrorInterceptorImpl(
       }
     }.onEach {
       state._response = it
-      if (retryStrategy.shouldRetry(state)) {
+      if (withinBudget(it.exception) && retryStrategy.shouldRetry(state)) {
         state._attempt++
         throw RetryException()
       }
@@ -156,6 +301,106 @@ private class DefaultRetryOnErrorInterceptorImpl(
       }
     }
   }
+
+  /**
+   * Updates [retryBudget] with the outcome of the last response and returns whether a retry is allowed.
+   */
+  private fun withinBudget(exception: ApolloException?): Boolean {
+    if (retryBudget == null || exception is ApolloOfflineException) {
+      return true
+    }
+    if (exception == null) {
+      retryBudget.onSuccess()
+    } else {
+      retryBudget.onFailure()
+    }
+    return retryBudget.canRetry
+  }
+
+  /**
+   * Executes [request] and, if no response is received after the hedging delay, executes it a second time.
+   * The first execution that returns a response wins and the other one is cancelled.
+   */
+  private fun <D : Operation.Data> hedgedFlow(
+      request: ApolloRequest<D>,
+      chain: ApolloInterceptorChain,
+      hedging: Hedging,
+      latencies: LatencySamples,
+  ): Flow<ApolloResponse<D>> = channelFlow {
+    val mark = TimeSource.Monotonic.markNow()
+    val winner = CompletableDeferred<Job>()
+
+    fun execution(): Job = launch(start = CoroutineStart.LAZY) {
+      val job = coroutineContext.job
+      var won = false
+      chain.proceed(request).collect { response ->
+        if (!won && winner.complete(job)) {
+          won = true
+          latencies.add(mark.elapsedNow().inWholeMilliseconds)
+        }
+        if (won) {
+          send(response)
+        }
+      }
+      // An execution that completes without a response also wins so that the other one does not wait forever
+      winner.complete(job)
+    }
+
+    val primary = execution()
+    primary.start()
+
+    val delayMillis = latencies.percentile(hedging.percentile, minSamples = (hedging.sampleSize / 10).coerceAtLeast(1))
+        ?: hedging.defaultDelayMillis
+    if (withTimeoutOrNull(delayMillis) { winner.await() } != null) {
+      return@channelFlow
+    }
+    if (retryBudget?.canRetry == false) {
+      // The server is struggling, do not add more load
+      return@channelFlow
+    }
+
+    val hedge = execution()
+    hedge.start()
+    if (winner.await() === primary) {
+      hedge.cancel()
+    } else {
+      primary.cancel()
+    }
+  }
+}
+
+/**
+ * The last [size] latencies, in milliseconds
+ */
+private class LatencySamples(private val size: Int) {
+  private val lock = reentrantLock()
+  private val samples = LongArray(size)
+  private var count = 0
+  private var next = 0
+
+  fun add(latencyMillis: Long) {
+    lock.withLock {
+      samples[next] = latencyMillis
+      next = (next + 1) % size
+      if (count < size) {
+        count++
+      }
+    }
+  }
+
+  /**
+   * Returns the given percentile or null if fewer than [minSamples] latencies have been observed.
+   */
+  fun percentile(percentile: Double, minSamples: Int): Long? {
+    val sorted = lock.withLock {
+      if (count < minSamples) {
+        return null
+      }
+      samples.copyOf(count)
+    }
+    sorted.sort()
+    return sorted[(ceil(percentile * sorted.size).toInt() - 1).coerceIn(0, sorted.size - 1)]
+  }
 }
 
 private fun ApolloException.isRecoverable(): Boolean {
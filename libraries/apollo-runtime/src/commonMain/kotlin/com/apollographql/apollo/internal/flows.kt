@@ -2,10 +2,13 @@ package com.apollographql.apollo.internal
 
 import kotlinx.coroutines.CancellationException
 import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.coroutineScope
 import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.flow.FlowCollector
 import kotlinx.coroutines.flow.collect
 import kotlinx.coroutines.flow.flow
+import kotlinx.coroutines.launch
 
 /**
  * This is copied from [Flow], which is marked [ExperimentalCoroutinesApi].
@@ -49,3 +52,29 @@ private class AbortFlowException(
     if (this.owner !== owner) throw this
   }
 }
+
+/**
+ * Emits the elements received while the collector handles the previous chunk together.
+ *
+ * The upstream [Flow] is collected in a separate coroutine so that it is not suspended by a slow collector.
+ */
+internal fun <T : Any> Flow<T>.chunkedWhileCollecting(): Flow<List<T>> = flow {
+  coroutineScope {
+    val channel = Channel<T>(Channel.UNLIMITED)
+    launch {
+      collect {
+        channel.send(it)
+      }
+    }.invokeOnCompletion {
+      channel.close(it)
+    }
+
+    for (element in channel) {
+      val chunk = mutableListOf(element)
+      while (true) {
+        chunk.add(channel.tryReceive().getOrNull() ?: break)
+      }
+      emit(chunk)
+    }
+  }
+}
@@ -16,6 +16,8 @@ import okio.BufferedSource
  * [merged] Map.
  * `extensions` in incremental results (if present) are merged together in an array and then set to the `extensions` field of the [merged]
  * Map.
+ *
+ * [merged] is updated in place so that the cost of merging a part doesn't depend on the size of the data received before it.
  */
 internal sealed interface IncrementalResultsMerger {
   val merged: JsonMap
@@ -2,12 +2,9 @@ package com.apollographql.apollo.network.http
 
 import com.apollographql.apollo.ApolloCall
 import com.apollographql.apollo.ApolloClient
-import com.apollographql.apollo.api.AnyAdapter
-import com.apollographql.apollo.api.CustomScalarAdapters
 import com.apollographql.apollo.api.ExecutionOptions
 import com.apollographql.apollo.api.Operation
 import com.apollographql.apollo.api.http.HttpBody
-import com.apollographql.apollo.api.http.HttpHeader
 import com.apollographql.apollo.api.http.HttpMethod
 import com.apollographql.apollo.api.http.HttpRequest
 import com.apollographql.apollo.api.http.HttpResponse
@@ -16,11 +13,15 @@ import com.apollographql.apollo.api.json.BufferedSinkJsonWriter
 import com.apollographql.apollo.api.json.BufferedSourceJsonReader
 import com.apollographql.apollo.api.json.JsonReader
 import com.apollographql.apollo.api.json.buildJsonByteString
+import com.apollographql.apollo.api.json.readAny
+import com.apollographql.apollo.api.json.writeAny
 import com.apollographql.apollo.api.json.writeArray
 import com.apollographql.apollo.exception.ApolloException
 import com.apollographql.apollo.exception.ApolloHttpException
 import com.apollographql.apollo.exception.DefaultApolloException
 import com.apollographql.apollo.exception.JsonDataException
+import kotlinx.atomicfu.atomic
+import kotlinx.atomicfu.update
 import kotlinx.coroutines.CompletableDeferred
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
@@ -47,8 +48,11 @@ import kotlin.time.TimeSource.Monotonic.markNow
  * Because [com.apollographql.apollo.ApolloCall.execute] suspends, it only makes sense to use query batching when queries are
  * executed from different coroutines. Use [async] to create a new coroutine if needed
  *
- * [BatchingHttpInterceptor] buffers the whole response, so it might additionally introduce some
- * client-side latency as it cannot amortize parsing/building the models during network I/O.
+ * [BatchingHttpInterceptor] reads the batched response as a stream: the response of a query is returned as soon as its
+ * element of the response array is read, before the following ones are received. The response of the last query is only
+ * returned once the end of the array is read. If the response array doesn't contain exactly one element per query, the
+ * queries that have not received their response yet fail with an [ApolloException]. The queries that already received
+ * their response are not affected, so the server must return one response per query, in order.
  *
  * [BatchingHttpInterceptor] only works with Post requests. Trying to batch a Get request is undefined.
  *
@@ -65,11 +69,22 @@ import kotlin.time.TimeSource.Monotonic.markNow
  * to avoid sockets and other resources leaking.
  *
  * Default: false
+ * @param maxBatchBytes the maximum size in bytes of the queued request bodies before a new batch is sent. Bodies with an
+ * unknown [HttpBody.contentLength] are not counted.
+ *
+ * Default: [Long.MAX_VALUE]
+ * @param adaptiveBatchInterval whether to adapt the batch interval to the server latency. When `true`, the interval is
+ * at most a tenth of the average time the previous batches took to return their response headers, so that waiting for
+ * a batch doesn't add more than ~10% latency to fast servers. It is never more than [batchIntervalMillis].
+ *
+ * Default: false
  */
 class BatchingHttpInterceptor @JvmOverloads constructor(
     private val batchIntervalMillis: Long = 10,
     private val maxBatchSize: Int = 10,
     private val exposeErrorBody: Boolean = false,
+    private val maxBatchBytes: Long = Long.MAX_VALUE,
+    private val adaptiveBatchInterval: Boolean = false,
 ) : HttpInterceptor {
   private val startMark = markNow()
   private val dispatcher = Dispatchers.Default.limitedParallelism(1)
@@ -77,6 +92,8 @@ class BatchingHttpInterceptor @JvmOverloads constructor(
   private val mutex = Mutex()
   private var disposed = false
 
+  private val batchInterval = AdaptiveBatchInterval(batchIntervalMillis)
+
   private var interceptorChain: HttpInterceptorChain? = null
 
   class PendingRequest(
@@ -86,6 +103,7 @@ class BatchingHttpInterceptor @JvmOverloads constructor(
   }
 
   private val pendingRequests = mutableListOf<PendingRequest>()
+  private var pendingBytes = 0L
 
   override suspend fun intercept(request: HttpRequest, chain: HttpInterceptorChain): HttpResponse {
     // Batching is enabled by default, unless explicitly disabled
@@ -104,7 +122,8 @@ class BatchingHttpInterceptor @JvmOverloads constructor(
     val sendNow = mutex.withLock {
       // if there was an error, the previous job was already canceled, ignore that error
       pendingRequests.add(pendingRequest)
-      val batchFull = pendingRequests.size >= maxBatchSize
+      pendingBytes += request.body?.contentLength?.coerceAtLeast(0) ?: 0
+      val batchFull = pendingRequests.size >= maxBatchSize || pendingBytes >= maxBatchBytes
       if (batchFull) {
         executePendingRequests(needLock = false)
       }
@@ -112,8 +131,9 @@ class BatchingHttpInterceptor @JvmOverloads constructor(
     }
 
     if (!sendNow) {
+      val interval = batchIntervalMillis()
       scope.launch {
-        delay(batchIntervalMillis - (startMark.elapsedNow().inWholeMilliseconds % batchIntervalMillis) - 1)
+        delay(interval - (startMark.elapsedNow().inWholeMilliseconds % interval) - 1)
         executePendingRequests(needLock = true)
       }
     }
@@ -121,16 +141,22 @@ class BatchingHttpInterceptor @JvmOverloads constructor(
     return pendingRequest.deferred.await()
   }
 
+  private fun batchIntervalMillis(): Long {
+    return if (adaptiveBatchInterval) batchInterval.intervalMillis else batchIntervalMillis
+  }
+
   private suspend fun executePendingRequests(needLock: Boolean) {
     val pending = if (needLock) {
       mutex.withLock {
         val copy = pendingRequests.toList()
         pendingRequests.clear()
+        pendingBytes = 0
         copy
       }
     } else {
       val copy = pendingRequests.toList()
       pendingRequests.clear()
+      pendingBytes = 0
       copy
     }
 
@@ -176,10 +202,10 @@ class BatchingHttpInterceptor @JvmOverloads constructor(
         .headers(commonHeaders)
         .build()
 
-    var exception: ApolloException? = null
-    var responseHeader = emptyList<HttpHeader>()
-    val result = try {
+    try {
+      val requestMark = markNow()
       val response = interceptorChain!!.proceed(request)
+      batchInterval.recordLatency(requestMark.elapsedNow().inWholeMilliseconds)
       if (response.statusCode !in 200..299) {
         val maybeBody = if (exposeErrorBody) {
           response.body
@@ -195,57 +221,57 @@ class BatchingHttpInterceptor @JvmOverloads constructor(
         )
       }
       val responseBody = response.body ?: throw DefaultApolloException("null body when executing batched query")
-      responseHeader = response.headers
 
-      val list = BufferedSourceJsonReader(responseBody).use { jsonReader ->
-        // TODO: this is most likely going to transform BigNumbers into strings, not sure how much of an issue that is
-        AnyAdapter.fromJson(jsonReader, CustomScalarAdapters.Empty).also {
-          if (jsonReader.peek() != JsonReader.Token.END_DOCUMENT) {
-            throw JsonDataException("Expected END_DOCUMENT but was ${jsonReader.peek()}")
-          }
+      BufferedSourceJsonReader(responseBody).use { jsonReader ->
+        if (jsonReader.peek() != JsonReader.Token.BEGIN_ARRAY) {
+          throw DefaultApolloException("batched query response is not a list when executing batched query")
         }
-      }
-      if (list !is List<*>) throw DefaultApolloException("batched query response is not a list when executing batched query")
-
-      if (list.size != pending.size) {
-        throw DefaultApolloException("batched query response count (${list.size}) does not match the requested queries (${pending.size})")
-      }
+        jsonReader.beginArray()
+        var index = 0
+        var last: HttpResponse? = null
+        while (jsonReader.hasNext()) {
+          if (index == pending.size) {
+            throw DefaultApolloException("batched query response contains more items than the requested queries (${pending.size})")
+          }
+          // TODO: this is most likely going to transform BigNumbers into strings, not sure how much of an issue that is
+          val item = jsonReader.readAny() ?: throw DefaultApolloException("batched query response contains a null item")
+          val itemResponse = HttpResponse.Builder(statusCode = 200)
+              .body(Buffer().write(buildJsonByteString { writeAny(item) }))
+              /*
+               * Return the global batch headers to individual responses.
+               * This is useful for things like cache-control that rely on HTTP headers.
+               */
+              .headers(response.headers)
+              .build()
 
-      list.map {
-        if (it == null) {
-          throw DefaultApolloException("batched query response contains a null item")
+          if (index == pending.lastIndex) {
+            // The last query is completed once the response is known to contain the expected number of items
+            last = itemResponse
+          } else {
+            // Complete the query right away, without waiting for the rest of the response.
+            // This works because the server must return the responses in order
+            pending[index].deferred.complete(itemResponse)
+          }
+          index++
+        }
+        jsonReader.endArray()
+        if (jsonReader.peek() != JsonReader.Token.END_DOCUMENT) {
+          throw JsonDataException("Expected END_DOCUMENT but was ${jsonReader.peek()}")
         }
-        (buildJsonByteString {
-          AnyAdapter.toJson(this, CustomScalarAdapters.Empty, it)
-        })
+        if (index != pending.size) {
+          throw DefaultApolloException("batched query response count ($index) does not match the requested queries (${pending.size})")
+        }
+        pending.last().deferred.complete(last!!)
       }
     } catch (e: Exception) {
-      exception = when (e) {
+      val exception = when (e) {
         is ApolloException -> e
         else -> DefaultApolloException("batched query failed with exception", e)
       }
-      null
-    }
-
-    if (exception != null) {
+      // The queries that already received their response are not affected, the other ones fail
       pending.forEach {
         it.deferred.completeExceptionally(exception)
       }
-      return
-    } else {
-      result!!.forEachIndexed { index, byteString ->
-        // This works because the server must return the responses in order
-        pending[index].deferred.complete(
-            HttpResponse.Builder(statusCode = 200)
-                .body(Buffer().write(byteString))
-                /*
-                 * Return the global batch headers to individual responses.
-                 * This is useful for things like cache-control that rely on HTTP headers.
-                 */
-                .headers(responseHeader)
-                .build()
-        )
-      }
     }
   }
 
@@ -274,3 +300,32 @@ class BatchingHttpInterceptor @JvmOverloads constructor(
     }
   }
 }
+
+/**
+ * The interval between batches when [BatchingHttpInterceptor] adapts it to the server latency: a tenth of the average
+ * latency of the previous batches, between 1 and [maxIntervalMillis]. Before the first batch, [maxIntervalMillis] is used.
+ *
+ * The average gives more weight to the recent batches so that the interval grows when the server slows down, for
+ * example under load, and shrinks again when it is fast.
+ */
+internal class AdaptiveBatchInterval(private val maxIntervalMillis: Long) {
+  /**
+   * The average duration of the batches until their response headers are received, or -1 before the first batch
+   */
+  private val averageLatencyMillis = atomic(-1L)
+
+  val intervalMillis: Long
+    get() {
+      val averageLatencyMillis = averageLatencyMillis.value
+      if (averageLatencyMillis < 0) {
+        return maxIntervalMillis
+      }
+      return (averageLatencyMillis / 10).coerceAtMost(maxIntervalMillis).coerceAtLeast(1)
+    }
+
+  fun recordLatency(latencyMillis: Long) {
+    averageLatencyMillis.update {
+      if (it < 0) latencyMillis else (it * 7 + latencyMillis) / 8
+    }
+  }
+}
@@ -22,9 +22,10 @@ import com.apollographql.apollo.exception.ApolloException
 import com.apollographql.apollo.exception.ApolloHttpException
 import com.apollographql.apollo.exception.ApolloNetworkException
 import com.apollographql.apollo.exception.RouterError
+import com.apollographql.apollo.internal.chunkedWhileCollecting
 import com.apollographql.apollo.internal.incremental.IncrementalDeliveryProtocolImpl
-import com.apollographql.apollo.internal.incremental.IncrementalResultsMerger
 import com.apollographql.apollo.internal.incremental.impl
+import com.apollographql.apollo.internal.incremental.toJsonMap
 import com.apollographql.apollo.internal.isGraphQLResponse
 import com.apollographql.apollo.internal.isMultipart
 import com.apollographql.apollo.internal.multipartBodyFlow
@@ -41,6 +42,7 @@ import kotlinx.coroutines.flow.flow
 import kotlinx.coroutines.flow.flowOf
 import kotlinx.coroutines.flow.map
 import kotlinx.coroutines.flow.mapNotNull
+import okio.BufferedSource
 
 class HttpNetworkTransport
 private constructor(
@@ -49,6 +51,7 @@ private constructor(
     val interceptors: List<HttpInterceptor>,
     private val exposeErrorBody: Boolean,
     private val incrementalDeliveryProtocol: IncrementalDeliveryProtocol,
+    private val conflateIncrementalResponses: Boolean,
 ) : NetworkTransport {
   private val engineInterceptor = EngineInterceptor()
   private val incrementalDeliveryProtocolImpl: IncrementalDeliveryProtocolImpl = incrementalDeliveryProtocol.impl
@@ -197,78 +200,118 @@ private constructor(
       customScalarAdapters: CustomScalarAdapters,
       httpResponse: HttpResponse,
   ): Flow<ApolloResponse<D>> {
-    var incrementalResultsMerger: IncrementalResultsMerger? = null
     val operation = request.operation
 
-    return multipartBodyFlow(httpResponse)
-        .mapNotNull { part ->
-          if (operation is Subscription) {
-            val reader = part.jsonReader().apply { ignoreUnknownKeys(request.ignoreUnknownKeys ?: true) }
-            var payloadResponse: ApolloResponse<D>? = null
-            var errors: List<Error>? = null
-            reader.beginObject()
-            while (reader.hasNext()) {
-              when (reader.nextName()) {
-                "payload" -> {
-                  if (reader.peek() == JsonReader.Token.NULL) {
-                    reader.skipValue()
-                  } else {
-                    payloadResponse = reader.parseResponse(
-                        operation = operation,
-                        customScalarAdapters = customScalarAdapters,
-                        deferredFragmentIdentifiers = null
-                    )
-                  }
-                }
-
-                "errors" -> {
-                  if (reader.peek() == JsonReader.Token.NULL) {
-                    reader.skipValue()
-                  } else {
-                    errors = reader.readErrors()
-                  }
-                }
-
-                else -> {
-                  // Ignore unknown keys
-                  reader.skipValue()
-                }
-              }
-            }
-            reader.endObject()
-            when {
-              errors != null -> {
-                errorResponse(operation, RouterError(errors))
-              }
-
-              payloadResponse != null -> payloadResponse
-              else -> null
-            }
-          } else {
-            if (incrementalResultsMerger == null) {
-              incrementalResultsMerger = incrementalDeliveryProtocolImpl.newIncrementalResultsMerger()
-            }
-            val merged = incrementalResultsMerger.merge(part)
-            val deferredFragmentIdentifiers = incrementalResultsMerger.deferredFragmentIdentifiers
-            val isLast = !incrementalResultsMerger.hasNext
+    val parts = multipartBodyFlow(httpResponse)
+    val responses = if (operation is Subscription) {
+      subscriptionResponses(request, customScalarAdapters, parts)
+    } else {
+      incrementalResponses(operation, customScalarAdapters, parts)
+    }
+    return responses.catch { throwable ->
+      emit(
+          ApolloResponse.Builder(operation = operation, requestUuid = uuid4())
+              .exception(throwable.wrapIfNeeded())
+              .build()
+      )
+    }
+  }
 
-            if (incrementalResultsMerger.isEmptyResponse) {
-              null
+  private fun <D : Operation.Data> subscriptionResponses(
+      request: ApolloRequest<D>,
+      customScalarAdapters: CustomScalarAdapters,
+      parts: Flow<BufferedSource>,
+  ): Flow<ApolloResponse<D>> {
+    val operation = request.operation
+
+    return parts.mapNotNull { part ->
+      val reader = part.jsonReader().apply { ignoreUnknownKeys(request.ignoreUnknownKeys ?: true) }
+      var payloadResponse: ApolloResponse<D>? = null
+      var errors: List<Error>? = null
+      reader.beginObject()
+      while (reader.hasNext()) {
+        when (reader.nextName()) {
+          "payload" -> {
+            if (reader.peek() == JsonReader.Token.NULL) {
+              reader.skipValue()
             } else {
-              merged.jsonReader().toApolloResponse(
+              payloadResponse = reader.parseResponse(
                   operation = operation,
                   customScalarAdapters = customScalarAdapters,
-                  deferredFragmentIdentifiers = deferredFragmentIdentifiers
-              ).newBuilder().isLast(isLast).build()
+                  deferredFragmentIdentifiers = null
+              )
             }
           }
-        }.catch { throwable ->
-          emit(
-              ApolloResponse.Builder(operation = operation, requestUuid = uuid4())
-                  .exception(throwable.wrapIfNeeded())
-                  .build()
-          )
+
+          "errors" -> {
+            if (reader.peek() == JsonReader.Token.NULL) {
+              reader.skipValue()
+            } else {
+              errors = reader.readErrors()
+            }
+          }
+
+          else -> {
+            // Ignore unknown keys
+            reader.skipValue()
+          }
         }
+      }
+      reader.endObject()
+      when {
+        errors != null -> {
+          errorResponse(operation, RouterError(errors))
+        }
+
+        payloadResponse != null -> payloadResponse
+        else -> null
+      }
+    }
+  }
+
+  /**
+   * Merges the `@defer` and `@stream` parts and parses the merged response after each part.
+   *
+   * Each part is read once and merged in place: merging a part only touches the nodes at its path. The merged response is
+   * parsed before the next part is merged. Because the generated models are immutable, the whole merged response is parsed
+   * after each part so the total parsing cost is still quadratic in the number of parts.
+   *
+   * If [conflateIncrementalResponses] is true, the parts received while the previous response is being collected are merged
+   * together and only the latest merged response is parsed.
+   */
+  private fun <D : Operation.Data> incrementalResponses(
+      operation: Operation<D>,
+      customScalarAdapters: CustomScalarAdapters,
+      parts: Flow<BufferedSource>,
+  ): Flow<ApolloResponse<D>> {
+    val incrementalResultsMerger = incrementalDeliveryProtocolImpl.newIncrementalResultsMerger()
+
+    // The source of a part is only valid until the next part is received
+    val jsonParts = parts.map { it.toJsonMap() }
+
+    return if (conflateIncrementalResponses) {
+      jsonParts.chunkedWhileCollecting()
+    } else {
+      jsonParts.map { listOf(it) }
+    }.mapNotNull { chunk ->
+      var isEmptyResponse = true
+      for (part in chunk) {
+        incrementalResultsMerger.merge(part)
+        if (!incrementalResultsMerger.isEmptyResponse) {
+          isEmptyResponse = false
+        }
+      }
+
+      if (isEmptyResponse) {
+        null
+      } else {
+        incrementalResultsMerger.merged.jsonReader().toApolloResponse(
+            operation = operation,
+            customScalarAdapters = customScalarAdapters,
+            deferredFragmentIdentifiers = incrementalResultsMerger.deferredFragmentIdentifiers
+        ).newBuilder().isLast(!incrementalResultsMerger.hasNext).build()
+      }
+    }
   }
 
   private fun Throwable.wrapIfNeeded(): ApolloException {
@@ -327,6 +370,7 @@ private constructor(
         .httpRequestComposer(httpRequestComposer)
         .exposeErrorBody(exposeErrorBody)
         .incrementalDeliveryProtocol(incrementalDeliveryProtocol)
+        .conflateIncrementalResponses(conflateIncrementalResponses)
   }
 
   /**
@@ -339,6 +383,7 @@ private constructor(
     private val interceptors: MutableList<HttpInterceptor> = mutableListOf()
     private var exposeErrorBody: Boolean = false
     private var incrementalDeliveryProtocol: IncrementalDeliveryProtocol = IncrementalDeliveryProtocol.V0_1
+    private var conflateIncrementalResponses: Boolean = false
     private val headers: MutableList<HttpHeader> = mutableListOf()
 
     fun httpRequestComposer(httpRequestComposer: HttpRequestComposer) = apply {
@@ -392,6 +437,24 @@ private constructor(
       this.incrementalDeliveryProtocol = incrementalDeliveryProtocol
     }
 
+    /**
+     * Whether to skip the intermediate responses of `@defer` and `@stream` operations that the collector is too slow to receive.
+     *
+     * Each response contains all the data received so far and is parsed from the start. When this is true, the parts received while
+     * the collector handles a response are merged together and only the latest response is parsed and emitted. This bounds the
+     * parsing work when many parts are received quickly, for example a list with many `@stream` items. The last response is
+     * always emitted.
+     *
+     * [com.apollographql.apollo.ApolloClient] buffers the responses, so in that case the parts are merged together while the
+     * previous response is being parsed.
+     *
+     * Default: false
+     */
+    @ApolloExperimental
+    fun conflateIncrementalResponses(conflateIncrementalResponses: Boolean) = apply {
+      this.conflateIncrementalResponses = conflateIncrementalResponses
+    }
+
     fun interceptors(interceptors: List<HttpInterceptor>) = apply {
       this.interceptors.clear()
       this.interceptors.addAll(interceptors)
@@ -418,6 +481,7 @@ private constructor(
           interceptors = interceptors,
           exposeErrorBody = exposeErrorBody,
           incrementalDeliveryProtocol = incrementalDeliveryProtocol,
+          conflateIncrementalResponses = conflateIncrementalResponses,
       )
     }
   }
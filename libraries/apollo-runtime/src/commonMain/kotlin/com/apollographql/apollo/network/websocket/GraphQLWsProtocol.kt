@@ -4,11 +4,13 @@ import com.apollographql.apollo.api.ApolloRequest
 import com.apollographql.apollo.api.Operation
 import com.apollographql.apollo.api.http.DefaultHttpRequestComposer
 import com.apollographql.apollo.api.json.ApolloJsonElement
+import com.apollographql.apollo.api.json.JsonReader
 import com.apollographql.apollo.api.json.jsonReader
 import com.apollographql.apollo.api.json.readAny
 import com.apollographql.apollo.api.toMap
 import com.apollographql.apollo.api.toRequestParameters
 import okio.Buffer
+import okio.ByteString
 
 /**
  * An [WsProtocol] for https://github.com/enisdenjo/graphql-ws/blob/master/PROTOCOL.md
@@ -66,6 +68,65 @@ class GraphQLWsProtocol(
     return parseServerMessage(map)
   }
 
+  /**
+   * Parses [frame] without reading the payload of "next" messages to a [Map]. Instead, [onResponse] is called with a [JsonReader]
+   * positioned at the payload and null is returned.
+   *
+   * Other messages are parsed with [parseServerMessage].
+   */
+  internal fun parseServerMessage(frame: ByteString, onResponse: (id: String, payload: JsonReader) -> Unit): ServerMessage? {
+    val next = try {
+      frame.nextPayload()
+    } catch (_: Exception) {
+      null
+    }
+    if (next == null) {
+      return parseServerMessage(frame.utf8())
+    }
+
+    onResponse(next.first, next.second)
+    return null
+  }
+
+  /**
+   * @return the id of a "next" message and a [JsonReader] positioned at its payload or null if this is another message
+   */
+  private fun ByteString.nextPayload(): Pair<String, JsonReader>? {
+    var type: String? = null
+    var id: String? = null
+    var hasPayload = false
+
+    var reader = Buffer().write(this).jsonReader()
+    reader.beginObject()
+    while (true) {
+      when (reader.selectName(messageNames)) {
+        0 -> type = reader.nextString()
+        1 -> id = reader.nextString()
+        2 -> {
+          if (type == "next" && id != null) {
+            // Most servers send the payload last
+            return id to reader
+          }
+          hasPayload = true
+          reader.skipValue()
+        }
+        else -> break
+      }
+    }
+
+    if (type != "next" || id == null || !hasPayload) {
+      return null
+    }
+
+    // The payload came before "type" or "id", read the message again
+    reader = Buffer().write(this).jsonReader()
+    reader.beginObject()
+    while (reader.selectName(messageNames) != 2) {
+      reader.skipValue()
+    }
+    return id to reader
+  }
+
   companion object {
     fun parseServerMessage(map: Map<String, ApolloJsonElement>): ServerMessage {
       val type = map["type"] as? String
@@ -100,4 +161,6 @@ class GraphQLWsProtocol(
       }
     }
   }
-}
\ No newline at end of file
+}
+
+private val messageNames = JsonReader.Options.of("type", "id", "payload")
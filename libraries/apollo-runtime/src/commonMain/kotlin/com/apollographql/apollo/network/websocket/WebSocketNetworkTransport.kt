@@ -6,7 +6,10 @@ import com.apollographql.apollo.api.ApolloResponse
 import com.apollographql.apollo.api.CustomScalarAdapters
 import com.apollographql.apollo.api.Operation
 import com.apollographql.apollo.api.json.ApolloJsonElement
+import com.apollographql.apollo.api.json.JsonReader
 import com.apollographql.apollo.api.json.jsonReader
+import com.apollographql.apollo.api.json.readAny
+import com.apollographql.apollo.api.parseResponse
 import com.apollographql.apollo.api.toApolloResponse
 import com.apollographql.apollo.exception.ApolloException
 import com.apollographql.apollo.exception.ApolloWebSocketForceCloseException
@@ -243,6 +246,19 @@ private class DefaultSubscriptionParser<D : Operation.Data>(
   private val incrementalResultsMerger = incrementalDeliveryProtocolImpl.newIncrementalResultsMerger()
   private val requestCustomScalarAdapters = request.executionContext[CustomScalarAdapters] ?: CustomScalarAdapters.Empty
 
+  /**
+   * Incremental payloads need to be merged as Maps. Other payloads can be read from the frame directly.
+   * If the document is not available, assume the operation may be incremental.
+   */
+  private val isIncremental by lazy {
+    val document = try {
+      request.operation.document()
+    } catch (_: Exception) {
+      ""
+    }
+    document.isEmpty() || document.contains("@defer") || document.contains("@stream")
+  }
+
   @Suppress("NAME_SHADOWING")
   override fun parse(response: ApolloJsonElement): ApolloResponse<D>? {
     @Suppress("UNCHECKED_CAST")
@@ -275,6 +291,27 @@ private class DefaultSubscriptionParser<D : Operation.Data>(
       apolloResponse
     }
   }
+
+  /**
+   * Parses the response at the current position of [response] without reading it to a [Map] first when possible.
+   * [response] is not closed and may contain more tokens after the response.
+   */
+  fun parse(response: JsonReader): ApolloResponse<D>? {
+    if (isIncremental) {
+      return parse(response.readAny())
+    }
+    if (response.peek() != JsonReader.Token.BEGIN_OBJECT) {
+      response.skipValue()
+      return ApolloResponse.Builder(request.operation, request.requestUuid)
+          .exception(DefaultApolloException("Invalid payload")).build()
+    }
+
+    return request.operation.parseResponse(
+        jsonReader = response,
+        requestUuid = request.requestUuid,
+        customScalarAdapters = requestCustomScalarAdapters,
+    )
+  }
 }
 
 private class DefaultOperationListener<D : Operation.Data>(
@@ -288,6 +325,17 @@ private class DefaultOperationListener<D : Operation.Data>(
     }
   }
 
+  override fun onResponse(response: JsonReader) {
+    val apolloResponse = if (parser is DefaultSubscriptionParser<D>) {
+      parser.parse(response)
+    } else {
+      parser.parse(response.readAny())
+    }
+    apolloResponse?.let {
+      producerScope.trySend(it)
+    }
+  }
+
   override fun onComplete() {
     producerScope.close()
   }
@@ -1,6 +1,7 @@
 package com.apollographql.apollo.network.websocket.internal
 
 import com.apollographql.apollo.api.json.ApolloJsonElement
+import com.apollographql.apollo.api.json.JsonReader
 import com.apollographql.apollo.exception.ApolloException
 
 internal interface OperationListener {
@@ -18,6 +19,14 @@ internal interface OperationListener {
    */
   fun onResponse(response: ApolloJsonElement)
 
+  /**
+   * A response was received
+   *
+   * [response] is positioned at the response inside the WebSocket message. Only the response must be read. It may be followed by
+   * other tokens.
+   */
+  fun onResponse(response: JsonReader)
+
   /**
    * The operation terminated successfully. No future calls to this listener are made.
    */
@@ -15,11 +15,13 @@ import com.apollographql.apollo.network.websocket.ConnectionAckServerMessage
 import com.apollographql.apollo.network.websocket.ConnectionErrorServerMessage
 import com.apollographql.apollo.network.websocket.ConnectionKeepAliveServerMessage
 import com.apollographql.apollo.network.websocket.DataClientMessage
+import com.apollographql.apollo.network.websocket.GraphQLWsProtocol
 import com.apollographql.apollo.network.websocket.OperationErrorServerMessage
 import com.apollographql.apollo.network.websocket.ParseErrorServerMessage
 import com.apollographql.apollo.network.websocket.PingServerMessage
 import com.apollographql.apollo.network.websocket.PongServerMessage
 import com.apollographql.apollo.network.websocket.ResponseServerMessage
+import com.apollographql.apollo.network.websocket.ServerMessage
 import com.apollographql.apollo.network.websocket.TextClientMessage
 import com.apollographql.apollo.network.websocket.WebSocket
 import com.apollographql.apollo.network.websocket.WebSocketEngine
@@ -33,6 +35,9 @@ import kotlinx.coroutines.Job
 import kotlinx.coroutines.cancel
 import kotlinx.coroutines.delay
 import kotlinx.coroutines.launch
+import okio.ByteString
+import okio.ByteString.Companion.encodeUtf8
+import okio.ByteString.Companion.toByteString
 import kotlin.time.Duration
 
 /**
@@ -168,7 +173,35 @@ internal class SubscribableWebSocket(
   }
 
   override fun onMessage(text: String) {
-    when (val message = wsProtocol.parseServerMessage(text)) {
+    if (wsProtocol is GraphQLWsProtocol) {
+      onFrame(wsProtocol, text.encodeUtf8())
+    } else {
+      onServerMessage(wsProtocol.parseServerMessage(text))
+    }
+  }
+
+  override fun onMessage(data: ByteArray) {
+    if (wsProtocol is GraphQLWsProtocol) {
+      onFrame(wsProtocol, data.toByteString())
+    } else {
+      onMessage(data.decodeToString())
+    }
+  }
+
+  /**
+   * Hands the payload of responses directly to the listener without building a [Map] first.
+   */
+  private fun onFrame(protocol: GraphQLWsProtocol, frame: ByteString) {
+    val message = protocol.parseServerMessage(frame) { id, payload ->
+      lock.withLock { activeListeners.get(id) }?.onResponse(payload)
+    }
+    if (message != null) {
+      onServerMessage(message)
+    }
+  }
+
+  private fun onServerMessage(message: ServerMessage) {
+    when (message) {
       ConnectionAckServerMessage -> {
         ackTimeoutJob?.cancel()
         ackTimeoutJob = null
@@ -235,10 +268,6 @@ internal class SubscribableWebSocket(
     }
   }
 
-  override fun onMessage(data: ByteArray) {
-    onMessage(data.decodeToString())
-  }
-
   override fun onError(cause: ApolloException) {
     shutdownInternal(cause)
   }
@@ -0,0 +1,45 @@
+package test
+
+import com.apollographql.apollo.internal.chunkedWhileCollecting
+import com.apollographql.apollo.testing.internal.runTest
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.flow.consumeAsFlow
+import kotlinx.coroutines.flow.toList
+import kotlin.test.Test
+import kotlin.test.assertEquals
+
+class ChunkedWhileCollectingTest {
+  @Test
+  fun elementsReceivedWhileCollectingAreChunked() = runTest {
+    val upstream = Channel<Int>(Channel.UNLIMITED)
+    upstream.send(1)
+
+    val chunks = mutableListOf<List<Int>>()
+    upstream.consumeAsFlow().chunkedWhileCollecting().collect {
+      if (chunks.isEmpty()) {
+        // Send the next elements while the first chunk is being collected
+        upstream.send(2)
+        upstream.send(3)
+        upstream.close()
+        delay(100)
+      }
+      chunks.add(it)
+    }
+
+    assertEquals(listOf(listOf(1), listOf(2, 3)), chunks)
+  }
+
+  @Test
+  fun errorsArePropagated() = runTest {
+    val upstream = Channel<Int>(Channel.UNLIMITED)
+    upstream.send(1)
+    upstream.close(IllegalStateException("oops"))
+
+    val exception = runCatching {
+      upstream.consumeAsFlow().chunkedWhileCollecting().toList()
+    }.exceptionOrNull()
+
+    assertEquals("oops", exception?.message)
+  }
+}
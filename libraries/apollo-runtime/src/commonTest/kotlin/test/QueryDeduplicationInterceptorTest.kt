@@ -0,0 +1,138 @@
+package test
+
+import com.apollographql.apollo.ApolloClient
+import com.apollographql.apollo.api.ApolloRequest
+import com.apollographql.apollo.api.ApolloResponse
+import com.apollographql.apollo.api.Operation
+import com.apollographql.apollo.interceptor.QueryDeduplicationInterceptor
+import com.apollographql.apollo.network.NetworkTransport
+import com.apollographql.apollo.testing.internal.runTest
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.flow
+import okio.use
+import kotlin.test.Test
+import kotlin.test.assertEquals
+
+class QueryDeduplicationInterceptorTest {
+  private class GatedNetworkTransport : NetworkTransport {
+    var executions = 0
+    val gate = CompletableDeferred<Unit>()
+
+    override fun <D : Operation.Data> execute(request: ApolloRequest<D>): Flow<ApolloResponse<D>> {
+      return flow {
+        executions++
+        gate.await()
+        @Suppress("UNCHECKED_CAST")
+        emit(ApolloResponse.Builder(request.operation, request.requestUuid).data(FooOperation.Data(42) as D).build())
+      }
+    }
+
+    override fun dispose() {}
+  }
+
+  @Test
+  fun concurrentQueriesAreDeduplicated() = runTest {
+    val networkTransport = GatedNetworkTransport()
+    val interceptor = QueryDeduplicationInterceptor()
+    ApolloClient.Builder()
+        .networkTransport(networkTransport)
+        .queryDeduplicationInterceptor(interceptor)
+        .build()
+        .use { apolloClient ->
+          val deferredResponses = List(10) {
+            async { apolloClient.query(FooQuery()).execute() }
+          }
+          while (interceptor.deduplicatedCount < 9) {
+            delay(10)
+          }
+          networkTransport.gate.complete(Unit)
+
+          val responses = deferredResponses.awaitAll()
+          assertEquals(1, networkTransport.executions)
+          assertEquals(List(10) { 42 }, responses.map { it.data?.foo })
+          // Each query gets its own requestUuid
+          assertEquals(10, responses.map { it.requestUuid }.toSet().size)
+
+          // The query is complete, the next one goes to the network
+          apolloClient.query(FooQuery()).execute()
+          assertEquals(2, networkTransport.executions)
+          assertEquals(9, interceptor.deduplicatedCount)
+        }
+  }
+
+  @Test
+  fun followersReceiveTheResponseWhenTheLeaderIsCancelled() = runTest {
+    val networkTransport = GatedNetworkTransport()
+    val interceptor = QueryDeduplicationInterceptor()
+    ApolloClient.Builder()
+        .networkTransport(networkTransport)
+        .queryDeduplicationInterceptor(interceptor)
+        .build()
+        .use { apolloClient ->
+          val leader = async { apolloClient.query(FooQuery()).execute() }
+          while (networkTransport.executions < 1) {
+            delay(10)
+          }
+          val follower = async { apolloClient.query(FooQuery()).execute() }
+          while (interceptor.deduplicatedCount < 1) {
+            delay(10)
+          }
+
+          leader.cancel()
+          networkTransport.gate.complete(Unit)
+
+          assertEquals(42, follower.await().data?.foo)
+          assertEquals(1, networkTransport.executions)
+        }
+  }
+
+  @Test
+  fun queriesWithDifferentOptionsAreNotDeduplicated() = runTest {
+    val networkTransport = GatedNetworkTransport()
+    val interceptor = QueryDeduplicationInterceptor()
+    ApolloClient.Builder()
+        .networkTransport(networkTransport)
+        .queryDeduplicationInterceptor(interceptor)
+        .build()
+        .use { apolloClient ->
+          val deferredResponses = listOf(
+              async { apolloClient.query(FooQuery()).execute() },
+              async { apolloClient.query(FooQuery()).canBeBatched(true).execute() },
+              async { apolloClient.query(FooQuery()).retryOnError(true).execute() },
+          )
+          while (networkTransport.executions < 3) {
+            delay(10)
+          }
+          networkTransport.gate.complete(Unit)
+
+          deferredResponses.awaitAll()
+          assertEquals(0, interceptor.deduplicatedCount)
+        }
+  }
+
+  @Test
+  fun mutationsAreNotDeduplicated() = runTest {
+    val networkTransport = GatedNetworkTransport()
+    val interceptor = QueryDeduplicationInterceptor()
+    ApolloClient.Builder()
+        .networkTransport(networkTransport)
+        .queryDeduplicationInterceptor(interceptor)
+        .build()
+        .use { apolloClient ->
+          val deferredResponses = List(2) {
+            async { apolloClient.mutation(FooMutation()).execute() }
+          }
+          while (networkTransport.executions < 2) {
+            delay(10)
+          }
+          networkTransport.gate.complete(Unit)
+
+          deferredResponses.awaitAll()
+          assertEquals(0, interceptor.deduplicatedCount)
+        }
+  }
+}
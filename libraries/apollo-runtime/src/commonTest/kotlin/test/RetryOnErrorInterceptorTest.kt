@@ -0,0 +1,91 @@
+package test
+
+import com.apollographql.apollo.ApolloClient
+import com.apollographql.apollo.api.ApolloRequest
+import com.apollographql.apollo.api.ApolloResponse
+import com.apollographql.apollo.api.Operation
+import com.apollographql.apollo.exception.ApolloNetworkException
+import com.apollographql.apollo.interceptor.Hedging
+import com.apollographql.apollo.interceptor.RetryBudget
+import com.apollographql.apollo.interceptor.RetryOnErrorInterceptor
+import com.apollographql.apollo.interceptor.RetryStrategy
+import com.apollographql.apollo.network.NetworkTransport
+import com.apollographql.apollo.testing.internal.runTest
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.awaitCancellation
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.flow
+import okio.use
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertIs
+
+class RetryOnErrorInterceptorTest {
+  @Test
+  fun retriesStopWhenTheBudgetIsExhausted() = runTest {
+    var executions = 0
+    val networkTransport = object : NetworkTransport {
+      override fun <D : Operation.Data> execute(request: ApolloRequest<D>): Flow<ApolloResponse<D>> {
+        return flow {
+          executions++
+          emit(ApolloResponse.Builder(request.operation, request.requestUuid).exception(ApolloNetworkException("oops")).build())
+        }
+      }
+
+      override fun dispose() {}
+    }
+
+    val retryBudget = RetryBudget(maxTokens = 4)
+    ApolloClient.Builder()
+        .networkTransport(networkTransport)
+        .retryOnErrorInterceptor(RetryOnErrorInterceptor(null, RetryStrategy { true }, retryBudget, null))
+        .build()
+        .use { apolloClient ->
+          val response = apolloClient.query(FooQuery()).execute()
+
+          assertIs<ApolloNetworkException>(response.exception)
+          // 4 -> 3 tokens: retry, 3 -> 2 tokens: give up
+          assertEquals(2, executions)
+          assertEquals(2.0, retryBudget.tokens)
+        }
+  }
+
+  @Test
+  fun slowQueriesAreHedged() = runTest {
+    var executions = 0
+    val firstExecutionCancelled = CompletableDeferred<Unit>()
+    val networkTransport = object : NetworkTransport {
+      override fun <D : Operation.Data> execute(request: ApolloRequest<D>): Flow<ApolloResponse<D>> {
+        return flow {
+          executions++
+          if (executions == 1) {
+            try {
+              awaitCancellation()
+            } finally {
+              firstExecutionCancelled.complete(Unit)
+            }
+          }
+          @Suppress("UNCHECKED_CAST")
+          emit(ApolloResponse.Builder(request.operation, request.requestUuid).data(FooOperation.Data(42) as D).build())
+        }
+      }
+
+      override fun dispose() {}
+    }
+
+    ApolloClient.Builder()
+        .networkTransport(networkTransport)
+        .retryOnErrorInterceptor(
+            RetryOnErrorInterceptor(null, { false }, null, Hedging(defaultDelayMillis = 100))
+        )
+        .build()
+        .use { apolloClient ->
+          val response = apolloClient.query(FooQuery()).execute()
+
+          assertEquals(42, response.data?.foo)
+          assertEquals(2, executions)
+          // The first execution is cancelled once the second one wins
+          firstExecutionCancelled.await()
+        }
+  }
+}
@@ -0,0 +1,51 @@
+package test.network
+
+import com.apollographql.apollo.network.http.AdaptiveBatchInterval
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
+
+class AdaptiveBatchIntervalTest {
+  @Test
+  fun maxIntervalIsUsedBeforeTheFirstBatch() {
+    assertEquals(100L, AdaptiveBatchInterval(100).intervalMillis)
+  }
+
+  @Test
+  fun intervalGrowsWhenTheServerSlowsDownAndShrinksWhenItIsFast() {
+    val batchInterval = AdaptiveBatchInterval(100)
+
+    batchInterval.recordLatency(20)
+    assertEquals(2L, batchInterval.intervalMillis)
+
+    // Under load
+    var previous = batchInterval.intervalMillis
+    repeat(10) {
+      batchInterval.recordLatency(500)
+      assertTrue(batchInterval.intervalMillis > previous)
+      previous = batchInterval.intervalMillis
+    }
+    assertTrue(previous in 30L..50L)
+
+    // Idle again
+    repeat(10) {
+      batchInterval.recordLatency(20)
+      assertTrue(batchInterval.intervalMillis < previous)
+      previous = batchInterval.intervalMillis
+    }
+    assertTrue(previous < 15)
+  }
+
+  @Test
+  fun intervalIsBounded() {
+    val batchInterval = AdaptiveBatchInterval(100)
+
+    batchInterval.recordLatency(60_000)
+    assertEquals(100L, batchInterval.intervalMillis)
+
+    repeat(100) {
+      batchInterval.recordLatency(0)
+    }
+    assertEquals(1L, batchInterval.intervalMillis)
+  }
+}
@@ -0,0 +1,67 @@
+package test.network
+
+import com.apollographql.apollo.api.json.JsonReader
+import com.apollographql.apollo.api.json.readAny
+import com.apollographql.apollo.network.websocket.CompleteServerMessage
+import com.apollographql.apollo.network.websocket.GraphQLWsProtocol
+import com.apollographql.apollo.network.websocket.ParseErrorServerMessage
+import okio.ByteString.Companion.encodeUtf8
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertIs
+import kotlin.test.assertNull
+import kotlin.test.fail
+
+class GraphQLWsProtocolTest {
+  private val protocol = GraphQLWsProtocol()
+
+  /**
+   * Parses [frame] and returns the id and payload of the "next" message
+   */
+  private fun parseNext(frame: String): Pair<String, Any?> {
+    var next: Pair<String, Any?>? = null
+    val message = protocol.parseServerMessage(frame.encodeUtf8()) { id, payload ->
+      assertEquals(JsonReader.Token.BEGIN_OBJECT, payload.peek())
+      next = id to payload.readAny()
+    }
+    assertNull(message)
+    return next ?: fail("No response for '$frame'")
+  }
+
+  @Test
+  fun payloadAfterTypeAndId() {
+    assertEquals(
+        "1" to mapOf("data" to mapOf("foo" to 42)),
+        parseNext("""{"id":"1","type":"next","payload":{"data":{"foo":42}}}""")
+    )
+  }
+
+  @Test
+  fun payloadBeforeTypeAndId() {
+    assertEquals(
+        "1" to mapOf("data" to mapOf("foo" to 42)),
+        parseNext("""{"payload":{"data":{"foo":42}},"type":"next","id":"1"}""")
+    )
+    assertEquals(
+        "1" to mapOf("data" to mapOf("foo" to 42)),
+        parseNext("""{"type":"next","payload":{"data":{"foo":42}},"extra":[0],"id":"1"}""")
+    )
+  }
+
+  @Test
+  fun otherMessagesAreParsedAsServerMessages() {
+    val message = protocol.parseServerMessage("""{"id":"1","type":"complete"}""".encodeUtf8()) { _, _ ->
+      fail("Unexpected response")
+    }
+    assertIs<CompleteServerMessage>(message)
+    assertEquals("1", message.id)
+  }
+
+  @Test
+  fun invalidFramesAreParseErrors() {
+    val message = protocol.parseServerMessage("""{"id":"1","type":""".encodeUtf8()) { _, _ ->
+      fail("Unexpected response")
+    }
+    assertIs<ParseErrorServerMessage>(message)
+  }
+}
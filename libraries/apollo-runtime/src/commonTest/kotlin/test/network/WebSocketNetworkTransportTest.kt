@@ -20,6 +20,7 @@ import com.apollographql.apollo.testing.Platform
 import com.apollographql.apollo.testing.internal.runTest
 import com.apollographql.apollo.testing.platform
 import com.apollographql.mockserver.CloseFrame
+import com.apollographql.mockserver.DataMessage
 import com.apollographql.mockserver.MockServer
 import com.apollographql.mockserver.TextMessage
 import com.apollographql.mockserver.WebSocketBody
@@ -138,6 +139,42 @@ class WebSocketNetworkTransportTest {
         }
   }
 
+  @Test
+  fun payloadBeforeTypeAndId() = mockServerWebSocketTest {
+    apolloClient.subscription(FooSubscription())
+        .toFlow()
+        .test {
+          awaitConnectionInit()
+
+          val operationId = serverReader.awaitSubscribe()
+          serverWriter.enqueueMessage("""{"payload": {"data": {"foo": 42}}, "type": "next", "id": "$operationId"}""")
+          assertEquals(42, awaitItem().data?.foo)
+          serverWriter.enqueueMessage("""{"id": "$operationId", "type": "next", "payload": {"data": {"foo": 43}}, "extra": 0}""")
+          assertEquals(43, awaitItem().data?.foo)
+          serverWriter.enqueueMessage(completeMessage(operationId))
+
+          awaitComplete()
+        }
+  }
+
+  @Test
+  fun binaryNextMessages() = mockServerWebSocketTest {
+    apolloClient.subscription(FooSubscription())
+        .toFlow()
+        .test {
+          awaitConnectionInit()
+
+          val operationId = serverReader.awaitSubscribe()
+          repeat(3) {
+            serverWriter.enqueueMessage(DataMessage(nextMessage(operationId, it).encodeToByteArray()))
+            assertEquals(it, awaitItem().data?.foo)
+          }
+          serverWriter.enqueueMessage(DataMessage(completeMessage(operationId).encodeToByteArray()))
+
+          awaitComplete()
+        }
+  }
+
   @Test
   fun operationError() = mockServerWebSocketTest {
     apolloClient.subscription(FooSubscription())
@@ -3,6 +3,7 @@
 package com.apollographql.apollo.network.http
 
 import com.apollographql.apollo.annotations.ApolloDeprecatedSince
+import com.apollographql.apollo.annotations.ApolloExperimental
 import com.apollographql.apollo.api.ApolloResponse
 import com.apollographql.apollo.api.ExecutionContext
 import com.apollographql.apollo.api.Operation
@@ -17,6 +18,7 @@ import com.apollographql.apollo.network.defaultOkHttpClientBuilder
 import com.apollographql.apollo.network.toOkHttpHeaders
 import kotlinx.coroutines.suspendCancellableCoroutine
 import okhttp3.Call
+import okhttp3.Callback
 import okhttp3.HttpUrl.Companion.toHttpUrl
 import okhttp3.MediaType.Companion.toMediaType
 import okhttp3.OkHttpClient
@@ -51,16 +53,38 @@ fun DefaultHttpEngine(httpCallFactory: Call.Factory): HttpEngine = DefaultHttpEn
 @ApolloDeprecatedSince(ApolloDeprecatedSince.Version.v5_0_0)
 fun DefaultHttpEngine(okHttpClient: OkHttpClient): HttpEngine = DefaultHttpEngine { okHttpClient }
 
-fun DefaultHttpEngine(httpCallFactory: () -> Call.Factory): HttpEngine = OkHttpEngineImpl(lazyCallFactory = httpCallFactory)
+fun DefaultHttpEngine(httpCallFactory: () -> Call.Factory): HttpEngine = OkHttpEngineImpl(lazyCallFactory = httpCallFactory, enqueue = false)
 
+/**
+ * Returns a [HttpEngine] that uses [httpCallFactory] to execute the requests.
+ *
+ * @param enqueue whether to execute the calls asynchronously with [Call.enqueue]. By default, calls are executed with
+ * [Call.execute] and each pending call blocks a thread of the [ApolloClient][com.apollographql.apollo.ApolloClient]
+ * dispatcher until the response headers are received. With [enqueue], the calls are executed by the OkHttp
+ * [Dispatcher][okhttp3.Dispatcher] and the coroutine is suspended until the response headers are received.
+ * The number of concurrent calls is then limited by [Dispatcher.maxRequests][okhttp3.Dispatcher.maxRequests] and
+ * [Dispatcher.maxRequestsPerHost][okhttp3.Dispatcher.maxRequestsPerHost] (5 by default), configure them according to
+ * your needs.
+ */
+@ApolloExperimental
+fun DefaultHttpEngine(httpCallFactory: () -> Call.Factory, enqueue: Boolean): HttpEngine {
+  return OkHttpEngineImpl(lazyCallFactory = httpCallFactory, enqueue = enqueue)
+}
 
 private class OkHttpEngineImpl(
     private val lazyCallFactory: () -> Call.Factory,
+    private val enqueue: Boolean,
 ) : HttpEngine {
   private val callFactory by lazy { lazyCallFactory() }
 
   override suspend fun execute(request: HttpRequest): HttpResponse {
-    return callFactory.execute(request.toOkHttpRequest()).toApolloHttpResponse()
+    val okHttpRequest = request.toOkHttpRequest()
+    val response = if (enqueue) {
+      callFactory.enqueue(okHttpRequest)
+    } else {
+      callFactory.execute(okHttpRequest)
+    }
+    return response.toApolloHttpResponse()
   }
 
   override fun close() {}
@@ -128,6 +152,31 @@ private class OkHttpEngineImpl(
       }
     }
 
+    suspend fun Call.Factory.enqueue(request: Request): Response = suspendCancellableCoroutine { continuation ->
+      val call = newCall(request)
+      continuation.invokeOnCancellation {
+        call.cancel()
+      }
+
+      call.enqueue(object : Callback {
+        override fun onFailure(call: Call, e: IOException) {
+          continuation.resumeWithException(
+              ApolloNetworkException(
+                  message = "Failed to execute GraphQL http network request",
+                  platformCause = e
+              )
+          )
+        }
+
+        override fun onResponse(call: Call, response: Response) {
+          continuation.resume(response) { _, value, _ ->
+            // The coroutine was cancelled while the response was received
+            value.close()
+          }
+        }
+      })
+    }
+
     fun Response.toApolloHttpResponse(): HttpResponse {
       return HttpResponse.Builder(statusCode = code)
           .body(body.source())
@@ -0,0 +1,89 @@
+import com.apollographql.apollo.ApolloClient
+import com.apollographql.apollo.api.http.HttpMethod
+import com.apollographql.apollo.api.http.HttpRequest
+import com.apollographql.apollo.network.http.DefaultHttpEngine
+import com.apollographql.apollo.network.http.HttpNetworkTransport
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.withTimeout
+import okhttp3.Call
+import okhttp3.EventListener
+import okhttp3.OkHttpClient
+import okhttp3.Protocol
+import okhttp3.Response
+import okhttp3.ResponseBody.Companion.toResponseBody
+import okio.IOException
+import okio.use
+import test.FooQuery
+import java.util.concurrent.CountDownLatch
+import kotlin.test.Test
+import kotlin.test.assertEquals
+
+class OkHttpEngineTest {
+  @Test
+  fun enqueuedCallsReturnResponses() {
+    val engine = DefaultHttpEngine(
+        httpCallFactory = {
+          OkHttpClient.Builder()
+              .addInterceptor { chain ->
+                Response.Builder()
+                    .request(chain.request())
+                    .protocol(Protocol.HTTP_1_1)
+                    .code(200)
+                    .message("OK")
+                    .body(FooQuery.successResponse.toResponseBody())
+                    .build()
+              }
+              .build()
+        },
+        enqueue = true
+    )
+
+    ApolloClient.Builder()
+        .networkTransport(HttpNetworkTransport.Builder().serverUrl("https://unused/").httpEngine(engine).build())
+        .build()
+        .use { apolloClient ->
+          runBlocking {
+            assertEquals(42, apolloClient.query(FooQuery()).execute().data?.foo)
+          }
+        }
+  }
+
+  @Test
+  fun cancellingTheCoroutineCancelsTheEnqueuedCall() {
+    val started = CompletableDeferred<Unit>()
+    val canceled = CompletableDeferred<Unit>()
+    val latch = CountDownLatch(1)
+    val engine = DefaultHttpEngine(
+        httpCallFactory = {
+          OkHttpClient.Builder()
+              .eventListener(object : EventListener() {
+                override fun canceled(call: Call) {
+                  canceled.complete(Unit)
+                }
+              })
+              .addInterceptor {
+                started.complete(Unit)
+                latch.await()
+                throw IOException("Canceled")
+              }
+              .build()
+        },
+        enqueue = true
+    )
+
+    runBlocking {
+      val job = launch(Dispatchers.Default) {
+        engine.execute(HttpRequest.Builder(HttpMethod.Get, "https://unused/").build())
+      }
+      started.await()
+      job.cancel()
+      withTimeout(1000) {
+        canceled.await()
+      }
+      latch.countDown()
+    }
+  }
+}
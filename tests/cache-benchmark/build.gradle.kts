@@ -0,0 +1,26 @@
+plugins {
+  id("org.jetbrains.kotlin.jvm")
+  id("org.jetbrains.kotlinx.benchmark")
+}
+
+apolloTest()
+
+sourceSets.create("jmh")
+
+benchmark {
+  targets {
+    register("jmh")
+  }
+}
+
+dependencies {
+  implementation("com.apollographql.apollo:apollo-normalized-cache")
+  implementation("com.apollographql.apollo:apollo-normalized-cache-sqlite")
+  implementation("com.apollographql.apollo:apollo-execution")
+
+  testImplementation(libs.kotlin.test.junit)
+
+  add("jmhImplementation", libs.kotlinx.benchmark.runtime)
+  add("jmhImplementation", libs.okhttp.mockwebserver)
+  add("jmhImplementation", sourceSets.main.get().output + sourceSets.main.get().runtimeClasspath)
+}
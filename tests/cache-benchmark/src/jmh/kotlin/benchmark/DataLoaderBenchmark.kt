@@ -0,0 +1,127 @@
+package benchmark
+
+import com.apollographql.apollo.api.ExecutionContext
+import com.apollographql.apollo.execution.ExecutableSchema
+import com.apollographql.apollo.execution.GraphQLRequest
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.runBlocking
+import org.openjdk.jmh.annotations.AuxCounters
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.Fork
+import org.openjdk.jmh.annotations.Level
+import org.openjdk.jmh.annotations.Measurement
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.Warmup
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Executes a query for [orders] orders and their customer against a backend that answers after
+ * [BACKEND_LATENCY_MILLIS].
+ *
+ * With `batched = false`, each `Order.customer` field calls the backend (N+1 calls). With `batched = true`, the
+ * customers are loaded with a `DataLoader` and the backend is called twice.
+ *
+ * The backend calls are reported as the [Metrics] secondary result, in the same unit as the executions: their ratio
+ * is the number of backend calls per execution.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+open class DataLoaderBenchmark {
+  @Param("false", "true")
+  var batched: Boolean = false
+
+  @Param("10", "100")
+  var orders: Int = 10
+
+  private class Order(val id: Int, val customerId: Int)
+
+  private lateinit var executableSchema: ExecutableSchema
+  private val request = GraphQLRequest.Builder()
+      .document("{ orders { id customer { id name } } }")
+      .build()
+
+  private val backendCalls = AtomicInteger()
+
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  open class Metrics {
+    @JvmField
+    var backendCalls: Long = 0
+
+    @Setup(Level.Iteration)
+    fun reset() {
+      backendCalls = 0
+    }
+  }
+
+  private suspend fun getOrders(): List<Order> {
+    backendCalls.incrementAndGet()
+    delay(BACKEND_LATENCY_MILLIS)
+    // Every other order has a distinct customer
+    return List(orders) { Order(it, it / 2) }
+  }
+
+  private suspend fun getCustomers(ids: List<Int>): List<Map<String, Any>> {
+    backendCalls.incrementAndGet()
+    delay(BACKEND_LATENCY_MILLIS)
+    return ids.map { mapOf("id" to it, "name" to "Customer $it") }
+  }
+
+  @Setup
+  fun setUp() {
+    executableSchema = ExecutableSchema.Builder()
+        .schema(
+            """
+            type Query {
+              orders: [Order!]!
+            }
+            type Order {
+              id: Int!
+              customer: Customer!
+            }
+            type Customer {
+              id: Int!
+              name: String!
+            }
+            """.trimIndent()
+        )
+        .addBatchLoader<Int, Map<String, Any>>("customer") { ids -> getCustomers(ids) }
+        .resolver {
+          when (it.coordinates()) {
+            "Query.orders" -> getOrders()
+            "Order.id" -> (it.parentObject as Order).id
+            "Order.customer" -> {
+              val customerId = (it.parentObject as Order).customerId
+              if (batched) {
+                it.dataLoader<Int, Map<String, Any>>("customer").load(customerId)
+              } else {
+                getCustomers(listOf(customerId)).single()
+              }
+            }
+
+            else -> (it.parentObject as Map<*, *>).get(it.fieldName)
+          }
+        }
+        .build()
+  }
+
+  @Benchmark
+  fun execute(metrics: Metrics): Any? {
+    val before = backendCalls.get()
+    val data = runBlocking {
+      executableSchema.execute(request, ExecutionContext.Empty).data
+    }
+    metrics.backendCalls += backendCalls.get() - before
+    return data
+  }
+
+  companion object {
+    private const val BACKEND_LATENCY_MILLIS = 5L
+  }
+}
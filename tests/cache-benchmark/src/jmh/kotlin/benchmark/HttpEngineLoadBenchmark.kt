@@ -0,0 +1,177 @@
+package benchmark
+
+import com.apollographql.apollo.ApolloClient
+import com.apollographql.apollo.network.http.DefaultHttpEngine
+import com.apollographql.apollo.network.http.HttpNetworkTransport
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.async
+import kotlinx.coroutines.asCoroutineDispatcher
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.runBlocking
+import okhttp3.ConnectionPool
+import okhttp3.Dispatcher
+import okhttp3.OkHttpClient
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import okhttp3.mockwebserver.RecordedRequest
+import org.openjdk.jmh.annotations.AuxCounters
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.Fork
+import org.openjdk.jmh.annotations.Level
+import org.openjdk.jmh.annotations.Measurement
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.TearDown
+import org.openjdk.jmh.annotations.Warmup
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.SynchronousQueue
+import java.util.concurrent.ThreadFactory
+import java.util.concurrent.ThreadPoolExecutor
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Executes [concurrency] queries concurrently against a local [MockWebServer] that answers after [SERVER_LATENCY_MILLIS].
+ *
+ * The client uses a dispatcher of [IO_THREADS] threads, like [Dispatchers.IO]. With `enqueue = false`, each pending call
+ * blocks a thread of that dispatcher and the queries wait for a thread to be available. With `enqueue = true`, the
+ * pending calls don't block a thread of that dispatcher but each one still runs on a thread of the OkHttp
+ * [Dispatcher], which executes up to [concurrency] calls at once.
+ *
+ * The peak number of client threads (dispatcher and OkHttp threads, the [MockWebServer] threads are not counted) and
+ * the p99 latency of the queries are reported as the [Metrics] secondary results.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+open class HttpEngineLoadBenchmark {
+  @Param("false", "true")
+  var enqueue: Boolean = false
+
+  @Param("200", "2000")
+  var concurrency: Int = 200
+
+  private lateinit var mockWebServer: MockWebServer
+  private lateinit var apolloClient: ApolloClient
+  private lateinit var ioExecutor: ExecutorService
+  private lateinit var okHttpExecutor: ExecutorService
+
+  private val threadIds = AtomicInteger()
+  private val liveClientThreads = AtomicInteger()
+  private val peakClientThreads = AtomicInteger()
+
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  open class Metrics {
+    /**
+     * The peak number of live client threads during the iteration
+     */
+    @JvmField
+    var peakThreads: Long = 0
+
+    /**
+     * The highest p99 latency of the queries of an invocation during the iteration
+     */
+    @JvmField
+    var p99LatencyMillis: Long = 0
+
+    @Setup(Level.Iteration)
+    fun reset() {
+      peakThreads = 0
+      p99LatencyMillis = 0
+    }
+  }
+
+  @Setup
+  fun setUp() {
+    mockWebServer = MockWebServer()
+    mockWebServer.dispatcher = object : okhttp3.mockwebserver.Dispatcher() {
+      override fun dispatch(request: RecordedRequest): MockResponse {
+        return MockResponse()
+            .setHeader("Content-Type", "application/json")
+            .setBody("""{"data":{"items":[{"id":"0","name":"Item 0"}]}}""")
+            .setHeadersDelay(SERVER_LATENCY_MILLIS, TimeUnit.MILLISECONDS)
+      }
+    }
+    mockWebServer.start()
+
+    ioExecutor = Executors.newFixedThreadPool(IO_THREADS, clientThreadFactory("io"))
+    // Same configuration as the default OkHttp executor
+    okHttpExecutor = ThreadPoolExecutor(0, Int.MAX_VALUE, 60, TimeUnit.SECONDS, SynchronousQueue(), clientThreadFactory("okhttp"))
+    val okHttpClient = OkHttpClient.Builder()
+        .dispatcher(Dispatcher(okHttpExecutor).apply {
+          maxRequests = concurrency
+          maxRequestsPerHost = concurrency
+        })
+        .connectionPool(ConnectionPool(concurrency, 5, TimeUnit.MINUTES))
+        .build()
+
+    apolloClient = ApolloClient.Builder()
+        .dispatcher(ioExecutor.asCoroutineDispatcher())
+        .networkTransport(
+            HttpNetworkTransport.Builder()
+                .serverUrl(mockWebServer.url("/graphql").toString())
+                .httpEngine(DefaultHttpEngine(httpCallFactory = { okHttpClient }, enqueue = enqueue))
+                .build()
+        )
+        .build()
+  }
+
+  @TearDown
+  fun tearDown() {
+    apolloClient.close()
+    ioExecutor.shutdown()
+    okHttpExecutor.shutdown()
+    mockWebServer.shutdown()
+  }
+
+  /**
+   * Returns a [ThreadFactory] whose threads are counted in [liveClientThreads].
+   */
+  private fun clientThreadFactory(name: String) = ThreadFactory { runnable ->
+    Thread(
+        {
+          val live = liveClientThreads.incrementAndGet()
+          peakClientThreads.accumulateAndGet(live, ::maxOf)
+          try {
+            runnable.run()
+          } finally {
+            liveClientThreads.decrementAndGet()
+          }
+        },
+        "client-$name-${threadIds.incrementAndGet()}"
+    )
+  }
+
+  @Setup(Level.Iteration)
+  fun setUpIteration() {
+    // Idle threads of the previous iteration are still alive and count towards the peak
+    peakClientThreads.set(liveClientThreads.get())
+  }
+
+  @Benchmark
+  fun concurrentQueries(metrics: Metrics) {
+    val latenciesNanos = runBlocking {
+      List(concurrency) {
+        async(Dispatchers.Default) {
+          val start = System.nanoTime()
+          apolloClient.query(ItemsQuery()).execute().dataOrThrow()
+          System.nanoTime() - start
+        }
+      }.awaitAll()
+    }.sorted()
+
+    val p99 = latenciesNanos[(latenciesNanos.size * 99 / 100).coerceAtMost(latenciesNanos.size - 1)]
+    metrics.p99LatencyMillis = maxOf(metrics.p99LatencyMillis, TimeUnit.NANOSECONDS.toMillis(p99))
+    metrics.peakThreads = peakClientThreads.get().toLong()
+  }
+
+  companion object {
+    private const val SERVER_LATENCY_MILLIS = 50L
+    private const val IO_THREADS = 64
+  }
+}
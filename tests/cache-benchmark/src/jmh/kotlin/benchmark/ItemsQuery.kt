@@ -0,0 +1,77 @@
+package benchmark
+
+import com.apollographql.apollo.api.Adapter
+import com.apollographql.apollo.api.CompiledField
+import com.apollographql.apollo.api.CustomScalarAdapters
+import com.apollographql.apollo.api.Query
+import com.apollographql.apollo.api.json.JsonReader
+import com.apollographql.apollo.api.json.JsonWriter
+import okio.ByteString.Companion.encodeUtf8
+
+/**
+ * A query that doesn't require codegen:
+ *
+ * ```graphql
+ * query ItemsQuery { items @stream { id name } }
+ * ```
+ */
+class ItemsQuery : Query<ItemsQuery.Data> {
+  class Data(val items: List<Item>) : Query.Data
+  class Item(val id: String, val name: String)
+
+  override fun document(): String = "query ItemsQuery { items @stream { id name } }"
+
+  override fun name(): String = "ItemsQuery"
+
+  override fun id(): String = "ItemsQuery".encodeUtf8().sha256().hex()
+
+  override fun adapter(): Adapter<Data> {
+    return object : Adapter<Data> {
+      override fun fromJson(reader: JsonReader, customScalarAdapters: CustomScalarAdapters): Data {
+        val items = mutableListOf<Item>()
+        reader.beginObject()
+        while (reader.hasNext()) {
+          when (reader.nextName()) {
+            "items" -> {
+              reader.beginArray()
+              while (reader.hasNext()) {
+                items.add(readItem(reader))
+              }
+              reader.endArray()
+            }
+
+            else -> reader.skipValue()
+          }
+        }
+        reader.endObject()
+        return Data(items)
+      }
+
+      private fun readItem(reader: JsonReader): Item {
+        var id: String? = null
+        var name: String? = null
+        reader.beginObject()
+        while (reader.hasNext()) {
+          when (reader.nextName()) {
+            "id" -> id = reader.nextString()
+            "name" -> name = reader.nextString()
+            else -> reader.skipValue()
+          }
+        }
+        reader.endObject()
+        return Item(id!!, name!!)
+      }
+
+      override fun toJson(writer: JsonWriter, customScalarAdapters: CustomScalarAdapters, value: Data) {
+        throw UnsupportedOperationException()
+      }
+    }
+  }
+
+  override fun serializeVariables(writer: JsonWriter, customScalarAdapters: CustomScalarAdapters, withDefaultValues: Boolean) {
+  }
+
+  override fun rootField(): CompiledField {
+    throw UnsupportedOperationException()
+  }
+}
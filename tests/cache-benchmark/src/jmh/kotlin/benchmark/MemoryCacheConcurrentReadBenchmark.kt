@@ -0,0 +1,74 @@
+@file:Suppress("DEPRECATION")
+
+package benchmark
+
+import com.apollographql.apollo.cache.normalized.api.CacheHeaders
+import com.apollographql.apollo.cache.normalized.api.MemoryCache
+import kotlinx.benchmark.Blackhole
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.Fork
+import org.openjdk.jmh.annotations.Measurement
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.TearDown
+import org.openjdk.jmh.annotations.Warmup
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+/**
+ * Reads [TOTAL_READS] records from a [MemoryCache], split across [threads] threads.
+ *
+ * With a single segment (`concurrencyLevel = 1`), all the reads contend on the same lock and the time per invocation
+ * does not go down as [threads] grows. With more segments, reads of different keys proceed in parallel.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+open class MemoryCacheConcurrentReadBenchmark {
+  @Param("1", "4", "16", "32")
+  var threads: Int = 1
+
+  @Param("1", "64")
+  var concurrencyLevel: Int = 1
+
+  private lateinit var memoryCache: MemoryCache
+  private lateinit var executor: ExecutorService
+
+  @Setup
+  fun setUp() {
+    memoryCache = MemoryCache(concurrencyLevel = concurrencyLevel)
+    memoryCache.merge(createRecords(RECORD_COUNT), CacheHeaders.NONE)
+    executor = Executors.newFixedThreadPool(threads)
+  }
+
+  @TearDown
+  fun tearDown() {
+    executor.shutdownNow()
+  }
+
+  @Benchmark
+  fun loadRecord(blackhole: Blackhole) {
+    val readsPerThread = TOTAL_READS / threads
+    val futures = (0 until threads).map { thread ->
+      executor.submit<Int> {
+        var found = 0
+        for (i in 0 until readsPerThread) {
+          if (memoryCache.loadRecord(recordKey((i * 31 + thread) % RECORD_COUNT), CacheHeaders.NONE) != null) {
+            found++
+          }
+        }
+        found
+      }
+    }
+    blackhole.consume(futures.sumOf { it.get() })
+  }
+
+  companion object {
+    private const val RECORD_COUNT = 10_000
+    private const val TOTAL_READS = 320_000
+  }
+}
@@ -0,0 +1,70 @@
+@file:Suppress("DEPRECATION")
+
+package benchmark
+
+import com.apollographql.apollo.cache.normalized.api.Record
+import com.apollographql.apollo.cache.normalized.api.internal.BlobRecordSerializer
+import com.apollographql.apollo.cache.normalized.api.internal.FieldNameDictionary
+import com.apollographql.apollo.cache.normalized.api.internal.InMemoryFieldNameStorage
+import com.apollographql.apollo.cache.normalized.api.internal.JsonRecordSerializer
+import kotlinx.benchmark.Blackhole
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.Fork
+import org.openjdk.jmh.annotations.Measurement
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.Warmup
+import java.util.concurrent.TimeUnit
+
+/**
+ * Compares the encoding and decoding time of [RECORD_COUNT] records in the formats used by the SQLite cache.
+ *
+ * See `RecordSizeTest` for the size of the encoded records.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+open class RecordSerializationBenchmark {
+  @Param("json", "binary")
+  var format: String = "json"
+
+  private lateinit var records: List<Record>
+  private lateinit var dictionary: FieldNameDictionary
+  private lateinit var jsonRecords: List<String>
+  private lateinit var binaryRecords: List<ByteArray>
+
+  @Setup
+  fun setUp() {
+    records = createRecords(RECORD_COUNT)
+    dictionary = FieldNameDictionary(InMemoryFieldNameStorage())
+    jsonRecords = records.map { JsonRecordSerializer.serialize(it) }
+    binaryRecords = records.map { BlobRecordSerializer.serialize(it, dictionary) }
+  }
+
+  @Benchmark
+  fun encode(blackhole: Blackhole) {
+    when (format) {
+      "json" -> records.forEach { blackhole.consume(JsonRecordSerializer.serialize(it)) }
+      else -> records.forEach { blackhole.consume(BlobRecordSerializer.serialize(it, dictionary)) }
+    }
+  }
+
+  @Benchmark
+  fun decode(blackhole: Blackhole) {
+    when (format) {
+      "json" -> jsonRecords.forEachIndexed { index, json ->
+        blackhole.consume(JsonRecordSerializer.deserialize(recordKey(index), json))
+      }
+      else -> binaryRecords.forEachIndexed { index, bytes ->
+        blackhole.consume(BlobRecordSerializer.deserialize(recordKey(index), bytes, dictionary))
+      }
+    }
+  }
+
+  companion object {
+    private const val RECORD_COUNT = 1_000
+  }
+}
@@ -0,0 +1,95 @@
+@file:Suppress("DEPRECATION")
+
+package benchmark
+
+import com.apollographql.apollo.cache.normalized.api.CacheHeaders
+import com.apollographql.apollo.cache.normalized.api.NormalizedCache
+import com.apollographql.apollo.cache.normalized.sql.RecordFormat
+import com.apollographql.apollo.cache.normalized.sql.SqlNormalizedCacheFactory
+import com.apollographql.apollo.cache.normalized.sql.WalOptions
+import kotlinx.benchmark.Blackhole
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.Fork
+import org.openjdk.jmh.annotations.Measurement
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.TearDown
+import org.openjdk.jmh.annotations.Warmup
+import java.io.File
+import java.nio.file.Files
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+/**
+ * Reads [TOTAL_READS] records from a SQLite cache on disk, split across [threads] threads, while another thread
+ * writes batches of records.
+ *
+ * In the default mode, the database uses a rollback journal and the readers wait for the writer. In WAL mode, the
+ * reads use a pool of connections and run in parallel with the writes.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+open class SqlConcurrentReadWriteBenchmark {
+  @Param("1", "4", "8")
+  var threads: Int = 1
+
+  @Param("default", "wal")
+  var mode: String = "default"
+
+  private lateinit var baseDir: File
+  private lateinit var cache: NormalizedCache
+  private lateinit var executor: ExecutorService
+
+  @Setup
+  fun setUp() {
+    baseDir = Files.createTempDirectory("apollo-benchmark").toFile()
+    cache = when (mode) {
+      "wal" -> SqlNormalizedCacheFactory("benchmark.db", baseDir.absolutePath, RecordFormat.Binary, WalOptions(readConnections = threads))
+      else -> SqlNormalizedCacheFactory("benchmark.db", baseDir.absolutePath, RecordFormat.Binary)
+    }.create()
+    cache.merge(createRecords(RECORD_COUNT), CacheHeaders.NONE)
+    executor = Executors.newFixedThreadPool(threads + 1)
+  }
+
+  @TearDown
+  fun tearDown() {
+    executor.shutdownNow()
+    baseDir.deleteRecursively()
+  }
+
+  @Benchmark
+  fun readWhileWriting(blackhole: Blackhole) {
+    val readsPerThread = TOTAL_READS / threads
+    val writes = executor.submit {
+      val records = createRecords(WRITE_BATCH_SIZE)
+      repeat(WRITE_BATCHES) {
+        cache.merge(records, CacheHeaders.NONE)
+      }
+    }
+    val reads = (0 until threads).map { thread ->
+      executor.submit<Int> {
+        var found = 0
+        for (i in 0 until readsPerThread step READ_BATCH_SIZE) {
+          val keys = (i until i + READ_BATCH_SIZE).map { recordKey((it * 31 + thread) % RECORD_COUNT) }
+          found += cache.loadRecords(keys, CacheHeaders.NONE).size
+        }
+        found
+      }
+    }
+    blackhole.consume(reads.sumOf { it.get() })
+    writes.get()
+  }
+
+  companion object {
+    private const val RECORD_COUNT = 10_000
+    private const val TOTAL_READS = 32_000
+    private const val READ_BATCH_SIZE = 10
+    private const val WRITE_BATCH_SIZE = 100
+    private const val WRITE_BATCHES = 10
+  }
+}
@@ -0,0 +1,101 @@
+package benchmark
+
+import com.apollographql.apollo.ApolloClient
+import com.apollographql.apollo.api.http.HttpRequest
+import com.apollographql.apollo.api.http.HttpResponse
+import com.apollographql.apollo.network.IncrementalDeliveryProtocol
+import com.apollographql.apollo.network.http.HttpEngine
+import com.apollographql.apollo.network.http.HttpNetworkTransport
+import kotlinx.benchmark.Blackhole
+import kotlinx.coroutines.flow.toList
+import kotlinx.coroutines.runBlocking
+import okio.Buffer
+import okio.ByteString
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.Fork
+import org.openjdk.jmh.annotations.Measurement
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.TearDown
+import org.openjdk.jmh.annotations.Warmup
+import java.util.concurrent.TimeUnit
+
+/**
+ * Receives a `@stream` response of [ITEM_COUNT] items, one item per multipart part.
+ *
+ * Each part is merged into the previous result without copying it. Without conflation, each part still builds a
+ * model for the whole list. With conflation, the parts received while the previous model is being built are merged
+ * together.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+open class StreamMergingBenchmark {
+  @Param("false", "true")
+  var conflate: Boolean = false
+
+  private lateinit var apolloClient: ApolloClient
+
+  @Setup
+  fun setUp() {
+    val body = multipartBody()
+    apolloClient = ApolloClient.Builder()
+        .networkTransport(
+            HttpNetworkTransport.Builder()
+                .serverUrl("https://unused")
+                .httpEngine(object : HttpEngine {
+                  override suspend fun execute(request: HttpRequest): HttpResponse {
+                    return HttpResponse.Builder(200)
+                        .addHeader("Content-Type", "multipart/mixed; boundary=\"$BOUNDARY\"; deferSpec=20220824")
+                        .body(Buffer().write(body))
+                        .build()
+                  }
+                })
+                .incrementalDeliveryProtocol(IncrementalDeliveryProtocol.V0_2)
+                .conflateIncrementalResponses(conflate)
+                .build()
+        )
+        .build()
+  }
+
+  @TearDown
+  fun tearDown() {
+    apolloClient.close()
+  }
+
+  @Benchmark
+  fun receiveStream(blackhole: Blackhole) {
+    val responses = runBlocking {
+      apolloClient.query(ItemsQuery()).toFlow().toList()
+    }
+    check(responses.last().dataOrThrow().items.size == ITEM_COUNT)
+    blackhole.consume(responses)
+  }
+
+  private fun multipartBody(): ByteString {
+    val buffer = Buffer()
+    fun part(json: String) {
+      buffer.writeUtf8("--$BOUNDARY\r\n")
+      buffer.writeUtf8("Content-Type: application/json; charset=utf-8\r\n\r\n")
+      buffer.writeUtf8(json)
+      buffer.writeUtf8("\r\n")
+    }
+
+    part("""{"data":{"items":[]},"pending":[{"id":"0","path":["items"]}],"hasNext":true}""")
+    repeat(ITEM_COUNT) {
+      val hasNext = it < ITEM_COUNT - 1
+      val completed = if (hasNext) "" else ""","completed":[{"id":"0"}]"""
+      part("""{"incremental":[{"id":"0","items":[{"id":"$it","name":"Item $it"}]}]$completed,"hasNext":$hasNext}""")
+    }
+    buffer.writeUtf8("--$BOUNDARY--\r\n")
+    return buffer.readByteString()
+  }
+
+  companion object {
+    private const val ITEM_COUNT = 1_000
+    private const val BOUNDARY = "-"
+  }
+}
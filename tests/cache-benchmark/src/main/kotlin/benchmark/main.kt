@@ -0,0 +1,30 @@
+@file:Suppress("DEPRECATION")
+
+package benchmark
+
+import com.apollographql.apollo.cache.normalized.api.CacheKey
+import com.apollographql.apollo.cache.normalized.api.Record
+
+/**
+ * Creates [count] records that look like typical entities: a few scalar fields, a reference and a list of references.
+ */
+fun createRecords(count: Int): List<Record> {
+  return (0 until count).map { index ->
+    Record(
+        key = recordKey(index),
+        fields = mapOf(
+            "__typename" to "User",
+            "id" to index.toString(),
+            "name" to "User $index",
+            "email" to "user$index@example.com",
+            "age" to index % 100,
+            "score" to index * 1.5,
+            "isAdmin" to (index % 10 == 0),
+            "bestFriend" to CacheKey(recordKey((index + 1) % count)),
+            "friends" to (1..5).map { CacheKey(recordKey((index + it) % count)) },
+        )
+    )
+  }
+}
+
+fun recordKey(index: Int): String = "User:$index"
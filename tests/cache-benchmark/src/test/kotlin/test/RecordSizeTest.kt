@@ -0,0 +1,34 @@
+@file:Suppress("DEPRECATION")
+
+package test
+
+import benchmark.createRecords
+import com.apollographql.apollo.cache.normalized.api.internal.BlobRecordSerializer
+import com.apollographql.apollo.cache.normalized.api.internal.FieldNameDictionary
+import com.apollographql.apollo.cache.normalized.api.internal.InMemoryFieldNameStorage
+import com.apollographql.apollo.cache.normalized.api.internal.JsonRecordSerializer
+import okio.utf8Size
+import kotlin.test.Test
+import kotlin.test.assertTrue
+
+/**
+ * Compares the size of the records in the formats used by the SQLite cache.
+ * See `RecordSerializationBenchmark` for the encoding and decoding time.
+ */
+class RecordSizeTest {
+  @Test
+  fun binaryRecordsAreSmallerThanJson() {
+    val records = createRecords(1_000)
+    val dictionary = FieldNameDictionary(InMemoryFieldNameStorage())
+
+    val jsonSize = records.sumOf { JsonRecordSerializer.serialize(it).utf8Size() }
+    val binarySize = records.sumOf { BlobRecordSerializer.serialize(it).size.toLong() }
+    val binaryWithDictionarySize = records.sumOf { BlobRecordSerializer.serialize(it, dictionary).size.toLong() }
+
+    assertTrue(binarySize < jsonSize, "binary ($binarySize bytes) is not smaller than json ($jsonSize bytes)")
+    assertTrue(
+        binaryWithDictionarySize < binarySize,
+        "binary with dictionary ($binaryWithDictionarySize bytes) is not smaller than binary ($binarySize bytes)"
+    )
+  }
+}
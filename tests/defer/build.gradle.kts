@@ -19,6 +19,7 @@ kotlin {
         implementation(libs.apollo.normalizedcache)
         implementation(libs.apollo.testingsupport.internal)
         implementation(libs.apollo.mockserver)
+        implementation(libs.apollo.execution)
       }
     }
   }
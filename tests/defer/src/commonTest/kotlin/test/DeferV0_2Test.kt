@@ -4,6 +4,7 @@ package test
 
 import com.apollographql.apollo.ApolloClient
 import com.apollographql.apollo.annotations.ApolloExperimental
+import com.apollographql.apollo.api.ApolloRequest
 import com.apollographql.apollo.api.ApolloResponse
 import com.apollographql.apollo.api.Error
 import com.apollographql.apollo.api.Error.Builder
@@ -24,10 +25,13 @@ import defer.WithFragmentSpreadsQuery
 import defer.WithInlineFragmentsQuery
 import defer.fragment.ComputerFields
 import defer.fragment.ScreenFields
+import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.delay
 import kotlinx.coroutines.flow.last
 import kotlinx.coroutines.flow.toList
 import kotlinx.coroutines.launch
+import kotlinx.coroutines.withContext
 import okio.ByteString.Companion.encodeUtf8
 import kotlin.test.Test
 import kotlin.test.assertEquals
@@ -218,6 +222,75 @@ class DeferV0_2Test {
     job.cancel()
   }
 
+  @Test
+  fun partsReceivedWhileCollectingAreConflated() = runTest(before = { setUp() }, after = { tearDown() }) {
+    @Suppress("DEPRECATION")
+    if (platform() == Platform.Js) {
+      // TODO For now chunked is not supported on JS - remove this check when it is
+      return@runTest
+    }
+    val networkTransport = HttpNetworkTransport.Builder()
+        .serverUrl(mockServer.url())
+        .incrementalDeliveryProtocol(IncrementalDeliveryProtocol.V0_2)
+        .conflateIncrementalResponses(true)
+        .build()
+
+    val jsonList = listOf(
+        """{"data":{"computers":[{"__typename":"Computer","id":"Computer1"},{"__typename":"Computer","id":"Computer2"}]},"pending":[{"id":"0","path":["computers",0]},{"id":"1","path":["computers",1]}],"hasNext":true}""",
+        """{"hasNext":true,"pending":[{"id":"2","path":["computers",0,"screen"],"label":"a"},{"id":"3","path":["computers",1,"screen"],"label":"a"}],"incremental":[{"data":{"cpu":"386","year":1993,"screen":{"__typename":"Screen","resolution":"640x480"}},"id":"0"},{"data":{"cpu":"486","year":1996,"screen":{"__typename":"Screen","resolution":"800x600"}},"id":"1"}],"completed":[{"id":"0"},{"id":"1"}]}""",
+        """{"hasNext":false,"incremental":[{"data":{"isColor":false},"id":"2"},{"data":{"isColor":true},"id":"3"}],"completed":[{"id":"2"},{"id":"3"}]}""",
+    )
+
+    val multipartBody = mockServer.enqueueMultipart("application/json")
+    multipartBody.enqueuePart(jsonList[0].encodeUtf8(), false)
+
+    val responses = mutableListOf<ApolloResponse<WithFragmentSpreadsQuery.Data>>()
+    // The parts are read in a separate coroutine that may block while waiting for the next part
+    withContext(Dispatchers.Default) {
+      networkTransport.execute(ApolloRequest.Builder(WithFragmentSpreadsQuery()).build()).collect {
+        if (responses.isEmpty()) {
+          // The last 2 parts are received while the first response is being collected
+          multipartBody.enqueuePart(jsonList[1].encodeUtf8(), false)
+          multipartBody.enqueuePart(jsonList[2].encodeUtf8(), true)
+          delay(500)
+        }
+        responses.add(it)
+      }
+    }
+    networkTransport.dispose()
+
+    assertEquals(2, responses.size)
+    assertEquals(
+        WithFragmentSpreadsQuery.Data(
+            listOf(
+                WithFragmentSpreadsQuery.Computer("Computer", "Computer1", null),
+                WithFragmentSpreadsQuery.Computer("Computer", "Computer2", null),
+            )
+        ),
+        responses[0].dataOrThrow()
+    )
+    assertEquals(
+        WithFragmentSpreadsQuery.Data(
+            listOf(
+                WithFragmentSpreadsQuery.Computer("Computer", "Computer1", ComputerFields("386", 1993,
+                    ComputerFields.Screen("Screen", "640x480",
+                        ScreenFields(false)
+                    )
+                )
+                ),
+                WithFragmentSpreadsQuery.Computer("Computer", "Computer2", ComputerFields("486", 1996,
+                    ComputerFields.Screen("Screen", "800x600",
+                        ScreenFields(true)
+                    )
+                )
+                ),
+            )
+        ),
+        responses[1].dataOrThrow()
+    )
+    assertTrue(responses[1].isLast)
+  }
+
   @Test
   fun emptyPayloadsAreIgnored() = runTest(before = { setUp() }, after = { tearDown() }) {
     val jsonWithEmptyPayload = listOf(
@@ -0,0 +1,184 @@
+@file:OptIn(ApolloExperimental::class)
+
+package test
+
+import com.apollographql.apollo.ApolloClient
+import com.apollographql.apollo.annotations.ApolloExperimental
+import com.apollographql.apollo.api.Operation
+import com.apollographql.apollo.execution.ExecutableSchema
+import com.apollographql.apollo.execution.GraphQLRequest
+import com.apollographql.apollo.execution.incrementalDeliveryContentType
+import com.apollographql.apollo.execution.writeMultipartTo
+import com.apollographql.apollo.network.IncrementalDeliveryProtocol
+import com.apollographql.apollo.network.http.HttpNetworkTransport
+import com.apollographql.apollo.testing.internal.runTest
+import com.apollographql.mockserver.MockResponse
+import com.apollographql.mockserver.MockServer
+import defer.NestedStreamQuery
+import defer.SimpleStreamQuery
+import defer.WithFragmentSpreadsQuery
+import defer.WithInlineFragmentsQuery
+import defer.fragment.ComputerFields
+import defer.fragment.ScreenFields
+import kotlinx.coroutines.flow.toList
+import okio.Buffer
+import kotlin.test.Test
+import kotlin.test.assertEquals
+
+/**
+ * Executes the operations with apollo-execution and checks that the runtime merges the multipart response.
+ */
+class DeferWithApolloExecutionTest {
+  private lateinit var mockServer: MockServer
+  private lateinit var apolloClient: ApolloClient
+
+  private val executableSchema = ExecutableSchema.Builder()
+      .schema("""
+          directive @defer(label: String, if: Boolean! = true) on FRAGMENT_SPREAD | INLINE_FRAGMENT
+          directive @stream(label: String, if: Boolean! = true, initialCount: Int = 0) on FIELD
+
+          type Query {
+            computers: [Computer!]!
+          }
+
+          type Computer {
+            id: ID!
+            cpu: String!
+            year: Int!
+            screen: Screen!
+            peripherals: [String!]!
+          }
+
+          type Screen {
+            resolution: String!
+            isColor: Boolean!
+          }
+      """.trimIndent())
+      .resolver {
+        when (it.coordinates()) {
+          "Query.computers" -> listOf(
+              mapOf(
+                  "id" to "Computer1",
+                  "cpu" to "386",
+                  "year" to 1993,
+                  "screen" to mapOf("resolution" to "640x480", "isColor" to false),
+                  "peripherals" to listOf("keyboard", "mouse", "printer"),
+              ),
+              mapOf(
+                  "id" to "Computer2",
+                  "cpu" to "486",
+                  "year" to 1996,
+                  "screen" to mapOf("resolution" to "800x600", "isColor" to true),
+                  "peripherals" to listOf("keyboard", "mouse"),
+              ),
+          )
+
+          else -> (it.parentObject as Map<*, *>).get(it.fieldName)
+        }
+      }
+      .build()
+
+  private suspend fun setUp() {
+    mockServer = MockServer()
+    apolloClient = ApolloClient.Builder()
+        .networkTransport(
+            HttpNetworkTransport.Builder()
+                .serverUrl(mockServer.url())
+                .incrementalDeliveryProtocol(IncrementalDeliveryProtocol.V0_2)
+                .build()
+        )
+        .build()
+  }
+
+  private fun tearDown() {
+    mockServer.close()
+  }
+
+  private suspend fun enqueueExecution(operation: Operation<*>, variables: Map<String, Any?> = emptyMap()) {
+    val body = Buffer()
+    executableSchema.executeIncrementally(GraphQLRequest.Builder().document(operation.document()).variables(variables).build())
+        .writeMultipartTo(body)
+    mockServer.enqueue(
+        MockResponse.Builder()
+            .addHeader("Content-Type", incrementalDeliveryContentType())
+            .body(body.readUtf8())
+            .build()
+    )
+  }
+
+  @Test
+  fun deferWithFragmentSpreads() = runTest(before = { setUp() }, after = { tearDown() }) {
+    enqueueExecution(WithFragmentSpreadsQuery())
+    val dataList = apolloClient.query(WithFragmentSpreadsQuery()).toFlow().toList().map { it.dataOrThrow() }
+
+    assertEquals(
+        WithFragmentSpreadsQuery.Data(
+            listOf(
+                WithFragmentSpreadsQuery.Computer("Computer", "Computer1", null),
+                WithFragmentSpreadsQuery.Computer("Computer", "Computer2", null),
+            )
+        ),
+        dataList.first()
+    )
+    assertEquals(
+        WithFragmentSpreadsQuery.Data(
+            listOf(
+                WithFragmentSpreadsQuery.Computer("Computer", "Computer1",
+                    ComputerFields("386", 1993, ComputerFields.Screen("Screen", "640x480", ScreenFields(false)))
+                ),
+                WithFragmentSpreadsQuery.Computer("Computer", "Computer2",
+                    ComputerFields("486", 1996, ComputerFields.Screen("Screen", "800x600", ScreenFields(true)))
+                ),
+            )
+        ),
+        dataList.last()
+    )
+  }
+
+  @Test
+  fun deferWithInlineFragments() = runTest(before = { setUp() }, after = { tearDown() }) {
+    enqueueExecution(WithInlineFragmentsQuery())
+    val data = apolloClient.query(WithInlineFragmentsQuery()).toFlow().toList().last().dataOrThrow()
+
+    assertEquals(
+        WithInlineFragmentsQuery.Data(
+            listOf(
+                WithInlineFragmentsQuery.Computer("Computer", "Computer1",
+                    WithInlineFragmentsQuery.OnComputer("386", 1993,
+                        WithInlineFragmentsQuery.Screen("Screen", "640x480", WithInlineFragmentsQuery.OnScreen(false))
+                    )
+                ),
+                WithInlineFragmentsQuery.Computer("Computer", "Computer2",
+                    WithInlineFragmentsQuery.OnComputer("486", 1996,
+                        WithInlineFragmentsQuery.Screen("Screen", "800x600", WithInlineFragmentsQuery.OnScreen(true))
+                    )
+                ),
+            )
+        ),
+        data
+    )
+  }
+
+  @Test
+  fun stream() = runTest(before = { setUp() }, after = { tearDown() }) {
+    enqueueExecution(SimpleStreamQuery(1), mapOf("initialCount" to 1))
+    val dataList = apolloClient.query(SimpleStreamQuery(1)).toFlow().toList().map { it.dataOrThrow() }
+
+    assertEquals(listOf("Computer1"), dataList.first().computers.map { it.id })
+    assertEquals(listOf("Computer1", "Computer2"), dataList.last().computers.map { it.id })
+  }
+
+  @Test
+  fun nestedStream() = runTest(before = { setUp() }, after = { tearDown() }) {
+    enqueueExecution(NestedStreamQuery(1), mapOf("initialCount" to 1))
+    val data = apolloClient.query(NestedStreamQuery(1)).toFlow().toList().last().dataOrThrow()
+
+    assertEquals(
+        listOf(
+            "Computer1" to listOf("keyboard", "mouse", "printer"),
+            "Computer2" to listOf("keyboard", "mouse"),
+        ),
+        data.computers.map { it.id to it.peripherals }
+    )
+  }
+}
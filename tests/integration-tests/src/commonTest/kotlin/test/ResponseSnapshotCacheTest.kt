@@ -0,0 +1,88 @@
+@file:Suppress("DEPRECATION")
+
+package test
+
+import com.apollographql.apollo.ApolloClient
+import com.apollographql.apollo.api.composeJsonResponse
+import com.apollographql.apollo.cache.normalized.ApolloStore
+import com.apollographql.apollo.cache.normalized.FetchPolicy
+import com.apollographql.apollo.cache.normalized.ResponseSnapshotCache
+import com.apollographql.apollo.cache.normalized.api.MemoryCacheFactory
+import com.apollographql.apollo.cache.normalized.fetchPolicy
+import com.apollographql.apollo.cache.normalized.isFromCache
+import com.apollographql.apollo.cache.normalized.responseSnapshotCache
+import com.apollographql.apollo.cache.normalized.store
+import com.apollographql.apollo.cache.normalized.useResponseSnapshotCache
+import com.apollographql.apollo.exception.CacheMissException
+import com.apollographql.apollo.integration.normalizer.HeroNameQuery
+import com.apollographql.apollo.testing.internal.runTest
+import com.apollographql.mockserver.MockServer
+import com.apollographql.mockserver.enqueueString
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertFailsWith
+import kotlin.test.assertFalse
+import kotlin.test.assertIs
+import kotlin.test.assertTrue
+
+class ResponseSnapshotCacheTest {
+  private lateinit var mockServer: MockServer
+  private lateinit var apolloClient: ApolloClient
+  private lateinit var store: ApolloStore
+  private lateinit var responseSnapshotCache: ResponseSnapshotCache
+
+  private suspend fun setUp(expireAfterMillis: Long = Long.MAX_VALUE) {
+    store = ApolloStore(MemoryCacheFactory())
+    responseSnapshotCache = ResponseSnapshotCache(maxSizeBytes = 10_000, expireAfterMillis = expireAfterMillis)
+    mockServer = MockServer()
+    apolloClient = ApolloClient.Builder()
+        .serverUrl(mockServer.url())
+        .store(store)
+        .responseSnapshotCache(responseSnapshotCache)
+        .build()
+  }
+
+  private fun tearDown() {
+    mockServer.close()
+    apolloClient.close()
+  }
+
+  @Test
+  fun snapshotIsUsedInsteadOfTheStore() = runTest(before = { setUp() }, after = { tearDown() }) {
+    val query = HeroNameQuery()
+    mockServer.enqueueString(query.composeJsonResponse(HeroNameQuery.Data(HeroNameQuery.Hero("R2-D2"))))
+
+    var response = apolloClient.query(query).useResponseSnapshotCache(true).execute()
+    assertEquals("R2-D2", response.data?.hero?.name)
+    assertFalse(response.isFromCache)
+    assertTrue(responseSnapshotCache.sizeBytes > 0)
+
+    // The response was not normalized
+    assertFailsWith<CacheMissException> {
+      store.readOperation(query)
+    }
+
+    response = apolloClient.query(query).useResponseSnapshotCache(true).fetchPolicy(FetchPolicy.CacheOnly).execute()
+    assertEquals("R2-D2", response.data?.hero?.name)
+    assertTrue(response.isFromCache)
+
+    // Queries that do not opt in use the store
+    response = apolloClient.query(query).fetchPolicy(FetchPolicy.CacheOnly).execute()
+    assertIs<CacheMissException>(response.exception)
+
+    responseSnapshotCache.clear()
+    response = apolloClient.query(query).useResponseSnapshotCache(true).fetchPolicy(FetchPolicy.CacheOnly).execute()
+    assertIs<CacheMissException>(response.exception)
+    assertEquals(0L, responseSnapshotCache.sizeBytes)
+  }
+
+  @Test
+  fun expiredSnapshotsAreNotReturned() = runTest(before = { setUp(expireAfterMillis = 0) }, after = { tearDown() }) {
+    val query = HeroNameQuery()
+    mockServer.enqueueString(query.composeJsonResponse(HeroNameQuery.Data(HeroNameQuery.Hero("R2-D2"))))
+    apolloClient.query(query).useResponseSnapshotCache(true).execute()
+
+    val response = apolloClient.query(query).useResponseSnapshotCache(true).fetchPolicy(FetchPolicy.CacheOnly).execute()
+    assertIs<CacheMissException>(response.exception)
+  }
+}
@@ -5,8 +5,10 @@ package test
 import IdCacheKeyGenerator
 import app.cash.turbine.test
 import com.apollographql.apollo.ApolloClient
+import com.apollographql.apollo.api.ApolloRequest
 import com.apollographql.apollo.api.ApolloResponse
 import com.apollographql.apollo.api.CustomScalarAdapters
+import com.apollographql.apollo.api.Operation
 import com.apollographql.apollo.api.composeJsonResponse
 import com.apollographql.apollo.cache.normalized.ApolloStore
 import com.apollographql.apollo.cache.normalized.FetchPolicy
@@ -24,6 +26,8 @@ import com.apollographql.apollo.integration.normalizer.EpisodeHeroNameWithIdQuer
 import com.apollographql.apollo.integration.normalizer.HeroAndFriendsNamesWithIDsQuery
 import com.apollographql.apollo.integration.normalizer.StarshipByIdQuery
 import com.apollographql.apollo.integration.normalizer.type.Episode
+import com.apollographql.apollo.interceptor.ApolloInterceptor
+import com.apollographql.apollo.interceptor.ApolloInterceptorChain
 import com.apollographql.apollo.testing.QueueTestNetworkTransport
 import com.apollographql.apollo.testing.enqueueTestNetworkError
 import com.apollographql.apollo.testing.enqueueTestResponse
@@ -31,6 +35,7 @@ import com.apollographql.apollo.testing.internal.runTest
 import com.apollographql.mockserver.MockResponse
 import com.apollographql.mockserver.MockServer
 import com.apollographql.mockserver.enqueueString
+import kotlinx.coroutines.CompletableDeferred
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.CoroutineStart
 import kotlinx.coroutines.Dispatchers
@@ -39,7 +44,10 @@ import kotlinx.coroutines.TimeoutCancellationException
 import kotlinx.coroutines.cancelAndJoin
 import kotlinx.coroutines.channels.Channel
 import kotlinx.coroutines.delay
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.emitAll
 import kotlinx.coroutines.flow.first
+import kotlinx.coroutines.flow.flow
 import kotlinx.coroutines.launch
 import kotlinx.coroutines.withContext
 import kotlinx.coroutines.withTimeout
@@ -63,6 +71,8 @@ class WatcherTest {
   private val episodeHeroNameChangedTwoData = EpisodeHeroNameQuery.Data(EpisodeHeroNameQuery.Hero("ArTwo"))
 
   private val episodeHeroNameWithIdData = EpisodeHeroNameWithIdQuery.Data(EpisodeHeroNameWithIdQuery.Hero("2001", "R2-D2"))
+  private val episodeHeroNameWithIdChangedData = EpisodeHeroNameWithIdQuery.Data(EpisodeHeroNameWithIdQuery.Hero("2001", "Artoo"))
+  private val episodeHeroNameWithIdChangedTwoData = EpisodeHeroNameWithIdQuery.Data(EpisodeHeroNameWithIdQuery.Hero("2001", "ArTwo"))
 
 
   private val heroAndFriendsNamesWithIDsData = HeroAndFriendsNamesWithIDsQuery.Data(
@@ -183,6 +193,106 @@ class WatcherTest {
     job.cancel()
   }
 
+  /**
+   * Writing unrelated records to the store out of band should not trigger the watcher
+   */
+  @Test
+  fun storeWriteToOtherKeysDoesNotTriggerWatcher() = runTest(before = { setUp() }) {
+    val channel = Channel<EpisodeHeroNameWithIdQuery.Data?>()
+    val operation = EpisodeHeroNameWithIdQuery(Episode.EMPIRE)
+    apolloClient.enqueueTestResponse(operation, episodeHeroNameWithIdData)
+    val job = launch {
+      apolloClient.query(operation).watch().collect {
+        channel.send(it.data)
+      }
+    }
+
+    // Cache miss is emitted first (null data)
+    assertNull(channel.awaitElement())
+    assertEquals(channel.awaitElement()?.hero?.name, "R2-D2")
+
+    // Someone writes another hero for another episode
+    val data = EpisodeHeroNameWithIdQuery.Data(
+        EpisodeHeroNameWithIdQuery.Hero(
+            "1000",
+            "Luke Skywalker"
+        )
+    )
+    store.writeOperation(EpisodeHeroNameWithIdQuery(Episode.JEDI), data, CustomScalarAdapters.Empty, CacheHeaders.NONE, true)
+
+    channel.assertEmpty()
+
+    // Someone renames the watched hero
+    store.writeOperation(operation, episodeHeroNameWithIdChangedData, CustomScalarAdapters.Empty, CacheHeaders.NONE, true)
+
+    assertEquals("Artoo", channel.awaitElement()?.hero?.name)
+    channel.assertEmpty()
+
+    job.cancel()
+  }
+
+  /**
+   * Changes to the watched keys that happen while the watcher is refetching are conflated into a single refetch
+   */
+  @Test
+  fun changesDuringARefetchAreConflated() = runTest(before = { setUp() }) {
+    val refetchStarted = Channel<Unit>(Channel.UNLIMITED)
+    val refetchGate = CompletableDeferred<Unit>()
+    var networkRequests = 0
+    val apolloClient = ApolloClient.Builder()
+        .networkTransport(QueueTestNetworkTransport())
+        .store(store)
+        .addInterceptor(object : ApolloInterceptor {
+          override fun <D : Operation.Data> intercept(request: ApolloRequest<D>, chain: ApolloInterceptorChain): Flow<ApolloResponse<D>> {
+            return flow {
+              networkRequests++
+              if (networkRequests == 2) {
+                // Block the first refetch until the test has written to the store
+                refetchStarted.send(Unit)
+                refetchGate.await()
+              }
+              emitAll(chain.proceed(request))
+            }
+          }
+        }, ApolloInterceptor.InsertionPoint.BeforeNetwork)
+        .build()
+
+    val channel = Channel<EpisodeHeroNameWithIdQuery.Data?>(Channel.UNLIMITED)
+    val operation = EpisodeHeroNameWithIdQuery(Episode.EMPIRE)
+    apolloClient.enqueueTestResponse(operation, episodeHeroNameWithIdData)
+    val job = launch {
+      apolloClient.query(operation)
+          .fetchPolicy(FetchPolicy.NetworkOnly)
+          .refetchPolicy(FetchPolicy.NetworkOnly)
+          .watch()
+          .collect {
+            channel.send(it.data)
+          }
+    }
+    assertEquals("R2-D2", channel.awaitElement()?.hero?.name)
+
+    // The refetches return what is in the cache so that they do not publish changes themselves
+    val finalData = EpisodeHeroNameWithIdQuery.Data(EpisodeHeroNameWithIdQuery.Hero("2001", "R2"))
+    apolloClient.enqueueTestResponse(operation, finalData)
+    apolloClient.enqueueTestResponse(operation, finalData)
+
+    store.writeOperation(operation, episodeHeroNameWithIdChangedData, CustomScalarAdapters.Empty, CacheHeaders.NONE, true)
+    refetchStarted.awaitElement()
+
+    // 2 changes while the first refetch is in flight
+    store.writeOperation(operation, episodeHeroNameWithIdChangedTwoData, CustomScalarAdapters.Empty, CacheHeaders.NONE, true)
+    store.writeOperation(operation, finalData, CustomScalarAdapters.Empty, CacheHeaders.NONE, true)
+    refetchGate.complete(Unit)
+
+    // One response for the first refetch and a single one for both changes
+    assertEquals("R2", channel.awaitElement()?.hero?.name)
+    assertEquals("R2", channel.awaitElement()?.hero?.name)
+    channel.assertEmpty()
+    assertEquals(3, networkRequests)
+
+    job.cancel()
+  }
+
   /**
    * A new query updates the store with data that is the same as the one originally seen by the watcher
    */
@@ -9,6 +9,7 @@ import com.apollographql.apollo.api.CustomScalarAdapters
 import com.apollographql.apollo.api.ExecutionOptions.Companion.CAN_BE_BATCHED
 import com.apollographql.apollo.api.http.HttpHeader
 import com.apollographql.apollo.api.json.jsonReader
+import com.apollographql.apollo.network.http.BatchingHttpInterceptor
 import com.apollographql.apollo.testing.internal.runTest
 import com.apollographql.mockserver.MockRequest
 import com.apollographql.mockserver.MockRequestBase
@@ -21,6 +22,7 @@ import kotlinx.coroutines.Deferred
 import kotlinx.coroutines.async
 import kotlinx.coroutines.awaitAll
 import kotlinx.coroutines.delay
+import kotlinx.coroutines.withTimeout
 import okio.Buffer
 import kotlin.test.Ignore
 import kotlin.test.Test
@@ -346,4 +348,82 @@ class QueryBatchingTest {
       assertNotNull(apolloResponse.data)
     }
   }
+
+  @Test
+  fun responsesAreReturnedBeforeTheWholeBatchIsRead() = runTest(before = { setUp() }, after = { tearDown() }) {
+    // The second response is truncated
+    mockServer.enqueueString("""[{"data":{"launch":{"id":"83"}}},{"data":{"launch":""")
+    apolloClient = ApolloClient.Builder()
+        .serverUrl(mockServer.url())
+        .httpBatching(batchIntervalMillis = 1000)
+        .build()
+
+    val result1 = async {
+      apolloClient.query(GetLaunchQuery()).execute()
+    }
+    val result2 = async {
+      delay(50)
+      apolloClient.query(GetLaunch2Query()).execute()
+    }
+
+    assertEquals("83", result1.await().data?.launch?.id)
+    assertNotNull(result2.await().exception)
+  }
+
+  @Test
+  fun lastQueryFailsIfTheResponseHasTooManyItems() = runTest(before = { setUp() }, after = { tearDown() }) {
+    mockServer.enqueueString("""[{"data":{"launch":{"id":"83"}}},{"data":{"launch":{"id":"84"}}},{"data":{"launch":{"id":"85"}}}]""")
+    apolloClient = ApolloClient.Builder()
+        .serverUrl(mockServer.url())
+        .httpBatching(batchIntervalMillis = 1000)
+        .build()
+
+    val result1 = async {
+      apolloClient.query(GetLaunchQuery()).execute()
+    }
+    val result2 = async {
+      delay(50)
+      apolloClient.query(GetLaunch2Query()).execute()
+    }
+
+    // The first query received its response before the extra item was read
+    assertEquals("83", result1.await().data?.launch?.id)
+    assertNotNull(result2.await().exception)
+  }
+
+  @Test
+  fun pendingQueriesFailIfTheResponseHasTooFewItems() = runTest(before = { setUp() }, after = { tearDown() }) {
+    mockServer.enqueueString("""[{"data":{"launch":{"id":"83"}}}]""")
+    apolloClient = ApolloClient.Builder()
+        .serverUrl(mockServer.url())
+        .httpBatching(batchIntervalMillis = 1000)
+        .build()
+
+    val result1 = async {
+      apolloClient.query(GetLaunchQuery()).execute()
+    }
+    val result2 = async {
+      delay(50)
+      apolloClient.query(GetLaunch2Query()).execute()
+    }
+
+    assertEquals("83", result1.await().data?.launch?.id)
+    assertNotNull(result2.await().exception)
+  }
+
+  @Test
+  fun batchIsSentWhenMaxBatchBytesIsReached() = runTest(before = { setUp() }, after = { tearDown() }) {
+    mockServer.enqueueString("""[{"data":{"launch":{"id":"83"}}}]""")
+    mockServer.enqueueString("""[{"data":{"launch":{"id":"84"}}}]""")
+    apolloClient = ApolloClient.Builder()
+        .serverUrl(mockServer.url())
+        // Each query is bigger than maxBatchBytes and is sent without waiting for batchIntervalMillis
+        .addHttpInterceptor(BatchingHttpInterceptor(batchIntervalMillis = 60_000, maxBatchBytes = 1))
+        .build()
+
+    withTimeout(10.seconds) {
+      assertEquals("83", apolloClient.query(GetLaunchQuery()).execute().data?.launch?.id)
+      assertEquals("84", apolloClient.query(GetLaunch2Query()).execute().data?.launch?.id)
+    }
+  }
 }
@@ -0,0 +1,36 @@
+@file:Suppress("DEPRECATION")
+
+package test
+
+import com.apollographql.apollo.cache.normalized.ApolloStore
+import com.apollographql.apollo.cache.normalized.sql.RecordFormat
+import com.apollographql.apollo.cache.normalized.sql.SqlNormalizedCacheFactory
+import com.apollographql.apollo.integration.normalizer.HeroAndFriendsNamesWithIDsQuery
+import com.apollographql.apollo.integration.normalizer.type.Episode
+import com.apollographql.apollo.testing.internal.runTest
+import kotlin.test.Test
+import kotlin.test.assertEquals
+
+class SqlPartialReadTest {
+  /**
+   * Reading from a binary SQLite cache only decodes the selected fields
+   */
+  @Test
+  fun readOperationFromBinaryRecords() = runTest {
+    val store = ApolloStore(SqlNormalizedCacheFactory(null, RecordFormat.Binary))
+    val data = HeroAndFriendsNamesWithIDsQuery.Data(
+        HeroAndFriendsNamesWithIDsQuery.Hero(
+            "2001",
+            "R2-D2",
+            listOf(
+                HeroAndFriendsNamesWithIDsQuery.Friend("1000", "Luke Skywalker"),
+                HeroAndFriendsNamesWithIDsQuery.Friend("1002", "Han Solo"),
+            )
+        )
+    )
+    val query = HeroAndFriendsNamesWithIDsQuery(Episode.NEWHOPE)
+    store.writeOperation(query, data)
+
+    assertEquals(data, store.readOperation(query))
+  }
+}
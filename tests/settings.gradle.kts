@@ -9,6 +9,7 @@ rootProject.name = "apollo-tests"
 listOf(
     "ast-benchmark",
     "browser-tests",
+    "cache-benchmark",
     "cache-variables-arguments",
     "catch",
     "catch-responseBased",